@@ -25,6 +25,9 @@ import java.lang.annotation.Target;
 
 /**
  * Annotation to denote if a {@link Dataset} constructor or method only performs read operations.
+ *
+ * When used on a service handler method with implicit transaction, the method is executed in a transaction
+ * that is aborted rather than committed when the method returns. Any writes performed by the method are discarded.
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.CONSTRUCTOR, ElementType.METHOD})
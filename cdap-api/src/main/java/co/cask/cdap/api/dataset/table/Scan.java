@@ -19,10 +19,18 @@ package co.cask.cdap.api.dataset.table;
 import co.cask.cdap.api.annotation.Beta;
 import co.cask.cdap.api.common.Bytes;
 
+import java.util.Arrays;
 import javax.annotation.Nullable;
 
 /**
  * Scan configuration for {@link Table}.
+ * <p>
+ * By default, all columns of the rows in the range are returned. The columns can be limited to a set of columns,
+ * to the columns with a given prefix, and to the columns with values that match a {@link ValueFilter}. If more than
+ * one of them is set, only the columns that satisfy all of them are returned. Rows without any column to return are
+ * skipped.
+ * <p>
+ * Rows are returned in ascending order of their keys, unless the scan is {@link #setReversed(boolean) reversed}.
  */
 @Beta
 public class Scan {
@@ -32,6 +40,13 @@ public class Scan {
   private final byte[] stopRow;
   @Nullable
   private final Filter filter;
+  @Nullable
+  private byte[][] columns;
+  @Nullable
+  private byte[] columnPrefix;
+  @Nullable
+  private ValueFilter valueFilter;
+  private boolean reversed;
 
   /**
    * Creates {@link Scan} for a given start and stop row keys.
@@ -69,12 +84,114 @@ public class Scan {
     return filter;
   }
 
+  /**
+   * Limits the scan to return only the given columns.
+   *
+   * @param columns the columns to return
+   * @return this {@link Scan}
+   */
+  public Scan setColumns(byte[]... columns) {
+    this.columns = copy(columns);
+    return this;
+  }
+
+  /**
+   * Limits the scan to return only the columns that start with the given prefix.
+   *
+   * @param columnPrefix prefix of the columns to return
+   * @return this {@link Scan}
+   */
+  public Scan setColumnPrefix(byte[] columnPrefix) {
+    this.columnPrefix = copy(columnPrefix);
+    return this;
+  }
+
+  /**
+   * Limits the scan to return only the columns with values that match the given filter.
+   *
+   * @param valueFilter filter on the column values
+   * @return this {@link Scan}
+   */
+  public Scan setValueFilter(ValueFilter valueFilter) {
+    this.valueFilter = valueFilter;
+    return this;
+  }
+
+  /**
+   * Sets whether the rows are returned in descending order of their keys. The range of the scan is the same for both
+   * orders: a reversed scan starts with the last row before the stop row, and ends with the start row.
+   * Tables on HBase 0.96 do not support reversed scans, and throw an {@link UnsupportedOperationException}.
+   *
+   * @param reversed whether to return the rows in descending order
+   * @return this {@link Scan}
+   */
+  public Scan setReversed(boolean reversed) {
+    this.reversed = reversed;
+    return this;
+  }
+
+  /**
+   * Returns the columns to return, or {@code null} if the scan is not limited to a set of columns.
+   */
+  @Nullable
+  public byte[][] getColumns() {
+    return columns == null ? null : copy(columns);
+  }
+
+  /**
+   * Returns the prefix of the columns to return, or {@code null} if the scan is not limited by column prefix.
+   */
+  @Nullable
+  public byte[] getColumnPrefix() {
+    return columnPrefix == null ? null : copy(columnPrefix);
+  }
+
+  @Nullable
+  public ValueFilter getValueFilter() {
+    return valueFilter;
+  }
+
+  /**
+   * Returns whether the rows are returned in descending order of their keys.
+   */
+  public boolean isReversed() {
+    return reversed;
+  }
+
   @Override
   public String toString() {
-    return "Scan{" +
-      "startRow=" + Bytes.toStringBinary(startRow) +
-      ", stopRow=" + Bytes.toStringBinary(stopRow) +
-      ", filter=" + filter +
-      '}';
+    StringBuilder builder = new StringBuilder("Scan{")
+      .append("startRow=").append(Bytes.toStringBinary(startRow))
+      .append(", stopRow=").append(Bytes.toStringBinary(stopRow))
+      .append(", filter=").append(filter);
+    if (columns != null) {
+      builder.append(", columns=[");
+      for (int i = 0; i < columns.length; i++) {
+        builder.append(i == 0 ? "" : ", ").append(Bytes.toStringBinary(columns[i]));
+      }
+      builder.append(']');
+    }
+    if (columnPrefix != null) {
+      builder.append(", columnPrefix=").append(Bytes.toStringBinary(columnPrefix));
+    }
+    if (valueFilter != null) {
+      builder.append(", valueFilter=").append(valueFilter);
+    }
+    if (reversed) {
+      builder.append(", reversed=true");
+    }
+    return builder.append('}').toString();
+  }
+
+  private static byte[][] copy(byte[][] columns) {
+    byte[][] copy = new byte[columns.length][];
+    for (int i = 0; i < columns.length; i++) {
+      copy[i] = copy(columns[i]);
+    }
+    return copy;
+  }
+
+  private static byte[] copy(byte[] bytes) {
+    return Arrays.copyOf(bytes, bytes.length);
   }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.api.dataset.table;
+
+import co.cask.cdap.api.annotation.Beta;
+import co.cask.cdap.api.common.Bytes;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Filter on column values to be applied to {@link Scan}. Only the columns with values that match the filter are
+ * returned, and rows without any matching column are skipped. Values are compared as unsigned bytes.
+ */
+@Beta
+public final class ValueFilter {
+
+  /**
+   * Type of the value filter.
+   */
+  public enum Type {
+    EQUAL,
+    PREFIX,
+    RANGE
+  }
+
+  private final Type type;
+  @Nullable
+  private final byte[] lowerBound;
+  @Nullable
+  private final byte[] upperBound;
+
+  /**
+   * Creates a {@link ValueFilter} that matches values that are equal to the given value.
+   */
+  public static ValueFilter equalTo(byte[] value) {
+    return new ValueFilter(Type.EQUAL, copy(checkNotNull(value, "value")), null);
+  }
+
+  /**
+   * Creates a {@link ValueFilter} that matches values that start with the given prefix.
+   */
+  public static ValueFilter prefix(byte[] prefix) {
+    return new ValueFilter(Type.PREFIX, copy(checkNotNull(prefix, "prefix")), null);
+  }
+
+  /**
+   * Creates a {@link ValueFilter} that matches values in the given range.
+   *
+   * @param lowerBound lower bound of the range, inclusive; {@code null} means no lower bound
+   * @param upperBound upper bound of the range, exclusive; {@code null} means no upper bound
+   */
+  public static ValueFilter range(@Nullable byte[] lowerBound, @Nullable byte[] upperBound) {
+    return new ValueFilter(Type.RANGE, copy(lowerBound), copy(upperBound));
+  }
+
+  private ValueFilter(Type type, @Nullable byte[] lowerBound, @Nullable byte[] upperBound) {
+    this.type = type;
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Returns the value to compare with for {@link Type#EQUAL} and {@link Type#PREFIX} filters, or the lower bound of
+   * the range for {@link Type#RANGE} filters.
+   */
+  @Nullable
+  public byte[] getLowerBound() {
+    return copy(lowerBound);
+  }
+
+  /**
+   * Returns the upper bound of the range for {@link Type#RANGE} filters, or {@code null} for other types.
+   */
+  @Nullable
+  public byte[] getUpperBound() {
+    return copy(upperBound);
+  }
+
+  /**
+   * Returns {@code true} if the given value matches this filter.
+   */
+  public boolean matches(byte[] value) {
+    switch (type) {
+      case EQUAL:
+        return Bytes.equals(lowerBound, value);
+      case PREFIX:
+        return Bytes.startsWith(value, lowerBound);
+      case RANGE:
+        return (lowerBound == null || Bytes.compareTo(value, lowerBound) >= 0)
+          && (upperBound == null || Bytes.compareTo(value, upperBound) < 0);
+      default:
+        throw new IllegalStateException("Unknown value filter type " + type);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ValueFilter{" +
+      "type=" + type +
+      ", lowerBound=" + Bytes.toStringBinary(lowerBound) +
+      ", upperBound=" + Bytes.toStringBinary(upperBound) +
+      '}';
+  }
+
+  private static byte[] checkNotNull(byte[] bytes, String name) {
+    if (bytes == null) {
+      throw new IllegalArgumentException("The " + name + " must not be null");
+    }
+    return bytes;
+  }
+
+  @Nullable
+  private static byte[] copy(@Nullable byte[] bytes) {
+    return bytes == null ? null : Arrays.copyOf(bytes, bytes.length);
+  }
+}
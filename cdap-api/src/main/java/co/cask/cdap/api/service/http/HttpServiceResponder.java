@@ -125,6 +125,30 @@ public interface HttpServiceResponder {
    */
   void send(int status, ByteBuffer content, String contentType, Iterable<? extends Map.Entry<String, String>> headers);
 
+  /**
+   * Sends response back to client without copying the given content. The response is only sent after the
+   * handler method returns, hence the content of the buffer must not be modified after calling this method.
+   *
+   * @param status status of the HTTP response
+   * @param content content to be sent back
+   * @param contentType type of content
+   * @param headers headers to be sent back
+   */
+  void sendWrapped(int status, ByteBuffer content, String contentType, Map<String, String> headers);
+
+  /**
+   * Sends response back to client without copying the given content. The response is only sent after the
+   * handler method returns, hence the content of the buffer must not be modified after calling this method.
+   *
+   * @param status status of the HTTP response
+   * @param content content to be sent back
+   * @param contentType type of content
+   * @param headers headers to send; each {@link java.util.Map.Entry} contains the header name and value to be sent,
+   *                allowing multiple values for the same header name
+   */
+  void sendWrapped(int status, ByteBuffer content, String contentType,
+                   Iterable<? extends Map.Entry<String, String>> headers);
+
   /**
    * Sends response back to client with response body produced by the given {@link HttpContentProducer}.
    *
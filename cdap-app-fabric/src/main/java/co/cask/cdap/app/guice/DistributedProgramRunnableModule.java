@@ -44,6 +44,7 @@ import co.cask.cdap.internal.app.store.remote.RemoteLineageWriter;
 import co.cask.cdap.internal.app.store.remote.RemoteRuntimeStore;
 import co.cask.cdap.internal.app.store.remote.RemoteRuntimeUsageRegistry;
 import co.cask.cdap.logging.guice.LoggingModules;
+import co.cask.cdap.messaging.guice.MessagingClientModule;
 import co.cask.cdap.metrics.guice.MetricsClientRuntimeModule;
 import co.cask.cdap.notifications.feeds.client.NotificationFeedClientModule;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
@@ -101,6 +102,7 @@ public class DistributedProgramRunnableModule {
       new AuthorizationEnforcementModule().getDistributedModules(),
       new AuthenticationContextModules().getProgramContainerModule(),
       new SecureStoreModules().getDistributedModules(),
+      new MessagingClientModule(),
       new AbstractModule() {
         @Override
         protected void configure() {
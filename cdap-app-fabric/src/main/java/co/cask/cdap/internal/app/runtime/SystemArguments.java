@@ -40,6 +40,7 @@ public final class SystemArguments {
   private static final String CORES_KEY = "system.resources.cores";
   private static final String LOG_LEVEL = "system.log.level";
   public static final String TRANSACTION_TIMEOUT = "system.data.tx.timeout";
+  public static final String TRANSACTION_LAZY_START = "system.data.tx.lazy.start";
 
   public static Map<String, String> getLogLevels(Map<String, String> args) {
     Map<String, String> logLevels = new HashMap<>();
@@ -82,6 +83,14 @@ public final class SystemArguments {
     args.put(TRANSACTION_TIMEOUT, String.valueOf(timeout));
   }
 
+  /**
+   * Returns whether the implicit transaction of a service handler method is only started when the method obtains a
+   * dataset, based on the argument system.data.tx.lazy.start in the given arguments. Defaults to {@code false}.
+   */
+  public static boolean isTransactionLazyStart(Map<String, String> args) {
+    return Boolean.parseBoolean(args.get(TRANSACTION_LAZY_START));
+  }
+
   /**
    * Returns the transction timeout based on the given arguments or, as fallback, the CConfiguration.
    *
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.internal.app.runtime.service.http;
 
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.service.http.AbstractHttpServiceHandler;
 import co.cask.cdap.api.service.http.HttpContentConsumer;
@@ -71,18 +72,18 @@ public abstract class AbstractHttpHandlerDelegator<T extends HttpServiceHandler>
   }
 
   /**
-   * Returns a {@link TransactionContext} instance to be used for creating transaction.
+   * Returns a {@link TransactionContext} instance to be used for the implicit transaction of a handler method.
+   * The transaction may only get started when the handler first obtains a dataset.
    * This method is called from handler class generated by {@link HttpHandlerGenerator}.
+   *
+   * @param readOnly {@code true} if the handler method is annotated with {@link ReadOnly}
    */
   @SuppressWarnings("unused")
-  protected final TransactionContext startTransactionContext() throws TransactionFailureException {
+  protected final TransactionContext startTransactionContext(boolean readOnly) throws TransactionFailureException {
     HttpServiceContext serviceContext = context.getServiceContext();
     Preconditions.checkState(serviceContext instanceof TransactionalHttpServiceContext,
                              "This instance of HttpServiceContext does not support transactions.");
-    TransactionContext txContext = ((TransactionalHttpServiceContext) serviceContext).newTransactionContext();
-    int txTimeout = ((TransactionalHttpServiceContext) serviceContext).getDefaultTxTimeout();
-    txContext.start(txTimeout);
-    return txContext;
+    return ((TransactionalHttpServiceContext) serviceContext).startTransactionContext(readOnly);
   }
 
   /**
@@ -99,6 +99,19 @@ public abstract class AbstractHttpServiceResponder implements HttpServiceRespond
     doSend(status, contentType, ChannelBuffers.copiedBuffer(content), null, createMultimap(headers));
   }
 
+  @Override
+  public final void sendWrapped(int status, ByteBuffer content, String contentType, Map<String, String> headers) {
+    sendWrapped(status, content, contentType, headers.entrySet());
+  }
+
+  @Override
+  public final void sendWrapped(int status, ByteBuffer content, String contentType,
+                                Iterable<? extends Map.Entry<String, String>> headers) {
+    // The wrapped buffer is a slice of the content, hence changes to its position and limit
+    // after this call are not reflected in the response.
+    doSend(status, contentType, ChannelBuffers.wrappedBuffer(content), null, createMultimap(headers));
+  }
+
   @Override
   public final void send(int status, Location location, String contentType) throws IOException {
     send(status, location, contentType, ImmutableMap.<String, String>of());
@@ -16,6 +16,8 @@
 
 package co.cask.cdap.internal.app.runtime.service.http;
 
+import co.cask.cdap.api.data.DatasetInstantiationException;
+import co.cask.cdap.api.dataset.Dataset;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.api.security.store.SecureStore;
 import co.cask.cdap.api.security.store.SecureStoreManager;
@@ -25,8 +27,11 @@ import co.cask.cdap.app.runtime.ProgramOptions;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
+import co.cask.cdap.data2.metadata.lineage.AccessType;
 import co.cask.cdap.internal.app.runtime.AbstractContext;
+import co.cask.cdap.internal.app.runtime.SystemArguments;
 import co.cask.cdap.internal.app.runtime.plugin.PluginInstantiator;
+import org.apache.tephra.TransactionAware;
 import org.apache.tephra.TransactionContext;
 import org.apache.tephra.TransactionFailureException;
 import org.apache.tephra.TransactionSystemClient;
@@ -34,7 +39,9 @@ import org.apache.twill.discovery.DiscoveryServiceClient;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
@@ -47,6 +54,11 @@ public class BasicHttpServiceContext extends AbstractContext implements Transact
   private final HttpServiceHandlerSpecification spec;
   private final int instanceId;
   private final AtomicInteger instanceCount;
+  private final boolean lazyTxStart;
+  // Transaction-aware datasets obtained while the handler is set up, through field injection or in initialize()
+  private final Set<TransactionAware> handlerTxAwares;
+  private boolean handlerInitialized;
+  private LazyTransactionContext lazyTxContext;
 
   /**
    * Creates a BasicHttpServiceContext for the given HttpServiceHandlerSpecification.
@@ -77,6 +89,8 @@ public class BasicHttpServiceContext extends AbstractContext implements Transact
     this.spec = spec;
     this.instanceId = instanceId;
     this.instanceCount = instanceCount;
+    this.lazyTxStart = SystemArguments.isTransactionLazyStart(getRuntimeArguments());
+    this.handlerTxAwares = Collections.newSetFromMap(new IdentityHashMap<TransactionAware, Boolean>());
   }
 
   private static Map<String, String> createMetricsTags(@Nullable HttpServiceHandlerSpecification spec,
@@ -114,8 +128,73 @@ public class BasicHttpServiceContext extends AbstractContext implements Transact
     return getDatasetCache().newTransactionContext();
   }
 
+  /**
+   * Marks the end of the handler setup, which consists of injecting the dataset fields and calling
+   * {@code initialize()}. The transaction-aware datasets obtained up to this point are captured. If transactions
+   * are started lazily, every transaction context started afterwards starts its transaction eagerly if there are any.
+   */
+  public void handlerInitialized() {
+    handlerInitialized = true;
+  }
+
+  @Override
+  public TransactionContext startTransactionContext(boolean readOnly) throws TransactionFailureException {
+    LazyTransactionContext txContext = new LazyTransactionContext(newTransactionContext(),
+                                                                  getDefaultTxTimeout(), readOnly);
+    // Datasets can be kept in fields and used without calling getDataset(). They join the new transaction context,
+    // hence by default the transaction cannot be deferred. If lazy start is enabled with a runtime argument, the
+    // handler promises to only keep the datasets obtained while it was set up, and the transaction is only started
+    // eagerly if there are any. Datasets obtained in earlier handler method calls also join, but are only used
+    // after calling getDataset() again.
+    if (!lazyTxStart || !handlerTxAwares.isEmpty()) {
+      txContext.ensureStarted();
+    }
+    lazyTxContext = txContext;
+    return txContext;
+  }
+
+  @Override
+  protected <T extends Dataset> T getDataset(String namespace, String name, Map<String, String> arguments,
+                                             AccessType accessType) throws DatasetInstantiationException {
+    T dataset = super.getDataset(namespace, name, arguments, accessType);
+    return startLazyTransaction(name, captureHandlerDataset(dataset));
+  }
+
+  @Override
+  protected <T extends Dataset> T getDataset(String name, Map<String, String> arguments, AccessType accessType)
+    throws DatasetInstantiationException {
+    T dataset = super.getDataset(name, arguments, accessType);
+    return startLazyTransaction(name, captureHandlerDataset(dataset));
+  }
+
+  /**
+   * Remembers the given dataset if it is transaction-aware and obtained while the handler is set up.
+   */
+  private <T extends Dataset> T captureHandlerDataset(T dataset) {
+    if (!handlerInitialized && dataset instanceof TransactionAware) {
+      handlerTxAwares.add((TransactionAware) dataset);
+    }
+    return dataset;
+  }
+
+  /**
+   * Starts the transaction of the current handler method call if it was deferred until a dataset is used.
+   */
+  private <T extends Dataset> T startLazyTransaction(String name, T dataset) throws DatasetInstantiationException {
+    if (lazyTxContext != null) {
+      try {
+        lazyTxContext.ensureStarted();
+      } catch (TransactionFailureException e) {
+        throw new DatasetInstantiationException(
+          String.format("Failed to start transaction for using dataset '%s'", name), e);
+      }
+    }
+    return dataset;
+  }
+
   @Override
   public void dismissTransactionContext() {
+    lazyTxContext = null;
     getDatasetCache().dismissTransactionContext();
   }
 
@@ -41,6 +41,8 @@ import javax.annotation.Nullable;
  * the HttpServiceResponder's methods to the matching methods for a {@link HttpResponder}.
  * A response is buffered until execute() is called. This allows you to send the correct response upon
  * a transaction failure, and to not always delegating to the user response.
+ * Content passed to {@link #sendWrapped} is buffered by reference only, and the output of a
+ * {@link HttpContentProducer} is never buffered: its chunks are streamed to the client once execute() is called.
  */
 public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(DelayedHttpServiceResponder.class);
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.internal.app.runtime.service.http;
 
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.TransactionControl;
 import co.cask.cdap.api.annotation.TransactionPolicy;
 import co.cask.cdap.api.metrics.MetricsContext;
@@ -116,6 +117,7 @@ final class HttpHandlerGenerator {
 
   private static final Type TX_POLICY_TYPE = Type.getType(TransactionPolicy.class);
   private static final Type TX_CONTROL_TYPE = Type.getType(TransactionControl.class);
+  private static final Type READ_ONLY_TYPE = Type.getType(ReadOnly.class);
 
   /**
    * Generates a new class that implements {@link HttpHandler} by copying methods signatures from the given
@@ -388,9 +390,12 @@ final class HttpHandlerGenerator {
       // this is a handler process, hence need to copy.
       boolean handlerMethod = false;
       TransactionControl txCtrl = TransactionControl.IMPLICIT;
+      boolean readOnly = false;
       for (AnnotationNode annotation : annotations) {
         if (isHandlerMethod(Type.getType(annotation.desc))) {
           handlerMethod = true;
+        } else if (READ_ONLY_TYPE.equals(Type.getType(annotation.desc))) {
+          readOnly = true;
         } else if (TX_POLICY_TYPE.equals(Type.getType(annotation.desc))) {
           List list = annotation.values;
           for (Iterator iter = list.iterator(); iter.hasNext(); ) {
@@ -460,7 +465,7 @@ final class HttpHandlerGenerator {
       }
 
       // Each request method is wrapped by a transaction lifecycle.
-      generateTransactionalDelegateBody(mg, new Method(name, desc), txCtrl);
+      generateTransactionalDelegateBody(mg, new Method(name, desc), txCtrl, readOnly);
 
       super.visitEnd();
     }
@@ -527,7 +532,8 @@ final class HttpHandlerGenerator {
 
     /**
      * Wrap the user written Handler method in a transaction.
-     * The transaction begins before calling the user method, and commit after the user method returns.
+     * The transaction begins when the user method first obtains a dataset, and commit after the user method returns.
+     * If the user method is annotated with {@link ReadOnly}, the transaction is aborted instead of committed.
      * On errors the transaction is aborted and rolledback.
      *
      * The generated handler method body has the form:
@@ -539,7 +545,7 @@ final class HttpHandlerGenerator {
      *     DelayedHttpServiceResponder wrappedResponder = wrapResponder(responder);
      *     try {
      *       // only start tx if transaction control is IMPLICIT
-     *       TransactionContext txContext = startTransactionContext();
+     *       TransactionContext txContext = startTransactionContext(readOnly);
      *       // only generate this try catch block if transaction control is IMPLICIT
      *       try {
      *         ClassLoader classLoader = ClassLoaders.setContextClassLoader(createHandlerContextClassLoader());
@@ -577,7 +583,8 @@ final class HttpHandlerGenerator {
      * }
      * </pre>
      */
-    private void generateTransactionalDelegateBody(GeneratorAdapter mg, Method method, TransactionControl txCtrl) {
+    private void generateTransactionalDelegateBody(GeneratorAdapter mg, Method method,
+                                                   TransactionControl txCtrl, boolean readOnly) {
       Type handlerType = Type.getType(delegateType.getRawType());
       Type txContextType = Type.getType(TransactionContext.class);
       Type txFailureExceptionType = Type.getType(TransactionFailureException.class);
@@ -631,11 +638,12 @@ final class HttpHandlerGenerator {
       int txContext = 0;
       if (TransactionControl.IMPLICIT == txCtrl) {
 
-        // TransactionContext txContext = startTransactionContext();
+        // TransactionContext txContext = startTransactionContext(readOnly);
         txContext = mg.newLocal(txContextType);
         mg.loadThis();
+        mg.push(readOnly);
         mg.invokeVirtual(classType,
-                         Methods.getMethod(TransactionContext.class, "startTransactionContext"));
+                         Methods.getMethod(TransactionContext.class, "startTransactionContext", boolean.class));
         mg.storeLocal(txContext, txContextType);
 
         // only generate this try catch block if transaction control is IMPLICIT
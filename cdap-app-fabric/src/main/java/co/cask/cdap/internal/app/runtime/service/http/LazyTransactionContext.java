@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.service.http;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.tephra.Transaction;
+import org.apache.tephra.TransactionAware;
+import org.apache.tephra.TransactionContext;
+import org.apache.tephra.TransactionFailureException;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TransactionContext} used for the implicit transaction of a user service handler method call.
+ * It defers starting the transaction until {@link #ensureStarted()} is called, which happens when the handler
+ * first obtains a dataset. If no dataset is ever used, finishing or aborting this context doesn't talk
+ * to the transaction manager at all.
+ *
+ * If the context is read-only, the transaction is aborted instead of committed by {@link #finish()}.
+ * This skips conflict detection and commit, and any changes made to datasets are discarded.
+ */
+final class LazyTransactionContext extends TransactionContext {
+
+  private final TransactionContext delegate;
+  private final int timeout;
+  private final boolean readOnly;
+  private boolean started;
+  private boolean completed;
+
+  LazyTransactionContext(TransactionContext delegate, int timeout, boolean readOnly) {
+    super(null, ImmutableList.<TransactionAware>of());
+    this.delegate = delegate;
+    this.timeout = timeout;
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Starts the transaction if it is not yet started and this context has not been completed.
+   */
+  void ensureStarted() throws TransactionFailureException {
+    if (started || completed) {
+      return;
+    }
+    delegate.start(timeout);
+    started = true;
+  }
+
+  @Override
+  public boolean addTransactionAware(TransactionAware txAware) {
+    return delegate.addTransactionAware(txAware);
+  }
+
+  @Override
+  public boolean removeTransactionAware(TransactionAware txAware) {
+    return delegate.removeTransactionAware(txAware);
+  }
+
+  @Override
+  public void start() throws TransactionFailureException {
+    ensureStarted();
+  }
+
+  @Override
+  public void start(int txTimeout) throws TransactionFailureException {
+    ensureStarted();
+  }
+
+  @Override
+  public void finish() throws TransactionFailureException {
+    if (completed) {
+      return;
+    }
+    completed = true;
+    if (!started) {
+      return;
+    }
+    if (readOnly) {
+      delegate.abort();
+    } else {
+      delegate.finish();
+    }
+  }
+
+  @Override
+  public void abort() throws TransactionFailureException {
+    completed = true;
+    if (started) {
+      delegate.abort();
+    }
+  }
+
+  @Override
+  public void abort(TransactionFailureException cause) throws TransactionFailureException {
+    completed = true;
+    if (started) {
+      delegate.abort(cause);
+    } else if (cause != null) {
+      // Same as what TransactionContext does after aborting an active transaction
+      throw cause;
+    }
+  }
+
+  @Override
+  public void checkpoint() throws TransactionFailureException {
+    ensureStarted();
+    delegate.checkpoint();
+  }
+
+  @Nullable
+  @Override
+  public Transaction getCurrentTransaction() {
+    return delegate.getCurrentTransaction();
+  }
+}
@@ -31,6 +31,18 @@ public interface TransactionalHttpServiceContext extends HttpServiceContext {
    */
   TransactionContext newTransactionContext() throws TransactionFailureException;
 
+  /**
+   * Get a {@link TransactionContext} for the implicit transaction of a HttpServiceHandler method call.
+   * The transaction is started by this method, unless lazy start is enabled through the
+   * {@code system.data.tx.lazy.start} runtime argument. In that case, it may be started no later than the first
+   * time a dataset is obtained through this context.
+   *
+   * @param readOnly {@code true} if the method only performs read operations, in which case the transaction
+   *                 is aborted instead of committed when the context is finished
+   * @return a transaction context that is started, or will be started on demand
+   */
+  TransactionContext startTransactionContext(boolean readOnly) throws TransactionFailureException;
+
   /**
    * Dismiss the {@link TransactionContext} for the HttpServiceHandler.
    */
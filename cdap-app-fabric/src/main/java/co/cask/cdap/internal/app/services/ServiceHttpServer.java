@@ -482,6 +482,7 @@ public class ServiceHttpServer extends AbstractIdleService {
                         new DataSetFieldSetter(context),
                         new PropertyFieldSetter(spec.getProperties()));
       initHandler(handler, context);
+      context.handlerInitialized();
       return new HandlerContextPair(handler, context);
     }
   }
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap;
+
+import co.cask.cdap.api.app.AbstractApplication;
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
+import co.cask.cdap.api.service.AbstractService;
+import co.cask.cdap.api.service.http.AbstractHttpServiceHandler;
+import co.cask.cdap.api.service.http.HttpServiceContext;
+import co.cask.cdap.api.service.http.HttpServiceRequest;
+import co.cask.cdap.api.service.http.HttpServiceResponder;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+
+/**
+ * Application with a service handler that obtains a dataset in initialize() and keeps it in a field, and a service
+ * handler that only obtains a dataset in some of its methods.
+ */
+public class AppWithDatasetFieldService extends AbstractApplication {
+
+  public static final String NAME = "AppWithDatasetFieldService";
+  public static final String SERVICE = "DatasetFieldService";
+  public static final String METHOD_SERVICE = "DatasetMethodService";
+  public static final String DATASET = "fieldTable";
+
+  @Override
+  public void configure() {
+    setName(NAME);
+    createDataset(DATASET, KeyValueTable.class);
+    addService(new DatasetFieldService());
+    addService(new DatasetMethodService());
+  }
+
+  /**
+   * Service with a single {@link DatasetFieldHandler}.
+   */
+  public static final class DatasetFieldService extends AbstractService {
+
+    @Override
+    protected void configure() {
+      setName(SERVICE);
+      addHandler(new DatasetFieldHandler());
+    }
+  }
+
+  /**
+   * Service with a single {@link DatasetMethodHandler}.
+   */
+  public static final class DatasetMethodService extends AbstractService {
+
+    @Override
+    protected void configure() {
+      setName(METHOD_SERVICE);
+      addHandler(new DatasetMethodHandler());
+    }
+  }
+
+  /**
+   * Handler that uses a dataset obtained in {@link #initialize(HttpServiceContext)} without calling getDataset().
+   */
+  public static final class DatasetFieldHandler extends AbstractHttpServiceHandler {
+
+    private KeyValueTable table;
+
+    @Override
+    public void initialize(HttpServiceContext context) throws Exception {
+      super.initialize(context);
+      table = context.getDataset(DATASET);
+    }
+
+    @PUT
+    @Path("/values/{key}")
+    public void put(HttpServiceRequest request, HttpServiceResponder responder, @PathParam("key") String key) {
+      table.write(Bytes.toBytes(key), Bytes.toBytes(request.getContent()));
+      responder.sendStatus(200);
+    }
+
+    @GET
+    @Path("/values/{key}")
+    public void get(HttpServiceRequest request, HttpServiceResponder responder, @PathParam("key") String key) {
+      byte[] value = table.read(Bytes.toBytes(key));
+      if (value == null) {
+        responder.sendStatus(404);
+      } else {
+        responder.sendString(Bytes.toString(value));
+      }
+    }
+  }
+
+  /**
+   * Handler that obtains a dataset in one method and has another method that does not use any dataset, as well as
+   * a method that keeps the dataset obtained in its first call in a field.
+   */
+  public static final class DatasetMethodHandler extends AbstractHttpServiceHandler {
+
+    private KeyValueTable cachedTable;
+
+    @PUT
+    @Path("/values/{key}")
+    public void put(HttpServiceRequest request, HttpServiceResponder responder, @PathParam("key") String key) {
+      KeyValueTable table = getContext().getDataset(DATASET);
+      table.write(Bytes.toBytes(key), Bytes.toBytes(request.getContent()));
+      responder.sendStatus(200);
+    }
+
+    @PUT
+    @Path("/cached/{key}")
+    public void putCached(HttpServiceRequest request, HttpServiceResponder responder,
+                          @PathParam("key") String key) {
+      if (cachedTable == null) {
+        cachedTable = getContext().getDataset(DATASET);
+      }
+      cachedTable.write(Bytes.toBytes(key), Bytes.toBytes(request.getContent()));
+      responder.sendStatus(200);
+    }
+
+    @GET
+    @Path("/ping")
+    public void ping(HttpServiceRequest request, HttpServiceResponder responder) {
+      responder.sendString("pong");
+    }
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.service;
+
+import co.cask.cdap.AppWithDatasetFieldService;
+import co.cask.cdap.app.runtime.ProgramController;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.discovery.RandomEndpointStrategy;
+import co.cask.cdap.common.service.ServiceDiscoverable;
+import co.cask.cdap.internal.AppFabricTestHelper;
+import co.cask.cdap.internal.TempFolder;
+import co.cask.cdap.internal.app.deploy.pipeline.ApplicationWithPrograms;
+import co.cask.cdap.internal.app.runtime.BasicArguments;
+import co.cask.cdap.internal.app.runtime.SystemArguments;
+import co.cask.cdap.internal.app.services.ServiceHttpServer;
+import co.cask.cdap.proto.id.ProgramId;
+import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Injector;
+import org.apache.tephra.TransactionManager;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests running service programs.
+ */
+public class ServiceProgramRunnerTest {
+
+  private static final TempFolder TEMP_FOLDER = new TempFolder();
+
+  @ClassRule
+  public static TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static final Supplier<File> TEMP_FOLDER_SUPPLIER = new Supplier<File>() {
+    @Override
+    public File get() {
+      try {
+        return tmpFolder.newFolder();
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+  };
+
+  private static Injector injector;
+  private static TransactionManager txService;
+
+  @BeforeClass
+  public static void beforeClass() {
+    CConfiguration conf = CConfiguration.create();
+    conf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder("data").getAbsolutePath());
+    injector = AppFabricTestHelper.getInjector(conf);
+    txService = injector.getInstance(TransactionManager.class);
+    txService.startAndWait();
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    txService.stopAndWait();
+  }
+
+  @Test
+  public void testDatasetFromInitialize() throws Exception {
+    ApplicationWithPrograms app =
+      AppFabricTestHelper.deployApplicationWithManager(AppWithDatasetFieldService.class, TEMP_FOLDER_SUPPLIER);
+    ProgramController controller = AppFabricTestHelper.submit(
+      app, AppWithDatasetFieldService.DatasetFieldService.class.getName(), new BasicArguments(), TEMP_FOLDER_SUPPLIER);
+
+    try {
+      URL url = getMethodURL(app.getApplicationId().service(AppWithDatasetFieldService.SERVICE), "values/key");
+
+      // The handler writes and reads with a dataset obtained in initialize(), without calling getDataset()
+      Assert.assertEquals(200, put(url, "value"));
+
+      HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+      try {
+        Assert.assertEquals(200, urlConn.getResponseCode());
+        Assert.assertEquals("value", new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8));
+      } finally {
+        urlConn.disconnect();
+      }
+    } finally {
+      controller.stop().get(30, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testDatasetCachedInMethod() throws Exception {
+    // Use a single handler thread, so that all calls go to the same handler instance and dataset cache
+    System.setProperty(ServiceHttpServer.THREAD_POOL_SIZE, "1");
+    ApplicationWithPrograms app =
+      AppFabricTestHelper.deployApplicationWithManager(AppWithDatasetFieldService.class, TEMP_FOLDER_SUPPLIER);
+    ProgramController controller = AppFabricTestHelper.submit(
+      app, AppWithDatasetFieldService.DatasetMethodService.class.getName(), new BasicArguments(),
+      TEMP_FOLDER_SUPPLIER);
+
+    try {
+      URL url = getMethodURL(app.getApplicationId().service(AppWithDatasetFieldService.METHOD_SERVICE),
+                             "cached/key");
+      // By default, a dataset kept in a field by an earlier call can be used without calling getDataset()
+      Assert.assertEquals(200, put(url, "value"));
+      Assert.assertEquals(200, put(url, "value2"));
+    } finally {
+      System.clearProperty(ServiceHttpServer.THREAD_POOL_SIZE);
+      controller.stop().get(30, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testDatasetFreeMethodWithoutTransaction() throws Exception {
+    // Use a single handler thread, so that all calls go to the same handler instance and dataset cache
+    System.setProperty(ServiceHttpServer.THREAD_POOL_SIZE, "1");
+    ApplicationWithPrograms app =
+      AppFabricTestHelper.deployApplicationWithManager(AppWithDatasetFieldService.class, TEMP_FOLDER_SUPPLIER);
+    // Transactions are only started lazily if enabled through the runtime arguments
+    ProgramController controller = AppFabricTestHelper.submit(
+      app, AppWithDatasetFieldService.DatasetMethodService.class.getName(),
+      new BasicArguments(ImmutableMap.of(SystemArguments.TRANSACTION_LAZY_START, "true")), TEMP_FOLDER_SUPPLIER);
+
+    try {
+      ProgramId serviceId = app.getApplicationId().service(AppWithDatasetFieldService.METHOD_SERVICE);
+      URL putURL = getMethodURL(serviceId, "values/key");
+      URL pingURL = getMethodURL(serviceId, "ping");
+
+      // After a method has obtained a dataset, methods that don't use any dataset still start no transaction
+      Assert.assertEquals(200, put(putURL, "value"));
+      long writePointer = txService.getCurrentState().getWritePointer();
+      for (int i = 0; i < 2; i++) {
+        HttpURLConnection urlConn = (HttpURLConnection) pingURL.openConnection();
+        try {
+          Assert.assertEquals(200, urlConn.getResponseCode());
+          Assert.assertEquals("pong", new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8));
+        } finally {
+          urlConn.disconnect();
+        }
+      }
+      Assert.assertEquals(writePointer, txService.getCurrentState().getWritePointer());
+
+      // The method that uses the dataset still starts one
+      Assert.assertEquals(200, put(putURL, "value2"));
+      Assert.assertTrue(txService.getCurrentState().getWritePointer() > writePointer);
+    } finally {
+      System.clearProperty(ServiceHttpServer.THREAD_POOL_SIZE);
+      controller.stop().get(30, TimeUnit.SECONDS);
+    }
+  }
+
+  private URL getMethodURL(ProgramId serviceId, String path) throws Exception {
+    DiscoveryServiceClient discoveryServiceClient = injector.getInstance(DiscoveryServiceClient.class);
+    Discoverable discoverable = new RandomEndpointStrategy(
+      discoveryServiceClient.discover(ServiceDiscoverable.getName(serviceId))).pick(10, TimeUnit.SECONDS);
+    Assert.assertNotNull(discoverable);
+
+    InetSocketAddress address = discoverable.getSocketAddress();
+    return new URL(String.format("http://%s:%d%s/namespaces/%s/apps/%s/services/%s/methods/%s",
+                                 address.getHostName(), address.getPort(), Constants.Gateway.API_VERSION_3,
+                                 serviceId.getNamespace(), serviceId.getApplication(), serviceId.getProgram(),
+                                 path));
+  }
+
+  private int put(URL url, String content) throws IOException {
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+    try {
+      urlConn.setDoOutput(true);
+      urlConn.setRequestMethod("PUT");
+      try (OutputStream os = urlConn.getOutputStream()) {
+        os.write(content.getBytes(Charsets.UTF_8));
+      }
+      return urlConn.getResponseCode();
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+}
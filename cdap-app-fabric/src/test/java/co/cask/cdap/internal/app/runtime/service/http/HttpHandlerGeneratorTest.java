@@ -19,6 +19,7 @@ package co.cask.cdap.internal.app.runtime.service.http;
 import co.cask.cdap.api.Admin;
 import co.cask.cdap.api.Transactional;
 import co.cask.cdap.api.TxRunnable;
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.TransactionControl;
 import co.cask.cdap.api.annotation.TransactionPolicy;
 import co.cask.cdap.api.app.ApplicationSpecification;
@@ -49,6 +50,7 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
@@ -95,6 +97,7 @@ import javax.ws.rs.PathParam;
 public class HttpHandlerGeneratorTest {
 
   private static final String IN_TX = "in-tx";
+  private static final String READ_ONLY_TX = "read-only-tx";
 
   @ClassRule
   public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
@@ -123,9 +126,28 @@ public class HttpHandlerGeneratorTest {
     @POST
     public void echo(HttpServiceRequest request, HttpServiceResponder responder, @PathParam("name") String name) {
       Assert.assertNotNull(System.getProperty(IN_TX));
+      Assert.assertNull(System.getProperty(READ_ONLY_TX));
       responder.sendString(Charsets.UTF_8.decode(request.getContent()).toString() + " " + name);
     }
 
+    @Path("/readonly")
+    @GET
+    @ReadOnly
+    public void readOnly(HttpServiceRequest request, HttpServiceResponder responder) {
+      Assert.assertNotNull(System.getProperty(IN_TX));
+      Assert.assertNotNull(System.getProperty(READ_ONLY_TX));
+      responder.sendString("Read Only");
+    }
+
+    @Path("/wrapped")
+    @GET
+    public void wrapped(HttpServiceRequest request, HttpServiceResponder responder) {
+      ByteBuffer content = Charsets.UTF_8.encode("Wrapped Content");
+      responder.sendWrapped(200, content, "text/plain", ImmutableMap.<String, String>of());
+      // Moving the position after the call shouldn't affect the response
+      content.position(content.limit());
+    }
+
     @Path("/echo/firstHeaders")
     @GET
     public void echoFirstHeaders(HttpServiceRequest request, HttpServiceResponder responder) {
@@ -551,6 +573,21 @@ public class HttpHandlerGeneratorTest {
       Assert.assertEquals("Hello test",
                           new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8));
 
+      // Make a GET call to a method that responds with a wrapped buffer
+      urlConn = new URL(String.format("http://%s:%d/prefix/p2/wrapped",
+                                      bindAddress.getHostName(), bindAddress.getPort())).openConnection();
+      urlConn.setReadTimeout(2000);
+
+      Assert.assertEquals("Wrapped Content",
+                          new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8));
+
+      // Make a GET call to a read only method
+      urlConn = new URL(String.format("http://%s:%d/prefix/p2/readonly",
+                                      bindAddress.getHostName(), bindAddress.getPort())).openConnection();
+      urlConn.setReadTimeout(2000);
+
+      Assert.assertEquals("Read Only", new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8));
+
       // Ensure that even though the handler did not have a class-level annotation, we still prefix the path that it
       // handles by "/prefix"
       urlConn = new URL(String.format("http://%s:%d/prefix/ping", bindAddress.getHostName(), bindAddress.getPort()))
@@ -696,20 +733,33 @@ public class HttpHandlerGeneratorTest {
         @Override
         public void finish() throws TransactionFailureException {
           System.clearProperty(IN_TX);
+          System.clearProperty(READ_ONLY_TX);
         }
 
         @Override
         public void abort() throws TransactionFailureException {
           System.clearProperty(IN_TX);
+          System.clearProperty(READ_ONLY_TX);
         }
 
         @Override
         public void abort(TransactionFailureException cause) throws TransactionFailureException {
           System.clearProperty(IN_TX);
+          System.clearProperty(READ_ONLY_TX);
         }
       };
     }
 
+    @Override
+    public TransactionContext startTransactionContext(boolean readOnly) throws TransactionFailureException {
+      TransactionContext txContext = newTransactionContext();
+      txContext.start();
+      if (readOnly) {
+        System.setProperty(READ_ONLY_TX, "true");
+      }
+      return txContext;
+    }
+
     @Override
     public void dismissTransactionContext() {
       // no-op
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.service.http;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.tephra.TransactionAware;
+import org.apache.tephra.TransactionContext;
+import org.apache.tephra.TransactionFailureException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for {@link LazyTransactionContext}.
+ */
+public class LazyTransactionContextTest {
+
+  @Test
+  public void testNoDatasetUsed() throws Exception {
+    RecordingTransactionContext delegate = new RecordingTransactionContext();
+    LazyTransactionContext txContext = new LazyTransactionContext(delegate, 30, false);
+    txContext.finish();
+    Assert.assertTrue(delegate.calls.isEmpty());
+
+    // once completed, the transaction should never be started
+    txContext.ensureStarted();
+    Assert.assertTrue(delegate.calls.isEmpty());
+  }
+
+  @Test
+  public void testStartOnDemand() throws Exception {
+    RecordingTransactionContext delegate = new RecordingTransactionContext();
+    LazyTransactionContext txContext = new LazyTransactionContext(delegate, 30, false);
+    txContext.ensureStarted();
+    txContext.ensureStarted();
+    txContext.finish();
+    Assert.assertEquals(ImmutableList.of("start(30)", "finish"), delegate.calls);
+  }
+
+  @Test
+  public void testReadOnly() throws Exception {
+    RecordingTransactionContext delegate = new RecordingTransactionContext();
+    LazyTransactionContext txContext = new LazyTransactionContext(delegate, 10, true);
+    txContext.ensureStarted();
+    txContext.finish();
+    Assert.assertEquals(ImmutableList.of("start(10)", "abort"), delegate.calls);
+  }
+
+  @Test
+  public void testAbortWithCause() throws Exception {
+    // Without a transaction, the cause should still be propagated
+    RecordingTransactionContext delegate = new RecordingTransactionContext();
+    LazyTransactionContext txContext = new LazyTransactionContext(delegate, 30, false);
+    TransactionFailureException cause = new TransactionFailureException("failure");
+    try {
+      txContext.abort(cause);
+      Assert.fail("Expected failure to be propagated");
+    } catch (TransactionFailureException e) {
+      Assert.assertSame(cause, e);
+    }
+    Assert.assertTrue(delegate.calls.isEmpty());
+
+    // With a transaction, the delegate is responsible for propagating the cause
+    delegate = new RecordingTransactionContext();
+    txContext = new LazyTransactionContext(delegate, 30, false);
+    txContext.ensureStarted();
+    txContext.abort(cause);
+    Assert.assertEquals(ImmutableList.of("start(30)", "abort(failure)"), delegate.calls);
+  }
+
+  /**
+   * A {@link TransactionContext} that only records the calls made to it.
+   */
+  private static final class RecordingTransactionContext extends TransactionContext {
+
+    private final List<String> calls = new ArrayList<>();
+
+    RecordingTransactionContext() {
+      super(null, ImmutableList.<TransactionAware>of());
+    }
+
+    @Override
+    public void start(int timeout) throws TransactionFailureException {
+      calls.add("start(" + timeout + ")");
+    }
+
+    @Override
+    public void finish() throws TransactionFailureException {
+      calls.add("finish");
+    }
+
+    @Override
+    public void abort() throws TransactionFailureException {
+      calls.add("abort");
+    }
+
+    @Override
+    public void abort(TransactionFailureException cause) throws TransactionFailureException {
+      calls.add("abort(" + cause.getMessage() + ")");
+    }
+  }
+}
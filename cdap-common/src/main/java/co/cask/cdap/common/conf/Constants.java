@@ -292,6 +292,22 @@ public final class Constants {
     // tables. Constant could be moved to Table after that is changed. See CDAP-1193 for more info
     public static final String TABLE_TX_DISABLED = "dataset.table.tx.disabled";
 
+    // Table dataset properties that define whether a table buffers the changes of a transaction in compact arenas
+    // instead of maps, and whether the arenas are allocated off-heap. Useful for tasks that write many cells in
+    // a transaction, as the compact buffer creates much fewer objects.
+    public static final String TABLE_COMPACT_WRITE_BUFFER = "dataset.table.write.buffer.compact";
+    public static final String TABLE_OFF_HEAP_WRITE_BUFFER = "dataset.table.write.buffer.offheap";
+
+    // Table dataset property for the number of bytes buffered by a transaction before the changes are persisted,
+    // without waiting for the transaction to commit. Persisted changes are still rolled back if the transaction
+    // fails. Zero or not set means the changes are only persisted on commit.
+    public static final String TABLE_WRITE_BUFFER_FLUSH_BYTES = "dataset.table.write.buffer.flush.bytes";
+
+    // Table dataset properties that define whether a LevelDB table keeps a Bloom filter of its row keys, which lets
+    // lookups of rows that do not exist return without reading the table, and the number of rows to size it for.
+    public static final String TABLE_ROW_BLOOM_FILTER = "dataset.table.row.bloom.filter";
+    public static final String TABLE_ROW_BLOOM_FILTER_ROWS = "dataset.table.row.bloom.filter.rows";
+
     public static final String DATA_DIR = "dataset.data.dir";
     public static final String DEFAULT_DATA_DIR = "data";
 
@@ -321,11 +337,18 @@ public final class Constants {
       public static final String WORKER_THREADS = "dataset.service.worker.threads";
       public static final String OUTPUT_DIR = "dataset.service.output.dir";
 
+      /** Number of seconds clients cache dataset specifications and type metadata; zero disables the cache. */
+      public static final String CLIENT_META_CACHE_TTL_SECS = "dataset.service.client.meta.cache.ttl.secs";
+      /** Messaging topic in the system namespace to which the service publishes dataset metadata changes. */
+      public static final String META_CHANGE_TOPIC = "dataset.service.meta.change.topic";
+
       // Defaults
       public static final int DEFAULT_BACKLOG = 20000;
       public static final int DEFAULT_EXEC_THREADS = 10;
       public static final int DEFAULT_BOSS_THREADS = 1;
       public static final int DEFAULT_WORKER_THREADS = 4;
+      public static final long DEFAULT_CLIENT_META_CACHE_TTL_SECS = 30L;
+      public static final String DEFAULT_META_CHANGE_TOPIC = "datasetmetachange";
     }
 
     /**
@@ -380,6 +403,8 @@ public final class Constants {
     public static final String FILE_PREFIX = "stream.file.prefix";
     public static final String INSTANCE_FILE_PREFIX = "stream.instance.file.prefix";
     public static final String CONSUMER_TABLE_PRESPLITS = "stream.consumer.table.presplits";
+    public static final String CONSUMER_SHARED_READER_ENABLED = "stream.consumer.shared.reader.enabled";
+    public static final String CONSUMER_SHARED_READER_BUFFER_SIZE = "stream.consumer.shared.reader.buffer.size";
     public static final String FILE_CLEANUP_PERIOD = "stream.file.cleanup.period";
     public static final String BATCH_BUFFER_THRESHOLD = "stream.batch.buffer.threshold";
     public static final String NOTIFICATION_THRESHOLD = "stream.notification.threshold";
@@ -410,6 +435,7 @@ public final class Constants {
     public static final String URL_PREFIX = "stream://";
     public static final String DESCRIPTION = "stream.description";
     public static final String FORMAT_SPECIFICATION = "stream.format.specification";
+    public static final String CODEC = "stream.codec";
 
     /**
      * Contains HTTP headers used by Stream handler.
@@ -590,6 +616,10 @@ public final class Constants {
       public static final String CONSUMER = "co";
 
       public static final String TABLE = "tbl";
+
+      public static final String TOPIC = "tpc";
+
+      public static final String PARTITION = "ptn";
     }
 
     /**
@@ -622,6 +652,10 @@ public final class Constants {
         public static final String OP_COUNT = "dataset.store.ops";
         public static final String WRITE_COUNT = "dataset.store.writes";
         public static final String WRITE_BYTES = "dataset.store.bytes";
+        public static final String BLOOM_FILTER_SKIPPED_READS = "dataset.store.bloom.filter.skipped.reads";
+        public static final String BLOOM_FILTER_FALSE_POSITIVES = "dataset.store.bloom.filter.false.positives";
+        public static final String META_CACHE_HITS = "dataset.meta.cache.hits";
+        public static final String META_CACHE_MISSES = "dataset.meta.cache.misses";
       }
 
       /**
@@ -1075,19 +1109,29 @@ public final class Constants {
   public static final class MessagingSystem {
     public static final String LOCAL_DATA_DIR = "messaging.local.data.dir";
 
+    public static final String FETCH_POLL_INTERVAL_MS = "messaging.fetch.poll.interval.ms";
     public static final String HBASE_MAX_SCAN_THREADS = "messaging.hbase.max.scan.threads";
     public static final String METADATA_TABLE_NAME = "messaging.metadata.table.name";
     public static final String MESSAGE_TABLE_NAME = "messaging.message.table.name";
+    public static final String MESSAGE_TABLE_CACHE_MAX_BYTES = "messaging.message.table.cache.max.bytes";
     public static final String MESSAGE_TABLE_HBASE_SPLITS = "messaging.message.table.hbase.splits";
+    public static final String METRICS_HISTOGRAM_EMIT_INTERVAL_SECONDS =
+      "messaging.metrics.histogram.emit.interval.seconds";
     public static final String PAYLOAD_TABLE_NAME = "messaging.payload.table.name";
     public static final String PAYLOAD_TABLE_HBASE_SPLITS = "messaging.payload.table.hbase.splits";
     public static final String TABLE_CACHE_EXPIRATION_SECONDS = "messaging.table.expiration.seconds";
     public static final String TOPIC_DEFAULT_TTL_SECONDS = "messaging.topic.default.ttl.seconds";
+    public static final String WRITER_DEDICATED_THREAD = "messaging.writer.dedicated.thread";
 
     public static final String HTTP_SERVER_WORKER_THREADS = "messaging.http.server.worker.threads";
     public static final String HTTP_SERVER_EXECUTOR_THREADS = "messaging.http.server.executor.threads";
     public static final String HTTP_SERVER_MAX_REQUEST_SIZE_MB = "messaging.http.server.max.request.size.mb";
     public static final String HTTP_SERVER_CONSUME_CHUNK_SIZE = "messaging.http.server.consume.chunk.size";
+    public static final String HTTP_SERVER_CONSUME_MAX_WAIT_MS = "messaging.http.server.consume.max.wait.ms";
+
+    public static final String CLIENT_PUBLISH_LINGER_MS = "messaging.client.publish.linger.ms";
+    public static final String CLIENT_PUBLISH_BATCH_MAX_BYTES = "messaging.client.publish.batch.max.bytes";
+    public static final String CLIENT_PUBLISH_MAX_INFLIGHT_REQUESTS = "messaging.client.publish.max.inflight.requests";
 
 
     public static final String CONTAINER_VIRTUAL_CORES = "messaging.container.num.cores";
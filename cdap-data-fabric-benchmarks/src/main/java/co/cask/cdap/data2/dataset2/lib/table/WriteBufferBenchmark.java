@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the {@link WriteBuffer} implementations used by {@link BufferingTable}. Each invocation buffers
+ * the changes of one transaction, reads them back for persisting, and then clears the buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WriteBufferBenchmark {
+
+  @Param({ "map", "arena", "arena-offheap" })
+  private String bufferType;
+
+  @Param({ "1000", "100000" })
+  private int cells;
+
+  @Param({ "10" })
+  private int columnsPerRow;
+
+  @Param({ "100" })
+  private int valueSize;
+
+  private WriteBuffer buffer;
+  private byte[][] rows;
+  private byte[][] columns;
+  private byte[] value;
+
+  @Setup
+  public void setUp() {
+    switch (bufferType) {
+      case "map":
+        buffer = new MapWriteBuffer();
+        break;
+      case "arena":
+        buffer = new ArenaWriteBuffer(ArenaWriteBuffer.DEFAULT_CHUNK_SIZE, false);
+        break;
+      case "arena-offheap":
+        buffer = new ArenaWriteBuffer(ArenaWriteBuffer.DEFAULT_CHUNK_SIZE, true);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown buffer type " + bufferType);
+    }
+
+    // Rows are written in random order, as it would be for most applications
+    Random random = new Random(0);
+    rows = new byte[cells / columnsPerRow][];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = Bytes.toBytes(random.nextLong());
+    }
+    columns = new byte[columnsPerRow][];
+    for (int i = 0; i < columnsPerRow; i++) {
+      columns[i] = Bytes.toBytes("column" + i);
+    }
+    value = new byte[valueSize];
+    random.nextBytes(value);
+  }
+
+  @Benchmark
+  public NavigableMap<byte[], NavigableMap<byte[], Update>> putAndPersist() {
+    buffer.clear();
+    for (byte[] row : rows) {
+      for (byte[] column : columns) {
+        buffer.put(row, column, value);
+      }
+    }
+    return buffer.getRows(null, null);
+  }
+
+  @Benchmark
+  public NavigableMap<byte[], NavigableMap<byte[], Update>> incrementAndPersist() {
+    buffer.clear();
+    for (int i = 0; i < 10; i++) {
+      for (byte[] row : rows) {
+        buffer.increment(row, columns[i % columns.length], 1L);
+      }
+    }
+    return buffer.getRows(null, null);
+  }
+}
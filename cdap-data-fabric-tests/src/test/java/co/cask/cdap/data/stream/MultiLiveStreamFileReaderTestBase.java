@@ -20,6 +20,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.security.DefaultImpersonator;
 import co.cask.cdap.common.security.Impersonator;
 import co.cask.cdap.common.security.UnsupportedUGIProvider;
+import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.FileWriter;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import co.cask.cdap.proto.id.NamespaceId;
@@ -262,6 +263,83 @@ public abstract class MultiLiveStreamFileReaderTestBase {
     reader.close();
   }
 
+  @Test
+  public void testSharedFileReader() throws Exception {
+    String streamName = "sharedReader";
+    StreamId streamId = NamespaceId.DEFAULT.stream(streamName);
+    Location location = getLocationFactory().create(streamName);
+    location.mkdirs();
+
+    // Create a stream with 1 partition.
+    StreamConfig config = new StreamConfig(streamId, Long.MAX_VALUE, 10000, Long.MAX_VALUE, location, null, 1000);
+
+    // Write out 100 events.
+    FileWriter<StreamEvent> writer = createWriter(config, "shared.0");
+    for (int i = 0; i < 100; i++) {
+      writer.append(StreamFileTestUtils.createEvent(i, "Testing " + i));
+    }
+    writer.flush();
+
+    Location partitionLocation = StreamUtils.createPartitionLocation(config.getLocation(), 0, Long.MAX_VALUE);
+    Location eventFile = StreamUtils.createStreamLocation(partitionLocation, "shared.0", 0, StreamFileType.EVENT);
+    List<StreamFileOffset> sources = ImmutableList.of(new StreamFileOffset(eventFile, 0L, 0));
+
+    // Create two readers sharing a buffer of 20 events.
+    SharedStreamFileReaderFactory factory = new SharedStreamFileReaderFactory(20);
+    FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader1 = factory.create(config, sources);
+    FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader2 = factory.create(config, sources);
+
+    // The first reader reads all events. The second reader gets detached when the buffer is full.
+    List<StreamEventOffset> events = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(10, reader1.read(events, 10, 0, TimeUnit.SECONDS));
+    }
+    assertEvents(events, 0, 100);
+    events.clear();
+
+    // The second reader reads all events privately, after which it should be attached again.
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(10, reader2.read(events, 10, 0, TimeUnit.SECONDS));
+    }
+    assertEvents(events, 0, 100);
+    events.clear();
+    Assert.assertEquals(ImmutableList.copyOf(reader1.getPosition()), ImmutableList.copyOf(reader2.getPosition()));
+
+    // Another reader created with the current offsets should be attached to the shared reader.
+    FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader3 =
+      factory.create(config, ImmutableList.copyOf(reader1.getPosition()));
+
+    // Write 10 more events. All readers should read them.
+    for (int i = 100; i < 110; i++) {
+      writer.append(StreamFileTestUtils.createEvent(i, "Testing " + i));
+    }
+    writer.close();
+
+    List<FileReader<StreamEventOffset, Iterable<StreamFileOffset>>> readers = ImmutableList.of(reader1, reader2,
+                                                                                                reader3);
+    for (FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader : readers) {
+      Assert.assertEquals(10, reader.read(events, 10, 2, TimeUnit.SECONDS));
+      assertEvents(events, 100, 10);
+      events.clear();
+      Assert.assertEquals(0, reader.read(events, 10, 0, TimeUnit.SECONDS));
+    }
+    Assert.assertEquals(ImmutableList.copyOf(reader1.getPosition()), ImmutableList.copyOf(reader3.getPosition()));
+
+    reader1.close();
+    reader2.close();
+    reader3.close();
+  }
+
+  private void assertEvents(List<? extends StreamEvent> events, long startTimestamp, int size) {
+    Assert.assertEquals(size, events.size());
+    long expectedTimestamp = startTimestamp;
+    for (StreamEvent event : events) {
+      Assert.assertEquals(expectedTimestamp, event.getTimestamp());
+      Assert.assertEquals("Testing " + expectedTimestamp, Charsets.UTF_8.decode(event.getBody()).toString());
+      expectedTimestamp++;
+    }
+  }
+
   private FileWriter<StreamEvent> createWriter(StreamConfig config, String prefix) {
     return new TimePartitionedStreamFileWriter(config.getLocation(), config.getPartitionDuration(),
                                                prefix, config.getIndexInterval(), config.getStreamId(),
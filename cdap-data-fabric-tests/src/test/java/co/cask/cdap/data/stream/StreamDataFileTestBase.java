@@ -994,6 +994,72 @@ public abstract class StreamDataFileTestBase {
     reader.close();
   }
 
+  @Test
+  public void testCompression() throws IOException, InterruptedException {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location plainEventFile = dir.getTempFile(".dat");
+    Location plainIndexFile = dir.getTempFile(".idx");
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+
+    StreamDataFileWriter plainWriter = new StreamDataFileWriter(Locations.newOutputSupplier(plainEventFile),
+                                                                Locations.newOutputSupplier(plainIndexFile), 10L);
+    StreamDataFileWriter writer = new StreamDataFileWriter(
+      Locations.newOutputSupplier(eventFile), Locations.newOutputSupplier(indexFile), 10L,
+      ImmutableMap.of(StreamDataFileConstants.Property.Key.CODEC,
+                      StreamDataFileConstants.Property.Value.CODEC_DEFLATE));
+
+    // Write 1000 events, with 10 events per timestamp
+    for (int i = 0; i < 1000; i++) {
+      StreamEvent event = StreamFileTestUtils.createEvent(i / 10, "Log message for testing compression " + i);
+      plainWriter.append(event);
+      writer.append(event);
+    }
+    plainWriter.close();
+    writer.close();
+
+    Assert.assertTrue(eventFile.length() < plainEventFile.length());
+
+    // Read all events back, the positions of events should be strictly increasing
+    StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile));
+    List<PositionStreamEvent> events = Lists.newArrayList();
+    Assert.assertEquals(1000, reader.read(events, 1000, 0, TimeUnit.SECONDS));
+    Assert.assertEquals(-1, reader.read(events, 1, 0, TimeUnit.SECONDS));
+    reader.close();
+
+    long lastPosition = -1L;
+    for (int i = 0; i < 1000; i++) {
+      PositionStreamEvent event = events.get(i);
+      Assert.assertEquals(i / 10, event.getTimestamp());
+      Assert.assertEquals("Log message for testing compression " + i,
+                          Charsets.UTF_8.decode(event.getBody().duplicate()).toString());
+      Assert.assertTrue(event.getStart() > lastPosition);
+      lastPosition = event.getStart();
+    }
+
+    // Reading from the position of any event should start from that event
+    for (int i = 0; i < 1000; i += 7) {
+      reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(eventFile),
+                                                     Locations.newInputSupplier(indexFile), events.get(i).getStart());
+      List<PositionStreamEvent> result = Lists.newArrayList();
+      Assert.assertEquals(1, reader.read(result, 1, 0, TimeUnit.SECONDS));
+      reader.close();
+      Assert.assertEquals(events.get(i).getStart(), result.get(0).getStart());
+      Assert.assertEquals(events.get(i).getBody(), result.get(0).getBody());
+    }
+
+    // Reading by time should use the index to locate the data block
+    reader = StreamDataFileReader.createByStartTime(Locations.newInputSupplier(eventFile),
+                                                    Locations.newInputSupplier(indexFile), 50L);
+    List<PositionStreamEvent> result = Lists.newArrayList();
+    Assert.assertEquals(500, reader.read(result, 1000, 0, TimeUnit.SECONDS));
+    reader.close();
+    for (int i = 0; i < 500; i++) {
+      Assert.assertEquals(events.get(i + 500).getStart(), result.get(i).getStart());
+      Assert.assertEquals(events.get(i + 500).getBody(), result.get(i).getBody());
+    }
+  }
+
   private FileWriter<StreamEvent> createWriter(StreamConfig config, String prefix) {
     return new TimePartitionedStreamFileWriter(config.getLocation(), config.getPartitionDuration(),
                                                prefix, config.getIndexInterval(), config.getStreamId(),
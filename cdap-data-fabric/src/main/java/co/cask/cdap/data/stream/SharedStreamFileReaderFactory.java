@@ -0,0 +1,507 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.ImmutablePair;
+import co.cask.cdap.data.file.FileReader;
+import co.cask.cdap.data.file.ReadFilter;
+import co.cask.cdap.data.file.filter.TTLReadFilter;
+import co.cask.cdap.data2.transaction.stream.StreamConfig;
+import co.cask.cdap.proto.id.StreamId;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates {@link FileReader}s for stream consumers such that all consumers of the same stream generation in the
+ * same process share a single {@link MultiLiveStreamFileReader}. Each stream file is then read once per process,
+ * no matter how many consumer groups and instances are reading from it.
+ * <p/>
+ * Events read by the shared reader are kept in a bounded buffer until all readers attached to it have consumed them.
+ * Each reader keeps its own position in the buffer, hence its own file offsets. When the buffer is full, a reader
+ * that needs more events waits for the slowest readers up to its read timeout. After that, the slowest readers are
+ * detached and continue with a private {@link MultiLiveStreamFileReader} starting from their own offsets.
+ * A detached reader attaches to the shared reader again once its offsets match the offsets of an event in the buffer.
+ */
+@Singleton
+public final class SharedStreamFileReaderFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SharedStreamFileReaderFactory.class);
+
+  private final int bufferSize;
+  // Guarded by this
+  private final Map<ImmutablePair<StreamId, Integer>, SharedSource> sources;
+
+  @Inject
+  SharedStreamFileReaderFactory(CConfiguration cConf) {
+    this(cConf.getInt(Constants.Stream.CONSUMER_SHARED_READER_BUFFER_SIZE));
+  }
+
+  @VisibleForTesting
+  SharedStreamFileReaderFactory(int bufferSize) {
+    Preconditions.checkArgument(bufferSize > 0, "Buffer size must be > 0");
+    this.bufferSize = bufferSize;
+    this.sources = Maps.newHashMap();
+  }
+
+  /**
+   * Creates an initialized {@link FileReader} that reads events from the given stream, starting from the given
+   * file offsets. If there is already a shared reader for the same stream generation that has the given offsets
+   * in its buffer, the returned reader is attached to it.
+   *
+   * @param streamConfig configuration of the stream to read from
+   * @param offsets file offsets to start reading from
+   * @return a new {@link FileReader}
+   * @throws IOException if failed to open the stream files
+   */
+  public FileReader<StreamEventOffset, Iterable<StreamFileOffset>> create(StreamConfig streamConfig,
+                                                                         Iterable<StreamFileOffset> offsets)
+    throws IOException {
+    List<StreamFileOffset> startOffsets = ImmutableList.copyOf(offsets);
+    if (startOffsets.isEmpty()) {
+      MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, startOffsets);
+      reader.initialize();
+      return reader;
+    }
+
+    ImmutablePair<StreamId, Integer> key = ImmutablePair.of(streamConfig.getStreamId(),
+                                                            startOffsets.get(0).getGeneration());
+    synchronized (this) {
+      SharedSource source = sources.get(key);
+      if (source == null) {
+        source = new SharedSource(key, streamConfig, startOffsets, bufferSize);
+        sources.put(key, source);
+      }
+      return source.createReader(streamConfig, startOffsets);
+    }
+  }
+
+  /**
+   * Removes the given reader from its {@link SharedSource}. The source is closed when there is no more reader.
+   */
+  private synchronized void release(SharedSource source, SharedReader reader) throws IOException {
+    if (source.removeReader(reader)) {
+      sources.remove(source.key);
+      source.close();
+    }
+  }
+
+  /**
+   * An event in the buffer of a {@link SharedSource}, together with the file offsets after the event was read.
+   */
+  private static final class Entry {
+    private final StreamEventOffset event;
+    private final ImmutableSet<StreamFileOffset> position;
+
+    private Entry(StreamEventOffset event, ImmutableSet<StreamFileOffset> position) {
+      this.event = event;
+      this.position = position;
+    }
+  }
+
+  /**
+   * Reads events from the stream files with a single {@link MultiLiveStreamFileReader} and buffers them for all
+   * the attached {@link SharedReader}s. Events in the buffer are identified by a sequence number. A reader cursor
+   * with value {@code seq} means all events before {@code seq} are consumed by that reader.
+   */
+  private final class SharedSource {
+
+    private final ImmutablePair<StreamId, Integer> key;
+    private final MultiLiveStreamFileReader reader;
+    private final ReadFilter readFilter;
+    private final List<StreamEventOffset> readEvents;
+    // Circular buffer of events, containing events with sequence [baseSeq, headSeq)
+    private final Entry[] entries;
+    // Map from file offsets to the cursor value having those offsets
+    private final Map<Set<StreamFileOffset>, Long> cursors;
+    private final Set<SharedReader> readers;
+    private long baseSeq;
+    private long headSeq;
+    private ImmutableSet<StreamFileOffset> basePosition;
+    private boolean eof;
+    // Set while a thread reads from the file reader without holding the monitor
+    private boolean filling;
+
+    SharedSource(ImmutablePair<StreamId, Integer> key, StreamConfig streamConfig,
+                 List<StreamFileOffset> offsets, int bufferSize) throws IOException {
+      this.key = key;
+      this.reader = new MultiLiveStreamFileReader(streamConfig, offsets);
+      this.reader.initialize();
+      this.readFilter = new TTLReadFilter(streamConfig.getTTL());
+      this.readEvents = Lists.newArrayListWithCapacity(1);
+      this.entries = new Entry[bufferSize];
+      this.cursors = Maps.newHashMap();
+      this.readers = Sets.newIdentityHashSet();
+      this.basePosition = ImmutableSet.copyOf(reader.getPosition());
+
+      // Both the offsets before and after initialization refer to the beginning
+      cursors.put(ImmutableSet.copyOf(offsets), 0L);
+      cursors.put(basePosition, 0L);
+    }
+
+    /**
+     * Creates a new {@link SharedReader} starting at the given offsets. If the offsets are not in the buffer,
+     * the reader starts detached.
+     */
+    synchronized SharedReader createReader(StreamConfig streamConfig, List<StreamFileOffset> offsets) {
+      SharedReader sharedReader = new SharedReader(this, streamConfig);
+      Long seq = findCursor(offsets);
+      if (seq == null) {
+        LOG.debug("Offsets not available from shared reader of {}, reading privately: {}", key.getFirst(), offsets);
+        sharedReader.detachedPosition = offsets;
+      } else {
+        sharedReader.cursor = seq;
+      }
+      readers.add(sharedReader);
+      return sharedReader;
+    }
+
+    /**
+     * Removes the given reader.
+     *
+     * @return {@code true} if there is no more reader for this source
+     */
+    synchronized boolean removeReader(SharedReader sharedReader) {
+      readers.remove(sharedReader);
+      trim();
+      return readers.isEmpty();
+    }
+
+    /**
+     * Attaches a detached reader if the given offsets can be found in the buffer.
+     *
+     * @return {@code true} if the reader is attached
+     */
+    synchronized boolean attach(SharedReader sharedReader, Iterable<StreamFileOffset> offsets) {
+      Long seq = findCursor(offsets);
+      if (seq == null) {
+        return false;
+      }
+      LOG.debug("Reader attached to shared reader of {} at {}", key.getFirst(), offsets);
+      sharedReader.cursor = seq;
+      sharedReader.detachedPosition = null;
+      return true;
+    }
+
+    /**
+     * Returns the file offsets after all events before the given sequence are read.
+     */
+    synchronized Iterable<StreamFileOffset> positionAt(long seq) {
+      return seq == baseSeq ? basePosition : entries[index(seq - 1)].position;
+    }
+
+    /**
+     * Reads events for the given attached reader. Returns {@code 0} if the reader is detached during the call.
+     * Events are read from the stream files without holding the monitor of this source, so that readers consuming
+     * from the buffer are not blocked by file reads. Only one thread reads from the files at a time.
+     */
+    int read(SharedReader sharedReader, Collection<? super StreamEventOffset> events, int maxEvents,
+             long timeoutNano, ReadFilter filter) throws IOException, InterruptedException {
+      long deadline = System.nanoTime() + timeoutNano;
+      long waitSlice = Math.max(1L, timeoutNano / 10);
+      List<Entry> filled = Lists.newArrayList();
+
+      while (true) {
+        int fillCount;
+        synchronized (this) {
+          if (sharedReader.detachedPosition != null) {
+            return 0;
+          }
+          int eventCount = 0;
+          while (eventCount < maxEvents && sharedReader.cursor < headSeq) {
+            StreamEventOffset event = entries[index(sharedReader.cursor++)].event;
+            filter.reset();
+            if (filter.acceptTimestamp(event.getTimestamp()) && filter.acceptOffset(event.getOffset().getOffset())) {
+              // Each reader gets its own body buffer, so that reading the body doesn't affect other readers
+              events.add(new StreamEventOffset(new StreamEvent(event.getHeaders(), event.getBody().duplicate(),
+                                                               event.getTimestamp()), event.getOffset()));
+              eventCount++;
+            }
+          }
+          trim();
+
+          if (eventCount > 0) {
+            return eventCount;
+          }
+          if (sharedReader.cursor == headSeq && eof) {
+            return -1;
+          }
+
+          long remaining = deadline - System.nanoTime();
+          if (filling) {
+            // Another reader is reading from the files, wait for it to publish the events
+            if (remaining <= 0) {
+              return 0;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, Math.min(remaining, waitSlice));
+            continue;
+          }
+          if (headSeq - baseSeq == entries.length) {
+            if (remaining > 0) {
+              // Wait for slower readers to consume from the buffer
+              TimeUnit.NANOSECONDS.timedWait(this, remaining);
+              continue;
+            }
+            detachSlowest();
+          }
+
+          // The free space in the buffer can only grow while filling, since only the filling thread adds events
+          fillCount = Math.min(maxEvents, entries.length - (int) (headSeq - baseSeq));
+          filling = true;
+        }
+
+        filled.clear();
+        boolean reachedEof = false;
+        try {
+          reachedEof = fill(fillCount, filled);
+        } finally {
+          synchronized (this) {
+            publish(filled, reachedEof);
+          }
+        }
+
+        if (!filled.isEmpty()) {
+          continue;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return 0;
+        }
+        synchronized (this) {
+          if (eof || filling) {
+            continue;
+          }
+          TimeUnit.NANOSECONDS.timedWait(this, Math.min(remaining, waitSlice));
+        }
+      }
+    }
+
+    synchronized void close() throws IOException {
+      // Don't close the file reader while it is being read from
+      boolean interrupted = false;
+      while (filling) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      try {
+        reader.close();
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /**
+     * Reads up to the given number of events from the stream files. Must only be called by the thread that set
+     * the {@code filling} flag, and without holding the monitor of this source.
+     *
+     * @return {@code true} if the end of the stream files is reached
+     */
+    private boolean fill(int maxEvents, List<Entry> filled) throws IOException, InterruptedException {
+      while (filled.size() < maxEvents) {
+        readEvents.clear();
+        int res = reader.read(readEvents, 1, 0, TimeUnit.NANOSECONDS, readFilter);
+        if (res < 0) {
+          return true;
+        }
+        if (res == 0) {
+          break;
+        }
+        filled.add(new Entry(readEvents.get(0), ImmutableSet.copyOf(reader.getPosition())));
+      }
+      return false;
+    }
+
+    /**
+     * Appends events read by {@link #fill(int, List)} to the buffer and clears the {@code filling} flag.
+     */
+    private void publish(List<Entry> filled, boolean reachedEof) {
+      for (Entry entry : filled) {
+        entries[index(headSeq)] = entry;
+        headSeq++;
+        cursors.put(entry.position, headSeq);
+      }
+      eof = eof || reachedEof;
+      filling = false;
+      notifyAll();
+    }
+
+    /**
+     * Detaches all attached readers that have not consumed the first event in the buffer.
+     */
+    private void detachSlowest() {
+      for (SharedReader sharedReader : readers) {
+        if (sharedReader.detachedPosition == null && sharedReader.cursor == baseSeq) {
+          LOG.debug("Detaching slow reader from shared reader of {} at {}", key.getFirst(), basePosition);
+          sharedReader.detachedPosition = ImmutableList.copyOf(basePosition);
+        }
+      }
+      trim();
+    }
+
+    /**
+     * Removes events from the buffer that are consumed by all attached readers.
+     */
+    private void trim() {
+      long minSeq = headSeq;
+      for (SharedReader sharedReader : readers) {
+        if (sharedReader.detachedPosition == null) {
+          minSeq = Math.min(minSeq, sharedReader.cursor);
+        }
+      }
+      if (minSeq == baseSeq) {
+        return;
+      }
+      while (baseSeq < minSeq) {
+        Long seq = cursors.get(basePosition);
+        if (seq != null && seq == baseSeq) {
+          cursors.remove(basePosition);
+        }
+        int idx = index(baseSeq);
+        basePosition = entries[idx].position;
+        entries[idx] = null;
+        baseSeq++;
+      }
+      notifyAll();
+    }
+
+    private Long findCursor(Iterable<StreamFileOffset> offsets) {
+      Set<StreamFileOffset> position = ImmutableSet.copyOf(offsets);
+      Long seq = cursors.get(position);
+      if (seq == null) {
+        return null;
+      }
+      if (seq < baseSeq) {
+        // Stale entry, which can only be the offsets used to create the source
+        cursors.remove(position);
+        return null;
+      }
+      return seq;
+    }
+
+    private int index(long seq) {
+      return (int) (seq % entries.length);
+    }
+  }
+
+  /**
+   * A {@link FileReader} that either reads from a {@link SharedSource} or reads privately while detached from it.
+   * Instances of this class are not thread safe, same as other {@link FileReader}s.
+   */
+  private final class SharedReader implements FileReader<StreamEventOffset, Iterable<StreamFileOffset>> {
+
+    private final SharedSource source;
+    private final StreamConfig streamConfig;
+    // Fields guarded by the source
+    private long cursor;
+    private List<StreamFileOffset> detachedPosition;
+    // Only accessed by the thread using this reader
+    private MultiLiveStreamFileReader privateReader;
+    private boolean closed;
+
+    SharedReader(SharedSource source, StreamConfig streamConfig) {
+      this.source = source;
+      this.streamConfig = streamConfig;
+    }
+
+    @Override
+    public void initialize() throws IOException {
+      // No-op. The reader is initialized when created.
+    }
+
+    @Override
+    public int read(Collection<? super StreamEventOffset> events, int maxEvents,
+                    long timeout, TimeUnit unit) throws IOException, InterruptedException {
+      return read(events, maxEvents, timeout, unit, ReadFilter.ALWAYS_ACCEPT);
+    }
+
+    @Override
+    public int read(Collection<? super StreamEventOffset> events, int maxEvents,
+                    long timeout, TimeUnit unit, ReadFilter readFilter) throws IOException, InterruptedException {
+      if (closed) {
+        throw new IOException("Reader already closed.");
+      }
+
+      if (privateReader == null) {
+        List<StreamFileOffset> offsets;
+        synchronized (source) {
+          offsets = detachedPosition;
+        }
+        if (offsets == null) {
+          // Not holding the source monitor, so that the source can release it while reading from the files
+          return source.read(this, events, maxEvents, unit.toNanos(timeout), readFilter);
+        }
+        privateReader = new MultiLiveStreamFileReader(streamConfig, offsets);
+        privateReader.initialize();
+      }
+
+      int eventCount = privateReader.read(events, maxEvents, timeout, unit, readFilter);
+      if (source.attach(this, privateReader.getPosition())) {
+        privateReader.close();
+        privateReader = null;
+      }
+      return eventCount;
+    }
+
+    @Override
+    public Iterable<StreamFileOffset> getPosition() {
+      if (privateReader != null) {
+        return privateReader.getPosition();
+      }
+      synchronized (source) {
+        return detachedPosition == null ? source.positionAt(cursor) : detachedPosition;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (privateReader != null) {
+          privateReader.close();
+        }
+      } finally {
+        release(source, this);
+      }
+    }
+  }
+}
@@ -45,6 +45,9 @@ public final class StreamDataFileConstants {
 
       // Key prefix for properties that will be defaulted to all events' header
       public static final String EVENT_HEADER_PREFIX = "event.";
+
+      // Key for the codec used to compress each data block. Data blocks are not compressed if absent.
+      public static final String CODEC = "stream.codec";
     }
 
     /**
@@ -53,6 +56,9 @@ public final class StreamDataFileConstants {
     public static final class Value {
       // Special value for Key.UNI_TIMESTAMP to indicate using the file close time timestamp for all events
       public static final String CLOSE_TIMESTAMP = "close.timestamp";
+
+      // Value for Key.CODEC to compress data blocks with the deflate algorithm
+      public static final String CODEC_DEFLATE = "deflate";
     }
   }
 
@@ -42,6 +42,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -67,6 +68,8 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   private boolean eof;
   private Decoder decoder;
   private StreamEvent eventTemplate;
+  // Inflater for decompressing data blocks or null if data blocks in the file are not compressed
+  private Inflater inflater;
 
   /**
    * Opens a new {@link StreamDataFileReader} with the given inputs.
@@ -157,6 +160,9 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
       }
     } finally {
       closed = true;
+      if (inflater != null) {
+        inflater.end();
+      }
     }
   }
 
@@ -299,6 +305,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     Map<String, String> properties = StreamUtils.decodeMap(new BinaryDecoder(eventInput));
 
     verifySchema(properties);
+    initCodec(properties);
 
     // Create event template
     if (fileVersion >= 2) {
@@ -464,6 +471,20 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     }
   }
 
+  private void initCodec(Map<String, String> properties) throws IOException {
+    String codec = properties.get(StreamDataFileConstants.Property.Key.CODEC);
+    if (codec == null) {
+      return;
+    }
+    if (!StreamDataFileConstants.Property.Value.CODEC_DEFLATE.equals(codec)) {
+      throw new IOException("Unsupported stream file codec " + codec);
+    }
+    // The header can be read more than once if the file was not completely written when it was first opened
+    if (inflater == null) {
+      inflater = new Inflater();
+    }
+  }
+
   private long readTimestamp() throws IOException {
     ByteStreams.readFully(eventInput, timestampBuffer);
     return Bytes.toLong(timestampBuffer);
@@ -485,7 +506,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     // Use the template timestamp if available
     timestamp = eventTemplate.getTimestamp() >= 0 ? eventTemplate.getTimestamp() : timestamp;
     if (acceptTimestamp(filter, timestamp)) {
-      streamEventBuffer.fillBuffer(eventInput, readLength());
+      streamEventBuffer.fillBuffer(eventInput, readLength(), inflater);
       this.timestamp = timestamp;
       return;
     }
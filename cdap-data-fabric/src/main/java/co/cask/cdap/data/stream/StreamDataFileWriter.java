@@ -32,11 +32,15 @@ import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.hadoop.fs.Syncable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -59,6 +63,24 @@ import javax.annotation.concurrent.NotThreadSafe;
  * }
  * </pre>
  *
+ * If the "stream.codec" file property is set, each data block is compressed as a unit:
+ *
+ * <pre>
+ * {@code
+ *
+ * data = <timestamp> <length> <raw_length> <compressed_events> <padding>*
+ * length = Avro encoded int32 for size in bytes for everything after the <length>
+ * raw_length = Avro encoded int32 for size in bytes for all uncompressed <stream_event>s
+ * compressed_events = all <stream_event>s in the block compressed with the codec
+ * padding = zero bytes, to make the block size in bytes at least the number of events in the block
+ *
+ * }
+ * </pre>
+ *
+ * Since events in a compressed block cannot be addressed by their file offsets, the i-th event in a compressed
+ * block has position {@code <block_start> + i}, where {@code <block_start>} is the file offset right after the
+ * {@code <length>}. The padding ensures that all event positions fall inside the block they belong to.
+ *
  * Stream index file:
  *
  * <pre>
@@ -84,10 +106,14 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private final long indexInterval;
   private final BufferedEncoder encoder;
   private final BufferedEncoder lengthEncoder;
+  private final ByteArrayOutputStream compressedOutput;
 
+  // Deflater for compressing data blocks or null if compression is not enabled
+  private Deflater deflater;
   // Timestamp for the current block
   private long currentTimestamp;
   private long position;
+  private int blockEventCount;
   private long nextIndexTime;
   private boolean synced;
   private boolean closed;
@@ -130,10 +156,12 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     Function<OutputStream, Encoder> encoderFactory = createEncoderFactory();
     this.encoder = new BufferedEncoder(BUFFER_SIZE, encoderFactory);
     this.lengthEncoder = new BufferedEncoder(5, encoderFactory);
+    this.compressedOutput = new ByteArrayOutputStream();
 
     try {
       init(properties);
     } catch (IOException e) {
+      endDeflater();
       Closeables.closeQuietly(eventOutput);
       Closeables.closeQuietly(indexOutput);
       throw e;
@@ -175,6 +203,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       eventOutput.write(Longs.toByteArray(-closeTimestamp));
     } finally {
       closed = true;
+      endDeflater();
       try {
         eventOutput.close();
       } finally {
@@ -222,6 +251,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
       // Encodes the event data into buffer.
       StreamEventDataCodec.encode(event, encoder);
+      blockEventCount++;
 
       // Optionally flush if already filled up the buffer.
       if (encoder.size() >= flushLimit) {
@@ -234,6 +264,8 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   }
 
   private void init(Map<String, String> properties) throws IOException {
+    deflater = createDeflater(properties.get(StreamDataFileConstants.Property.Key.CODEC));
+
     // Writes the header for event file
     encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V2);
 
@@ -278,16 +310,30 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       indexOffset = position - Bytes.SIZEOF_LONG;
     }
 
-    // Writes the size of the encoded event
-    lengthEncoder.writeInt(encoder.size());
-    int size = lengthEncoder.size();
-    lengthEncoder.writeTo(eventOutput);
-    position += size;
+    if (deflater == null) {
+      // Writes the size of the encoded event
+      lengthEncoder.writeInt(encoder.size());
+      int size = lengthEncoder.size();
+      lengthEncoder.writeTo(eventOutput);
+      position += size;
+
+      // Writes all encoded data from the buffer to the output.
+      size = encoder.size();
+      encoder.writeTo(eventOutput);
+      position += size;
+    } else {
+      compressBlock();
 
-    // Writes all encoded data from the buffer to the output.
-    size = encoder.size();
-    encoder.writeTo(eventOutput);
-    position += size;
+      lengthEncoder.writeInt(compressedOutput.size());
+      int size = lengthEncoder.size();
+      lengthEncoder.writeTo(eventOutput);
+      position += size;
+
+      size = compressedOutput.size();
+      compressedOutput.writeTo(eventOutput);
+      compressedOutput.reset();
+      position += size;
+    }
     if (sync) {
       sync(eventOutput);
     }
@@ -307,9 +353,29 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
     // Reset the current timestamp so that a data block will start.
     currentTimestamp = -1L;
+    blockEventCount = 0;
     synced = sync;
   }
 
+  /**
+   * Compresses all encoded events in the buffer into the {@link #compressedOutput}, in the format of
+   * {@code <raw_length> <compressed_events> <padding>*}.
+   */
+  private void compressBlock() throws IOException {
+    lengthEncoder.writeInt(encoder.size());
+    lengthEncoder.writeTo(compressedOutput);
+
+    deflater.reset();
+    DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(compressedOutput, deflater);
+    encoder.writeTo(deflaterOutput);
+    deflaterOutput.finish();
+
+    // Each event in the block takes one position, hence the block can't be smaller than the number of events
+    while (compressedOutput.size() < blockEventCount) {
+      compressedOutput.write(0);
+    }
+  }
+
   private void sync(OutputStream output) throws IOException {
     if (output instanceof Syncable) {
       ((Syncable) output).hsync();
@@ -324,11 +390,29 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
    */
   private IOException closeWithException(IOException ex) throws IOException {
     closed = true;
+    endDeflater();
     Closeables.closeQuietly(eventOutput);
     Closeables.closeQuietly(indexOutput);
     throw ex;
   }
 
+  private void endDeflater() {
+    if (deflater != null) {
+      deflater.end();
+    }
+  }
+
+  @Nullable
+  private static Deflater createDeflater(@Nullable String codec) throws IOException {
+    if (codec == null) {
+      return null;
+    }
+    if (StreamDataFileConstants.Property.Value.CODEC_DEFLATE.equals(codec)) {
+      return new Deflater();
+    }
+    throw new IOException("Unsupported stream file codec " + codec);
+  }
+
   private static Function<OutputStream, Encoder> createEncoderFactory() {
     return new Function<OutputStream, Encoder>() {
       @Override
@@ -28,25 +28,40 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A buffer for holding encoded stream events. It is used by {@link StreamDataFileReader} for holding
- * encoded stream events in each data block.
+ * encoded stream events in each data block. For compressed data blocks, the buffer holds the decompressed
+ * stream events and the i-th event in the block has position {@code <block_start> + i}.
+ *
+ * @see StreamDataFileWriter
  */
 @NotThreadSafe
 final class StreamEventBuffer {
 
   private final ByteBufferInputStream bufferInput;
   private final Decoder decoder;
+  private final ByteBufferInputStream compressedInput;
+  private final Decoder compressedDecoder;
 
   private ByteBuffer buffer;
+  private ByteBuffer compressedBuffer;
   private long basePosition;
+  private int blockSize;
+  private boolean compressed;
+  private int eventIndex;
 
   StreamEventBuffer() {
     this.buffer = ByteBuffers.EMPTY_BUFFER;
     this.bufferInput = new ByteBufferInputStream(buffer);
     this.decoder = new BinaryDecoder(bufferInput);
+    this.compressedBuffer = ByteBuffers.EMPTY_BUFFER;
+    this.compressedInput = new ByteBufferInputStream(compressedBuffer);
+    this.compressedDecoder = new BinaryDecoder(compressedInput);
     this.basePosition = -1L;
   }
 
@@ -59,20 +74,44 @@ final class StreamEventBuffer {
    * @throws EOFException if failed to read the given number of bytes from the input
    */
   void fillBuffer(SeekableInputStream input, int size) throws IOException {
+    fillBuffer(input, size, null);
+  }
+
+  /**
+   * Fills the internal buffer by reading a data block from the given input stream.
+   *
+   * @param input input stream to read from
+   * @param size number of bytes to read
+   * @param inflater the {@link Inflater} for decompressing the data block or {@code null} if the data block
+   *                 is not compressed
+   * @throws IOException if failed to read from the stream or failed to decompress the data block
+   * @throws EOFException if failed to read the given number of bytes from the input
+   */
+  void fillBuffer(SeekableInputStream input, int size, @Nullable Inflater inflater) throws IOException {
     buffer.clear();
-    buffer = ensureCapacity(buffer, size);
 
     try {
       basePosition = input.getPos();
-      int bytesRead = 0;
-      while (bytesRead != size) {
-        int len = input.read(buffer.array(), bytesRead, size - bytesRead);
-        if (len < 0) {
-          throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
-        }
-        bytesRead += len;
+      blockSize = size;
+      compressed = inflater != null;
+      eventIndex = 0;
+
+      if (inflater == null) {
+        buffer = ensureCapacity(buffer, size);
+        readFully(input, buffer.array(), size);
+        buffer.limit(size);
+      } else {
+        compressedBuffer.clear();
+        compressedBuffer = ensureCapacity(compressedBuffer, size);
+        readFully(input, compressedBuffer.array(), size);
+        compressedBuffer.limit(size);
+        compressedInput.reset(compressedBuffer);
+
+        int rawSize = compressedDecoder.readInt();
+        buffer = ensureCapacity(buffer, rawSize);
+        inflate(inflater, compressedBuffer, buffer.array(), rawSize);
+        buffer.limit(rawSize);
       }
-      buffer.limit(size);
       bufferInput.reset(buffer);
     } catch (IOException e) {
       // Make the buffer has nothing to read
@@ -94,7 +133,14 @@ final class StreamEventBuffer {
    * read from the stream.
    */
   long getPosition() {
-    return basePosition >= 0 ? basePosition + buffer.position() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    if (!compressed) {
+      return basePosition + buffer.position();
+    }
+    // Position of an event in a compressed block is the block start plus the event index in the block
+    return hasEvent() ? basePosition + eventIndex : basePosition + blockSize;
   }
 
   /**
@@ -102,7 +148,7 @@ final class StreamEventBuffer {
    * been read from the stream.
    */
   long getEndPosition() {
-    return basePosition >= 0 ? basePosition + buffer.limit() : -1L;
+    return basePosition >= 0 ? basePosition + blockSize : -1L;
   }
 
   /**
@@ -120,7 +166,8 @@ final class StreamEventBuffer {
       throw new IOException("No more event in the buffer");
     }
 
-    long eventPos = basePosition + buffer.position();
+    long eventPos = getPosition();
+    eventIndex++;
     if (filter.acceptOffset(eventPos)) {
       return new PositionStreamEvent(StreamEventDataCodec.decode(decoder, defaultHeaders), timestamp, eventPos);
     }
@@ -128,6 +175,42 @@ final class StreamEventBuffer {
     return null;
   }
 
+  /**
+   * Reads exactly the given number of bytes from the input stream into the given array.
+   */
+  private void readFully(SeekableInputStream input, byte[] bytes, int size) throws IOException {
+    int bytesRead = 0;
+    while (bytesRead != size) {
+      int len = input.read(bytes, bytesRead, size - bytesRead);
+      if (len < 0) {
+        throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
+      }
+      bytesRead += len;
+    }
+  }
+
+  /**
+   * Decompresses the remaining bytes in the given buffer into the given array.
+   *
+   * @throws IOException if the data cannot be decompressed into exactly the given number of bytes
+   */
+  private void inflate(Inflater inflater, ByteBuffer input, byte[] output, int size) throws IOException {
+    inflater.reset();
+    inflater.setInput(input.array(), input.arrayOffset() + input.position(), input.remaining());
+    try {
+      int bytesInflated = 0;
+      while (bytesInflated != size) {
+        int len = inflater.inflate(output, bytesInflated, size - bytesInflated);
+        if (len == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Expected to decompress " + size + ", but only " + bytesInflated + " was decompressed");
+        }
+        bytesInflated += len;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupted compressed data block", e);
+    }
+  }
+
   /**
    * Ensures that the given {@link ByteBuffer} is of sufficient size.
    *
@@ -38,6 +38,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.net.URI;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -264,6 +265,29 @@ public final class StreamUtils {
     return timestamp / partitionDuration * partitionDuration;
   }
 
+  /**
+   * Returns {@code true} if the given codec is supported for compressing stream file data blocks.
+   *
+   * @param codec Name of the codec.
+   */
+  public static boolean isSupportedCodec(String codec) {
+    return StreamDataFileConstants.Property.Value.CODEC_DEFLATE.equals(codec);
+  }
+
+  /**
+   * Returns the file properties for new stream files created for the given stream.
+   *
+   * @param config configuration of the stream
+   * @return a mutable map of properties
+   */
+  public static Map<String, String> createFileProperties(StreamConfig config) {
+    Map<String, String> properties = new HashMap<>();
+    if (config.getCodec() != null) {
+      properties.put(StreamDataFileConstants.Property.Key.CODEC, config.getCodec());
+    }
+    return properties;
+  }
+
   /**
    * Encode a {@link StreamFileOffset} instance.
    *
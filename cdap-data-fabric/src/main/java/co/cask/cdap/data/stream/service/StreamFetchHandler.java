@@ -19,7 +19,10 @@ package co.cask.cdap.data.stream.service;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Encoder;
 import co.cask.cdap.common.security.Impersonator;
+import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.TimeMathParser;
 import co.cask.cdap.data.file.FileReader;
@@ -41,6 +44,7 @@ import co.cask.http.AbstractHttpHandler;
 import co.cask.http.ChunkResponder;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.io.Closeables;
@@ -77,6 +81,7 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
   private static final Gson GSON = StreamEventTypeAdapter.register(new GsonBuilder()).create();
   private static final int MAX_EVENTS_PER_READ = 100;
   private static final int CHUNK_SIZE = 8192;
+  private static final String AVRO_BINARY = "avro/binary";
 
   private final CConfiguration cConf;
   private final StreamAdmin streamAdmin;
@@ -108,7 +113,9 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
    * </ul>
    * </p>
    * <p>
-   * Response body is a JSON array of the StreamEvent object.
+   * Response body is a JSON array of the StreamEvent object. If the request {@code Accept} header contains
+   * {@code avro/binary}, the response body is an Avro binary encoded array instead, with each array element being
+   * the event timestamp as an Avro long, followed by the event encoded with {@link StreamEventDataCodec}.
    * </p>
    *
    * @see StreamEventTypeAdapter StreamEventTypeAdapter for the format of the StreamEvent object
@@ -137,6 +144,7 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
     endTime = Math.min(endTime, now);
     final long streamStartTime = startTime;
     final long streamEndTime = endTime;
+    final boolean binary = acceptsAvroBinary(request);
     impersonator.doAs(new NamespaceId(namespaceId), new Callable<Void>() {
       @Override
       public Void call() throws Exception {
@@ -159,18 +167,32 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
           // Send with chunk response, as we don't want to buffer all events in memory to determine the content-length.
           ChunkResponder chunkResponder = responder.sendChunkStart(
             HttpResponseStatus.OK, ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE,
-                                                        "application/json; charset=utf-8"));
+                                                        binary ? AVRO_BINARY : "application/json; charset=utf-8"));
           ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
-          JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(new ChannelBufferOutputStream(buffer),
-                                                                        Charsets.UTF_8));
-          // Response is an array of stream event
-          jsonWriter.beginArray();
+          Encoder encoder = null;
+          JsonWriter jsonWriter = null;
+          if (binary) {
+            encoder = new BinaryEncoder(new ChannelBufferOutputStream(buffer));
+          } else {
+            jsonWriter = new JsonWriter(new OutputStreamWriter(new ChannelBufferOutputStream(buffer), Charsets.UTF_8));
+            // Response is an array of stream event
+            jsonWriter.beginArray();
+          }
           while (limit > 0 && eventsRead > 0) {
             limit -= eventsRead;
 
+            if (encoder != null) {
+              // Each batch of events is written as one Avro array block, which starts with the number of elements
+              encoder.writeInt(events.size());
+            }
             for (StreamEvent event : events) {
-              GSON.toJson(event, StreamEvent.class, jsonWriter);
-              jsonWriter.flush();
+              if (encoder != null) {
+                encoder.writeLong(event.getTimestamp());
+                StreamEventDataCodec.encode(event, encoder);
+              } else {
+                GSON.toJson(event, StreamEvent.class, jsonWriter);
+                jsonWriter.flush();
+              }
 
               // If exceeded chunk size limit, send a new chunk.
               if (buffer.readableBytes() >= CHUNK_SIZE) {
@@ -188,8 +210,13 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
               eventsRead = readEvents(reader, events, limit, readFilter);
             }
           }
-          jsonWriter.endArray();
-          jsonWriter.close();
+          if (encoder != null) {
+            // Avro array ends with a block of zero elements
+            encoder.writeInt(0);
+          } else {
+            jsonWriter.endArray();
+            jsonWriter.close();
+          }
 
           // Send the last chunk that still has data
           if (buffer.readable()) {
@@ -204,6 +231,25 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
 
   }
 
+  /**
+   * Returns {@code true} if the request accepts {@code avro/binary} response.
+   */
+  private boolean acceptsAvroBinary(HttpRequest request) {
+    String accept = request.getHeader(HttpHeaders.Names.ACCEPT);
+    if (accept == null) {
+      return false;
+    }
+    for (String mediaRange : Splitter.on(',').trimResults().split(accept)) {
+      // Ignore parameters of the media range
+      int idx = mediaRange.indexOf(';');
+      String mediaType = idx < 0 ? mediaRange : mediaRange.substring(0, idx).trim();
+      if (AVRO_BINARY.equalsIgnoreCase(mediaType)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Reads events from the given reader.
    */
@@ -30,6 +30,7 @@ import co.cask.cdap.common.namespace.NamespaceQueryAdmin;
 import co.cask.cdap.common.security.Impersonator;
 import co.cask.cdap.data.stream.StreamCoordinatorClient;
 import co.cask.cdap.data.stream.StreamFileWriterFactory;
+import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.service.upload.ContentWriterFactory;
 import co.cask.cdap.data.stream.service.upload.LengthBasedContentWriterFactory;
 import co.cask.cdap.data.stream.service.upload.StreamBodyConsumerFactory;
@@ -241,6 +242,10 @@ public final class StreamHandler extends AbstractHttpHandler {
       if (streamProperties.getFormat() != null) {
         props.put(Constants.Stream.FORMAT_SPECIFICATION, GSON.toJson(streamProperties.getFormat()));
       }
+
+      if (streamProperties.getCodec() != null) {
+        props.put(Constants.Stream.CODEC, streamProperties.getCodec());
+      }
     }
 
     streamAdmin.create(streamId, props);
@@ -437,7 +442,14 @@ public final class StreamHandler extends AbstractHttpHandler {
       return null;
     }
 
-    return new StreamProperties(ttl, formatSpec, threshold, properties.getDescription());
+    // Validate codec
+    String codec = properties.getCodec();
+    if (codec != null && !StreamUtils.isSupportedCodec(codec)) {
+      responder.sendString(HttpResponseStatus.BAD_REQUEST, "Unsupported codec " + codec + ".");
+      return null;
+    }
+
+    return new StreamProperties(ttl, formatSpec, threshold, properties.getDescription(), codec);
   }
 
   private RejectedExecutionHandler createAsyncRejectedExecutionHandler() {
@@ -510,6 +522,9 @@ public final class StreamHandler extends AbstractHttpHandler {
       if (src.getDescription() != null) {
         json.addProperty("description", src.getDescription());
       }
+      if (src.getCodec() != null) {
+        json.addProperty("codec", src.getCodec());
+      }
       return json;
     }
 
@@ -528,7 +543,8 @@ public final class StreamHandler extends AbstractHttpHandler {
         jsonObj.get("notification.threshold.mb").getAsInt() : null;
 
       String description = jsonObj.has("description") ? jsonObj.get("description").getAsString() : null;
-      return new StreamProperties(ttl, format, threshold, description);
+      String codec = jsonObj.has("codec") ? jsonObj.get("codec").getAsString() : null;
+      return new StreamProperties(ttl, format, threshold, description, codec);
     }
   }
 
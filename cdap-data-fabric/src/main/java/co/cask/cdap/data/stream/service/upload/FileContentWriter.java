@@ -20,12 +20,12 @@ import co.cask.cdap.common.NotFoundException;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.stream.StreamDataFileConstants;
 import co.cask.cdap.data.stream.StreamDataFileWriter;
+import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.service.ConcurrentStreamWriter;
 import co.cask.cdap.data.stream.service.MutableStreamEvent;
 import co.cask.cdap.data.stream.service.MutableStreamEventData;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
 import org.apache.twill.filesystem.Location;
 
@@ -59,7 +59,7 @@ final class FileContentWriter implements ContentWriter {
     this.eventFile = directory.append("upload.dat");
     this.indexFile = directory.append("upload.idx");
 
-    Map<String, String> properties = createStreamFileProperties(headers);
+    Map<String, String> properties = createStreamFileProperties(streamConfig, headers);
     properties.put(StreamDataFileConstants.Property.Key.UNI_TIMESTAMP,
                    StreamDataFileConstants.Property.Value.CLOSE_TIMESTAMP);
     this.writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
@@ -68,9 +68,9 @@ final class FileContentWriter implements ContentWriter {
                                            properties);
   }
 
-  private Map<String, String> createStreamFileProperties(Map<String, String> headers) {
+  private Map<String, String> createStreamFileProperties(StreamConfig streamConfig, Map<String, String> headers) {
     // Prepend "event." to each header key
-    Map<String, String> properties = Maps.newHashMap();
+    Map<String, String> properties = StreamUtils.createFileProperties(streamConfig);
     for (Map.Entry<String, String> entry : headers.entrySet()) {
       properties.put(StreamDataFileConstants.Property.Key.EVENT_HEADER_PREFIX + entry.getKey(), entry.getValue());
     }
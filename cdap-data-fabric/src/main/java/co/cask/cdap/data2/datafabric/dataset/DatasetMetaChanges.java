@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.datafabric.dataset;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.messaging.TopicAlreadyExistsException;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.proto.id.EntityId;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+
+import java.io.IOException;
+
+/**
+ * Helper methods for the messaging topic through which the dataset service notifies its clients about changes
+ * to dataset instances, modules, and types. Each message carries the {@link EntityId} that was changed.
+ */
+public final class DatasetMetaChanges {
+
+  /**
+   * Returns the {@link TopicId} of the dataset metadata change topic.
+   */
+  public static TopicId getTopic(CConfiguration cConf) {
+    return NamespaceId.SYSTEM.topic(cConf.get(Constants.Dataset.Manager.META_CHANGE_TOPIC,
+                                              Constants.Dataset.Manager.DEFAULT_META_CHANGE_TOPIC));
+  }
+
+  /**
+   * Creates the given topic if it does not exist yet.
+   */
+  public static void createTopicIfNotExists(MessagingService messagingService, TopicId topicId) throws IOException {
+    try {
+      messagingService.createTopic(new TopicMetadata(topicId));
+    } catch (TopicAlreadyExistsException e) {
+      // Created by the dataset service or by another client; nothing to do.
+    }
+  }
+
+  /**
+   * Encodes a changed entity as a message payload.
+   */
+  public static byte[] encode(EntityId entityId) {
+    return Bytes.toBytes(entityId.toString());
+  }
+
+  /**
+   * Decodes a changed entity from a message payload.
+   */
+  public static EntityId decode(byte[] payload) {
+    return EntityId.fromString(Bytes.toString(payload));
+  }
+
+  private DatasetMetaChanges() {
+  }
+}
@@ -22,8 +22,12 @@ import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetManagementException;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.dataset.module.DatasetDefinitionRegistry;
 import co.cask.cdap.api.dataset.module.DatasetModule;
+import co.cask.cdap.api.messaging.TopicNotFoundException;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
@@ -35,6 +39,9 @@ import co.cask.cdap.data2.dataset2.DatasetDefinitionRegistryFactory;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.dataset2.module.lib.DatasetModules;
 import co.cask.cdap.data2.metadata.lineage.AccessType;
+import co.cask.cdap.messaging.MessageFetcher;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.data.RawMessage;
 import co.cask.cdap.proto.DatasetMeta;
 import co.cask.cdap.proto.DatasetModuleMeta;
 import co.cask.cdap.proto.DatasetSpecificationSummary;
@@ -44,22 +51,29 @@ import co.cask.cdap.proto.id.DatasetModuleId;
 import co.cask.cdap.proto.id.DatasetTypeId;
 import co.cask.cdap.proto.id.EntityId;
 import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
 import co.cask.cdap.security.spi.authentication.AuthenticationContext;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.apache.twill.filesystem.Location;
 import org.apache.twill.internal.ApplicationBundler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -67,21 +81,48 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import javax.annotation.Nullable;
 
 /**
- * {@link co.cask.cdap.data2.dataset2.DatasetFramework} implementation that talks to DatasetFramework Service
+ * {@link co.cask.cdap.data2.dataset2.DatasetFramework} implementation that talks to DatasetFramework Service.
+ *
+ * Dataset instance and type metadata fetched from the service can be cached for a configurable amount of time
+ * (see {@link Constants.Dataset.Manager#CLIENT_META_CACHE_TTL_SECS}). Changes made through this class invalidate
+ * the affected entries right away. Changes made elsewhere are published by the dataset service to the topic
+ * given by {@link DatasetMetaChanges#getTopic(CConfiguration)}, which this class subscribes to in order to
+ * invalidate the affected entries. The cache is only used while that subscription works, hence it is disabled
+ * if no {@link MessagingService} is available or after this class is closed.
  */
 @SuppressWarnings("unchecked")
-public class RemoteDatasetFramework implements DatasetFramework {
+public class RemoteDatasetFramework implements DatasetFramework, Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(RemoteDatasetFramework.class);
+  // Maximum time in seconds to wait for new metadata changes in each fetch from the messaging service
+  private static final long META_CHANGE_POLL_SECS = 10L;
+  // Time in seconds to wait before fetching metadata changes again after a failure
+  private static final long META_CHANGE_RETRY_SECS = 1L;
 
   private final CConfiguration cConf;
   private final LoadingCache<NamespaceId, DatasetServiceClient> clientCache;
   private final DatasetDefinitionRegistryFactory registryFactory;
+  private final long metaCacheTTLSecs;
+  private final Cache<InstanceCacheKey, DatasetMeta> instanceCache;
+  private final Cache<DatasetTypeId, DatasetTypeMeta> typeCache;
+  private final TopicId metaChangeTopic;
+  private final AtomicBoolean metaChangeSubscriberStarted;
+  // Incremented before cached metadata is invalidated, to detect invalidations that happen during a fetch
+  private final AtomicLong metaCacheGeneration;
+  private MessagingService messagingService;
+  private volatile Thread metaChangeSubscriber;
+  private volatile boolean metaChangeSubscribed;
+  private volatile boolean closed;
+  private Provider<MetricsCollectionService> metricsCollectionServiceProvider;
+  private volatile MetricsContext metricsContext;
 
   @Inject
   public RemoteDatasetFramework(final CConfiguration cConf, final DiscoveryServiceClient discoveryClient,
@@ -95,6 +136,68 @@ public class RemoteDatasetFramework implements DatasetFramework {
       }
     });
     this.registryFactory = registryFactory;
+    this.metaCacheTTLSecs = cConf.getLong(Constants.Dataset.Manager.CLIENT_META_CACHE_TTL_SECS,
+                                          Constants.Dataset.Manager.DEFAULT_CLIENT_META_CACHE_TTL_SECS);
+    this.instanceCache = CacheBuilder.newBuilder().expireAfterWrite(metaCacheTTLSecs, TimeUnit.SECONDS).build();
+    this.typeCache = CacheBuilder.newBuilder().expireAfterWrite(metaCacheTTLSecs, TimeUnit.SECONDS).build();
+    this.metaChangeTopic = DatasetMetaChanges.getTopic(cConf);
+    this.metaChangeSubscriberStarted = new AtomicBoolean();
+    this.metaCacheGeneration = new AtomicLong();
+  }
+
+  /**
+   * Sets the {@link MessagingService} used for receiving the metadata changes published by the dataset service.
+   * Without it, metadata is not cached.
+   */
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  public void setMessagingService(MessagingService messagingService) {
+    this.messagingService = messagingService;
+  }
+
+  /**
+   * Sets the provider of the {@link MetricsCollectionService} used for emitting hit and miss counts of the
+   * metadata cache. A provider is used so that the metrics service, which may itself use datasets, is only
+   * obtained when the first metric is emitted.
+   */
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  public void setMetricsCollectionService(Provider<MetricsCollectionService> metricsCollectionServiceProvider) {
+    this.metricsCollectionServiceProvider = metricsCollectionServiceProvider;
+  }
+
+  /**
+   * Removes cached metadata that is affected by a change to the given entity. Changes made through this class,
+   * and changes published by the dataset service, are invalidated automatically. This method is for reacting to
+   * other notifications about changes made by other processes. A change to a dataset instance invalidates that
+   * instance only; a change to any other entity, such as a module or a namespace, invalidates all cached metadata.
+   */
+  public void invalidate(EntityId entityId) {
+    if (!(entityId instanceof DatasetId)) {
+      invalidateAll();
+      return;
+    }
+    metaCacheGeneration.incrementAndGet();
+    for (InstanceCacheKey key : instanceCache.asMap().keySet()) {
+      if (key.getDatasetId().equals(entityId)) {
+        instanceCache.invalidate(key);
+      }
+    }
+  }
+
+  /**
+   * Stops the subscription to metadata changes. Metadata is no longer cached after this method is called.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    // Prevents the subscription from being started after this class is closed
+    metaChangeSubscriberStarted.set(true);
+    Thread subscriber = metaChangeSubscriber;
+    if (subscriber != null) {
+      subscriber.interrupt();
+    }
+    invalidateAll();
   }
 
   @Override
@@ -106,6 +209,7 @@ public class RemoteDatasetFramework implements DatasetFramework {
         clientCache.getUnchecked(moduleId.getParent())
           .addModule(moduleId.getEntityName(), moduleClass.getName(), deploymentJar);
       } finally {
+        invalidate(moduleId);
         try {
           deploymentJar.delete();
         } catch (IOException e) {
@@ -124,32 +228,52 @@ public class RemoteDatasetFramework implements DatasetFramework {
   @Override
   public void addModule(DatasetModuleId moduleId, DatasetModule module,
                         Location jarLocation) throws DatasetManagementException {
-    clientCache.getUnchecked(moduleId.getParent())
-      .addModule(moduleId.getEntityName(), DatasetModules.getDatasetModuleClass(module).getName(), jarLocation);
+    try {
+      clientCache.getUnchecked(moduleId.getParent())
+        .addModule(moduleId.getEntityName(), DatasetModules.getDatasetModuleClass(module).getName(), jarLocation);
+    } finally {
+      invalidate(moduleId);
+    }
   }
 
   @Override
   public void deleteModule(DatasetModuleId moduleId) throws DatasetManagementException {
-    clientCache.getUnchecked(moduleId.getParent()).deleteModule(moduleId.getEntityName());
+    try {
+      clientCache.getUnchecked(moduleId.getParent()).deleteModule(moduleId.getEntityName());
+    } finally {
+      invalidate(moduleId);
+    }
   }
 
   @Override
   public void deleteAllModules(NamespaceId namespaceId) throws DatasetManagementException {
-    clientCache.getUnchecked(namespaceId).deleteModules();
+    try {
+      clientCache.getUnchecked(namespaceId).deleteModules();
+    } finally {
+      invalidate(namespaceId);
+    }
   }
 
   @Override
   public void addInstance(String datasetType, DatasetId datasetInstanceId, DatasetProperties props)
     throws DatasetManagementException {
-    clientCache.getUnchecked(datasetInstanceId.getParent())
-      .addInstance(datasetInstanceId.getEntityName(), datasetType, props);
+    try {
+      clientCache.getUnchecked(datasetInstanceId.getParent())
+        .addInstance(datasetInstanceId.getEntityName(), datasetType, props);
+    } finally {
+      invalidate(datasetInstanceId);
+    }
   }
 
   @Override
   public void updateInstance(DatasetId datasetInstanceId, DatasetProperties props)
     throws DatasetManagementException {
-    clientCache.getUnchecked(datasetInstanceId.getParent())
-      .updateInstance(datasetInstanceId.getEntityName(), props);
+    try {
+      clientCache.getUnchecked(datasetInstanceId.getParent())
+        .updateInstance(datasetInstanceId.getEntityName(), props);
+    } finally {
+      invalidate(datasetInstanceId);
+    }
   }
 
   @Override
@@ -161,15 +285,13 @@ public class RemoteDatasetFramework implements DatasetFramework {
   @Nullable
   @Override
   public DatasetSpecification getDatasetSpec(DatasetId datasetInstanceId) throws DatasetManagementException {
-    DatasetMeta meta = clientCache.getUnchecked(datasetInstanceId.getParent())
-      .getInstance(datasetInstanceId.getEntityName());
+    DatasetMeta meta = getInstance(datasetInstanceId, null);
     return meta == null ? null : meta.getSpec();
   }
 
   @Override
   public boolean hasInstance(DatasetId datasetInstanceId) throws DatasetManagementException {
-    return clientCache.getUnchecked(datasetInstanceId.getParent())
-      .getInstance(datasetInstanceId.getEntityName()) != null;
+    return getInstance(datasetInstanceId, null) != null;
   }
 
   @Override
@@ -179,12 +301,25 @@ public class RemoteDatasetFramework implements DatasetFramework {
 
   @Override
   public boolean hasType(DatasetTypeId datasetTypeId) throws DatasetManagementException {
-    return clientCache.getUnchecked(datasetTypeId.getParent()).getType(datasetTypeId.getEntityName()) != null;
+    return getTypeInfo(datasetTypeId) != null;
   }
 
   @Override
   public DatasetTypeMeta getTypeInfo(DatasetTypeId datasetTypeId) throws DatasetManagementException {
-    return clientCache.getUnchecked(datasetTypeId.getParent()).getType(datasetTypeId.getEntityName());
+    if (!isMetaCacheEnabled()) {
+      return clientCache.getUnchecked(datasetTypeId.getParent()).getType(datasetTypeId.getEntityName());
+    }
+    DatasetTypeMeta typeMeta = typeCache.getIfPresent(datasetTypeId);
+    emitCacheMetric(typeMeta != null);
+    if (typeMeta == null) {
+      long generation = metaCacheGeneration.get();
+      typeMeta = clientCache.getUnchecked(datasetTypeId.getParent()).getType(datasetTypeId.getEntityName());
+      // Only cache existing types, so that a newly added type becomes visible right away
+      if (typeMeta != null) {
+        cacheIfNotInvalidated(typeCache, datasetTypeId, typeMeta, generation);
+      }
+    }
+    return typeMeta;
   }
 
   @Override
@@ -194,12 +329,20 @@ public class RemoteDatasetFramework implements DatasetFramework {
 
   @Override
   public void deleteInstance(DatasetId datasetInstanceId) throws DatasetManagementException {
-    clientCache.getUnchecked(datasetInstanceId.getParent()).deleteInstance(datasetInstanceId.getEntityName());
+    try {
+      clientCache.getUnchecked(datasetInstanceId.getParent()).deleteInstance(datasetInstanceId.getEntityName());
+    } finally {
+      invalidate(datasetInstanceId);
+    }
   }
 
   @Override
   public void deleteAllInstances(NamespaceId namespaceId) throws DatasetManagementException, IOException {
-    clientCache.getUnchecked(namespaceId).deleteInstances();
+    try {
+      clientCache.getUnchecked(namespaceId).deleteInstances();
+    } finally {
+      invalidate(namespaceId);
+    }
   }
 
   @Override
@@ -214,8 +357,7 @@ public class RemoteDatasetFramework implements DatasetFramework {
                                              @Nullable ClassLoader parentClassLoader,
                                              DatasetClassLoaderProvider classLoaderProvider)
     throws DatasetManagementException, IOException {
-    DatasetMeta instanceInfo = clientCache.getUnchecked(datasetInstanceId.getParent())
-      .getInstance(datasetInstanceId.getEntityName());
+    DatasetMeta instanceInfo = getInstance(datasetInstanceId, null);
     if (instanceInfo == null) {
       return null;
     }
@@ -241,7 +383,7 @@ public class RemoteDatasetFramework implements DatasetFramework {
                                           @Nullable Iterable<? extends EntityId> owners, AccessType accessType)
     throws DatasetManagementException, IOException {
 
-    DatasetMeta datasetMeta = clientCache.getUnchecked(id.getParent()).getInstance(id.getEntityName(), owners);
+    DatasetMeta datasetMeta = getInstance(id, owners);
     if (datasetMeta == null) {
       return null;
     }
@@ -255,6 +397,87 @@ public class RemoteDatasetFramework implements DatasetFramework {
     // no-op. The RemoteDatasetFramework doesn't need to do anything. The lineage should be recorded before this point.
   }
 
+  /**
+   * Returns the {@link DatasetMeta} of the given dataset instance, either from the cache or from the dataset service.
+   * Since the dataset service records the owners passed along with a request as users of the instance, a cache
+   * entry is only used for requests with the same set of owners.
+   */
+  @Nullable
+  private DatasetMeta getInstance(DatasetId datasetInstanceId,
+                                  @Nullable Iterable<? extends EntityId> owners) throws DatasetManagementException {
+    DatasetServiceClient client = clientCache.getUnchecked(datasetInstanceId.getParent());
+    if (!isMetaCacheEnabled()) {
+      return client.getInstance(datasetInstanceId.getEntityName(), owners);
+    }
+    InstanceCacheKey key = new InstanceCacheKey(datasetInstanceId, owners);
+    DatasetMeta meta = instanceCache.getIfPresent(key);
+    emitCacheMetric(meta != null);
+    if (meta == null) {
+      long generation = metaCacheGeneration.get();
+      meta = client.getInstance(datasetInstanceId.getEntityName(), owners);
+      // Only cache existing instances, so that a newly created instance becomes visible right away
+      if (meta != null) {
+        cacheIfNotInvalidated(instanceCache, key, meta, generation);
+      }
+    }
+    return meta;
+  }
+
+  /**
+   * Adds fetched metadata to the given cache, unless cached metadata was invalidated since the given generation,
+   * in which case the metadata may have been fetched before the change that caused the invalidation.
+   */
+  private <K, V> void cacheIfNotInvalidated(Cache<K, V> cache, K key, V value, long generation) {
+    cache.put(key, value);
+    // An invalidation increments the generation before removing entries, hence an invalidation that is not
+    // detected here happens after the put and removes the entry by itself
+    if (metaCacheGeneration.get() != generation) {
+      cache.asMap().remove(key, value);
+    }
+  }
+
+  /**
+   * Removes all cached metadata.
+   */
+  private void invalidateAll() {
+    metaCacheGeneration.incrementAndGet();
+    instanceCache.invalidateAll();
+    typeCache.invalidateAll();
+  }
+
+  /**
+   * Returns whether cached metadata can be used, which requires a positive TTL and a working subscription to
+   * metadata changes. The subscription is started by the first call.
+   */
+  @VisibleForTesting
+  boolean isMetaCacheEnabled() {
+    if (metaCacheTTLSecs <= 0 || messagingService == null || closed) {
+      return false;
+    }
+    if (metaChangeSubscriberStarted.compareAndSet(false, true)) {
+      Thread subscriber = new Thread(new MetaChangeSubscriber(messagingService), "dataset-meta-change-subscriber");
+      subscriber.setDaemon(true);
+      metaChangeSubscriber = subscriber;
+      subscriber.start();
+    }
+    return metaChangeSubscribed && !closed;
+  }
+
+  private void emitCacheMetric(boolean hit) {
+    MetricsContext context = metricsContext;
+    if (context == null) {
+      if (metricsCollectionServiceProvider == null) {
+        return;
+      }
+      context = metricsCollectionServiceProvider.get().getContext(ImmutableMap.of(
+        Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+        Constants.Metrics.Tag.COMPONENT, Constants.Service.DATASET_MANAGER));
+      metricsContext = context;
+    }
+    context.increment(hit ? Constants.Metrics.Name.Dataset.META_CACHE_HITS
+                        : Constants.Metrics.Name.Dataset.META_CACHE_MISSES, 1L);
+  }
+
   private Location createDeploymentJar(Class<?> clz) throws IOException {
     File tempDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
                             cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
@@ -380,4 +603,108 @@ public class RemoteDatasetFramework implements DatasetFramework {
     // for that last module.
     return (T) new DatasetType(registry.get(datasetTypeMeta.getName()), classLoader);
   }
+
+
+  /**
+   * Fetches the metadata changes published by the dataset service and invalidates the affected cache entries.
+   * Fetching starts from one TTL before the subscription starts, so that no change to an entry that may
+   * still be cached is missed even if the clocks of this process and the messaging service differ.
+   * It runs until the {@link RemoteDatasetFramework} is closed.
+   */
+  private final class MetaChangeSubscriber implements Runnable {
+
+    private final MessagingService messagingService;
+
+    MetaChangeSubscriber(MessagingService messagingService) {
+      this.messagingService = messagingService;
+    }
+
+    @Override
+    public void run() {
+      long startTime = Math.max(0L, System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(metaCacheTTLSecs));
+      byte[] lastMessageId = null;
+      while (!closed) {
+        try {
+          MessageFetcher fetcher = messagingService.prepareFetch(metaChangeTopic)
+            .setMaxWait(META_CHANGE_POLL_SECS, TimeUnit.SECONDS);
+          if (lastMessageId == null) {
+            fetcher.setStartTime(startTime);
+          } else {
+            fetcher.setStartMessage(lastMessageId, false);
+          }
+          // Changes published from now on are fetched, hence entries cached from now on will be invalidated
+          metaChangeSubscribed = true;
+          try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+            while (iterator.hasNext()) {
+              RawMessage message = iterator.next();
+              lastMessageId = message.getId();
+              invalidate(DatasetMetaChanges.decode(message.getPayload()));
+            }
+          }
+          continue;
+        } catch (TopicNotFoundException e) {
+          // The dataset service has not published any change yet
+          unsubscribe();
+          try {
+            DatasetMetaChanges.createTopicIfNotExists(messagingService, metaChangeTopic);
+            continue;
+          } catch (Exception ex) {
+            LOG.debug("Failed to create topic {} for dataset metadata changes", metaChangeTopic, ex);
+          }
+        } catch (Exception e) {
+          if (metaChangeSubscribed && !closed) {
+            LOG.warn("Failed to fetch dataset metadata changes from topic {}. Dataset metadata will not be cached " +
+                       "until fetching succeeds again.", metaChangeTopic, e);
+          }
+          unsubscribe();
+        }
+        try {
+          TimeUnit.SECONDS.sleep(META_CHANGE_RETRY_SECS);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+      unsubscribe();
+    }
+
+    private void unsubscribe() {
+      metaChangeSubscribed = false;
+      invalidateAll();
+    }
+  }
+
+  /**
+   * Key of the dataset instance metadata cache.
+   */
+  private static final class InstanceCacheKey {
+
+    private final DatasetId datasetId;
+    private final Set<EntityId> owners;
+
+    InstanceCacheKey(DatasetId datasetId, @Nullable Iterable<? extends EntityId> owners) {
+      this.datasetId = datasetId;
+      this.owners = owners == null ? ImmutableSet.<EntityId>of() : ImmutableSet.<EntityId>copyOf(owners);
+    }
+
+    DatasetId getDatasetId() {
+      return datasetId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      InstanceCacheKey other = (InstanceCacheKey) o;
+      return datasetId.equals(other.datasetId) && owners.equals(other.owners);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(datasetId, owners);
+    }
+  }
 }
@@ -87,6 +87,7 @@ public class DatasetInstanceService {
   private final AuthenticationContext authenticationContext;
 
   private AuditPublisher auditPublisher;
+  private DatasetMetaChangePublisher metaChangePublisher;
 
   @VisibleForTesting
   @Inject
@@ -119,6 +120,12 @@ public class DatasetInstanceService {
     this.auditPublisher = auditPublisher;
   }
 
+  @VisibleForTesting
+  @Inject(optional = true)
+  public void setMetaChangePublisher(DatasetMetaChangePublisher metaChangePublisher) {
+    this.metaChangePublisher = metaChangePublisher;
+  }
+
   /**
    * Lists all dataset instances in a namespace. If perimeter security and authorization are enabled, only returns the
    * dataset instances that the current user has access to.
@@ -262,6 +269,7 @@ public class DatasetInstanceService {
                                                             .build());
       instanceManager.add(namespace, spec);
       metaCache.invalidate(newInstance);
+      publishMetaChange(newInstance);
       publishAudit(newInstance, AuditType.CREATE);
 
       // Enable explore
@@ -306,6 +314,7 @@ public class DatasetInstanceService {
     DatasetSpecification spec = opExecutorClient.update(instance, typeMeta, DatasetProperties.of(properties), existing);
     instanceManager.add(instance.getParent(), spec);
     metaCache.invalidate(instance);
+    publishMetaChange(instance);
 
     DatasetInstanceConfiguration creationProperties =
       new DatasetInstanceConfiguration(existing.getType(), properties, null);
@@ -455,6 +464,7 @@ public class DatasetInstanceService {
       throw new DatasetNotFoundException(instance);
     }
     metaCache.invalidate(instance);
+    publishMetaChange(instance);
 
     DatasetTypeMeta typeMeta = getTypeInfo(instance.getParent(), spec.getType());
     if (typeMeta == null) {
@@ -518,6 +528,12 @@ public class DatasetInstanceService {
     }
   }
 
+  private void publishMetaChange(DatasetId datasetInstance) {
+    if (metaChangePublisher != null) {
+      metaChangePublisher.publish(datasetInstance);
+    }
+  }
+
   private void publishAudit(DatasetId datasetInstance, AuditType auditType) {
     // TODO: Add properties to Audit Payload (CDAP-5220)
     AuditPublishers.publishAudit(auditPublisher, datasetInstance, auditType, AuditPayload.EMPTY_PAYLOAD);
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.datafabric.dataset.service;
+
+import co.cask.cdap.api.messaging.TopicNotFoundException;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.data2.datafabric.dataset.DatasetMetaChanges;
+import co.cask.cdap.data2.datafabric.dataset.RemoteDatasetFramework;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.client.StoreRequestBuilder;
+import co.cask.cdap.proto.id.EntityId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Publishes changes to dataset instances, modules, and types to the dataset metadata change topic, so that
+ * {@link RemoteDatasetFramework} clients can invalidate their cached metadata. Publishing happens asynchronously
+ * and on a best-effort basis: a failure is only logged, because clients still expire cached entries on their own.
+ */
+public class DatasetMetaChangePublisher {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DatasetMetaChangePublisher.class);
+
+  private final TopicId topicId;
+  private final ExecutorService executor;
+  private MessagingService messagingService;
+
+  @Inject
+  @VisibleForTesting
+  public DatasetMetaChangePublisher(CConfiguration cConf) {
+    this.topicId = DatasetMetaChanges.getTopic(cConf);
+    this.executor = Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory("dataset-meta-change-%d"));
+  }
+
+  @VisibleForTesting
+  @Inject(optional = true)
+  public void setMessagingService(MessagingService messagingService) {
+    this.messagingService = messagingService;
+  }
+
+  /**
+   * Publishes a change to the given entity. Does nothing if no {@link MessagingService} is available.
+   */
+  public void publish(final EntityId entityId) {
+    final MessagingService messagingService = this.messagingService;
+    if (messagingService == null) {
+      return;
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          try {
+            publish(messagingService, entityId);
+          } catch (TopicNotFoundException e) {
+            DatasetMetaChanges.createTopicIfNotExists(messagingService, topicId);
+            publish(messagingService, entityId);
+          }
+        } catch (Exception e) {
+          LOG.warn("Failed to publish change of {} to topic {}. Clients may see stale metadata for it until their " +
+                     "cached entries expire.", entityId, topicId, e);
+        }
+      }
+    });
+  }
+
+  private void publish(MessagingService messagingService,
+                       EntityId entityId) throws TopicNotFoundException, IOException {
+    messagingService.publish(StoreRequestBuilder.of(topicId).addPayloads(DatasetMetaChanges.encode(entityId)).build());
+  }
+}
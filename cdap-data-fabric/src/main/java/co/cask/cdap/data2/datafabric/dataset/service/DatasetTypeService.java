@@ -109,6 +109,7 @@ public class DatasetTypeService extends AbstractIdleService {
   private final DynamicDatasetCache datasetCache;
   private final Map<String, DatasetModule> defaultModules;
   private final Map<String, DatasetModule> extensionModules;
+  private DatasetMetaChangePublisher metaChangePublisher;
 
   @Inject
   @VisibleForTesting
@@ -143,6 +144,12 @@ public class DatasetTypeService extends AbstractIdleService {
     this.extensionModules = getExtensionModules(cConf);
   }
 
+  @VisibleForTesting
+  @Inject(optional = true)
+  public void setMetaChangePublisher(DatasetMetaChangePublisher metaChangePublisher) {
+    this.metaChangePublisher = metaChangePublisher;
+  }
+
   @Override
   protected void startUp() throws Exception {
     txClientService.startAndWait();
@@ -157,6 +164,8 @@ public class DatasetTypeService extends AbstractIdleService {
     if (!extensionModules.isEmpty()) {
       deployExtensionModules();
     }
+    // system types may have changed since clients cached them
+    publishMetaChange(NamespaceId.SYSTEM);
   }
 
   @Override
@@ -271,6 +280,7 @@ public class DatasetTypeService extends AbstractIdleService {
     } catch (DatasetModuleConflictException e) {
       throw new DatasetModuleCannotBeDeletedException(datasetModuleId, e.getMessage());
     }
+    publishMetaChange(datasetModuleId);
 
     // revoke all privileges on the module to be deleted
     revokeAllPrivilegesOnModule(datasetModuleId, moduleMeta);
@@ -297,6 +307,7 @@ public class DatasetTypeService extends AbstractIdleService {
     } catch (DatasetModuleConflictException e) {
       throw new ConflictException(e.getMessage(), e);
     }
+    publishMetaChange(namespaceId);
   }
 
   /**
@@ -424,6 +435,7 @@ public class DatasetTypeService extends AbstractIdleService {
           }
 
           typeManager.addModule(datasetModuleId, className, archive, forceUpdate);
+          publishMetaChange(datasetModuleId);
           // todo: response with DatasetModuleMeta of just added module (and log this info)
           // Ideally this should have been done before, but we cannot grant privileges on types until they've been
           // added to the type MDS. First revoke any orphaned privileges for types left behind by past failed revokes
@@ -524,6 +536,12 @@ public class DatasetTypeService extends AbstractIdleService {
     }
   }
 
+  private void publishMetaChange(EntityId entityId) {
+    if (metaChangePublisher != null) {
+      metaChangePublisher.publish(entityId);
+    }
+  }
+
   private void grantAllPrivilegesOnModule(DatasetModuleId moduleId, Principal principal) throws Exception {
     grantAllPrivilegesOnModule(moduleId, principal, null);
   }
@@ -48,6 +48,7 @@ import co.cask.cdap.api.dataset.lib.Partitioning.FieldType;
 import co.cask.cdap.api.dataset.lib.partitioned.PartitionKeyCodec;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
@@ -597,7 +598,12 @@ public class PartitionedFileSetDataset extends AbstractDataset implements Partit
   private void getPartitions(@Nullable PartitionFilter filter, PartitionConsumer consumer, boolean decodeMetadata,
                              @Nullable byte[] startKey, @Nullable byte[] endKey, long limit) {
     long count = 0L;
-    try (Scanner scanner = partitionsTable.scan(startKey, endKey)) {
+    Scan scan = new Scan(startKey, endKey);
+    if (!decodeMetadata) {
+      // only the relative path is needed, so avoid reading the metadata columns
+      scan.setColumns(RELATIVE_PATH);
+    }
+    try (Scanner scanner = partitionsTable.scan(scan)) {
       while (count < limit) {
         Row row = scanner.next();
         if (row == null) {
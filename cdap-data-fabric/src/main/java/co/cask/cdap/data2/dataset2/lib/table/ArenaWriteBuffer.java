@@ -0,0 +1,541 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link WriteBuffer} that stores changes in append-only byte arenas with a compact index made of primitive
+ * arrays, so that buffering a large number of changes doesn't create objects for each of them.
+ *
+ * Each row key is stored once, and each column has a record with the column key, the type of change and the value.
+ * Changing a column again overwrites the record in place if the value has the same length, which is always the
+ * case for increments. Otherwise a new record is appended and the old one is not reclaimed until the buffer is
+ * cleared. The arenas can be allocated off-heap.
+ *
+ * Reads return maps that are decoded from the arenas, which is more expensive than reading from
+ * {@link MapWriteBuffer}. The {@link #rowIterator()} decodes one row at a time, so that conflict detection doesn't
+ * need memory for a decoded copy of all changes.
+ */
+public final class ArenaWriteBuffer implements WriteBuffer {
+
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+  private static final byte TYPE_PUT = 0;
+  private static final byte TYPE_DELETE = 1;
+  private static final byte TYPE_INCREMENT = 2;
+
+  private static final byte[] EMPTY = new byte[0];
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final int chunkSize;
+  private final boolean offHeap;
+  private final List<ByteBuffer> chunks;
+
+  // Index of rows. A row id is the index to these arrays. The address is the arena address of the row key.
+  private long[] rowAddresses;
+  private int[] rowLastCells;
+  private int rowCount;
+  // Open addressing hash table of row id + 1, with zero meaning empty slot
+  private int[] rowTable;
+
+  // Index of columns. A cell id is the index to these arrays. The cells of a row are linked through cellPrevs.
+  private long[] cellAddresses;
+  private int[] cellRows;
+  private int[] cellPrevs;
+  private int cellCount;
+  // Open addressing hash table of cell id + 1, with zero meaning empty slot
+  private int[] cellTable;
+  // Number of bytes allocated for records in the arena chunks
+  private long usedBytes;
+
+  // Row ids sorted by row key, or null if it needs to be recomputed
+  private int[] sortedRows;
+
+  /**
+   * Creates an instance with the {@link #DEFAULT_CHUNK_SIZE} that uses heap memory.
+   */
+  public ArenaWriteBuffer() {
+    this(DEFAULT_CHUNK_SIZE, false);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param chunkSize size in bytes of each arena chunk. Records that are larger than it are stored in their own chunk.
+   * @param offHeap {@code true} to allocate the arena chunks off-heap
+   */
+  public ArenaWriteBuffer(int chunkSize, boolean offHeap) {
+    Preconditions.checkArgument(chunkSize > 0, "Chunk size must be positive: %s", chunkSize);
+    this.chunkSize = chunkSize;
+    this.offHeap = offHeap;
+    this.chunks = new ArrayList<>();
+    resetIndex();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return rowCount == 0;
+  }
+
+  @Override
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  @Override
+  public long getSizeInBytes() {
+    // Bytes used in the arena chunks plus the index arrays
+    long size = usedBytes;
+    size += (rowAddresses.length + cellAddresses.length) * (long) Bytes.SIZEOF_LONG;
+    size += (rowLastCells.length + rowTable.length) * (long) Bytes.SIZEOF_INT;
+    size += (cellRows.length + cellPrevs.length + cellTable.length) * (long) Bytes.SIZEOF_INT;
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    // Keeps the first chunk for reuse, so that a table that writes a little in each transaction doesn't allocate
+    if (!chunks.isEmpty()) {
+      ByteBuffer first = chunks.get(0);
+      chunks.clear();
+      if (first.capacity() == chunkSize) {
+        first.clear();
+        chunks.add(first);
+      }
+    }
+    resetIndex();
+  }
+
+  @Override
+  public void put(byte[] row, byte[] column, @Nullable byte[] value) {
+    int rowId = getOrAddRow(row);
+    int hash = cellHash(rowId, column);
+    int cellId = findCell(rowId, column, hash);
+    byte type = value == null ? TYPE_DELETE : TYPE_PUT;
+    byte[] bytes = value == null ? EMPTY : value;
+    if (cellId < 0) {
+      addCell(rowId, column, hash, type, bytes);
+    } else {
+      setValue(cellId, column, type, bytes);
+    }
+  }
+
+  @Override
+  public void increment(byte[] row, byte[] column, long amount) {
+    int rowId = getOrAddRow(row);
+    int hash = cellHash(rowId, column);
+    int cellId = findCell(rowId, column, hash);
+    if (cellId < 0) {
+      addCell(rowId, column, hash, TYPE_INCREMENT, Bytes.toBytes(amount));
+    } else {
+      long address = cellAddresses[cellId];
+      ByteBuffer chunk = getChunk(address);
+      int typeOffset = getOffset(address) + Bytes.SIZEOF_INT + chunk.getInt(getOffset(address));
+      if (chunk.get(typeOffset) == TYPE_INCREMENT) {
+        // Increments can be merged in place
+        int valueOffset = typeOffset + 1 + Bytes.SIZEOF_INT;
+        chunk.putLong(valueOffset, chunk.getLong(valueOffset) + amount);
+      } else {
+        Update merged = Updates.mergeUpdates(decodeUpdate(address), new IncrementValue(amount));
+        if (merged instanceof IncrementValue) {
+          setValue(cellId, column, TYPE_INCREMENT, Bytes.toBytes(((IncrementValue) merged).getValue()));
+        } else {
+          byte[] value = ((PutValue) merged).getValue();
+          setValue(cellId, column, value == null ? TYPE_DELETE : TYPE_PUT, value == null ? EMPTY : value);
+        }
+      }
+    }
+  }
+
+  @Nullable
+  @Override
+  public NavigableMap<byte[], Update> getRow(byte[] row) {
+    int rowId = findRow(row, hashBytes(row));
+    return rowId < 0 ? null : decodeRow(rowId);
+  }
+
+  @Override
+  public NavigableMap<byte[], NavigableMap<byte[], Update>> getRows(@Nullable byte[] startRow,
+                                                                   @Nullable byte[] stopRow) {
+    int[] rows = getSortedRows();
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (int i = startRow == null ? 0 : lowerBound(startRow); i < rows.length; i++) {
+      int rowId = rows[i];
+      if (stopRow != null && compareKey(rowAddresses[rowId], stopRow) >= 0) {
+        break;
+      }
+      result.put(decodeKey(rowAddresses[rowId]), decodeRow(rowId));
+    }
+    return result;
+  }
+
+  @Override
+  public Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rowIterator() {
+    final int[] rows = getSortedRows();
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+      private int index;
+
+      @Override
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+        if (index >= rows.length) {
+          return endOfData();
+        }
+        int rowId = rows[index++];
+        return Maps.immutableEntry(decodeKey(rowAddresses[rowId]), decodeRow(rowId));
+      }
+    };
+  }
+
+  /**
+   * Returns the number of bytes used by the arena chunks.
+   */
+  long getArenaBytes() {
+    long bytes = 0L;
+    for (ByteBuffer chunk : chunks) {
+      bytes += chunk.capacity();
+    }
+    return bytes;
+  }
+
+  private void resetIndex() {
+    rowAddresses = new long[INITIAL_CAPACITY];
+    rowLastCells = new int[INITIAL_CAPACITY];
+    rowTable = new int[INITIAL_CAPACITY * 2];
+    rowCount = 0;
+    cellAddresses = new long[INITIAL_CAPACITY];
+    cellRows = new int[INITIAL_CAPACITY];
+    cellPrevs = new int[INITIAL_CAPACITY];
+    cellTable = new int[INITIAL_CAPACITY * 2];
+    cellCount = 0;
+    usedBytes = 0L;
+    sortedRows = null;
+  }
+
+  /**
+   * Returns the id of the given row, adding it to the buffer if it doesn't exist.
+   */
+  private int getOrAddRow(byte[] row) {
+    int hash = hashBytes(row);
+    int rowId = findRow(row, hash);
+    if (rowId >= 0) {
+      return rowId;
+    }
+
+    rowId = rowCount++;
+    if (rowId == rowAddresses.length) {
+      rowAddresses = Arrays.copyOf(rowAddresses, rowId * 2);
+      rowLastCells = Arrays.copyOf(rowLastCells, rowId * 2);
+    }
+    long address = allocate(Bytes.SIZEOF_INT + row.length);
+    getChunk(address).putInt(row.length).put(row);
+    rowAddresses[rowId] = address;
+    rowLastCells[rowId] = -1;
+    sortedRows = null;
+
+    if (rowCount * 2 > rowTable.length) {
+      rowTable = new int[rowTable.length * 2];
+      for (int i = 0; i < rowCount; i++) {
+        insert(rowTable, hashKey(rowAddresses[i]), i);
+      }
+    } else {
+      insert(rowTable, hash, rowId);
+    }
+    return rowId;
+  }
+
+  private int findRow(byte[] row, int hash) {
+    int mask = rowTable.length - 1;
+    for (int i = mix(hash) & mask; rowTable[i] != 0; i = (i + 1) & mask) {
+      int rowId = rowTable[i] - 1;
+      if (compareKey(rowAddresses[rowId], row) == 0) {
+        return rowId;
+      }
+    }
+    return -1;
+  }
+
+  private int findCell(int rowId, byte[] column, int hash) {
+    int mask = cellTable.length - 1;
+    for (int i = mix(hash) & mask; cellTable[i] != 0; i = (i + 1) & mask) {
+      int cellId = cellTable[i] - 1;
+      if (cellRows[cellId] == rowId && compareKey(cellAddresses[cellId], column) == 0) {
+        return cellId;
+      }
+    }
+    return -1;
+  }
+
+  private void addCell(int rowId, byte[] column, int hash, byte type, byte[] value) {
+    int cellId = cellCount++;
+    if (cellId == cellAddresses.length) {
+      cellAddresses = Arrays.copyOf(cellAddresses, cellId * 2);
+      cellRows = Arrays.copyOf(cellRows, cellId * 2);
+      cellPrevs = Arrays.copyOf(cellPrevs, cellId * 2);
+    }
+    cellAddresses[cellId] = appendCell(column, type, value);
+    cellRows[cellId] = rowId;
+    cellPrevs[cellId] = rowLastCells[rowId];
+    rowLastCells[rowId] = cellId;
+
+    if (cellCount * 2 > cellTable.length) {
+      cellTable = new int[cellTable.length * 2];
+      for (int i = 0; i < cellCount; i++) {
+        insert(cellTable, 31 * cellRows[i] + hashKey(cellAddresses[i]), i);
+      }
+    } else {
+      insert(cellTable, hash, cellId);
+    }
+  }
+
+  /**
+   * Sets the value of an existing cell, in place if the value length is the same.
+   */
+  private void setValue(int cellId, byte[] column, byte type, byte[] value) {
+    long address = cellAddresses[cellId];
+    ByteBuffer chunk = getChunk(address);
+    int typeOffset = getOffset(address) + Bytes.SIZEOF_INT + column.length;
+    if (chunk.getInt(typeOffset + 1) == value.length) {
+      chunk.put(typeOffset, type);
+      ByteBuffer buffer = chunk.duplicate();
+      buffer.position(typeOffset + 1 + Bytes.SIZEOF_INT);
+      buffer.put(value);
+    } else {
+      cellAddresses[cellId] = appendCell(column, type, value);
+    }
+  }
+
+  private long appendCell(byte[] column, byte type, byte[] value) {
+    long address = allocate(Bytes.SIZEOF_INT * 2 + 1 + column.length + value.length);
+    getChunk(address).putInt(column.length).put(column).put(type).putInt(value.length).put(value);
+    return address;
+  }
+
+  /**
+   * Reserves space for a record of the given size, and returns the address of it. The record can be written
+   * with relative put methods on the chunk of the address.
+   */
+  private long allocate(int size) {
+    ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+    if (chunk == null || chunk.remaining() < size) {
+      int capacity = Math.max(size, chunkSize);
+      chunk = offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+      chunks.add(chunk);
+    }
+    usedBytes += size;
+    return ((long) (chunks.size() - 1) << 32) | chunk.position();
+  }
+
+  private ByteBuffer getChunk(long address) {
+    return chunks.get((int) (address >>> 32));
+  }
+
+  private static int getOffset(long address) {
+    return (int) address;
+  }
+
+  private NavigableMap<byte[], Update> decodeRow(int rowId) {
+    NavigableMap<byte[], Update> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (int cellId = rowLastCells[rowId]; cellId >= 0; cellId = cellPrevs[cellId]) {
+      long address = cellAddresses[cellId];
+      columns.put(decodeKey(address), decodeUpdate(address));
+    }
+    return columns;
+  }
+
+  /**
+   * Decodes the length prefixed key at the given address.
+   */
+  private byte[] decodeKey(long address) {
+    ByteBuffer buffer = getChunk(address).duplicate();
+    buffer.position(getOffset(address));
+    byte[] key = new byte[buffer.getInt()];
+    buffer.get(key);
+    return key;
+  }
+
+  private Update decodeUpdate(long cellAddress) {
+    ByteBuffer buffer = getChunk(cellAddress).duplicate();
+    buffer.position(getOffset(cellAddress));
+    int columnLength = buffer.getInt();
+    buffer.position(buffer.position() + columnLength);
+    byte type = buffer.get();
+    byte[] value = new byte[buffer.getInt()];
+    buffer.get(value);
+    switch (type) {
+      case TYPE_PUT:
+        return new PutValue(value);
+      case TYPE_DELETE:
+        return new PutValue(null);
+      case TYPE_INCREMENT:
+        return new IncrementValue(Bytes.toLong(value));
+      default:
+        throw new IllegalStateException("Unknown update type " + type);
+    }
+  }
+
+  /**
+   * Compares the length prefixed key at the given address with the given key.
+   */
+  private int compareKey(long address, byte[] key) {
+    ByteBuffer chunk = getChunk(address);
+    int offset = getOffset(address);
+    int length = chunk.getInt(offset);
+    offset += Bytes.SIZEOF_INT;
+    for (int i = 0; i < length && i < key.length; i++) {
+      int diff = (chunk.get(offset + i) & 0xff) - (key[i] & 0xff);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return length - key.length;
+  }
+
+  private int compareKeys(long address1, long address2) {
+    ByteBuffer chunk1 = getChunk(address1);
+    ByteBuffer chunk2 = getChunk(address2);
+    int offset1 = getOffset(address1);
+    int offset2 = getOffset(address2);
+    int length1 = chunk1.getInt(offset1);
+    int length2 = chunk2.getInt(offset2);
+    offset1 += Bytes.SIZEOF_INT;
+    offset2 += Bytes.SIZEOF_INT;
+    for (int i = 0; i < length1 && i < length2; i++) {
+      int diff = (chunk1.get(offset1 + i) & 0xff) - (chunk2.get(offset2 + i) & 0xff);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return length1 - length2;
+  }
+
+  /**
+   * Returns the row ids sorted by row key, which are sorted again only if a row was added since the last call.
+   */
+  private int[] getSortedRows() {
+    if (sortedRows == null) {
+      int[] rowIds = new int[rowCount];
+      for (int i = 0; i < rowCount; i++) {
+        rowIds[i] = i;
+      }
+      sortRows(rowIds, new int[rowCount], 0, rowCount);
+      sortedRows = rowIds;
+    }
+    return sortedRows;
+  }
+
+  /**
+   * Merge sorts a range of the given row ids by row key, using the given array of the same size as scratch space.
+   */
+  private void sortRows(int[] rowIds, int[] scratch, int from, int to) {
+    if (to - from <= 16) {
+      // Insertion sort for small ranges
+      for (int i = from + 1; i < to; i++) {
+        int rowId = rowIds[i];
+        int j = i;
+        for (; j > from && compareKeys(rowAddresses[rowIds[j - 1]], rowAddresses[rowId]) > 0; j--) {
+          rowIds[j] = rowIds[j - 1];
+        }
+        rowIds[j] = rowId;
+      }
+      return;
+    }
+
+    int mid = (from + to) >>> 1;
+    sortRows(rowIds, scratch, from, mid);
+    sortRows(rowIds, scratch, mid, to);
+    if (compareKeys(rowAddresses[rowIds[mid - 1]], rowAddresses[rowIds[mid]]) <= 0) {
+      // Already in order, which is common since rows are often written in key order
+      return;
+    }
+    System.arraycopy(rowIds, from, scratch, from, to - from);
+    int left = from;
+    int right = mid;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < mid && compareKeys(rowAddresses[scratch[left]], rowAddresses[scratch[right]]) <= 0)) {
+        rowIds[i] = scratch[left++];
+      } else {
+        rowIds[i] = scratch[right++];
+      }
+    }
+  }
+
+  /**
+   * Returns the index in {@link #sortedRows} of the first row that is greater than or equal to the given row.
+   */
+  private int lowerBound(byte[] row) {
+    int low = 0;
+    int high = sortedRows.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareKey(rowAddresses[sortedRows[mid]], row) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int cellHash(int rowId, byte[] column) {
+    return 31 * rowId + hashBytes(column);
+  }
+
+  /**
+   * Computes the same hash as {@link #hashBytes(byte[])} for the length prefixed key at the given address.
+   */
+  private int hashKey(long address) {
+    ByteBuffer chunk = getChunk(address);
+    int offset = getOffset(address);
+    int end = offset + Bytes.SIZEOF_INT + chunk.getInt(offset);
+    int hash = 1;
+    for (int i = offset + Bytes.SIZEOF_INT; i < end; i++) {
+      hash = 31 * hash + chunk.get(i);
+    }
+    return hash;
+  }
+
+  private static int hashBytes(byte[] bytes) {
+    return Arrays.hashCode(bytes);
+  }
+
+  private static void insert(int[] table, int hash, int id) {
+    int mask = table.length - 1;
+    int i = mix(hash) & mask;
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    table[i] = id + 1;
+  }
+
+  private static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -53,7 +53,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import javax.annotation.Nullable;
 
 /**
@@ -73,8 +72,10 @@ import javax.annotation.Nullable;
  *       not in in-memory buffer twice, two times it will try to fetch it from persistent store.
  *       Given the snapshot isolation tx model, this can be improved in future implementations.
  * <p>
- * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME. There should be better
- *       implementation for MapReduce case (YMMV though, for counters/aggregations this implementation looks sweet)
+ * NOTE: by default changes are persisted only at the end of transaction. Beware of OOME. For long transactions, such
+ *       as in MapReduce tasks, the {@link Constants.Dataset#TABLE_WRITE_BUFFER_FLUSH_BYTES} property can be set for
+ *       persisting the changes when the buffer reaches the given size. Changes persisted early are still undone if
+ *       the transaction is rolled back.
  * <p>
  * NOTE: Using {@link #get(byte[], byte[], byte[], int)} is generally always not efficient since it always hits the
  *       persisted store even if all needed data is in-memory buffer. See more info at method javadoc
@@ -95,11 +96,19 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // Whether read-less increments should be used when increment() is called
   private final boolean enableReadlessIncrements;
 
+  // Whether the compact write buffer should be used, and whether it should be off-heap
+  private final boolean compactWriteBuffer;
+  private final boolean offHeapWriteBuffer;
+  // Size of the buffer in bytes at which changes are persisted before commit, or zero to persist only on commit
+  private final long writeBufferFlushBytes;
+
   // In-memory buffer that keeps not yet persisted data. It is row->(column->value) map. Value can be null which means
   // that the corresponded column was removed.
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> buff;
+  private WriteBuffer buff;
 
-  // Keeps track of what was persisted so far
+  // Keeps track of the row and column keys persisted so far in the transaction, for undoing them on rollback and
+  // for conflict detection. It is row->(column->update), where the update is the total of the persisted increments
+  // for cells that were persisted as increments, and null otherwise, since values are not needed once persisted.
   private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
 
   // Report data ops metrics to
@@ -150,7 +159,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // we want it to be of format length+value to avoid conflicts like table="ab", row="cd" vs table="abc", row="d"
     // Default uses the above scheme. Subclasses can change it by overriding the #getNameAsTxChangePrefix method
     this.nameAsTxChangePrefix = Bytes.add(new byte[]{(byte) name.length()}, Bytes.toBytes(name));
-    this.buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    this.compactWriteBuffer = TableProperties.useCompactWriteBuffer(properties);
+    this.offHeapWriteBuffer = TableProperties.useOffHeapWriteBuffer(properties);
+    this.writeBufferFlushBytes = TableProperties.getWriteBufferFlushBytes(properties);
+    this.buff = createWriteBuffer();
   }
 
   /**
@@ -178,6 +190,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   /**
    * Persists in-memory buffer. After this method returns we assume that data can be visible to other table clients
    * (of course other clients may choose still not to see it based on transaction isolation logic).
+   * NOTE: if the buffer is flushed before the transaction commits, this method can be called more than once in a
+   *       transaction. A change of a cell that was persisted by an earlier call is then combined with the earlier
+   *       change, hence it must replace what was persisted for the cell in the same transaction.
    * @param buff in-memory buffer to persist. Map is described as row->(column->value). Map can contain null values
    *             which means that the corresponded column was deleted
    * @throws Exception
@@ -227,6 +242,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   /**
    * Scans range of rows from persistent store for a given {@link Scan}.
    * NOTE: persisted store can also be in-memory, it is called "persisted" to distinguish from in-memory buffer.
+   * The rows must be returned in descending order if the scan is {@link Scan#isReversed() reversed}.
    * @param scan scan configuration
    * @return instance of {@link Scanner}, never null
    * @throws Exception
@@ -252,6 +268,16 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return results;
   }
 
+  /**
+   * Creates the {@link WriteBuffer} for buffering the changes of a transaction.
+   */
+  private WriteBuffer createWriteBuffer() {
+    if (compactWriteBuffer) {
+      return new ArenaWriteBuffer(ArenaWriteBuffer.DEFAULT_CHUNK_SIZE, offHeapWriteBuffer);
+    }
+    return new MapWriteBuffer();
+  }
+
   @Override
   public void setMetricsCollector(MetricsCollector metricsCollector) {
     this.metricsCollector = metricsCollector;
@@ -308,17 +334,40 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   private Collection<byte[]> getRowChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
-      changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+    List<byte[]> changes = new ArrayList<>(buff.getRowCount());
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = buff.rowIterator();
+    while (rows.hasNext()) {
+      changes.add(Bytes.add(getNameAsTxChangePrefix(), rows.next().getKey()));
+    }
+    // rows of the changes that were persisted already by flushing the buffer
+    if (toUndo != null) {
+      for (byte[] changedRow : toUndo.keySet()) {
+        if (buff.getRow(changedRow) == null) {
+          changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+        }
+      }
     }
     return changes;
   }
 
   private Collection<byte[]> getColumnChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
+    List<byte[]> changes = new ArrayList<>(buff.getRowCount());
+    addColumnChanges(buff.rowIterator(), null, changes);
+    // columns of the changes that were persisted already by flushing the buffer
+    if (toUndo != null) {
+      addColumnChanges(toUndo.entrySet().iterator(), buff, changes);
+    }
+    return changes;
+  }
+
+  /**
+   * Adds the column changes of the given rows, except the ones that are in the excluded buffer.
+   */
+  private void addColumnChanges(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows,
+                                @Nullable WriteBuffer excluded, List<byte[]> changes) {
+    while (rows.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange = rows.next();
       if (rowChange.getValue() == null) {
         // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
         //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
@@ -328,31 +377,125 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
       // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
       byte[] rowTxChange = Bytes.add(Bytes.toBytes(rowChange.getKey().length), rowChange.getKey());
+      NavigableMap<byte[], Update> excludedColumns = excluded == null ? null : excluded.getRow(rowChange.getKey());
 
       for (byte[] column : rowChange.getValue().keySet()) {
-        changes.add(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column));
+        if (excludedColumns == null || !excludedColumns.containsKey(column)) {
+          changes.add(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column));
+        }
       }
     }
-    return changes;
   }
 
   @Override
   public boolean commitTx() throws Exception {
     if (!buff.isEmpty()) {
-      // We first assume that all data will be persisted. So that if exception happen during persist we try to
-      // rollback everything we had in in-memory buffer.
-      toUndo = buff;
-      // clearing up in-memory buffer by initializing new map.
-      // NOTE: we want to init map here so that if no changes are made we re-use same instance of the map in next tx
-      // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
-      buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
-      // TODO: tracking of persisted items can be optimized by returning a pair {succeededOrNot, persisted} which
-      //       tells if persisting succeeded and what was persisted (i.e. what we will have to undo in case of rollback)
-      persist(toUndo);
+      persistBuffer();
     }
     return true;
   }
 
+  /**
+   * Persists the in-memory buffer if its size has reached the {@link Constants.Dataset#TABLE_WRITE_BUFFER_FLUSH_BYTES}
+   * threshold, so that a long transaction does not keep all of its changes in memory until it commits.
+   */
+  private void flushIfNeeded() {
+    if (writeBufferFlushBytes <= 0 || buff.getSizeInBytes() < writeBufferFlushBytes) {
+      return;
+    }
+    try {
+      persistBuffer();
+    } catch (Exception e) {
+      LOG.debug("flush failed for table: " + getTransactionAwareName(), e);
+      throw new DataSetException("flush failed", e);
+    }
+  }
+
+  /**
+   * Persists the in-memory buffer and keeps track of the keys of the persisted changes in {@link #toUndo}.
+   */
+  private void persistBuffer() throws Exception {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> changes = buff.getRows(null, null);
+    if (toUndo == null) {
+      toUndo = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    } else {
+      // Some changes were persisted already by flushing the buffer
+      changes = combineWithPersisted(changes);
+    }
+
+    // We first assume that all data will be persisted. So that if exception happen during persist we try to
+    // rollback everything we had in in-memory buffer.
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : changes.entrySet()) {
+      NavigableMap<byte[], Update> persistedColumns = toUndo.get(rowChange.getKey());
+      if (persistedColumns == null) {
+        persistedColumns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        toUndo.put(rowChange.getKey(), persistedColumns);
+      }
+      for (Map.Entry<byte[], Update> columnChange : rowChange.getValue().entrySet()) {
+        // Only the total of increments is kept, for combining with later increments of the same cell
+        Update update = columnChange.getValue();
+        persistedColumns.put(columnChange.getKey(), update instanceof IncrementValue ? update : null);
+      }
+    }
+    persist(changes);
+    buff.clear();
+  }
+
+  /**
+   * Combines buffered increments of cells that were persisted already in the current transaction with what was
+   * persisted. Since a cell persisted again in the same transaction replaces what was persisted for the cell, an
+   * increment of a cell that was persisted as an increment is persisted as the total of all its increments. This keeps
+   * it a readless increment, so that it is still summed with the increments of concurrent transactions. An increment
+   * of a cell that was persisted as a put is persisted as a put of the incremented value, which is read back from the
+   * persisted store.
+   */
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> combineWithPersisted(
+    NavigableMap<byte[], NavigableMap<byte[], Update>> changes) throws Exception {
+
+    NavigableMap<byte[], NavigableMap<byte[], Update>> combined = null;
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : changes.entrySet()) {
+      byte[] row = rowChange.getKey();
+      NavigableMap<byte[], Update> persistedColumns = toUndo.get(row);
+      if (persistedColumns == null) {
+        continue;
+      }
+      List<byte[]> columns = new ArrayList<>();
+      for (Map.Entry<byte[], Update> columnChange : rowChange.getValue().entrySet()) {
+        if (columnChange.getValue() instanceof IncrementValue && persistedColumns.containsKey(columnChange.getKey())) {
+          columns.add(columnChange.getKey());
+        }
+      }
+      if (columns.isEmpty()) {
+        continue;
+      }
+
+      // Only copy the changes when there is something to combine, which is expected to be rare
+      if (combined == null) {
+        combined = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        combined.putAll(changes);
+      }
+      NavigableMap<byte[], Update> rowChanges = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      rowChanges.putAll(rowChange.getValue());
+      List<byte[]> putColumns = new ArrayList<>();
+      for (byte[] column : columns) {
+        Update persisted = persistedColumns.get(column);
+        if (persisted instanceof IncrementValue) {
+          rowChanges.put(column, Updates.mergeUpdates(persisted, rowChanges.get(column)));
+        } else {
+          putColumns.add(column);
+        }
+      }
+      if (!putColumns.isEmpty()) {
+        NavigableMap<byte[], byte[]> persisted = getPersisted(row, putColumns.toArray(new byte[putColumns.size()][]));
+        for (byte[] column : putColumns) {
+          rowChanges.put(column, Updates.mergeUpdates(new PutValue(persisted.get(column)), rowChanges.get(column)));
+        }
+      }
+      combined.put(row, rowChanges);
+    }
+    return combined == null ? changes : combined;
+  }
+
   @Override
   public void postTxCommit() {
     // don't need buffer anymore: tx has been committed
@@ -415,7 +558,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     ensureTransactionIsStarted();
     reportRead(1);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     // NOTE: since we cannot tell the exact column set, we always have to go to persisted store.
     //       potential improvement: do not fetch columns available in in-mem buffer (we know them at this point)
@@ -467,7 +610,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         rowColumns.putAll(persistedRow);
 
         byte[] row = get.getRow();
-        NavigableMap<byte[], Update> buffCols = buff.get(row);
+        NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
         // merge what was in the buffer and what was persisted
         if (buffCols != null) {
@@ -500,24 +643,15 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   }
 
   private void putInternal(byte[] row, byte[][] columns, byte[][] values) {
-    NavigableMap<byte[], Update> colVals = buff.get(row);
-    boolean newRow = false;
-    if (colVals == null) {
-      colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      newRow = true;
-    }
     for (int i = 0; i < columns.length; i++) {
-      // NOTE: we copy passed column's and value's byte arrays to protect buffer against possible changes of these
-      // arrays on client
+      // NOTE: the buffer copies passed row's, column's and value's byte arrays to protect itself against possible
+      // changes of these arrays on client
       if (values[i] != null && values[i].length == 0) {
         warnAboutEmptyValue(columns[i]);
       }
-      colVals.put(copy(columns[i]), new PutValue(copy(values[i])));
-    }
-    if (newRow) {
-      // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
-      buff.put(copy(row), colVals);
+      buff.put(row, columns[i], values[i]);
     }
+    flushIfNeeded();
   }
 
   /**
@@ -620,15 +754,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void increment(byte[] row, byte[][] columns, long[] amounts) {
     ensureTransactionIsStarted();
     if (enableReadlessIncrements) {
-      NavigableMap<byte[], Update> colVals = buff.get(row);
-      if (colVals == null) {
-        colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        buff.put(row, colVals);
-      }
       for (int i = 0; i < columns.length; i++) {
-        colVals.put(columns[i], Updates.mergeUpdates(colVals.get(columns[i]), new IncrementValue(amounts[i])));
+        buff.increment(row, columns[i], amounts[i]);
       }
       reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
+      flushIfNeeded();
     } else {
       internalIncrementAndGet(row, columns, amounts);
     }
@@ -695,9 +825,28 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public Scanner scan(Scan scan) {
     ensureTransactionIsStarted();
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
+    ScanProjection projection = ScanProjection.of(scan);
+    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan, projection);
     try {
-      return new BufferingScanner(bufferMap, scanPersisted(scan));
+      if (projection == null || projection.getValueFilter() == null
+        || (bufferMap.isEmpty() && !enableReadlessIncrements)) {
+        return new BufferingScanner(bufferMap, scanPersisted(scan), null, scan.isReversed());
+      }
+      // Buffered changes can change whether a column matches the value filter, hence the value filter can only be
+      // applied after merging them with the persisted columns. With readless increments, the persisted cells of a
+      // column can be deltas that are only summed up when read, so the value filter cannot be pushed down either
+      Scan persistedScan = new Scan(scan.getStartRow(), scan.getStopRow(), scan.getFilter())
+        .setReversed(scan.isReversed());
+      if (scan.getColumns() != null) {
+        persistedScan.setColumns(scan.getColumns());
+      }
+      if (scan.getColumnPrefix() != null) {
+        persistedScan.setColumnPrefix(scan.getColumnPrefix());
+      }
+      return new BufferingScanner(bufferMap, scanPersisted(persistedScan), projection, scan.isReversed());
+    } catch (UnsupportedOperationException e) {
+      // e.g. a reversed scan on a store that cannot scan in reverse
+      throw e;
     } catch (Exception e) {
       LOG.debug("scan failed for table: " + getTransactionAwareName() +
           ", scan: " + scan.toString(), e);
@@ -705,21 +854,32 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> scanBuffer(Scan scan) {
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap;
-    byte[] startRow = scan.getStartRow();
-    byte[] stopRow = scan.getStopRow();
-    if (startRow == null && stopRow == null) {
-      bufferMap = buff;
-    } else if (startRow == null) {
-      bufferMap = buff.headMap(stopRow, false);
-    } else if (stopRow == null) {
-      bufferMap = buff.tailMap(startRow, true);
-    } else {
-      bufferMap = buff.subMap(startRow, true, stopRow, false);
-    }
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> scanBuffer(Scan scan,
+                                                                       @Nullable ScanProjection projection) {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = buff.getRows(scan.getStartRow(), scan.getStopRow());
     bufferMap = applyFilter(bufferMap, scan.getFilter());
-    return bufferMap;
+    return applyProjection(bufferMap, projection);
+  }
+
+  /**
+   * Keeps only the buffered changes of the columns selected by the given projection. Value filter is not applied,
+   * since the values are only known after merging the changes with the persisted values.
+   */
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> applyProjection(
+                                                        NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap,
+                                                        @Nullable ScanProjection projection) {
+    if (projection == null || (projection.getColumns() == null && projection.getColumnPrefix() == null)) {
+      return bufferMap;
+    }
+
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> entry : bufferMap.entrySet()) {
+      NavigableMap<byte[], Update> columns = projection.selectColumns(entry.getValue());
+      if (!columns.isEmpty()) {
+        result.put(entry.getKey(), columns);
+      }
+    }
+    return result;
   }
 
   private NavigableMap<byte[], NavigableMap<byte[], Update>> applyFilter(
@@ -746,11 +906,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
-    boolean rowDeleted = buffCols == null && buff.containsKey(row);
-    if (rowDeleted) {
-      return Collections.emptyMap();
-    }
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     Map<byte[], byte[]> persisted = getPersisted(row, null);
 
@@ -767,7 +923,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row, byte[][] columns) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     // if nothing locally, return all from server
     if (buffCols == null) {
@@ -995,12 +1151,22 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     private final NavigableMap<byte[], NavigableMap<byte[], Update>> buffer;
     private final Scanner persistedScanner;
     private final Iterator<byte[]> keyIter;
+    private final ScanProjection mergedProjection;
+    private final boolean reversed;
     private byte[] currentKey;
     private Row currentRow;
 
-    private BufferingScanner(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, Scanner persistedScanner) {
+    /**
+     * Creates a scanner that merges the given buffer with the persisted rows. If a projection is given, it is
+     * applied to the merged rows, and rows without any selected column are skipped. If reversed is true, the
+     * persisted scanner must return the rows in descending order, and the merged rows are returned in that order.
+     */
+    private BufferingScanner(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, Scanner persistedScanner,
+                             @Nullable ScanProjection mergedProjection, boolean reversed) {
       this.buffer = buffer;
-      this.keyIter = getBufferKeyIterator(buffer);
+      this.mergedProjection = mergedProjection;
+      this.reversed = reversed;
+      this.keyIter = getBufferKeyIterator(reversed ? buffer.descendingMap() : buffer);
       if (this.keyIter.hasNext()) {
         currentKey = keyIter.next();
       }
@@ -1011,6 +1177,22 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     @Nullable
     @Override
     public Row next() {
+      Row row = nextMerged();
+      if (mergedProjection == null) {
+        return row;
+      }
+      while (row != null) {
+        NavigableMap<byte[], byte[]> columns = mergedProjection.select(row.getColumns());
+        if (!columns.isEmpty()) {
+          return new Result(row.getRow(), columns);
+        }
+        row = nextMerged();
+      }
+      return null;
+    }
+
+    @Nullable
+    private Row nextMerged() {
       if (currentKey == null && currentRow == null) {
         // out of rows
         return null;
@@ -1025,6 +1207,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         order = -1;
       } else {
         order = Bytes.compareTo(currentKey, currentRow.getRow());
+        if (reversed) {
+          order = -order;
+        }
       }
 
       Row result;
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link WriteBuffer} that keeps changes in sorted maps, with one {@link Update} object for each column.
+ */
+public final class MapWriteBuffer implements WriteBuffer {
+
+  // Approximate sizes of the objects created for each row and each column, other than the keys and values
+  private static final int ROW_OVERHEAD = 112;
+  private static final int CELL_OVERHEAD = 88;
+
+  private final ConcurrentNavigableMap<byte[], NavigableMap<byte[], Update>> buff =
+    new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+  private long sizeInBytes;
+
+  @Override
+  public boolean isEmpty() {
+    return buff.isEmpty();
+  }
+
+  @Override
+  public int getRowCount() {
+    return buff.size();
+  }
+
+  @Override
+  public long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  @Override
+  public void clear() {
+    buff.clear();
+    sizeInBytes = 0L;
+  }
+
+  @Override
+  public void put(byte[] row, byte[] column, @Nullable byte[] value) {
+    PutValue update = new PutValue(copy(value));
+    Update existing = getOrCreateRow(row).put(copy(column), update);
+    updateSize(column, existing, update);
+  }
+
+  @Override
+  public void increment(byte[] row, byte[] column, long amount) {
+    NavigableMap<byte[], Update> colVals = getOrCreateRow(row);
+    Update existing = colVals.get(column);
+    Update update = Updates.mergeUpdates(existing, new IncrementValue(amount));
+    colVals.put(existing == null ? copy(column) : column, update);
+    updateSize(column, existing, update);
+  }
+
+  @Nullable
+  @Override
+  public NavigableMap<byte[], Update> getRow(byte[] row) {
+    return buff.get(row);
+  }
+
+  @Override
+  public NavigableMap<byte[], NavigableMap<byte[], Update>> getRows(@Nullable byte[] startRow,
+                                                                   @Nullable byte[] stopRow) {
+    if (startRow == null && stopRow == null) {
+      return buff;
+    }
+    if (startRow == null) {
+      return buff.headMap(stopRow, false);
+    }
+    if (stopRow == null) {
+      return buff.tailMap(startRow, true);
+    }
+    return buff.subMap(startRow, true, stopRow, false);
+  }
+
+  @Override
+  public Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rowIterator() {
+    return buff.entrySet().iterator();
+  }
+
+  private NavigableMap<byte[], Update> getOrCreateRow(byte[] row) {
+    NavigableMap<byte[], Update> colVals = buff.get(row);
+    if (colVals == null) {
+      colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      buff.put(copy(row), colVals);
+      sizeInBytes += ROW_OVERHEAD + row.length;
+    }
+    return colVals;
+  }
+
+  private void updateSize(byte[] column, @Nullable Update existing, Update update) {
+    if (existing == null) {
+      sizeInBytes += CELL_OVERHEAD + column.length + getValueSize(update);
+    } else {
+      sizeInBytes += getValueSize(update) - getValueSize(existing);
+    }
+  }
+
+  private static int getValueSize(Update update) {
+    if (update instanceof IncrementValue) {
+      return Bytes.SIZEOF_LONG;
+    }
+    byte[] value = ((PutValue) update).getValue();
+    return value == null ? 0 : value.length;
+  }
+
+  @Nullable
+  private static byte[] copy(@Nullable byte[] bytes) {
+    return bytes == null ? null : Arrays.copyOf(bytes, bytes.length);
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.table.Scan;
+import co.cask.cdap.api.dataset.table.ValueFilter;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import javax.annotation.Nullable;
+
+/**
+ * The selection of columns and values of a {@link Scan}, for table implementations to apply while scanning.
+ */
+public final class ScanProjection {
+
+  @Nullable
+  private final byte[][] columns;
+  @Nullable
+  private final byte[] columnPrefix;
+  @Nullable
+  private final ValueFilter valueFilter;
+
+  /**
+   * Returns the {@link ScanProjection} of the given {@link Scan}, or {@code null} if the scan returns all columns.
+   */
+  @Nullable
+  public static ScanProjection of(Scan scan) {
+    if (scan.getColumns() == null && scan.getColumnPrefix() == null && scan.getValueFilter() == null) {
+      return null;
+    }
+    return new ScanProjection(scan.getColumns(), scan.getColumnPrefix(), scan.getValueFilter());
+  }
+
+  private ScanProjection(@Nullable byte[][] columns, @Nullable byte[] columnPrefix,
+                         @Nullable ValueFilter valueFilter) {
+    if (columns != null) {
+      columns = Arrays.copyOf(columns, columns.length);
+      Arrays.sort(columns, Bytes.BYTES_COMPARATOR);
+    }
+    this.columns = columns;
+    this.columnPrefix = columnPrefix;
+    this.valueFilter = valueFilter;
+  }
+
+  /**
+   * Returns the columns to include sorted, or {@code null} if not limited to a set of columns.
+   */
+  @Nullable
+  public byte[][] getColumns() {
+    return columns;
+  }
+
+  @Nullable
+  public byte[] getColumnPrefix() {
+    return columnPrefix;
+  }
+
+  @Nullable
+  public ValueFilter getValueFilter() {
+    return valueFilter;
+  }
+
+  /**
+   * Returns {@code true} if nothing can be returned, which is the case if the set of columns is empty.
+   */
+  public boolean isEmpty() {
+    return columns != null && columns.length == 0;
+  }
+
+  /**
+   * Returns {@code true} if the given column is included by the columns and the column prefix.
+   */
+  public boolean includesColumn(byte[] column) {
+    if (columnPrefix != null && !Bytes.startsWith(column, columnPrefix)) {
+      return false;
+    }
+    return columns == null || Arrays.binarySearch(columns, column, Bytes.BYTES_COMPARATOR) >= 0;
+  }
+
+  /**
+   * Returns {@code true} if the given column is included and the value matches the value filter.
+   */
+  public boolean includes(byte[] column, byte[] value) {
+    return includesColumn(column) && (valueFilter == null || valueFilter.matches(value));
+  }
+
+  /**
+   * Returns the included columns of the given row, regardless of the values.
+   */
+  public <T> NavigableMap<byte[], T> selectColumns(NavigableMap<byte[], T> row) {
+    NavigableMap<byte[], T> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<byte[], T> entry : row.entrySet()) {
+      if (includesColumn(entry.getKey())) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the included columns of the given row that have matching values.
+   */
+  public NavigableMap<byte[], byte[]> select(Map<byte[], byte[]> row) {
+    NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<byte[], byte[]> entry : row.entrySet()) {
+      if (includes(entry.getKey(), entry.getValue())) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+}
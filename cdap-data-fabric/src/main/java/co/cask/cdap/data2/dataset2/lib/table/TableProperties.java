@@ -32,6 +32,7 @@ import javax.annotation.Nullable;
 public class TableProperties {
 
   private static final byte[] DEFAULT_DATA_COLUMN_FAMILY = Bytes.toBytes("d");
+  private static final int DEFAULT_ROW_BLOOM_FILTER_ROWS = 1000000;
 
   /**
    * Extract the schema, parsed as Json, from the properties.
@@ -90,6 +91,74 @@ public class TableProperties {
     return !"true".equalsIgnoreCase(props.get(Constants.Dataset.TABLE_TX_DISABLED));
   }
 
+  /**
+   * Returns whether or not the dataset defined in the given specification should buffer changes in the compact
+   * {@link ArenaWriteBuffer}. Defaults to false.
+   */
+  public static boolean useCompactWriteBuffer(Map<String, String> props) {
+    return "true".equalsIgnoreCase(props.get(Constants.Dataset.TABLE_COMPACT_WRITE_BUFFER));
+  }
+
+  /**
+   * Returns whether or not the compact write buffer of the dataset defined in the given specification should be
+   * allocated off-heap. Defaults to false.
+   */
+  public static boolean useOffHeapWriteBuffer(Map<String, String> props) {
+    return "true".equalsIgnoreCase(props.get(Constants.Dataset.TABLE_OFF_HEAP_WRITE_BUFFER));
+  }
+
+  /**
+   * Returns the number of buffered bytes at which the dataset defined in the given specification should persist
+   * the changes of a transaction before it commits. Defaults to zero, which means changes are only persisted on commit.
+   *
+   * @throws IllegalArgumentException if the property value is not a non-negative number
+   */
+  public static long getWriteBufferFlushBytes(Map<String, String> props) {
+    String value = props.get(Constants.Dataset.TABLE_WRITE_BUFFER_FLUSH_BYTES);
+    if (value == null) {
+      return 0L;
+    }
+    try {
+      long bytes = Long.parseLong(value);
+      if (bytes >= 0) {
+        return bytes;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to throw
+    }
+    throw new IllegalArgumentException("Invalid write buffer flush size: " + value);
+  }
+
+  /**
+   * Returns whether or not the dataset defined in the given specification should keep a Bloom filter of its row keys.
+   * Only supported by LevelDB tables. Defaults to false.
+   */
+  public static boolean useRowBloomFilter(Map<String, String> props) {
+    return "true".equalsIgnoreCase(props.get(Constants.Dataset.TABLE_ROW_BLOOM_FILTER));
+  }
+
+  /**
+   * Returns the number of rows that the row Bloom filter of the dataset defined in the given specification should be
+   * sized for. Defaults to {@link #DEFAULT_ROW_BLOOM_FILTER_ROWS}.
+   *
+   * @throws IllegalArgumentException if the property value is not a positive number
+   */
+  public static int getRowBloomFilterRows(Map<String, String> props) {
+    String value = props.get(Constants.Dataset.TABLE_ROW_BLOOM_FILTER_ROWS);
+    if (value == null) {
+      return DEFAULT_ROW_BLOOM_FILTER_ROWS;
+    }
+    try {
+      int rows = Integer.parseInt(value);
+      if (rows > 0) {
+        return rows;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to throw
+    }
+    throw new IllegalArgumentException("Invalid number of rows for the row Bloom filter: " + value);
+  }
+
   /**
    * Returns the column family as being set in the given specification.
    * If it is not set, the {@link #DEFAULT_DATA_COLUMN_FAMILY} will be returned.
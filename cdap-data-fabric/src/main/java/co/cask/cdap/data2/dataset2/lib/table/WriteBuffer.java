@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory buffer of the changes made by a transaction to a {@link BufferingTable}, which is described as
+ * row->(column->{@link Update}). A {@link PutValue} with {@code null} value means that the column was deleted.
+ * Implementations are not required to be thread safe.
+ */
+public interface WriteBuffer {
+
+  /**
+   * Returns {@code true} if there is no change in the buffer.
+   */
+  boolean isEmpty();
+
+  /**
+   * Returns the number of rows that have changes in the buffer.
+   */
+  int getRowCount();
+
+  /**
+   * Returns an estimate of the number of bytes of memory used by the buffered changes.
+   */
+  long getSizeInBytes();
+
+  /**
+   * Removes all changes from the buffer.
+   */
+  void clear();
+
+  /**
+   * Writes a value to a column, replacing any buffered change of the same column. The given arrays will be copied.
+   *
+   * @param row the row key
+   * @param column the column key
+   * @param value the value to write or {@code null} to delete the column
+   */
+  void put(byte[] row, byte[] column, @Nullable byte[] value);
+
+  /**
+   * Increments a column, which is merged with any buffered change of the same column as defined by
+   * {@link Updates#mergeUpdates(Update, Update)}. The given arrays will be copied.
+   *
+   * @param row the row key
+   * @param column the column key
+   * @param amount the amount to increment by
+   */
+  void increment(byte[] row, byte[] column, long amount);
+
+  /**
+   * Returns the buffered changes of the given row.
+   *
+   * @return a map from column to change or {@code null} if there is no change for the row.
+   *         The returned map must not be modified.
+   */
+  @Nullable
+  NavigableMap<byte[], Update> getRow(byte[] row);
+
+  /**
+   * Returns the buffered changes of a range of rows.
+   *
+   * @param startRow the first row of the range, inclusive, or {@code null} to start from the first row
+   * @param stopRow the last row of the range, exclusive, or {@code null} to end at the last row
+   * @return a map described as row->(column->change). The returned map must not be modified.
+   */
+  NavigableMap<byte[], NavigableMap<byte[], Update>> getRows(@Nullable byte[] startRow, @Nullable byte[] stopRow);
+
+  /**
+   * Returns an iterator over the buffered changes of all rows in row key order. Unlike {@link #getRows}, it does not
+   * need memory for all changes at once if the implementation decodes each row when the iterator reaches it.
+   * The buffer must not be modified while iterating.
+   *
+   * @return an iterator of row->(column->change) entries. The returned maps must not be modified.
+   */
+  Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rowIterator();
+}
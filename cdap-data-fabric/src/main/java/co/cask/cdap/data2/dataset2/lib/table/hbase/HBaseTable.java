@@ -23,13 +23,16 @@ import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetSpecification;
 import co.cask.cdap.api.dataset.table.Filter;
+import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.dataset.table.ValueFilter;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTable;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.data2.dataset2.lib.table.IncrementValue;
 import co.cask.cdap.data2.dataset2.lib.table.PutValue;
+import co.cask.cdap.data2.dataset2.lib.table.ScanProjection;
 import co.cask.cdap.data2.dataset2.lib.table.TableProperties;
 import co.cask.cdap.data2.dataset2.lib.table.Update;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.PrefixedNamespaces;
@@ -55,6 +58,11 @@ import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.tephra.TransactionCodec;
 import org.apache.tephra.TxConstants;
@@ -63,6 +71,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -334,8 +343,30 @@ public class HBaseTable extends BufferingTable {
   @ReadOnly
   @Override
   protected Scanner scanPersisted(co.cask.cdap.api.dataset.table.Scan scan) throws Exception {
+    ScanProjection projection = ScanProjection.of(scan);
+    if (projection != null && projection.isEmpty()) {
+      // an empty set of columns selects nothing
+      return new Scanner() {
+        @Override
+        public Row next() {
+          return null;
+        }
+
+        @Override
+        public void close() {
+          // no-op
+        }
+      };
+    }
+
     ScanBuilder hScan = tableUtil.buildScan();
-    hScan.addFamily(columnFamily);
+    if (projection != null && projection.getColumns() != null) {
+      for (byte[] column : projection.getColumns()) {
+        hScan.addColumn(columnFamily, column);
+      }
+    } else {
+      hScan.addFamily(columnFamily);
+    }
     // todo: should be configurable
     // NOTE: by default we assume scanner is used in mapreduce job, hence no cache blocks
     hScan.setCacheBlocks(false);
@@ -343,6 +374,10 @@ public class HBaseTable extends BufferingTable {
 
     byte[] startRow = scan.getStartRow();
     byte[] stopRow = scan.getStopRow();
+    Filter filter = scan.getFilter();
+    if (scan.isReversed()) {
+      return scanReversed(hScan, startRow, stopRow, filter, projection);
+    }
     if (startRow != null) {
       hScan.setStartRow(startRow);
     }
@@ -350,18 +385,61 @@ public class HBaseTable extends BufferingTable {
       hScan.setStopRow(stopRow);
     }
 
-    setFilterIfNeeded(hScan, scan.getFilter());
+    setFilterIfNeeded(hScan, filter, projection);
     hScan.setAttribute(TxConstants.TX_OPERATION_ATTRIBUTE_KEY, txCodec.encode(tx));
 
     ResultScanner resultScanner = wrapResultScanner(hTable.getScanner(hScan.build()));
     return new HBaseScanner(resultScanner, columnFamily);
   }
 
-  private void setFilterIfNeeded(ScanBuilder scan, @Nullable Filter filter) {
-    if (filter == null) {
-      return;
+  /**
+   * Scans the rows in descending order, using a reversed HBase scan. A reversed HBase scan starts at its start row
+   * (inclusive) and ends before its stop row (exclusive), hence the bounds are swapped: the scan starts at the stop
+   * row, and ends at the closest key before the start row that can be expressed. The few rows let through outside of
+   * the range are skipped by the {@link ReversedRangeScanner}. Reversed scans are not supported by HBase 0.96.
+   */
+  private Scanner scanReversed(ScanBuilder hScan, @Nullable byte[] startRow, @Nullable byte[] stopRow,
+                               @Nullable Filter filter, @Nullable ScanProjection projection) throws IOException {
+    if (!tableUtil.isReversedScanSupported()) {
+      throw new UnsupportedOperationException("Reversed scans are not supported by the HBase version of table "
+                                                + getTableName());
+    }
+    hScan.setReversed(true);
+    if (stopRow != null) {
+      hScan.setStartRow(stopRow);
+    }
+    if (startRow != null && startRow.length > 0) {
+      hScan.setStopRow(lowerBoundForReversedScan(startRow));
+    }
+
+    // the HBase fuzzy row filter seeks forward, hence it is applied to the rows returned by a reversed scan instead
+    FuzzyRowFilter rowFilter = null;
+    if (filter instanceof FuzzyRowFilter) {
+      rowFilter = (FuzzyRowFilter) filter;
+      filter = null;
+    }
+    setFilterIfNeeded(hScan, filter, projection);
+    hScan.setAttribute(TxConstants.TX_OPERATION_ATTRIBUTE_KEY, txCodec.encode(tx));
+
+    ResultScanner resultScanner = wrapResultScanner(hTable.getScanner(hScan.build()));
+    return new ReversedRangeScanner(new HBaseScanner(resultScanner, columnFamily), startRow, stopRow, rowFilter);
+  }
+
+  /**
+   * Returns a key that is smaller than the given row, such that as few keys as possible are between the two.
+   */
+  private static byte[] lowerBoundForReversedScan(byte[] row) {
+    if (row[row.length - 1] == 0) {
+      // no key is between the row and the row without its trailing zero
+      return Arrays.copyOf(row, row.length - 1);
     }
+    byte[] result = Arrays.copyOf(row, row.length);
+    result[result.length - 1]--;
+    return result;
+  }
 
+  private void setFilterIfNeeded(ScanBuilder scan, @Nullable Filter filter, @Nullable ScanProjection projection) {
+    List<org.apache.hadoop.hbase.filter.Filter> filters = new ArrayList<>();
     if (filter instanceof FuzzyRowFilter) {
       FuzzyRowFilter fuzzyRowFilter = (FuzzyRowFilter) filter;
       List<Pair<byte[], byte[]>> fuzzyPairs =
@@ -369,10 +447,53 @@ public class HBaseTable extends BufferingTable {
       for (ImmutablePair<byte[], byte[]> pair : fuzzyRowFilter.getFuzzyKeysData()) {
         fuzzyPairs.add(Pair.newPair(pair.getFirst(), pair.getSecond()));
       }
-      scan.setFilter(new org.apache.hadoop.hbase.filter.FuzzyRowFilter(fuzzyPairs));
-    } else {
+      filters.add(new org.apache.hadoop.hbase.filter.FuzzyRowFilter(fuzzyPairs));
+    } else if (filter != null) {
       throw new IllegalArgumentException("Unsupported filter: " + filter);
     }
+
+    // the set of columns is applied to the scan itself, the column prefix and value filter are applied as filters.
+    // A value filter is never passed here if readless increments are enabled: it would be evaluated against the
+    // increment deltas rather than the summed values, hence the BufferingTable applies it after reading instead.
+    if (projection != null) {
+      if (projection.getColumnPrefix() != null) {
+        filters.add(new ColumnPrefixFilter(projection.getColumnPrefix()));
+      }
+      if (projection.getValueFilter() != null) {
+        addValueFilters(filters, projection.getValueFilter());
+      }
+    }
+
+    if (filters.size() == 1) {
+      scan.setFilter(filters.get(0));
+    } else if (!filters.isEmpty()) {
+      scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, filters));
+    }
+  }
+
+  private void addValueFilters(List<org.apache.hadoop.hbase.filter.Filter> filters, ValueFilter valueFilter) {
+    switch (valueFilter.getType()) {
+      case EQUAL:
+        filters.add(new org.apache.hadoop.hbase.filter.ValueFilter(
+          CompareFilter.CompareOp.EQUAL, new BinaryComparator(valueFilter.getLowerBound())));
+        break;
+      case PREFIX:
+        filters.add(new org.apache.hadoop.hbase.filter.ValueFilter(
+          CompareFilter.CompareOp.EQUAL, new BinaryPrefixComparator(valueFilter.getLowerBound())));
+        break;
+      case RANGE:
+        if (valueFilter.getLowerBound() != null) {
+          filters.add(new org.apache.hadoop.hbase.filter.ValueFilter(
+            CompareFilter.CompareOp.GREATER_OR_EQUAL, new BinaryComparator(valueFilter.getLowerBound())));
+        }
+        if (valueFilter.getUpperBound() != null) {
+          filters.add(new org.apache.hadoop.hbase.filter.ValueFilter(
+            CompareFilter.CompareOp.LESS, new BinaryComparator(valueFilter.getUpperBound())));
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported value filter: " + valueFilter);
+    }
   }
 
   /**
@@ -494,4 +615,50 @@ public class HBaseTable extends BufferingTable {
       }
     };
   }
+
+  /**
+   * Limits the rows of a reversed scan to the range of the {@link co.cask.cdap.api.dataset.table.Scan}, and applies
+   * the row filter to them.
+   */
+  private static final class ReversedRangeScanner implements Scanner {
+
+    private final Scanner scanner;
+    private final byte[] startRow;
+    private final byte[] stopRow;
+    private final FuzzyRowFilter filter;
+    private boolean done;
+
+    private ReversedRangeScanner(Scanner scanner, @Nullable byte[] startRow, @Nullable byte[] stopRow,
+                                 @Nullable FuzzyRowFilter filter) {
+      this.scanner = scanner;
+      this.startRow = startRow;
+      this.stopRow = stopRow;
+      this.filter = filter;
+    }
+
+    @Nullable
+    @Override
+    public Row next() {
+      while (!done) {
+        Row row = scanner.next();
+        if (row == null || (startRow != null && Bytes.compareTo(row.getRow(), startRow) < 0)) {
+          done = true;
+          break;
+        }
+        // the stop row is exclusive, but it is the first row of the reversed HBase scan
+        if (stopRow != null && Bytes.equals(row.getRow(), stopRow)) {
+          continue;
+        }
+        if (filter == null || filter.filterRow(row.getRow()) == FuzzyRowFilter.ReturnCode.INCLUDE) {
+          return row;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public void close() {
+      scanner.close();
+    }
+  }
 }
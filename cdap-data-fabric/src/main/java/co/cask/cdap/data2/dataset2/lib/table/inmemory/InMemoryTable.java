@@ -29,6 +29,7 @@ import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTable;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
+import co.cask.cdap.data2.dataset2.lib.table.ScanProjection;
 import co.cask.cdap.data2.dataset2.lib.table.Update;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.AbstractIterator;
@@ -143,10 +144,31 @@ public class InMemoryTable extends BufferingTable {
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> rows = unwrapDeletesForRows(visibleRowRange);
 
     rows = applyFilter(rows, scan.getFilter());
+    rows = applyProjection(rows, ScanProjection.of(scan));
+    if (scan.isReversed()) {
+      rows = rows.descendingMap();
+    }
 
     return new InMemoryScanner(wrapIterator(rows.entrySet().iterator()));
   }
 
+  private NavigableMap<byte[], NavigableMap<byte[], byte[]>> applyProjection(
+                                                    NavigableMap<byte[], NavigableMap<byte[], byte[]>> map,
+                                                    @Nullable ScanProjection projection) {
+    if (projection == null) {
+      return map;
+    }
+
+    NavigableMap<byte[], NavigableMap<byte[], byte[]>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<byte[], NavigableMap<byte[], byte[]>> entry : map.entrySet()) {
+      NavigableMap<byte[], byte[]> columns = projection.select(entry.getValue());
+      if (!columns.isEmpty()) {
+        result.put(entry.getKey(), columns);
+      }
+    }
+    return result;
+  }
+
   private NavigableMap<byte[], NavigableMap<byte[], byte[]>> applyFilter(
                                                     NavigableMap<byte[], NavigableMap<byte[], byte[]>> map,
                                                     @Nullable Filter filter) {
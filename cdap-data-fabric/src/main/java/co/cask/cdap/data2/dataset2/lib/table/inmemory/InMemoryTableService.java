@@ -35,189 +35,190 @@ import java.util.Comparator;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Holds all in-memory tables for {@link InMemoryTable}.
+ *
+ * Each table keeps its rows in a concurrent sorted map, and each row is guarded by its own lock, hence operations on
+ * different rows or different tables don't block each other. Operations that span multiple rows, such as
+ * {@link #merge(String, SortedMap, long)} and {@link #getRowRange(String, byte[], byte[], Transaction)}, are atomic
+ * on each row, but not across rows.
  */
-// todo: use locks instead of synchronize
 // todo: consider using SortedMap instead of NavigableMap in APIs
 public class InMemoryTableService {
-  private static Map<String, ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>>> tables =
-    Maps.newHashMap();
+  private static final ConcurrentMap<String, ConcurrentNavigableMap<byte[], RowData>> tables =
+    Maps.newConcurrentMap();
 
-  public static synchronized boolean exists(String tableName) {
+  public static boolean exists(String tableName) {
     return tables.containsKey(tableName);
   }
 
-  public static synchronized void create(String tableName) {
-    if (!tables.containsKey(tableName)) {
-      tables.put(tableName, new ConcurrentSkipListMap<byte[],
-        NavigableMap<byte[], NavigableMap<Long, Update>>>(Bytes.BYTES_COMPARATOR));
-    }
+  public static void create(String tableName) {
+    tables.putIfAbsent(tableName, new ConcurrentSkipListMap<byte[], RowData>(Bytes.BYTES_COMPARATOR));
   }
 
-  public static synchronized void truncate(String tableName) {
-    tables.get(tableName).clear();
+  public static void truncate(String tableName) {
+    removeRows(getTable(tableName));
   }
 
-  public static synchronized void drop(String tableName) {
+  public static void drop(String tableName) {
     tables.remove(tableName);
   }
 
-  public static synchronized void reset() {
+  public static void reset() {
     tables.clear();
   }
 
   // no nulls
-  public static synchronized void merge(String tableName,
-                                        SortedMap<byte[], ? extends SortedMap<byte[], ? extends Update>> changes,
-                                        long version) {
+  public static void merge(String tableName,
+                           SortedMap<byte[], ? extends SortedMap<byte[], ? extends Update>> changes,
+                           long version) {
     // todo: handle nulls
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
+    ConcurrentNavigableMap<byte[], RowData> table = getTable(tableName);
     SortedMap<byte[], ? extends SortedMap<byte[], Update>> changesCopy = deepCopyUpdates(changes);
     for (Map.Entry<byte[], ? extends SortedMap<byte[], Update>> change : changesCopy.entrySet()) {
       merge(table, change.getKey(), change.getValue(), version);
     }
   }
 
-  private static void merge(ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table,
+  private static void merge(ConcurrentNavigableMap<byte[], RowData> table,
                             byte[] row, Map<byte[], Update> changes, long version) {
     // get the correct row from the table, create it if it doesn't exist
-    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
-    if (rowMap == null) {
-      rowMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      table.put(row, rowMap);
-    }
-    // now merge the changes into the row, one by one
-    for (Map.Entry<byte[], Update> keyVal : changes.entrySet()) {
-      // create the column in the row if it does not exist
-      NavigableMap<Long, Update> colMap = rowMap.get(keyVal.getKey());
-      if (colMap == null) {
-        colMap = Maps.newTreeMap();
-        rowMap.put(keyVal.getKey(), colMap);
+    RowData rowData = lockRow(table, row, true);
+    try {
+      // now merge the changes into the row, one by one
+      for (Map.Entry<byte[], Update> keyVal : changes.entrySet()) {
+        NavigableMap<Long, Update> colMap = rowData.getOrCreateColumn(keyVal.getKey());
+        // put into the column with given version
+        Update merged = Updates.mergeUpdates(colMap.get(version), keyVal.getValue());
+        colMap.put(version, merged);
       }
-      // put into the column with given version
-      Update merged = Updates.mergeUpdates(colMap.get(version), keyVal.getValue());
-      colMap.put(version, merged);
+    } finally {
+      rowData.unlock();
     }
   }
 
   // todo: remove it from here: only used by "system" metrics table, which should be revised
   @Deprecated
-  public static synchronized Map<byte[], Long> increment(String tableName, byte[] row, Map<byte[], Long> increments) {
+  public static Map<byte[], Long> increment(String tableName, byte[] row, Map<byte[], Long> increments) {
     Map<byte[], Long> resultMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
     // get the correct row from the table, create it if it doesn't exist
-    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
-    if (rowMap == null) {
-      rowMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      table.put(row, rowMap);
-    }
-    // now increment each column, one by one
-    long versionForWrite = System.currentTimeMillis();
-    for (Map.Entry<byte[], Long> inc : increments.entrySet()) {
-      IncrementValue increment = new IncrementValue(inc.getValue());
-      // create the column in the row if it does not exist
-      NavigableMap<Long, Update> colMap = rowMap.get(inc.getKey());
-      Update last = null;
-      if (colMap == null) {
-        colMap = Maps.newTreeMap();
-        rowMap.put(inc.getKey(), colMap);
-      } else {
-        last = colMap.lastEntry().getValue();
+    RowData rowData = lockRow(getTable(tableName), row, true);
+    try {
+      // now increment each column, one by one
+      long versionForWrite = System.currentTimeMillis();
+      for (Map.Entry<byte[], Long> inc : increments.entrySet()) {
+        IncrementValue increment = new IncrementValue(inc.getValue());
+        // create the column in the row if it does not exist
+        NavigableMap<Long, Update> colMap = rowData.getOrCreateColumn(inc.getKey());
+        Update last = colMap.isEmpty() ? null : colMap.lastEntry().getValue();
+        Update merged = Updates.mergeUpdates(last, increment);
+        // put into the column with given version
+        long newValue = Bytes.toLong(merged.getBytes());
+        resultMap.put(inc.getKey(), newValue);
+        colMap.put(versionForWrite, merged);
       }
-      Update merged = Updates.mergeUpdates(last, increment);
-      // put into the column with given version
-      long newValue = Bytes.toLong(merged.getBytes());
-      resultMap.put(inc.getKey(), newValue);
-      colMap.put(versionForWrite, merged);
+    } finally {
+      rowData.unlock();
     }
     return resultMap;
   }
 
-  public static synchronized boolean swap(String tableName, byte[] row, byte[] column,
-                                          byte[] oldValue, byte[] newValue) {
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
-    // get the correct row from the table, create it if it doesn't exist
-    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
-    Update existingValue = null;
-    if (rowMap != null) {
-      NavigableMap<Long, Update> columnMap = rowMap.get(column);
-      if (columnMap != null) {
-        existingValue = columnMap.lastEntry().getValue();
+  public static boolean swap(String tableName, byte[] row, byte[] column, byte[] oldValue, byte[] newValue) {
+    // the row is only created if a new value needs to be written
+    RowData rowData = lockRow(getTable(tableName), row, newValue != null);
+    try {
+      Update existingValue = null;
+      if (rowData != null) {
+        NavigableMap<Long, Update> columnMap = rowData.columns.get(column);
+        if (columnMap != null && !columnMap.isEmpty()) {
+          existingValue = columnMap.lastEntry().getValue();
+        }
       }
-    }
-    // verify existing value matches
-    if (oldValue == null && existingValue != null) {
-      return false;
-    }
-    if (oldValue != null && (existingValue == null || !Bytes.equals(oldValue, existingValue.getBytes()))) {
-      return false;
-    }
-    // write new value
-    if (newValue == null) {
-      if (rowMap != null) {
-        rowMap.remove(column);
+      // verify existing value matches
+      if (oldValue == null && existingValue != null) {
+        return false;
       }
-    } else {
-      if (rowMap == null) {
-        rowMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        table.put(row, rowMap);
+      if (oldValue != null && (existingValue == null || !Bytes.equals(oldValue, existingValue.getBytes()))) {
+        return false;
+      }
+      // write new value
+      if (newValue == null) {
+        if (rowData != null) {
+          rowData.columns.remove(column);
+        }
+      } else {
+        PutValue newPut = new PutValue(newValue);
+        rowData.getOrCreateColumn(column).put(System.currentTimeMillis(), newPut);
       }
-      NavigableMap<Long, Update> columnMap = rowMap.get(column);
-      if (columnMap == null) {
-        columnMap = Maps.newTreeMap();
-        rowMap.put(column, columnMap);
+      return true;
+    } finally {
+      if (rowData != null) {
+        rowData.unlock();
       }
-      PutValue newPut = new PutValue(newValue);
-      columnMap.put(System.currentTimeMillis(), newPut);
     }
-    return true;
   }
 
-  public static synchronized void undo(String tableName,
-                                       NavigableMap<byte[], NavigableMap<byte[], Update>> changes,
-                                       long version) {
+  public static void undo(String tableName, NavigableMap<byte[], NavigableMap<byte[], Update>> changes, long version) {
     // todo: handle nulls
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
+    ConcurrentNavigableMap<byte[], RowData> table = getTable(tableName);
     for (Map.Entry<byte[], NavigableMap<byte[], Update>> change : changes.entrySet()) {
-      byte[] row = change.getKey();
-      NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
-      if (rowMap != null) {
+      RowData rowData = lockRow(table, change.getKey(), false);
+      if (rowData == null) {
+        continue;
+      }
+      try {
         for (byte[] column : change.getValue().keySet()) {
-          NavigableMap<Long, Update> values = rowMap.get(column);
-          values.remove(version);
+          NavigableMap<Long, Update> values = rowData.columns.get(column);
+          if (values != null) {
+            values.remove(version);
+          }
         }
+      } finally {
+        rowData.unlock();
       }
     }
   }
 
-  public static synchronized void delete(String tableName, Iterable<byte[]> rows) {
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
+  public static void delete(String tableName, Iterable<byte[]> rows) {
+    ConcurrentNavigableMap<byte[], RowData> table = getTable(tableName);
     for (byte[] row : rows) {
-      table.remove(row);
+      RowData rowData = lockRow(table, row, false);
+      if (rowData != null) {
+        removeRow(table, row, rowData);
+      }
     }
   }
 
-  public static synchronized void deleteColumns(String tableName, byte[] row, byte[] column) {
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
-    NavigableMap<byte[], NavigableMap<Long, Update>> columnValues = table.get(row);
-    columnValues.remove(column);
+  public static void deleteColumns(String tableName, byte[] row, byte[] column) {
+    RowData rowData = lockRow(getTable(tableName), row, false);
+    if (rowData == null) {
+      return;
+    }
+    try {
+      rowData.columns.remove(column);
+    } finally {
+      rowData.unlock();
+    }
   }
 
-  public static synchronized void delete(String tableName, byte[] rowPrefix) {
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
+  public static void delete(String tableName, byte[] rowPrefix) {
+    ConcurrentNavigableMap<byte[], RowData> table = getTable(tableName);
     if (rowPrefix.length == 0) {
-      table.clear();
+      removeRows(table);
     } else {
       byte[] rowAfter = rowAfterPrefix(rowPrefix);
       if (rowAfter == null) {
-        table.tailMap(rowPrefix).clear();
+        removeRows(table.tailMap(rowPrefix));
       } else {
-        table.subMap(rowPrefix, rowAfter).clear();
+        removeRows(table.subMap(rowPrefix, rowAfter));
       }
     }
   }
@@ -239,24 +240,31 @@ public class InMemoryTableService {
     return null;
   }
 
-  public static synchronized NavigableMap<byte[], NavigableMap<Long, byte[]>> get(String tableName,
-                                                                                  byte[] row,
-                                                                                  @Nullable Transaction tx) {
+  public static NavigableMap<byte[], NavigableMap<Long, byte[]>> get(String tableName,
+                                                                     byte[] row,
+                                                                     @Nullable Transaction tx) {
     // todo: handle nulls
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
+    ConcurrentNavigableMap<byte[], RowData> table = tables.get(tableName);
     Preconditions.checkArgument(table != null, "table not found: " + tableName);
-    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
-    return deepCopy(Updates.rowToBytes(getVisible(rowMap, tx)));
+    RowData rowData = lockRow(table, row, false);
+    if (rowData == null) {
+      return null;
+    }
+    try {
+      return deepCopy(Updates.rowToBytes(getVisible(rowData.columns, tx)));
+    } finally {
+      rowData.unlock();
+    }
   }
 
-  public static synchronized NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
-                             getRowRange(String tableName,
-                                         byte[] startRow,
-                                         byte[] stopRow,
-                                         @Nullable Transaction tx) {
+  public static NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
+                getRowRange(String tableName,
+                            byte[] startRow,
+                            byte[] stopRow,
+                            @Nullable Transaction tx) {
     // todo: handle nulls
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> tableData = tables.get(tableName);
-    NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> rows;
+    ConcurrentNavigableMap<byte[], RowData> tableData = getTable(tableName);
+    NavigableMap<byte[], RowData> rows;
     if (startRow == null && stopRow == null) {
       rows = tableData;
     } else if (startRow == null) {
@@ -269,19 +277,87 @@ public class InMemoryTableService {
 
     NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> result =
       Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    for (Map.Entry<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> rowMap : rows.entrySet()) {
-      NavigableMap<byte[], NavigableMap<Long, Update>> columns =
-        tx == null ? rowMap.getValue() : getVisible(rowMap.getValue(), tx);
-      result.put(copy(rowMap.getKey()), deepCopy(Updates.rowToBytes(columns)));
+    for (Map.Entry<byte[], RowData> rowEntry : rows.entrySet()) {
+      RowData rowData = rowEntry.getValue();
+      rowData.lock.lock();
+      try {
+        // the row was removed after the iterator has seen it
+        if (rowData.removed) {
+          continue;
+        }
+        NavigableMap<byte[], NavigableMap<Long, Update>> columns =
+          tx == null ? rowData.columns : getVisible(rowData.columns, tx);
+        result.put(copy(rowEntry.getKey()), deepCopy(Updates.rowToBytes(columns)));
+      } finally {
+        rowData.unlock();
+      }
     }
 
     return result;
   }
 
-  public static synchronized Collection<String> list() {
+  public static Collection<String> list() {
     return ImmutableList.copyOf(tables.keySet());
   }
 
+  private static ConcurrentNavigableMap<byte[], RowData> getTable(String tableName) {
+    return tables.get(tableName);
+  }
+
+  /**
+   * Locks the given row of a table. If the row doesn't exist, it will be created if {@code create} is {@code true},
+   * otherwise {@code null} is returned. The caller must call {@link RowData#unlock()} on the returned row.
+   */
+  @Nullable
+  private static RowData lockRow(ConcurrentNavigableMap<byte[], RowData> table, byte[] row, boolean create) {
+    while (true) {
+      RowData rowData = table.get(row);
+      if (rowData == null) {
+        if (!create) {
+          return null;
+        }
+        RowData newRowData = new RowData();
+        rowData = table.putIfAbsent(copy(row), newRowData);
+        if (rowData == null) {
+          rowData = newRowData;
+        }
+      }
+      rowData.lock.lock();
+      if (!rowData.removed) {
+        return rowData;
+      }
+      // the row was removed concurrently, retry with the new row
+      rowData.unlock();
+    }
+  }
+
+  /**
+   * Removes a locked row from the table and releases the lock.
+   */
+  private static void removeRow(ConcurrentNavigableMap<byte[], RowData> table, byte[] row, RowData rowData) {
+    try {
+      rowData.removed = true;
+      table.remove(row, rowData);
+    } finally {
+      rowData.unlock();
+    }
+  }
+
+  /**
+   * Removes all rows in the given view of a table.
+   */
+  private static void removeRows(ConcurrentNavigableMap<byte[], RowData> rows) {
+    for (Map.Entry<byte[], RowData> entry : rows.entrySet()) {
+      RowData rowData = entry.getValue();
+      rowData.lock.lock();
+      if (rowData.removed) {
+        rowData.unlock();
+      } else {
+        removeRow(rows, entry.getKey(), rowData);
+      }
+    }
+  }
+
   private static NavigableMap<byte[], NavigableMap<Long, Update>> getVisible(
     NavigableMap<byte[], NavigableMap<Long, Update>> rowMap, final Transaction tx) {
 
@@ -365,4 +441,30 @@ public class InMemoryTableService {
       return Longs.compare(right, left);
     }
   };
+
+  /**
+   * The columns of a row, guarded by a lock of the row. A row that is removed from the table is marked as removed,
+   * so that writers that have obtained the row before the removal can retry with a new row.
+   */
+  private static final class RowData {
+    private final Lock lock = new ReentrantLock();
+    @GuardedBy("lock")
+    private final NavigableMap<byte[], NavigableMap<Long, Update>> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    @GuardedBy("lock")
+    private boolean removed;
+
+    @GuardedBy("lock")
+    NavigableMap<Long, Update> getOrCreateColumn(byte[] column) {
+      NavigableMap<Long, Update> colMap = columns.get(column);
+      if (colMap == null) {
+        colMap = Maps.newTreeMap();
+        columns.put(column, colMap);
+      }
+      return colMap;
+    }
+
+    void unlock() {
+      lock.unlock();
+    }
+  }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table.leveldb;
+
+import com.google.common.base.Throwables;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.WriteOptions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes {@link WriteBatch}es to a LevelDB {@link DB} with sync, grouping the batches of concurrent writers.
+ * <p>
+ * The first writer to arrive while no write is in progress becomes the leader. It writes all batches that are
+ * pending at that time, including the ones that arrive while it waits for the database, syncing only with the last
+ * of them, and then releases the writers of these batches. Since a sync flushes everything that was written to
+ * the LevelDB log before, each batch is durable once the group it belongs to is written. Writers that arrive while
+ * a group is being written wait for it to complete, and the first of them then leads the next group.
+ */
+final class GroupCommitWriter {
+
+  private static final WriteOptions NO_SYNC = new WriteOptions().sync(false);
+  private static final WriteOptions SYNC = new WriteOptions().sync(true);
+
+  private final DB db;
+  private List<PendingWrite> pending = new ArrayList<>();
+  private boolean writing;
+
+  GroupCommitWriter(DB db) {
+    this.db = db;
+  }
+
+  /**
+   * Writes the given batch and returns after it has been synced.
+   */
+  void write(WriteBatch batch) throws IOException {
+    PendingWrite write = new PendingWrite(batch);
+    try {
+      write(write);
+    } finally {
+      if (write.interrupted) {
+        // restored only after the write, since an interrupt during the sync could fail the writes of the whole group
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void write(PendingWrite write) throws IOException {
+    List<PendingWrite> group;
+    synchronized (this) {
+      pending.add(write);
+      while (writing && !write.done) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          if (pending.remove(write)) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a group commit");
+          }
+          // the batch is being written by the current leader, hence it cannot be withdrawn anymore
+          write.interrupted = true;
+        }
+      }
+      if (write.done) {
+        write.rethrowFailure();
+        return;
+      }
+      writing = true;
+      group = pending;
+      pending = new ArrayList<>();
+    }
+
+    Throwable failure = null;
+    try {
+      int last = group.size() - 1;
+      for (int i = 0; i <= last; i++) {
+        db.write(group.get(i).batch, i == last ? SYNC : NO_SYNC);
+      }
+    } catch (Throwable t) {
+      failure = t;
+    }
+
+    synchronized (this) {
+      for (PendingWrite groupWrite : group) {
+        groupWrite.failure = failure;
+        groupWrite.done = true;
+      }
+      writing = false;
+      notifyAll();
+    }
+    write.rethrowFailure();
+  }
+
+  /**
+   * A batch waiting to be written, and the outcome of writing it.
+   */
+  private static final class PendingWrite {
+    private final WriteBatch batch;
+    private boolean done;
+    private Throwable failure;
+    private boolean interrupted;
+
+    private PendingWrite(WriteBatch batch) {
+      this.batch = batch;
+    }
+
+    private void rethrowFailure() throws IOException {
+      if (failure != null) {
+        Throwables.propagateIfPossible(failure, IOException.class);
+        throw Throwables.propagate(failure);
+      }
+    }
+  }
+}
@@ -22,19 +22,23 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTable;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.data2.dataset2.lib.table.IncrementValue;
 import co.cask.cdap.data2.dataset2.lib.table.PutValue;
+import co.cask.cdap.data2.dataset2.lib.table.ScanProjection;
 import co.cask.cdap.data2.dataset2.lib.table.Update;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.PrefixedNamespaces;
 import com.google.common.collect.Maps;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import javax.annotation.Nullable;
@@ -52,7 +56,13 @@ public class LevelDBTable extends BufferingTable {
                       DatasetSpecification spec) throws IOException {
     super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), tableName),
           false, spec.getProperties());
-    this.core = new LevelDBTableCore(getTableName(), service);
+    this.core = new LevelDBTableCore(getTableName(), service, spec.getProperties());
+  }
+
+  @Override
+  public void setMetricsCollector(MetricsCollector metricsCollector) {
+    super.setMetricsCollector(metricsCollector);
+    core.setMetricsCollector(metricsCollector);
   }
 
   @WriteOnly
@@ -128,6 +138,12 @@ public class LevelDBTable extends BufferingTable {
     return core.getRow(row, null, startColumn, stopColumn, limit, tx);
   }
 
+  @ReadOnly
+  @Override
+  protected List<Map<byte[], byte[]>> getPersisted(List<Get> gets) throws Exception {
+    return core.getRows(gets, tx);
+  }
+
   @ReadOnly
   @Override
   protected Scanner scanPersisted(Scan scan) throws Exception {
@@ -141,7 +157,9 @@ public class LevelDBTable extends BufferingTable {
         throw new DataSetException("Unknown filter type: " + scan.getFilter());
       }
     }
-    final Scanner scanner = core.scan(scan.getStartRow(), scan.getStopRow(), filter, null, tx);
+    final Scanner scanner = scan.isReversed()
+      ? core.scanReversed(scan.getStartRow(), scan.getStopRow(), filter, ScanProjection.of(scan), tx)
+      : core.scan(scan.getStartRow(), scan.getStopRow(), filter, null, ScanProjection.of(scan), tx);
     return new Scanner() {
       @Nullable
       @Override
@@ -17,31 +17,43 @@
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Result;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.metrics.MetricsCollector;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
+import co.cask.cdap.data2.dataset2.lib.table.ScanProjection;
+import co.cask.cdap.data2.dataset2.lib.table.TableProperties;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 import org.apache.tephra.Transaction;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
 import org.iq80.leveldb.WriteBatch;
-import org.iq80.leveldb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
 /**
@@ -77,68 +89,194 @@ public class LevelDBTableCore {
 
   private final String tableName;
   private final LevelDBTableService service;
+  // Locks for read-modify-write operations, striped by row key and shared by all instances of the same table
+  private final Striped<Lock> rowLocks;
+  // Number of rows to size the row Bloom filter for, or zero if reads do not use the filter
+  private final int rowBloomFilterRows;
+  private volatile RowBloomFilter rowBloomFilter;
+  private MetricsCollector metricsCollector;
 
   public LevelDBTableCore(String tableName, LevelDBTableService service) throws IOException {
+    this(tableName, service, Collections.<String, String>emptyMap());
+  }
+
+  /**
+   * Creates a core for the given table. If the table properties enable the row Bloom filter, reads of rows that are
+   * not contained in the filter return without reading the table.
+   */
+  public LevelDBTableCore(String tableName, LevelDBTableService service,
+                          Map<String, String> props) throws IOException {
     this.tableName = tableName;
     this.service = service;
+    this.rowLocks = service.getRowLocks(tableName);
+    this.rowBloomFilterRows = TableProperties.useRowBloomFilter(props)
+      ? TableProperties.getRowBloomFilterRows(props) : 0;
+  }
+
+  public void setMetricsCollector(@Nullable MetricsCollector metricsCollector) {
+    this.metricsCollector = metricsCollector;
   }
 
   private DB getDB() throws IOException {
     return service.getTable(tableName);
   }
 
-  private WriteOptions getWriteOptions() {
-    return service.getWriteOptions();
+  /**
+   * Returns the row Bloom filter to consult for reads, or {@code null} if reads do not use it.
+   */
+  @Nullable
+  private RowBloomFilter getReadFilter() throws IOException {
+    if (rowBloomFilterRows == 0) {
+      return null;
+    }
+    RowBloomFilter filter = rowBloomFilter;
+    if (filter == null) {
+      filter = service.getRowBloomFilter(tableName, rowBloomFilterRows);
+      rowBloomFilter = filter;
+    }
+    return filter;
   }
 
-
-  public synchronized boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
-    byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
-    // verify
-    if (oldValue == null && existing != null) {
-      return false;
+  /**
+   * Adds the given rows to the row Bloom filter of the table, if it has one. This must be called before the rows are
+   * written, such that the filter contains every row by the time it can be read. If the table has no filter, the
+   * returned lock is held until it is passed to {@link #unlock(Lock)} after the rows are written, so that a filter
+   * built concurrently either contains the rows or is published before they are written.
+   *
+   * @return the lock to release after the rows are written, or {@code null} if there is none
+   */
+  @Nullable
+  private Lock addToRowFilter(Collection<byte[]> rows) throws IOException {
+    RowBloomFilter filter = getReadFilter();
+    Lock lock = null;
+    if (filter == null) {
+      // the table may still have a filter that is used by other readers
+      filter = service.getRowBloomFilter(tableName);
+      if (filter == null) {
+        lock = service.getRowFilterLock(tableName).readLock();
+        lock.lock();
+        filter = service.getRowBloomFilter(tableName);
+        if (filter != null) {
+          lock.unlock();
+          lock = null;
+        }
+      }
     }
-    if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
-      return false;
+    if (filter != null) {
+      for (byte[] row : rows) {
+        filter.add(row);
+      }
     }
-    // write
-    if (newValue == null) {
-      // to-do
-      deleteColumn(row, column);
-    } else {
-      persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), System.currentTimeMillis());
+    return lock;
+  }
+
+  private static void unlock(@Nullable Lock lock) {
+    if (lock != null) {
+      lock.unlock();
     }
-    return true;
   }
 
-  public synchronized Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
-    Map<byte[], Long> result = getResultMap(row, increments);
-    Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    for (Map.Entry<byte[], Long> entry : result.entrySet()) {
-      replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+  private void reportBloomFilter(String metricName) {
+    if (metricsCollector != null) {
+      metricsCollector.increment(metricName, 1);
     }
-    persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
-    return result;
   }
 
+  public boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
+    Lock lock = rowLocks.get(ByteBuffer.wrap(row));
+    lock.lock();
+    try {
+      byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
+      // verify
+      if (oldValue == null && existing != null) {
+        return false;
+      }
+      if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
+        return false;
+      }
+      // write
+      if (newValue == null) {
+        // to-do
+        deleteColumn(row, column);
+      } else {
+        persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), System.currentTimeMillis());
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
 
-  public synchronized void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
-    Map<byte[], Map<byte[], byte[]>> resultMap = Maps.newHashMap();
-    for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
-      NavigableMap<byte[], Long> increments = row.getValue();
-      Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      Map<byte[], Long> result = getResultMap(row.getKey(), increments);
-      for (Map.Entry<byte[], Long> entry : result.entrySet()) {
-        replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+  public Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
+    Lock lock = rowLocks.get(ByteBuffer.wrap(row));
+    lock.lock();
+    try {
+      DB db = getDB();
+      WriteBatch batch = db.createWriteBatch();
+      Map<byte[], Long> result;
+      try (DBIterator iterator = db.iterator()) {
+        result = getResultMap(iterator, row, increments);
+      }
+      addIncrementResults(batch, row, result, System.currentTimeMillis());
+      Lock filterLock = addToRowFilter(Collections.singleton(row));
+      try {
+        service.write(tableName, batch);
+      } finally {
+        unlock(filterLock);
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
+    if (updates.isEmpty()) {
+      return;
+    }
+    List<ByteBuffer> rows = new ArrayList<>(updates.size());
+    for (byte[] row : updates.keySet()) {
+      rows.add(ByteBuffer.wrap(row));
+    }
+    // Striped.bulkGet returns the locks in a consistent order, which avoids deadlock between concurrent calls
+    List<Lock> locks = Lists.newArrayList(rowLocks.bulkGet(rows));
+    for (Lock lock : locks) {
+      lock.lock();
+    }
+    try {
+      // Reads all rows with the same iterator and writes all results in one batch
+      DB db = getDB();
+      WriteBatch batch = db.createWriteBatch();
+      long version = System.currentTimeMillis();
+      try (DBIterator iterator = db.iterator()) {
+        for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
+          Map<byte[], Long> result = getResultMap(iterator, row.getKey(), row.getValue());
+          addIncrementResults(batch, row.getKey(), result, version);
+        }
       }
-      resultMap.put(row.getKey(), replacing);
+      Lock filterLock = addToRowFilter(updates.keySet());
+      try {
+        service.write(tableName, batch);
+      } finally {
+        unlock(filterLock);
+      }
+    } finally {
+      for (Lock lock : Lists.reverse(locks)) {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void addIncrementResults(WriteBatch batch, byte[] row, Map<byte[], Long> result, long version) {
+    for (Map.Entry<byte[], Long> entry : result.entrySet()) {
+      batch.put(createPutKey(row, entry.getKey(), version), Bytes.toBytes(entry.getValue()));
     }
-    persist(resultMap, System.currentTimeMillis());
   }
 
-  private Map<byte[], Long> getResultMap(byte[] row, Map<byte[], Long> increments) throws IOException {
+  private Map<byte[], Long> getResultMap(DBIterator iterator,
+                                         byte[] row, Map<byte[], Long> increments) throws IOException {
     NavigableMap<byte[], byte[]> existing =
-      getRow(row, increments.keySet().toArray(new byte[increments.size()][]), null, null, -1, null);
+      getRow(iterator, row, increments.keySet().toArray(new byte[increments.size()][]), null, null, -1, null);
     Map<byte[], Long> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     for (Map.Entry<byte[], Long> increment : increments.entrySet()) {
       long existingValue = 0L;
@@ -167,11 +305,23 @@ public class LevelDBTableCore {
         batch.put(key, column.getValue() == null ? DELETE_MARKER : column.getValue());
       }
     }
-    db.write(batch, service.getWriteOptions());
+    Lock filterLock = addToRowFilter(changes.keySet());
+    try {
+      service.write(tableName, batch);
+    } finally {
+      unlock(filterLock);
+    }
   }
 
   public void put(byte[] row, byte[] column, byte[] value, long version) throws IOException {
-    getDB().put(createPutKey(row, column, version), value);
+    Lock filterLock = addToRowFilter(Collections.singleton(row));
+    try {
+      WriteBatch batch = getDB().createWriteBatch();
+      batch.put(createPutKey(row, column, version), value);
+      service.write(tableName, batch);
+    } finally {
+      unlock(filterLock);
+    }
   }
 
   public void undo(Map<byte[], ? extends Map<byte[], ?>> persisted, long version) throws IOException {
@@ -186,12 +336,24 @@ public class LevelDBTableCore {
         batch.delete(key);
       }
     }
-    db.write(batch, service.getWriteOptions());
+    service.write(tableName, batch);
   }
 
   public Scanner scan(byte[] startRow, byte[] stopRow,
                       @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns, @Nullable Transaction tx)
     throws IOException {
+    return scan(startRow, stopRow, filter, columns, null, tx);
+  }
+
+  /**
+   * Same as {@link #scan(byte[], byte[], FuzzyRowFilter, byte[][], Transaction)}, but also only returns the columns
+   * and values selected by the given {@link ScanProjection}.
+   */
+  public Scanner scan(byte[] startRow, byte[] stopRow, @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns,
+                      @Nullable ScanProjection projection, @Nullable Transaction tx) throws IOException {
+    if (columns == null && projection != null) {
+      columns = projection.getColumns();
+    }
     if (columns != null) {
       if (columns.length == 0) {
         return EMPTY_SCANNER;
@@ -203,7 +365,22 @@ public class LevelDBTableCore {
     DBIterator iterator = getDB().iterator();
     seekToStart(iterator, startRow);
     byte[] endKey = stopRow == null ? null : createEndKey(stopRow);
-    return new LevelDBScanner(iterator, endKey, filter, columns, tx);
+    return new LevelDBScanner(iterator, endKey, filter, columns, projection, tx);
+  }
+
+  /**
+   * Same as {@link #scan(byte[], byte[], FuzzyRowFilter, byte[][], ScanProjection, Transaction)}, but returns the
+   * rows in descending order. The LevelDB iterator cannot move backwards, hence the range is read in batches of
+   * rows, starting from its end, see {@link ReversedLevelDBScanner}.
+   */
+  public Scanner scanReversed(@Nullable byte[] startRow, @Nullable byte[] stopRow, @Nullable FuzzyRowFilter filter,
+                              @Nullable ScanProjection projection, @Nullable Transaction tx) throws IOException {
+    byte[][] columns = projection == null ? null : projection.getColumns();
+    if (columns != null && columns.length == 0) {
+      return EMPTY_SCANNER;
+    }
+    return new ReversedLevelDBScanner(getDB().iterator(), startRow == null ? Bytes.EMPTY_BYTE_ARRAY : startRow,
+                                      stopRow, filter, columns, projection, tx);
   }
 
   /**
@@ -212,6 +389,74 @@ public class LevelDBTableCore {
   public NavigableMap<byte[], byte[]> getRow(byte[] row, @Nullable byte[][] columns,
                                              byte[] startCol, byte[] stopCol,
                                              int limit, Transaction tx) throws IOException {
+    RowBloomFilter filter = getReadFilter();
+    if (filter != null && !filter.mightContain(row)) {
+      reportBloomFilter(Constants.Metrics.Name.Dataset.BLOOM_FILTER_SKIPPED_READS);
+      return EMPTY_ROW_MAP;
+    }
+    NavigableMap<byte[], byte[]> result;
+    try (DBIterator iterator = getDB().iterator()) {
+      result = getRow(iterator, row, columns, startCol, stopCol, limit, tx);
+    }
+    if (filter != null && result.isEmpty() && columns == null && startCol == null && stopCol == null) {
+      reportBloomFilter(Constants.Metrics.Name.Dataset.BLOOM_FILTER_FALSE_POSITIVES);
+    }
+    return result;
+  }
+
+  /**
+   * Reads the rows of multiple {@link Get}s with a single iterator. The rows are read in sorted order, such that the
+   * iterator only moves forward, and the results are returned in the order of the gets.
+   */
+  public List<Map<byte[], byte[]>> getRows(final List<Get> gets, Transaction tx) throws IOException {
+    Integer[] order = new Integer[gets.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        return Bytes.compareTo(gets.get(i1).getRow(), gets.get(i2).getRow());
+      }
+    });
+
+    List<Map<byte[], byte[]>> results = new ArrayList<>(Collections.<Map<byte[], byte[]>>nCopies(order.length, null));
+    RowBloomFilter filter = getReadFilter();
+    // the iterator is only created once a row needs to be read
+    DBIterator iterator = null;
+    try {
+      for (int index : order) {
+        Get get = gets.get(index);
+        if (filter != null && !filter.mightContain(get.getRow())) {
+          reportBloomFilter(Constants.Metrics.Name.Dataset.BLOOM_FILTER_SKIPPED_READS);
+          results.set(index, EMPTY_ROW_MAP);
+          continue;
+        }
+        if (iterator == null) {
+          iterator = getDB().iterator();
+        }
+        List<byte[]> getColumns = get.getColumns();
+        byte[][] columns = getColumns == null ? null : getColumns.toArray(new byte[getColumns.size()][]);
+        NavigableMap<byte[], byte[]> result = getRow(iterator, get.getRow(), columns, null, null, -1, tx);
+        if (filter != null && result.isEmpty() && columns == null) {
+          reportBloomFilter(Constants.Metrics.Name.Dataset.BLOOM_FILTER_FALSE_POSITIVES);
+        }
+        results.set(index, result);
+      }
+    } finally {
+      if (iterator != null) {
+        iterator.close();
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Same as {@link #getRow(byte[], byte[][], byte[], byte[], int, Transaction)}, but reads with the given iterator.
+   */
+  private static NavigableMap<byte[], byte[]> getRow(DBIterator iterator, byte[] row, @Nullable byte[][] columns,
+                                                     byte[] startCol, byte[] stopCol,
+                                                     int limit, Transaction tx) throws IOException {
     if (columns != null) {
       if (columns.length == 0) {
         return EMPTY_ROW_MAP;
@@ -223,10 +468,8 @@ public class LevelDBTableCore {
 
     byte[] startKey = createStartKey(row, columns == null ? startCol : columns[0]);
     byte[] endKey = createEndKey(row, columns == null ? stopCol : upperBound(columns[columns.length - 1]));
-    try (DBIterator iterator = getDB().iterator()) {
-      iterator.seek(startKey);
-      return getRow(iterator, endKey, tx, false, columns, limit).getSecond();
-    }
+    iterator.seek(startKey);
+    return getRow(iterator, endKey, tx, false, columns, null, limit).getSecond();
   }
 
   private static Scanner createEmptyScanner() {
@@ -254,13 +497,14 @@ public class LevelDBTableCore {
    *                 this method will stop reading as soon as it sees more than one row key. The iterator will not be
    *                 advanced past the beginning of the next row (so that next time, we still see the entire next row).
    * @param columns If non-null, only columns contained in this will be returned. The given columns should be sorted.
+   * @param projection If non-null, only columns and values selected by it will be returned.
    * @param limit If non-negative, at most this many columns will be returned. If multiRow is true, this is ignored.
    * @return a pair consisting of the row key of the next non-empty row and the column map for that row. If multiRow
    *         is false, null is returned for row key because the caller already knows it.
    */
   private static ImmutablePair<byte[], NavigableMap<byte[], byte[]>>
-  getRow(DBIterator iterator, byte[] endKey, Transaction tx, boolean multiRow, byte[][] columns, int limit)
-    throws IOException {
+  getRow(DBIterator iterator, byte[] endKey, Transaction tx, boolean multiRow, byte[][] columns,
+         @Nullable ScanProjection projection, int limit) throws IOException {
 
     byte[] rowBeingRead = null;
     byte[] previousRow = null;
@@ -309,8 +553,9 @@ public class LevelDBTableCore {
       // is it a column we want?
       if (columns == null || Arrays.binarySearch(columns, column, Bytes.BYTES_COMPARATOR) >= 0) {
         byte[] value = entry.getValue();
-        // only add to map if it is not a delete
-        if (tx == null || !Bytes.equals(value, DELETE_MARKER)) {
+        // only add to map if it is not a delete, and if it is selected by the projection
+        if ((tx == null || !Bytes.equals(value, DELETE_MARKER))
+          && (projection == null || projection.includes(column, value))) {
           map.put(column, value);
           // first time we add a column. must remember the row key to know when to stop
           if (multiRow && rowBeingRead == null) {
@@ -340,8 +585,8 @@ public class LevelDBTableCore {
         }
         batch.delete(entry.getKey());
       }
-      db.write(batch);
     }
+    service.write(tableName, batch);
   }
 
   /**
@@ -384,7 +629,7 @@ public class LevelDBTableCore {
       }
     }
     // delete all the entries that were found
-    db.write(batch, getWriteOptions());
+    service.write(tableName, batch);
   }
 
   public void deleteRange(byte[] startRow, byte[] stopRow, @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns)
@@ -405,7 +650,7 @@ public class LevelDBTableCore {
     DBIterator deleteIterator = db.iterator();
     seekToStart(deleteIterator, startRow);
     final int deletesPerRound = 1024; // todo make configurable
-    try (Scanner scanner = new LevelDBScanner(iterator, endKey, filter, columns, null)) {
+    try (Scanner scanner = new LevelDBScanner(iterator, endKey, filter, columns, null, null)) {
       Row rowValues;
       WriteBatch batch = db.createWriteBatch();
       int deletesInBatch = 0;
@@ -420,7 +665,7 @@ public class LevelDBTableCore {
           // perform the deletes when we have built up a batch.
           if (deletesInBatch >= deletesPerRound) {
             // delete all the entries that were found
-            db.write(batch, getWriteOptions());
+            service.write(tableName, batch);
             batch = db.createWriteBatch();
             deletesInBatch = 0;
           }
@@ -429,7 +674,7 @@ public class LevelDBTableCore {
 
       // perform any outstanding deletes
       if (deletesInBatch > 0) {
-        db.write(batch, getWriteOptions());
+        service.write(tableName, batch);
       }
     } finally {
       deleteIterator.close();
@@ -441,8 +686,8 @@ public class LevelDBTableCore {
     WriteBatch batch = db.createWriteBatch();
     try (DBIterator iterator = db.iterator()) {
       addToDeleteBatch(batch, iterator, row, column);
-      db.write(batch);
     }
+    service.write(tableName, batch);
   }
 
   /**
@@ -490,21 +735,24 @@ public class LevelDBTableCore {
     private final DBIterator iterator;
     private final byte[][] columns;
     private final FuzzyRowFilter filter;
+    private final ScanProjection projection;
 
-    LevelDBScanner(DBIterator iterator, byte[] endKey,
-                   @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns, @Nullable Transaction tx) {
+    LevelDBScanner(DBIterator iterator, byte[] endKey, @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns,
+                   @Nullable ScanProjection projection, @Nullable Transaction tx) {
       this.tx = tx;
       this.endKey = endKey;
       this.iterator = iterator;
       this.filter = filter;
       this.columns = columns;
+      this.projection = projection;
     }
 
     @Override
     public Row next() {
       try {
         while (true) {
-          ImmutablePair<byte[], NavigableMap<byte[], byte[]>> result = getRow(iterator, endKey, tx, true, columns, -1);
+          ImmutablePair<byte[], NavigableMap<byte[], byte[]>> result = getRow(iterator, endKey, tx, true, columns,
+                                                                             projection, -1);
           if (result.getFirst() == null) {
             return null;
           }
@@ -544,6 +792,184 @@ public class LevelDBTableCore {
     }
   }
 
+  /**
+   * A scanner that returns the rows of a range in reverse order. Since the LevelDB iterator cannot move backwards,
+   * the range is read in batches of at most {@link #BATCH_ROWS} rows, starting from the end of the range. The start
+   * of each batch is found by bisecting the key range below the previous batch with forward seeks, so that neither
+   * the whole range is read before the first row is returned, nor the keys of all rows are kept in memory.
+   */
+  private static class ReversedLevelDBScanner implements Scanner {
+
+    private static final int BATCH_ROWS = 100;
+
+    private final Transaction tx;
+    private final DBIterator iterator;
+    private final byte[] startRow;
+    private final FuzzyRowFilter filter;
+    private final byte[][] columns;
+    private final ScanProjection projection;
+    // the exclusive upper bound of the rows that are not returned yet, null if not determined yet
+    private byte[] stopRow;
+    private List<byte[]> batch;
+    private int batchIndex;
+    private boolean lastBatch;
+
+    ReversedLevelDBScanner(DBIterator iterator, byte[] startRow, @Nullable byte[] stopRow,
+                           @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns,
+                           @Nullable ScanProjection projection, @Nullable Transaction tx) {
+      this.tx = tx;
+      this.iterator = iterator;
+      this.startRow = startRow;
+      this.stopRow = stopRow;
+      this.filter = filter;
+      this.columns = columns;
+      this.projection = projection;
+      this.batch = Collections.emptyList();
+    }
+
+    @Override
+    public Row next() {
+      try {
+        while (true) {
+          if (batchIndex == 0) {
+            if (lastBatch) {
+              return null;
+            }
+            readPreviousBatch();
+            continue;
+          }
+          byte[] row = batch.get(--batchIndex);
+          // the row filter hints only apply to forward scans, hence only rows to include are used
+          if (filter != null && filter.filterRow(row) != FuzzyRowFilter.ReturnCode.INCLUDE) {
+            continue;
+          }
+          iterator.seek(createStartKey(row, columns == null ? null : columns[0]));
+          NavigableMap<byte[], byte[]> result = getRow(iterator, createEndKey(row, null), tx, false, columns,
+                                                       projection, -1).getSecond();
+          // the row may have no visible column left, in which case it is skipped
+          if (!result.isEmpty()) {
+            return new Result(row, result);
+          }
+        }
+      } catch (Exception e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * Reads the keys of the last rows before the current stop row, and moves the stop row to the start of them.
+     */
+    private void readPreviousBatch() {
+      if (stopRow == null) {
+        stopRow = findStopRow();
+      }
+      // [lower, stopRow) has more rows than a batch, and [upper, stopRow) has no row, until a batch is found
+      byte[] lower = startRow;
+      byte[] upper = stopRow;
+      List<byte[]> rows = readRows(lower, BATCH_ROWS + 1);
+      while (rows.size() > BATCH_ROWS) {
+        byte[] middle = middleKey(lower, upper);
+        if (middle == null) {
+          rows = readLastRows(lower);
+          lower = rows.get(0);
+          break;
+        }
+        List<byte[]> upperRows = readRows(middle, BATCH_ROWS + 1);
+        if (upperRows.isEmpty()) {
+          upper = middle;
+        } else {
+          lower = middle;
+          rows = upperRows;
+        }
+      }
+      batch = rows;
+      batchIndex = rows.size();
+      lastBatch = Bytes.equals(lower, startRow);
+      stopRow = lower;
+    }
+
+    /**
+     * Returns the keys of at most the given number of rows, starting from the given row and ending before the
+     * stop row. Only the first key of each row is read.
+     */
+    private List<byte[]> readRows(byte[] fromRow, int limit) {
+      List<byte[]> rows = new ArrayList<>();
+      iterator.seek(createStartKey(fromRow));
+      while (rows.size() < limit && iterator.hasNext()) {
+        byte[] row = KeyValue.fromKey(iterator.peekNext().getKey()).getRow();
+        if (Bytes.compareTo(row, stopRow) >= 0) {
+          break;
+        }
+        rows.add(row);
+        iterator.seek(createEndKey(row, null));
+      }
+      return rows;
+    }
+
+    /**
+     * Returns the keys of the last rows that start from the given row and end before the stop row.
+     * It reads all rows in between, hence it is only used if the start of a batch cannot be found by bisection.
+     */
+    private List<byte[]> readLastRows(byte[] fromRow) {
+      Deque<byte[]> rows = new ArrayDeque<>();
+      iterator.seek(createStartKey(fromRow));
+      while (iterator.hasNext()) {
+        byte[] row = KeyValue.fromKey(iterator.peekNext().getKey()).getRow();
+        if (Bytes.compareTo(row, stopRow) >= 0) {
+          break;
+        }
+        if (rows.size() == BATCH_ROWS) {
+          rows.removeFirst();
+        }
+        rows.addLast(row);
+        iterator.seek(createEndKey(row, null));
+      }
+      return new ArrayList<>(rows);
+    }
+
+    /**
+     * Returns a row key that is larger than all rows in the table, for scanning without a stop row.
+     */
+    private byte[] findStopRow() {
+      byte[] row = { (byte) 0xff };
+      while (true) {
+        iterator.seek(createStartKey(row));
+        if (!iterator.hasNext()) {
+          return row;
+        }
+        // there is a row with at least as many leading 0xff bytes, try a key with twice as many
+        row = Bytes.add(row, row);
+      }
+    }
+
+    @Override
+    public void close() {
+      try {
+        iterator.close();
+      } catch (Exception e) {
+        LOG.warn("Error closing LevelDB iterator", e);
+      }
+    }
+  }
+
+  /**
+   * Returns a key that is larger than the lower key and smaller than the upper key, or {@code null} if no such key
+   * can be computed, which is only the case if the two keys only differ in trailing zero bytes.
+   */
+  @Nullable
+  private static byte[] middleKey(byte[] lower, byte[] upper) {
+    try {
+      byte[][] splits = Bytes.split(lower, upper, 1);
+      if (splits == null) {
+        // there is no key of the same length in between, but there is one with an additional byte
+        splits = Bytes.split(Bytes.add(lower, ONE_ZERO), Bytes.add(upper, ONE_ZERO), 1);
+      }
+      return splits == null ? null : splits[1];
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
   // ------- helpers to create the keys for writes and scans ----------
 
   private static byte[] createPutKey(byte[] rowKey, byte[] columnKey, long version) {
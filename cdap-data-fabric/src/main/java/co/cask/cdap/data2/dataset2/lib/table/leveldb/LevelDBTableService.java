@@ -26,11 +26,14 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBComparator;
+import org.iq80.leveldb.DBIterator;
 import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
 import org.iq80.leveldb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +46,10 @@ import java.net.URLEncoder;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.Nullable;
 
 import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 
@@ -54,12 +61,20 @@ public class LevelDBTableService {
 
   private static final Logger LOG = LoggerFactory.getLogger(LevelDBTableService.class);
 
+  // Number of row lock stripes for each table
+  private static final int ROW_LOCK_STRIPES = 256;
+
   private int blockSize;
   private long cacheSize;
   private String basePath;
   private WriteOptions writeOptions;
 
   private final ConcurrentMap<String, DB> tables = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Striped<Lock>> rowLocks = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, GroupCommitWriter> writers = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, RowBloomFilter> rowFilters = Maps.newConcurrentMap();
+  // Locks for publishing a row Bloom filter while no writes without a filter are in progress
+  private final ConcurrentMap<String, ReadWriteLock> rowFilterLocks = Maps.newConcurrentMap();
 
   /**
    * To avoid database locking issues make sure that the single LevelDBTableService instance
@@ -96,6 +111,10 @@ public class LevelDBTableService {
    */
   public void clearTables() {
     tables.clear();
+    rowLocks.clear();
+    writers.clear();
+    rowFilters.clear();
+    rowFilterLocks.clear();
   }
 
   public Collection<String> list() throws Exception {
@@ -170,6 +189,109 @@ public class LevelDBTableService {
     return db;
   }
 
+  /**
+   * Writes the given batch to the given table with the {@link #getWriteOptions() write options} of this service.
+   * If writes are synced, the batches written concurrently to the same table are synced together.
+   */
+  void write(String tableName, WriteBatch batch) throws IOException {
+    if (!writeOptions.sync()) {
+      getTable(tableName).write(batch, writeOptions);
+      return;
+    }
+    GroupCommitWriter writer = writers.get(tableName);
+    if (writer == null) {
+      writer = new GroupCommitWriter(getTable(tableName));
+      GroupCommitWriter existing = writers.putIfAbsent(tableName, writer);
+      if (existing != null) {
+        writer = existing;
+      }
+    }
+    writer.write(batch);
+  }
+
+  /**
+   * Returns the row Bloom filter of the given table. If the table has none yet, it is built from the rows of the
+   * table, and from then on it is maintained by every {@link LevelDBTableCore} that writes to the table.
+   * The filter is published before the rows are scanned, so that rows written during the build are added to it.
+   * It does not exclude any row until the build has completed. Only the caller that published the filter scans the
+   * table, without holding any lock, hence concurrent callers and builds for other tables are not blocked.
+   */
+  RowBloomFilter getRowBloomFilter(String tableName, int expectedRows) throws IOException {
+    RowBloomFilter filter = rowFilters.get(tableName);
+    return filter == null ? buildRowBloomFilter(tableName, expectedRows) : filter;
+  }
+
+  private RowBloomFilter buildRowBloomFilter(String tableName, int expectedRows) throws IOException {
+    RowBloomFilter filter = new RowBloomFilter(expectedRows);
+    DB db = getTable(tableName);
+    DBIterator iterator;
+    // Writes that started without a filter complete before the scan starts, and later writes add to the filter
+    Lock lock = getRowFilterLock(tableName).writeLock();
+    lock.lock();
+    try {
+      RowBloomFilter existing = rowFilters.putIfAbsent(tableName, filter);
+      if (existing != null) {
+        // published by a concurrent call
+        return existing;
+      }
+      iterator = db.iterator();
+    } finally {
+      lock.unlock();
+    }
+    boolean built = false;
+    try {
+      filter.addRows(iterator);
+      built = true;
+    } finally {
+      iterator.close();
+      if (!built) {
+        rowFilters.remove(tableName, filter);
+      }
+    }
+    return filter;
+  }
+
+  /**
+   * Returns the row Bloom filter of the given table, or {@code null} if it has none.
+   */
+  @Nullable
+  RowBloomFilter getRowBloomFilter(String tableName) {
+    return rowFilters.get(tableName);
+  }
+
+  /**
+   * Returns the lock that writes which found no row Bloom filter for the given table must hold in read mode until the
+   * write is done, so that a filter built concurrently contains their rows.
+   */
+  ReadWriteLock getRowFilterLock(String tableName) {
+    ReadWriteLock lock = rowFilterLocks.get(tableName);
+    if (lock == null) {
+      lock = new ReentrantReadWriteLock();
+      ReadWriteLock existing = rowFilterLocks.putIfAbsent(tableName, lock);
+      if (existing != null) {
+        lock = existing;
+      }
+    }
+    return lock;
+  }
+
+  /**
+   * Returns the row locks of the given table. The same instance is returned for the same table, so that
+   * read-modify-write operations performed through different {@link LevelDBTableCore} instances of a table
+   * exclude each other for the same row.
+   */
+  Striped<Lock> getRowLocks(String tableName) {
+    Striped<Lock> locks = rowLocks.get(tableName);
+    if (locks == null) {
+      locks = Striped.lock(ROW_LOCK_STRIPES);
+      Striped<Lock> existing = rowLocks.putIfAbsent(tableName, locks);
+      if (existing != null) {
+        locks = existing;
+      }
+    }
+    return locks;
+  }
+
   public void ensureTableExists(String tableName) throws IOException {
     DB db = tables.get(tableName);
     if (db == null) {
@@ -224,6 +346,10 @@ public class LevelDBTableService {
     if (db != null) {
       db.close();
     }
+    rowLocks.remove(name);
+    writers.remove(name);
+    rowFilters.remove(name);
+    rowFilterLocks.remove(name);
     String dbPath = getDBPath(basePath, name);
     factory.destroy(new File(dbPath), new Options());
   }
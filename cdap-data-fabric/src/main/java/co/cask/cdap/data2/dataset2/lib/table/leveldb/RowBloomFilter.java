@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table.leveldb;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.iq80.leveldb.DBIterator;
+
+/**
+ * A Bloom filter of the row keys of a LevelDB table. A row that is not contained in the filter does not exist in
+ * the table, hence it does not need to be looked up. Rows must be added to the filter before they are written,
+ * and they are never removed from it. The filter contains every row only once the existing rows of the table were
+ * added with {@link #addRows(DBIterator)}, hence it does not exclude any row before that.
+ */
+final class RowBloomFilter {
+
+  private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+  private final BloomFilter<byte[]> filter;
+  private volatile boolean built;
+
+  /**
+   * Creates an empty filter.
+   *
+   * @param expectedRows the number of rows to size the filter for. The filter works with more rows, but the rate of
+   *                     false positives increases beyond {@link #FALSE_POSITIVE_PROBABILITY}.
+   */
+  RowBloomFilter(int expectedRows) {
+    this.filter = BloomFilter.create(Funnels.byteArrayFunnel(), expectedRows, FALSE_POSITIVE_PROBABILITY);
+  }
+
+  /**
+   * Adds all rows of the given iterator over a table, after which the filter can exclude rows.
+   */
+  void addRows(DBIterator iterator) {
+    iterator.seekToFirst();
+    byte[] previousRow = null;
+    while (iterator.hasNext()) {
+      byte[] row = KeyValue.fromKey(iterator.next().getKey()).getRow();
+      if (previousRow == null || !Bytes.equals(previousRow, row)) {
+        add(row);
+        previousRow = row;
+      }
+    }
+    built = true;
+  }
+
+  synchronized void add(byte[] row) {
+    filter.put(row);
+  }
+
+  /**
+   * Returns false if the row definitely does not exist in the table.
+   */
+  boolean mightContain(byte[] row) {
+    if (!built) {
+      return true;
+    }
+    synchronized (this) {
+      return filter.mightContain(row);
+    }
+  }
+}
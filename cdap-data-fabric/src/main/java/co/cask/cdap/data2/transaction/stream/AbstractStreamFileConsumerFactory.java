@@ -22,6 +22,7 @@ import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data.file.filter.TTLReadFilter;
 import co.cask.cdap.data.stream.MultiLiveStreamFileReader;
+import co.cask.cdap.data.stream.SharedStreamFileReaderFactory;
 import co.cask.cdap.data.stream.StreamEventOffset;
 import co.cask.cdap.data.stream.StreamFileOffset;
 import co.cask.cdap.data.stream.StreamFileType;
@@ -37,6 +38,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.inject.Inject;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +61,7 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
   private final StreamAdmin streamAdmin;
   private final StreamConsumerStateStoreFactory stateStoreFactory;
   private final String tablePrefix;
+  private SharedStreamFileReaderFactory sharedReaderFactory;
 
   protected AbstractStreamFileConsumerFactory(CConfiguration cConf, StreamAdmin streamAdmin,
                                               StreamConsumerStateStoreFactory stateStoreFactory) {
@@ -69,6 +72,16 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
                                      QueueConstants.QueueType.STREAM.toString());
   }
 
+  /**
+   * Optional setter injection of the {@link SharedStreamFileReaderFactory}. If it is set and
+   * {@link Constants.Stream#CONSUMER_SHARED_READER_ENABLED} is true, consumers of the same stream in the same
+   * process share the reading of stream files.
+   */
+  @Inject(optional = true)
+  public void setSharedStreamFileReaderFactory(SharedStreamFileReaderFactory sharedReaderFactory) {
+    this.sharedReaderFactory = sharedReaderFactory;
+  }
+
   /**
    * Creates a {@link StreamConsumer}.
    *
@@ -148,8 +161,9 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
                         String.format("%s.%s.%s", tablePrefix, streamId.getEntityName(), namespace));
   }
 
-  private MultiLiveStreamFileReader createReader(final StreamConfig streamConfig,
-                                                 StreamConsumerState consumerState) throws IOException {
+  private FileReader<StreamEventOffset, Iterable<StreamFileOffset>> createReader(final StreamConfig streamConfig,
+                                                                                 StreamConsumerState consumerState)
+    throws IOException {
     Location streamLocation = streamConfig.getLocation();
     Preconditions.checkNotNull(streamLocation, "Stream location is null for %s", streamConfig.getStreamId());
 
@@ -173,9 +187,7 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
       if (useStoredStates) {
         LOG.info("Create file reader with consumer state: {}", consumerState);
         // Has existing offsets, just resume from there.
-        MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, consumerState.getState());
-        reader.initialize();
-        return reader;
+        return openReader(streamConfig, consumerState.getState());
       }
     }
 
@@ -212,7 +224,19 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
     LOG.info("Empty consumer state. Create file reader with file offsets: groupId={}, instanceId={} states={}",
              consumerState.getGroupId(), consumerState.getInstanceId(), fileOffsets);
 
-    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, fileOffsets);
+    return openReader(streamConfig, fileOffsets);
+  }
+
+  /**
+   * Opens an initialized {@link FileReader} for reading from the given file offsets. The reader shares the
+   * reading of stream files with other consumers in the same process if it is enabled.
+   */
+  private FileReader<StreamEventOffset, Iterable<StreamFileOffset>> openReader(
+    StreamConfig streamConfig, Iterable<StreamFileOffset> offsets) throws IOException {
+    if (sharedReaderFactory != null && cConf.getBoolean(Constants.Stream.CONSUMER_SHARED_READER_ENABLED, false)) {
+      return sharedReaderFactory.create(streamConfig, offsets);
+    }
+    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, offsets);
     reader.initialize();
     return reader;
   }
@@ -317,7 +317,8 @@ public class FileStreamAdmin implements StreamAdmin {
           }
 
           return new StreamConfig(streamId, config.getPartitionDuration(), config.getIndexInterval(),
-                                  config.getTTL(), getStreamLocation(streamId), config.getFormat(), threshold);
+                                  config.getTTL(), getStreamLocation(streamId), config.getFormat(), threshold,
+                                  config.getCodec());
         }
       });
     } catch (Exception ex) {
@@ -333,7 +334,7 @@ public class FileStreamAdmin implements StreamAdmin {
     StreamConfig config = getConfig(streamId);
     StreamSpecification spec = streamMetaStore.getStream(streamId);
     return new StreamProperties(config.getTTL(), config.getFormat(), config.getNotificationThresholdMB(),
-                                spec.getDescription());
+                                spec.getDescription(), config.getCodec());
   }
 
   @Override
@@ -445,9 +446,12 @@ public class FileStreamAdmin implements StreamAdmin {
             formatSpec = GSON.fromJson(properties.getProperty(Constants.Stream.FORMAT_SPECIFICATION),
                                        FormatSpecification.class);
           }
+          String codec = properties.getProperty(Constants.Stream.CODEC);
+          Preconditions.checkArgument(codec == null || StreamUtils.isSupportedCodec(codec),
+                                      "Unsupported stream codec '%s'.", codec);
 
           final StreamConfig config = new StreamConfig(streamId, partitionDuration, indexInterval,
-                                                       ttl, streamLocation, formatSpec, threshold);
+                                                       ttl, streamLocation, formatSpec, threshold, codec);
           ImpersonationUtils.doAs(ugi, new Callable<Void>() {
             @Override
             public Void call() throws Exception {
@@ -698,6 +702,10 @@ public class FileStreamAdmin implements StreamAdmin {
     if (properties.getNotificationThresholdMB() != null) {
       builder.setNotificationThreshold(properties.getNotificationThresholdMB());
     }
+    if (properties.getCodec() != null) {
+      // Only stream files created after the update are compressed with the new codec
+      builder.setCodec(properties.getCodec());
+    }
 
     // update stream description
     String description = properties.getDescription();
@@ -720,7 +728,8 @@ public class FileStreamAdmin implements StreamAdmin {
       metadataStore, streamId, newConfig, description);
     systemMetadataWriter.write();
 
-    return new StreamProperties(config.getTTL(), config.getFormat(), config.getNotificationThresholdMB());
+    return new StreamProperties(config.getTTL(), config.getFormat(), config.getNotificationThresholdMB(), null,
+                                config.getCodec());
   }
 
   private void writeConfig(StreamConfig config) throws IOException {
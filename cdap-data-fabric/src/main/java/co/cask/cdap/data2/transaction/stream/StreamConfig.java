@@ -23,6 +23,7 @@ import com.google.common.base.Objects;
 import org.apache.twill.filesystem.Location;
 
 import java.util.Collections;
+import javax.annotation.Nullable;
 
 /**
  * Represents the configuration of a stream. This class needs to be GSON serializable.
@@ -41,11 +42,18 @@ public final class StreamConfig {
   private final long ttl;
   private final FormatSpecification format;
   private final int notificationThresholdMB;
+  private final String codec;
 
   private final transient Location location;
 
   public StreamConfig(StreamId streamId, long partitionDuration, long indexInterval, long ttl,
                       Location location, FormatSpecification format, int notificationThresholdMB) {
+    this(streamId, partitionDuration, indexInterval, ttl, location, format, notificationThresholdMB, null);
+  }
+
+  public StreamConfig(StreamId streamId, long partitionDuration, long indexInterval, long ttl,
+                      Location location, FormatSpecification format, int notificationThresholdMB,
+                      @Nullable String codec) {
     this.streamId = streamId;
     this.partitionDuration = partitionDuration;
     this.indexInterval = indexInterval;
@@ -53,6 +61,7 @@ public final class StreamConfig {
     this.location = location;
     this.notificationThresholdMB = notificationThresholdMB;
     this.format = format;
+    this.codec = codec;
   }
 
   /**
@@ -104,6 +113,14 @@ public final class StreamConfig {
     return notificationThresholdMB;
   }
 
+  /**
+   * @return The codec for compressing data blocks in new stream files or {@code null} if not compressed.
+   */
+  @Nullable
+  public String getCodec() {
+    return codec;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
@@ -114,6 +131,7 @@ public final class StreamConfig {
       .add("location", location)
       .add("format", format)
       .add("notificationThresholdMB", notificationThresholdMB)
+      .add("codec", codec)
       .toString();
   }
 
@@ -130,6 +148,7 @@ public final class StreamConfig {
     private Long ttl;
     private FormatSpecification formatSpec;
     private Integer notificationThreshold;
+    private String codec;
 
     private Builder(StreamConfig config) {
       this.config = config;
@@ -147,12 +166,17 @@ public final class StreamConfig {
       this.notificationThreshold = notificationThreshold;
     }
 
+    public void setCodec(String codec) {
+      this.codec = codec;
+    }
+
     public StreamConfig build() {
       return new StreamConfig(config.getStreamId(), config.getPartitionDuration(), config.getIndexInterval(),
                               Objects.firstNonNull(ttl, config.getTTL()),
                               config.getLocation(),
                               Objects.firstNonNull(formatSpec, config.getFormat()),
-                              Objects.firstNonNull(notificationThreshold, config.getNotificationThresholdMB()));
+                              Objects.firstNonNull(notificationThreshold, config.getNotificationThresholdMB()),
+                              codec == null ? config.getCodec() : codec);
     }
   }
 }
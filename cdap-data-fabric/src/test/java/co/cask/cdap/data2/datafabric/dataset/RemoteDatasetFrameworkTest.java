@@ -17,9 +17,12 @@
 package co.cask.cdap.data2.datafabric.dataset;
 
 import co.cask.cdap.api.dataset.DatasetManagementException;
+import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.DatasetSpecification;
 import co.cask.cdap.api.dataset.module.DatasetDefinitionRegistry;
 import co.cask.cdap.api.dataset.module.DatasetModule;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.CConfigurationUtil;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.discovery.EndpointStrategy;
@@ -29,10 +32,12 @@ import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
 import co.cask.cdap.common.security.DefaultImpersonator;
 import co.cask.cdap.common.security.Impersonator;
+import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.data.dataset.SystemDatasetInstantiatorFactory;
 import co.cask.cdap.data.runtime.DynamicTransactionExecutorFactory;
 import co.cask.cdap.data2.datafabric.dataset.instance.DatasetInstanceManager;
 import co.cask.cdap.data2.datafabric.dataset.service.DatasetInstanceService;
+import co.cask.cdap.data2.datafabric.dataset.service.DatasetMetaChangePublisher;
 import co.cask.cdap.data2.datafabric.dataset.service.DatasetService;
 import co.cask.cdap.data2.datafabric.dataset.service.DatasetTypeService;
 import co.cask.cdap.data2.datafabric.dataset.service.executor.DatasetAdminOpHTTPHandler;
@@ -58,7 +63,12 @@ import co.cask.cdap.data2.transaction.TransactionExecutorFactory;
 import co.cask.cdap.data2.transaction.TransactionSystemClientService;
 import co.cask.cdap.explore.client.DiscoveryExploreClient;
 import co.cask.cdap.explore.client.ExploreFacade;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.guice.MessagingServerRuntimeModule;
 import co.cask.cdap.proto.NamespaceMeta;
+import co.cask.cdap.proto.id.DatasetId;
+import co.cask.cdap.proto.id.DatasetModuleId;
+import co.cask.cdap.proto.id.DatasetTypeId;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
@@ -71,6 +81,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Service;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -90,6 +101,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.HashSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -100,11 +112,15 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
   private DatasetOpExecutorService opExecutorService;
   private DatasetService service;
   private RemoteDatasetFramework framework;
+  private DiscoveryServiceClient discoveryServiceClient;
+  private AuthenticationContext authenticationContext;
+  private MessagingService messagingService;
 
   @Before
   public void before() throws Exception {
     cConf.set(Constants.Service.MASTER_SERVICES_BIND_ADDRESS, "localhost");
     cConf.setBoolean(Constants.Dangerous.UNRECOVERABLE_RESET, true);
+    cConf.set(Constants.MessagingSystem.LOCAL_DATA_DIR, TMP_FOLDER.newFolder().getAbsolutePath());
 
     Configuration txConf = HBaseConfiguration.create();
     CConfigurationUtil.copyTxProperties(cConf, txConf);
@@ -120,6 +136,7 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
       new AuthorizationEnforcementModule().getInMemoryModules(),
       new AuthenticationContextModules().getMasterModule(),
       new TransactionInMemoryModule(),
+      new MessagingServerRuntimeModule().getInMemoryModules(),
       new AbstractModule() {
         @Override
         protected void configure() {
@@ -140,9 +157,13 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
     TransactionSystemClientService txSystemClientService = new DelegatingTransactionSystemClientService(txSystemClient);
 
     DiscoveryService discoveryService = injector.getInstance(DiscoveryService.class);
-    DiscoveryServiceClient discoveryServiceClient = injector.getInstance(DiscoveryServiceClient.class);
+    discoveryServiceClient = injector.getInstance(DiscoveryServiceClient.class);
     MetricsCollectionService metricsCollectionService = injector.getInstance(MetricsCollectionService.class);
-    AuthenticationContext authenticationContext = injector.getInstance(AuthenticationContext.class);
+    authenticationContext = injector.getInstance(AuthenticationContext.class);
+    messagingService = injector.getInstance(MessagingService.class);
+    if (messagingService instanceof Service) {
+      ((Service) messagingService).startAndWait();
+    }
 
     framework = new RemoteDatasetFramework(cConf, discoveryServiceClient, registryFactory, authenticationContext);
     SystemDatasetInstantiatorFactory datasetInstantiatorFactory =
@@ -185,6 +206,10 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
       typeService, instanceManager, opExecutor, exploreFacade, namespaceQueryAdmin, authorizationEnforcer,
       privilegesManager, authenticationContext);
     instanceService.setAuditPublisher(inMemoryAuditPublisher);
+    DatasetMetaChangePublisher metaChangePublisher = new DatasetMetaChangePublisher(cConf);
+    metaChangePublisher.setMessagingService(messagingService);
+    typeService.setMetaChangePublisher(metaChangePublisher);
+    instanceService.setMetaChangePublisher(metaChangePublisher);
 
     service = new DatasetService(cConf, discoveryService, discoveryServiceClient, metricsCollectionService,
                                  new InMemoryDatasetOpExecutor(framework), new HashSet<DatasetMetricsReporter>(),
@@ -229,6 +254,116 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
     }
   }
 
+  @Test
+  public void testMetaCache() throws Exception {
+    // Subscribe to a topic that the dataset service does not publish to, so that cached entries are only
+    // invalidated by this client
+    RemoteDatasetFramework cachingFramework = createCachingFramework("unpublished");
+    DatasetModuleId moduleId = NAMESPACE_ID.datasetModule("inMemory");
+    DatasetTypeId typeId = NAMESPACE_ID.datasetType("table");
+    DatasetId datasetId = NAMESPACE_ID.dataset("cached");
+
+    // Types and instances that don't exist are not cached, so that they are visible once created
+    Assert.assertFalse(cachingFramework.hasType(typeId));
+    cachingFramework.addModule(moduleId, new InMemoryTableModule());
+    Assert.assertTrue(cachingFramework.hasType(typeId));
+    Assert.assertFalse(cachingFramework.hasInstance(datasetId));
+    framework.addInstance("table", datasetId, DatasetProperties.builder().add("key", "v1").build());
+    Assert.assertEquals("v1", getProperty(cachingFramework, datasetId, "key"));
+
+    // An update from another client is only visible after the cached entry is invalidated
+    framework.updateInstance(datasetId, DatasetProperties.builder().add("key", "v2").build());
+    Assert.assertEquals("v1", getProperty(cachingFramework, datasetId, "key"));
+    cachingFramework.invalidate(datasetId);
+    Assert.assertEquals("v2", getProperty(cachingFramework, datasetId, "key"));
+
+    // Changes made through the caching framework are visible right away
+    cachingFramework.updateInstance(datasetId, DatasetProperties.builder().add("key", "v3").build());
+    Assert.assertEquals("v3", getProperty(cachingFramework, datasetId, "key"));
+    cachingFramework.deleteInstance(datasetId);
+    Assert.assertFalse(cachingFramework.hasInstance(datasetId));
+    cachingFramework.deleteModule(moduleId);
+    Assert.assertFalse(cachingFramework.hasType(typeId));
+
+    // Nothing is cached once the subscription to changes is stopped
+    cachingFramework.close();
+    Assert.assertFalse(cachingFramework.isMetaCacheEnabled());
+  }
+
+  @Test
+  public void testMetaCacheInvalidatedByChangeNotification() throws Exception {
+    final RemoteDatasetFramework cachingFramework =
+      createCachingFramework(cConf.get(Constants.Dataset.Manager.META_CHANGE_TOPIC));
+    // a client that caches but never receives change notifications, to show that entries are cached
+    RemoteDatasetFramework unnotifiedFramework = createCachingFramework("unpublished");
+    DatasetModuleId moduleId = NAMESPACE_ID.datasetModule("inMemory");
+    final DatasetTypeId typeId = NAMESPACE_ID.datasetType("table");
+    final DatasetId datasetId = NAMESPACE_ID.dataset("notified");
+
+    framework.addModule(moduleId, new InMemoryTableModule());
+    framework.addInstance("table", datasetId, DatasetProperties.builder().add("key", "v1").build());
+    Assert.assertEquals("v1", getProperty(cachingFramework, datasetId, "key"));
+    Assert.assertEquals("v1", getProperty(unnotifiedFramework, datasetId, "key"));
+    Assert.assertTrue(cachingFramework.hasType(typeId));
+    Assert.assertTrue(unnotifiedFramework.hasType(typeId));
+
+    // An update made by another client is seen once its notification is received
+    framework.updateInstance(datasetId, DatasetProperties.builder().add("key", "v2").build());
+    waitForProperty(cachingFramework, datasetId, "key", "v2");
+    Assert.assertEquals("v1", getProperty(unnotifiedFramework, datasetId, "key"));
+
+    // So are the deletion of the instance and of the module that provides its type
+    framework.deleteInstance(datasetId);
+    framework.deleteModule(moduleId);
+    Tasks.waitFor(false, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return cachingFramework.hasInstance(datasetId) || cachingFramework.hasType(typeId);
+      }
+    }, 10, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(unnotifiedFramework.hasInstance(datasetId));
+    Assert.assertTrue(unnotifiedFramework.hasType(typeId));
+
+    cachingFramework.close();
+    unnotifiedFramework.close();
+  }
+
+  /**
+   * Creates a {@link RemoteDatasetFramework} that caches metadata and subscribes to the given change topic,
+   * and waits until its subscription is working.
+   */
+  private RemoteDatasetFramework createCachingFramework(String metaChangeTopic) throws Exception {
+    CConfiguration cacheConf = CConfiguration.copy(cConf);
+    cacheConf.setLong(Constants.Dataset.Manager.CLIENT_META_CACHE_TTL_SECS, 3600L);
+    cacheConf.set(Constants.Dataset.Manager.META_CHANGE_TOPIC, metaChangeTopic);
+    final RemoteDatasetFramework cachingFramework = new RemoteDatasetFramework(cacheConf, discoveryServiceClient,
+                                                                               registryFactory, authenticationContext);
+    cachingFramework.setMessagingService(messagingService);
+    Tasks.waitFor(true, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return cachingFramework.isMetaCacheEnabled();
+      }
+    }, 10, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS);
+    return cachingFramework;
+  }
+
+  private void waitForProperty(final DatasetFramework framework, final DatasetId datasetId,
+                               final String key, String expected) throws Exception {
+    Tasks.waitFor(expected, new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return getProperty(framework, datasetId, key);
+      }
+    }, 10, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS);
+  }
+
+  private String getProperty(DatasetFramework framework, DatasetId datasetId, String key) throws Exception {
+    DatasetSpecification spec = framework.getDatasetSpec(datasetId);
+    Assert.assertNotNull(spec);
+    return spec.getProperty(key);
+  }
+
   private void createNamespace (NamespaceId namespaceId) throws Exception {
     // since the namespace admin here is an in memory one we need to create the location explicitly
     namespacedLocationFactory.get(namespaceId.toId()).mkdirs();
@@ -249,6 +384,9 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
     deleteNamespace(NAMESPACE_ID);
     deleteNamespace(NamespaceId.SYSTEM);
     Futures.getUnchecked(Services.chainStop(service, opExecutorService, txManager));
+    if (messagingService instanceof Service) {
+      ((Service) messagingService).stopAndWait();
+    }
   }
 
   @Override
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+
+/**
+ * Unit-test for {@link ArenaWriteBuffer}.
+ */
+public class ArenaWriteBufferTest {
+
+  @Test
+  public void testPutAndIncrement() {
+    ArenaWriteBuffer buffer = new ArenaWriteBuffer();
+    Assert.assertTrue(buffer.isEmpty());
+
+    byte[] row = Bytes.toBytes("r");
+    byte[] value = Bytes.toBytes("v1");
+    buffer.put(row, Bytes.toBytes("c1"), value);
+    buffer.put(row, Bytes.toBytes("c2"), null);
+    buffer.increment(row, Bytes.toBytes("c3"), 5L);
+    // Modifying the arrays after writing shouldn't affect the buffer
+    value[0] = 'x';
+    row[0] = 'x';
+
+    Assert.assertFalse(buffer.isEmpty());
+    Assert.assertEquals(1, buffer.getRowCount());
+    Assert.assertNull(buffer.getRow(row));
+
+    NavigableMap<byte[], Update> columns = buffer.getRow(Bytes.toBytes("r"));
+    Assert.assertNotNull(columns);
+    Assert.assertEquals(3, columns.size());
+    Assert.assertArrayEquals(Bytes.toBytes("v1"), ((PutValue) columns.get(Bytes.toBytes("c1"))).getValue());
+    Assert.assertNull(((PutValue) columns.get(Bytes.toBytes("c2"))).getValue());
+    Assert.assertEquals(5L, (long) ((IncrementValue) columns.get(Bytes.toBytes("c3"))).getValue());
+
+    // Increment on top of increment, put and delete
+    row = Bytes.toBytes("r");
+    buffer.increment(row, Bytes.toBytes("c3"), 2L);
+    buffer.put(row, Bytes.toBytes("c1"), Bytes.toBytes(10L));
+    buffer.increment(row, Bytes.toBytes("c1"), 3L);
+    buffer.increment(row, Bytes.toBytes("c2"), 4L);
+
+    columns = buffer.getRow(row);
+    Assert.assertNotNull(columns);
+    Assert.assertEquals(13L, Bytes.toLong(((PutValue) columns.get(Bytes.toBytes("c1"))).getValue()));
+    Assert.assertEquals(4L, Bytes.toLong(((PutValue) columns.get(Bytes.toBytes("c2"))).getValue()));
+    Assert.assertEquals(7L, (long) ((IncrementValue) columns.get(Bytes.toBytes("c3"))).getValue());
+
+    // Put on top of increment
+    buffer.put(row, Bytes.toBytes("c3"), Bytes.toBytes("longer value"));
+    Assert.assertArrayEquals(Bytes.toBytes("longer value"),
+                             ((PutValue) buffer.getRow(row).get(Bytes.toBytes("c3"))).getValue());
+
+    buffer.clear();
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertNull(buffer.getRow(row));
+    Assert.assertTrue(buffer.getRows(null, null).isEmpty());
+  }
+
+  @Test
+  public void testSameAsMapBuffer() {
+    // Small chunks to have records across many chunks, as well as records larger than a chunk
+    testSameAsMapBuffer(new ArenaWriteBuffer(64, false));
+    testSameAsMapBuffer(new ArenaWriteBuffer(ArenaWriteBuffer.DEFAULT_CHUNK_SIZE, true));
+  }
+
+  private void testSameAsMapBuffer(ArenaWriteBuffer arenaBuffer) {
+    Random random = new Random(0);
+    for (int round = 0; round < 3; round++) {
+      MapWriteBuffer mapBuffer = new MapWriteBuffer();
+      // Use enough rows and columns to trigger resizing of the index
+      for (int i = 0; i < 5000; i++) {
+        byte[] row = Bytes.toBytes("row" + random.nextInt(300));
+        byte[] column = Bytes.toBytes("col" + random.nextInt(20));
+        switch (random.nextInt(3)) {
+          case 0:
+            byte[] value = new byte[random.nextInt(100)];
+            random.nextBytes(value);
+            arenaBuffer.put(row, column, value);
+            mapBuffer.put(row, column, value);
+            break;
+          case 1:
+            arenaBuffer.put(row, column, null);
+            mapBuffer.put(row, column, null);
+            break;
+          default:
+            // Increment columns that only has long values or increments
+            byte[] counter = Bytes.toBytes("counter" + random.nextInt(5));
+            long amount = random.nextInt(1000);
+            arenaBuffer.increment(row, counter, amount);
+            mapBuffer.increment(row, counter, amount);
+        }
+      }
+
+      Assert.assertEquals(mapBuffer.getRowCount(), arenaBuffer.getRowCount());
+      assertSame(mapBuffer.getRows(null, null), arenaBuffer.getRows(null, null));
+      assertSame(mapBuffer.getRows(Bytes.toBytes("row1"), Bytes.toBytes("row5")),
+                 arenaBuffer.getRows(Bytes.toBytes("row1"), Bytes.toBytes("row5")));
+      assertSame(mapBuffer.getRows(null, Bytes.toBytes("row2")), arenaBuffer.getRows(null, Bytes.toBytes("row2")));
+      assertSame(mapBuffer.getRows(Bytes.toBytes("row7"), null), arenaBuffer.getRows(Bytes.toBytes("row7"), null));
+
+      Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = arenaBuffer.rowIterator();
+      for (Map.Entry<byte[], NavigableMap<byte[], Update>> row : mapBuffer.getRows(null, null).entrySet()) {
+        Assert.assertTrue(iterator.hasNext());
+        Map.Entry<byte[], NavigableMap<byte[], Update>> actualRow = iterator.next();
+        Assert.assertArrayEquals(row.getKey(), actualRow.getKey());
+        assertSameRow(row.getValue(), actualRow.getValue());
+      }
+      Assert.assertFalse(iterator.hasNext());
+
+      arenaBuffer.clear();
+      Assert.assertTrue(arenaBuffer.isEmpty());
+    }
+  }
+
+  private void assertSame(NavigableMap<byte[], NavigableMap<byte[], Update>> expected,
+                          NavigableMap<byte[], NavigableMap<byte[], Update>> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> row : expected.entrySet()) {
+      NavigableMap<byte[], Update> actualRow = actual.get(row.getKey());
+      Assert.assertNotNull(actualRow);
+      assertSameRow(row.getValue(), actualRow);
+    }
+  }
+
+  private void assertSameRow(NavigableMap<byte[], Update> expected, NavigableMap<byte[], Update> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (Map.Entry<byte[], Update> column : expected.entrySet()) {
+      Update actualUpdate = actual.get(column.getKey());
+      Assert.assertNotNull(actualUpdate);
+      Assert.assertEquals(column.getValue().getClass(), actualUpdate.getClass());
+      Assert.assertArrayEquals(column.getValue().getBytes(), actualUpdate.getBytes());
+    }
+  }
+}
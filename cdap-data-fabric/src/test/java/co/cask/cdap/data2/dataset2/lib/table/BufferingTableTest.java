@@ -24,6 +24,7 @@ import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.dataset2.TableAssert;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -192,6 +193,109 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
     }
   }
 
+  /**
+   * Tests that changes persisted before commit because the write buffer reached the flush size are combined with
+   * later changes of the same cells, included in conflict detection, and undone on rollback.
+   */
+  @Test
+  public void testFlushBeforeCommit() throws Exception {
+    // With the smallest flush size, changes are persisted on every write
+    DatasetProperties props = DatasetProperties.builder()
+      .add(Table.PROPERTY_READLESS_INCREMENT, String.valueOf(isReadlessIncrementSupported()))
+      .add(Constants.Dataset.TABLE_WRITE_BUFFER_FLUSH_BYTES, "1")
+      .build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE, props);
+    admin.create();
+    try {
+      BufferingTable table = getTable(CONTEXT1, MY_TABLE, props);
+
+      // changes of the same cells are combined with the ones persisted before
+      Transaction tx1 = txClient.startShort();
+      table.startTx(tx1);
+      table.put(R1, a(C1, C2), a(V1, V2));
+      table.increment(R1, a(C3), new long[] {1L});
+      table.increment(R1, a(C3), new long[] {2L});
+      table.put(R1, a(C1), a(V3));
+      table.delete(R1, a(C2));
+      table.put(R2, a(C1), a(V1));
+      TableAssert.assertRow(a(C1, V3, C3, Bytes.toBytes(3L)), table.get(R1));
+      TableAssert.assertRow(a(C1, V1), table.get(R2));
+
+      // conflict detection includes the changes that were persisted already
+      Collection<byte[]> txChanges = table.getTxChanges();
+      Assert.assertEquals(2, txChanges.size());
+      Assert.assertTrue(txClient.canCommit(tx1, txChanges));
+      Assert.assertTrue(table.commitTx());
+      Assert.assertTrue(txClient.commit(tx1));
+      table.postTxCommit();
+
+      // rolling back undoes all changes, including the ones persisted before commit
+      Transaction tx2 = txClient.startShort();
+      table.startTx(tx2);
+      table.put(R1, a(C1), a(V4));
+      table.increment(R1, a(C3), new long[] {10L});
+      table.put(R3, a(C1), a(V1));
+      TableAssert.assertRow(a(C1, V4, C3, Bytes.toBytes(13L)), table.get(R1));
+      Assert.assertTrue(table.rollbackTx());
+      txClient.abort(tx2);
+
+      Transaction tx3 = txClient.startShort();
+      table.startTx(tx3);
+      TableAssert.assertRow(a(C1, V3, C3, Bytes.toBytes(3L)), table.get(R1));
+      TableAssert.assertRow(a(C1, V1), table.get(R2));
+      TableAssert.assertRow(a(), table.get(R3));
+      txClient.abort(tx3);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  /**
+   * Tests that readless increments of a cell that was persisted before commit are still summed with the increments
+   * of a concurrent transaction with a smaller write pointer that commits later, like long transactions do.
+   */
+  @Test
+  public void testFlushBeforeCommitWithConcurrentIncrements() throws Exception {
+    if (!isReadlessIncrementSupported()) {
+      return;
+    }
+    DatasetProperties props = DatasetProperties.builder()
+      .add(Table.PROPERTY_READLESS_INCREMENT, "true")
+      .add(Constants.Dataset.TABLE_WRITE_BUFFER_FLUSH_BYTES, "1")
+      .build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE, props);
+    admin.create();
+    try {
+      BufferingTable table1 = getTable(CONTEXT1, MY_TABLE, props);
+      BufferingTable table2 = getTable(CONTEXT1, MY_TABLE, props);
+
+      // long transactions have no conflict detection, hence both can commit
+      Transaction tx1 = txClient.startLong();
+      table1.startTx(tx1);
+      Transaction tx2 = txClient.startLong();
+      table2.startTx(tx2);
+
+      // the second increment in tx2 is combined with the first one that was persisted already
+      table2.increment(R1, a(C1), new long[] {1L});
+      table2.increment(R1, a(C1), new long[] {2L});
+      Assert.assertTrue(table2.commitTx());
+      Assert.assertTrue(txClient.commit(tx2));
+      table2.postTxCommit();
+
+      table1.increment(R1, a(C1), new long[] {10L});
+      Assert.assertTrue(table1.commitTx());
+      Assert.assertTrue(txClient.commit(tx1));
+      table1.postTxCommit();
+
+      Transaction tx3 = txClient.startShort();
+      table1.startTx(tx3);
+      Assert.assertArrayEquals(Bytes.toBytes(13L), table1.get(R1, C1));
+      txClient.abort(tx3);
+    } finally {
+      admin.drop();
+    }
+  }
+
   @Test
   public void testChangingParamsAndReturnValues() throws Exception {
     // The test verifies that one can re-use byte arrays passed as parameters to write methods of a table without
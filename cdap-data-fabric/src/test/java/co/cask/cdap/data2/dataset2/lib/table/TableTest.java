@@ -31,6 +31,7 @@ import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.api.dataset.table.ValueFilter;
 import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.utils.ImmutablePair;
@@ -62,6 +63,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import javax.annotation.Nullable;
 
 /**
  * Base test for Table.
@@ -1293,6 +1295,236 @@ public abstract class TableTest<T extends Table> {
     return count;
   }
 
+  @Test
+  public void testScanWithProjection() throws Exception {
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE);
+    admin.create();
+    try {
+      Transaction tx1 = txClient.startShort();
+      Table table = getTable(CONTEXT1, MY_TABLE);
+      ((TransactionAware) table).startTx(tx1);
+
+      byte[] a1 = Bytes.toBytes("a1");
+      byte[] a2 = Bytes.toBytes("a2");
+      byte[] b1 = Bytes.toBytes("b1");
+      table.put(R1, a(a1, a2, b1), a(V1, V2, V3));
+      table.put(R2, a(a2, b1), a(V1, V4));
+      table.put(R3, a(b1), a(V3));
+
+      // check that projection works against data written in same tx
+      verifyScanWithProjection(table);
+
+      // commit tx, start new and verify scan again against "persisted" data
+      Assert.assertTrue(txClient.canCommit(tx1, ((TransactionAware) table).getTxChanges()));
+      Assert.assertTrue(((TransactionAware) table).commitTx());
+      Assert.assertTrue(txClient.commit(tx1));
+      ((TransactionAware) table).postTxCommit();
+
+      Transaction tx2 = txClient.startShort();
+      ((TransactionAware) table).startTx(tx2);
+      verifyScanWithProjection(table);
+
+      // buffered changes decide whether a column matches the value filter
+      table.put(R3, b1, V1);
+      table.delete(R1, a1);
+      TableAssert.assertScan(a(R2, R3), aa(a(a2, V1), a(b1, V1)),
+                             table.scan(new Scan(null, null).setValueFilter(ValueFilter.equalTo(V1))));
+      TableAssert.assertScan(a(R1), aa(a(b1, V3)),
+                             table.scan(new Scan(null, null).setValueFilter(ValueFilter.equalTo(V3))));
+      txClient.abort(tx2);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  @Test
+  public void testScanWithValueFilterOnReadlessIncrements() throws Exception {
+    if (!isReadlessIncrementSupported()) {
+      return;
+    }
+    DatasetProperties props = DatasetProperties.builder().add(Table.PROPERTY_READLESS_INCREMENT, "true").build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE, props);
+    admin.create();
+    try {
+      Table table = getTable(CONTEXT1, MY_TABLE, props);
+      // persist the increments in separate transactions, such that the columns consist of several deltas
+      for (long amount : new long[] {1L, 2L}) {
+        Transaction tx = txClient.startShort();
+        ((TransactionAware) table).startTx(tx);
+        table.increment(R1, a(C1, C2), new long[] {amount, amount + 1});
+        table.increment(R2, a(C1), new long[] {amount});
+        Assert.assertTrue(txClient.canCommit(tx, ((TransactionAware) table).getTxChanges()));
+        Assert.assertTrue(((TransactionAware) table).commitTx());
+        Assert.assertTrue(txClient.commit(tx));
+        ((TransactionAware) table).postTxCommit();
+      }
+
+      Transaction tx = txClient.startShort();
+      ((TransactionAware) table).startTx(tx);
+      // the value filter matches the summed values, not the deltas
+      TableAssert.assertScan(a(R1, R2), aa(a(C1, L3), a(C1, L3)),
+                             table.scan(new Scan(null, null).setValueFilter(ValueFilter.equalTo(L3))));
+      TableAssert.assertScan(a(R1), aa(a(C2, L5)),
+                             table.scan(new Scan(null, null).setValueFilter(ValueFilter.equalTo(L5))));
+      TableAssert.assertScan(new byte[0][], new byte[0][][],
+                             table.scan(new Scan(null, null).setValueFilter(ValueFilter.equalTo(L1))));
+      txClient.abort(tx);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  private static void verifyScanWithProjection(Table table) {
+    byte[] a1 = Bytes.toBytes("a1");
+    byte[] a2 = Bytes.toBytes("a2");
+    byte[] b1 = Bytes.toBytes("b1");
+
+    // set of columns
+    TableAssert.assertScan(a(R1, R2, R3), aa(a(a1, V1, b1, V3), a(b1, V4), a(b1, V3)),
+                           table.scan(new Scan(null, null).setColumns(a1, b1)));
+    TableAssert.assertScan(a(R2), aa(a(a2, V1)),
+                           table.scan(new Scan(R2, null).setColumns(a2)));
+    TableAssert.assertScan(new byte[0][], new byte[0][][], table.scan(new Scan(null, null).setColumns()));
+
+    // column prefix
+    TableAssert.assertScan(a(R1, R2), aa(a(a1, V1, a2, V2), a(a2, V1)),
+                           table.scan(new Scan(null, null).setColumnPrefix(Bytes.toBytes("a"))));
+
+    // value filters
+    TableAssert.assertScan(a(R1, R2), aa(a(a1, V1), a(a2, V1)),
+                           table.scan(new Scan(null, null).setValueFilter(ValueFilter.equalTo(V1))));
+    TableAssert.assertScan(a(R1, R2, R3), aa(a(a1, V1, a2, V2, b1, V3), a(a2, V1, b1, V4), a(b1, V3)),
+                           table.scan(new Scan(null, null).setValueFilter(ValueFilter.prefix(Bytes.toBytes("v")))));
+    TableAssert.assertScan(a(R1, R3), aa(a(a2, V2, b1, V3), a(b1, V3)),
+                           table.scan(new Scan(null, null).setValueFilter(ValueFilter.range(V2, V4))));
+    TableAssert.assertScan(a(R2), aa(a(b1, V4)),
+                           table.scan(new Scan(null, null).setValueFilter(ValueFilter.range(V4, null))));
+
+    // column prefix and value filter together
+    TableAssert.assertScan(a(R1, R3), aa(a(b1, V3), a(b1, V3)),
+                           table.scan(new Scan(null, null).setColumnPrefix(Bytes.toBytes("b"))
+                                        .setValueFilter(ValueFilter.range(null, V4))));
+  }
+
+  @Test
+  public void testReversedScan() throws Exception {
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE);
+    admin.create();
+    try {
+      Transaction tx1 = txClient.startShort();
+      Table table = getTable(CONTEXT1, MY_TABLE);
+      ((TransactionAware) table).startTx(tx1);
+
+      table.put(R1, a(C1, C2), a(V1, V2));
+      table.put(R2, a(C1), a(V2));
+      table.put(R3, a(C2), a(V3));
+      table.put(R4, a(C1, C2), a(V4, V4));
+
+      // check that reversed scan works against data written in same tx
+      verifyReversedScan(table);
+
+      // commit tx, start new and verify scan again against "persisted" data
+      Assert.assertTrue(txClient.canCommit(tx1, ((TransactionAware) table).getTxChanges()));
+      Assert.assertTrue(((TransactionAware) table).commitTx());
+      Assert.assertTrue(txClient.commit(tx1));
+      ((TransactionAware) table).postTxCommit();
+
+      Transaction tx2 = txClient.startShort();
+      ((TransactionAware) table).startTx(tx2);
+      verifyReversedScan(table);
+
+      // buffered changes are merged in descending order
+      table.put(R1, C2, V3);
+      table.put(R3, C1, V1);
+      table.put(R5, C1, V5);
+      TableAssert.assertScan(a(R5, R4, R3, R2, R1),
+                             aa(a(C1, V5), a(C1, V4, C2, V4), a(C1, V1, C2, V3), a(C1, V2), a(C1, V1, C2, V3)),
+                             table.scan(new Scan(null, null).setReversed(true)));
+      TableAssert.assertScan(a(R3, R2, R1), aa(a(C1, V1, C2, V3), a(C1, V2), a(C1, V1, C2, V3)),
+                             table.scan(new Scan(null, R4).setReversed(true)));
+      txClient.abort(tx2);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  private static void verifyReversedScan(Table table) {
+    TableAssert.assertScan(a(R4, R3, R2, R1), aa(a(C1, V4, C2, V4), a(C2, V3), a(C1, V2), a(C1, V1, C2, V2)),
+                           table.scan(new Scan(null, null).setReversed(true)));
+    TableAssert.assertScan(a(R3, R2), aa(a(C2, V3), a(C1, V2)),
+                           table.scan(new Scan(R2, R4).setReversed(true)));
+    TableAssert.assertScan(a(R4, R3), aa(a(C2, V4), a(C2, V3)),
+                           table.scan(new Scan(R2, null).setColumns(C2).setReversed(true)));
+
+    FuzzyRowFilter filter = new FuzzyRowFilter(
+      ImmutableList.of(ImmutablePair.of(R2, new byte[R2.length]), ImmutablePair.of(R4, new byte[R4.length])));
+    TableAssert.assertScan(a(R4, R2), aa(a(C1, V4, C2, V4), a(C1, V2)),
+                           table.scan(new Scan(null, null, filter).setReversed(true)));
+  }
+
+  @Test
+  public void testReversedScanManyRows() throws Exception {
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE);
+    admin.create();
+    try {
+      Transaction tx1 = txClient.startShort();
+      Table table = getTable(CONTEXT1, MY_TABLE);
+      ((TransactionAware) table).startTx(tx1);
+
+      // enough rows for reading multiple batches, including rows that only differ in trailing zero bytes
+      List<byte[]> rows = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        rows.add(Bytes.toBytes(i * 7));
+      }
+      rows.add(new byte[] { 1 });
+      rows.add(new byte[] { 1, 0 });
+      rows.add(new byte[] { 1, 0, 0 });
+      for (byte[] row : rows) {
+        table.put(row, C1, row);
+      }
+      Assert.assertTrue(txClient.canCommit(tx1, ((TransactionAware) table).getTxChanges()));
+      Assert.assertTrue(((TransactionAware) table).commitTx());
+      Assert.assertTrue(txClient.commit(tx1));
+      ((TransactionAware) table).postTxCommit();
+
+      Transaction tx2 = txClient.startShort();
+      ((TransactionAware) table).startTx(tx2);
+      Collections.sort(rows, Collections.reverseOrder(Bytes.BYTES_COMPARATOR));
+      verifyReversedScan(table, rows, null, null);
+      verifyReversedScan(table, rows, Bytes.toBytes(100), Bytes.toBytes(5000));
+      verifyReversedScan(table, rows, null, new byte[] { 1, 0 });
+      verifyReversedScan(table, rows, new byte[] { 1 }, null);
+      txClient.abort(tx2);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  /**
+   * Verifies that a reversed scan returns the given rows that are in the scan range, where each row has the column
+   * {@link #C1} with the row key as value.
+   *
+   * @param rows all rows of the table in descending order
+   */
+  private static void verifyReversedScan(Table table, List<byte[]> rows,
+                                         @Nullable byte[] startRow, @Nullable byte[] stopRow) {
+    List<byte[]> expected = new ArrayList<>();
+    for (byte[] row : rows) {
+      if ((startRow == null || Bytes.compareTo(row, startRow) >= 0)
+        && (stopRow == null || Bytes.compareTo(row, stopRow) < 0)) {
+        expected.add(row);
+      }
+    }
+    try (Scanner scanner = table.scan(new Scan(startRow, stopRow).setReversed(true))) {
+      for (byte[] row : expected) {
+        Row result = scanner.next();
+        Assert.assertNotNull(result);
+        Assert.assertArrayEquals(row, result.getRow());
+        Assert.assertArrayEquals(row, result.get(C1));
+      }
+      Assert.assertNull(scanner.next());
+    }
+  }
 
   @Test
   public void testBasicColumnRangeWithTx() throws Exception {
@@ -19,12 +19,20 @@ package co.cask.cdap.data2.dataset2.lib.table.inmemory;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.data2.dataset2.lib.table.PutValue;
 import co.cask.cdap.data2.dataset2.lib.table.Update;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import org.apache.tephra.Transaction;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -97,6 +105,54 @@ public class InMemoryTableServiceTest {
     verify123();
   }
 
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    InMemoryTableService.create("concurrent");
+
+    final byte[] col = new byte[] {1};
+    final int threads = 4;
+    final int iterations = 500;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final byte[] ownRow = new byte[] {(byte) (t + 10)};
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < iterations; i++) {
+              // all threads increment the same row
+              InMemoryTableService.increment("concurrent", new byte[] {1}, ImmutableMap.of(col, 1L));
+
+              // each thread writes and deletes its own row, which shouldn't affect other rows
+              NavigableMap<byte[], NavigableMap<byte[], Update>> updates = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+              NavigableMap<byte[], Update> rowUpdate = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+              rowUpdate.put(col, new PutValue(Bytes.toBytes(i)));
+              updates.put(ownRow, rowUpdate);
+              InMemoryTableService.merge("concurrent", updates, i);
+              InMemoryTableService.delete("concurrent", ownRow);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> rows =
+      InMemoryTableService.getRowRange("concurrent", null, null, null);
+    Assert.assertEquals(1, rows.size());
+    NavigableMap<Long, byte[]> values = rows.get(new byte[] {1}).get(col);
+    Assert.assertEquals(threads * iterations, Bytes.toLong(values.firstEntry().getValue()));
+
+    InMemoryTableService.drop("concurrent");
+  }
+
   private void verify123() {
     NavigableMap<byte[], NavigableMap<Long, byte[]>> rowFromGet =
       InMemoryTableService.get("table", new byte[]{1}, new Transaction(1L, 2L, new long[0], new long[0], 1L));
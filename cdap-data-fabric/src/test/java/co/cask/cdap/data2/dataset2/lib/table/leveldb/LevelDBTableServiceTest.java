@@ -17,6 +17,8 @@
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.table.Get;
+import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.guice.ConfigModule;
@@ -29,6 +31,9 @@ import co.cask.cdap.data2.util.TableId;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.Assert;
@@ -38,8 +43,18 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  *
@@ -112,6 +127,210 @@ public class LevelDBTableServiceTest {
     Assert.assertEquals(table2Size, service.getTableStats().get(tableId2).getDiskSizeBytes());
   }
 
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    final String tableName = "cdap_default.increments";
+    service.ensureTableExists(tableName);
+
+    final byte[] col = Bytes.toBytes("c");
+    final byte[][] rows = { Bytes.toBytes("r1"), Bytes.toBytes("r2"), Bytes.toBytes("r3") };
+    final int threads = 4;
+    final int iterations = 200;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            // Each thread uses its own core instance, which should still be mutually exclusive for the same row
+            LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+            for (int i = 0; i < iterations; i++) {
+              // Single row increment on one row, multi rows increment on all rows
+              table.increment(rows[i % rows.length], ImmutableMap.of(col, 1L));
+              NavigableMap<byte[], NavigableMap<byte[], Long>> updates =
+                ImmutableSortedMap.<byte[], NavigableMap<byte[], Long>>orderedBy(Bytes.BYTES_COMPARATOR)
+                  .put(rows[0], ImmutableSortedMap.<byte[], Long>orderedBy(Bytes.BYTES_COMPARATOR).put(col, 1L).build())
+                  .put(rows[1], ImmutableSortedMap.<byte[], Long>orderedBy(Bytes.BYTES_COMPARATOR).put(col, 1L).build())
+                  .put(rows[2], ImmutableSortedMap.<byte[], Long>orderedBy(Bytes.BYTES_COMPARATOR).put(col, 1L).build())
+                  .build();
+              table.increment(updates);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+    long total = 0L;
+    for (byte[] row : rows) {
+      long value = Bytes.toLong(table.getRow(row, new byte[][] { col }, null, null, -1, null).get(col));
+      // Every row is incremented once by each multi rows increment
+      Assert.assertTrue(value >= threads * iterations);
+      total += value;
+    }
+    // Every iteration increments by one with the single row increment, and by one for each row
+    Assert.assertEquals(threads * iterations * (1 + rows.length), total);
+
+    service.dropTable(tableName);
+  }
+
+  @Test
+  public void testConcurrentPersist() throws Exception {
+    final String tableName = "cdap_default.persist";
+    service.ensureTableExists(tableName);
+
+    final byte[] col = Bytes.toBytes("c");
+    final int threads = 8;
+    final int iterations = 100;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            // Concurrent synced writes to the same table are grouped into fewer syncs
+            LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+            for (int i = 0; i < iterations; i++) {
+              byte[] row = Bytes.toBytes("r" + thread + "_" + i);
+              table.persist(ImmutableMap.of(row, ImmutableMap.of(col, Bytes.toBytes(i))), 1L);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+    for (int t = 0; t < threads; t++) {
+      for (int i = 0; i < iterations; i++) {
+        byte[] row = Bytes.toBytes("r" + t + "_" + i);
+        byte[] value = table.getRow(row, new byte[][] { col }, null, null, -1, null).get(col);
+        Assert.assertArrayEquals(Bytes.toBytes(i), value);
+      }
+    }
+
+    service.dropTable(tableName);
+  }
+
+  @Test
+  public void testRowBloomFilter() throws Exception {
+    String tableName = "cdap_default.bloom";
+    service.ensureTableExists(tableName);
+
+    byte[] col = Bytes.toBytes("c");
+    byte[] row1 = Bytes.toBytes("r1");
+    byte[] row2 = Bytes.toBytes("r2");
+    byte[] missing = Bytes.toBytes("missing");
+    LevelDBTableCore plainTable = new LevelDBTableCore(tableName, service);
+    plainTable.persist(ImmutableMap.of(row1, ImmutableMap.of(col, Bytes.toBytes(1L))), 1L);
+
+    // the filter is built from the rows that already exist in the table
+    final Map<String, Long> metrics = new HashMap<>();
+    LevelDBTableCore table = new LevelDBTableCore(tableName, service,
+                                                  ImmutableMap.of(Constants.Dataset.TABLE_ROW_BLOOM_FILTER, "true"));
+    table.setMetricsCollector(new MetricsCollector() {
+      @Override
+      public void increment(String metricName, long value) {
+        Long current = metrics.get(metricName);
+        metrics.put(metricName, current == null ? value : current + value);
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        metrics.put(metricName, value);
+      }
+    });
+    Assert.assertEquals(1L, Bytes.toLong(table.getRow(row1, null, null, null, -1, null).get(col)));
+    Assert.assertTrue(table.getRow(missing, null, null, null, -1, null).isEmpty());
+    Assert.assertEquals(Long.valueOf(1L), metrics.get(Constants.Metrics.Name.Dataset.BLOOM_FILTER_SKIPPED_READS));
+
+    // rows written by a core that does not read with the filter are still added to it
+    plainTable.persist(ImmutableMap.of(row2, ImmutableMap.of(col, Bytes.toBytes(2L))), 1L);
+    Assert.assertEquals(2L, Bytes.toLong(table.getRow(row2, null, null, null, -1, null).get(col)));
+    List<Map<byte[], byte[]>> rows = table.getRows(ImmutableList.of(new Get(row2), new Get(missing), new Get(row1)),
+                                                   null);
+    Assert.assertEquals(2L, Bytes.toLong(rows.get(0).get(col)));
+    Assert.assertTrue(rows.get(1).isEmpty());
+    Assert.assertEquals(1L, Bytes.toLong(rows.get(2).get(col)));
+    Assert.assertEquals(Long.valueOf(2L), metrics.get(Constants.Metrics.Name.Dataset.BLOOM_FILTER_SKIPPED_READS));
+
+    service.dropTable(tableName);
+  }
+
+  @Test
+  public void testRowBloomFilterBuildWithConcurrentWrites() throws Exception {
+    final String tableName = "cdap_default.bloom_concurrent";
+    service.ensureTableExists(tableName);
+
+    // enough existing rows for the filter build to take a while
+    final byte[] col = Bytes.toBytes("c");
+    LevelDBTableCore plainTable = new LevelDBTableCore(tableName, service);
+    for (int i = 0; i < 20000; i++) {
+      plainTable.persist(ImmutableMap.of(Bytes.toBytes("existing" + i), ImmutableMap.of(col, Bytes.toBytes(i))), 1L);
+    }
+
+    // cores that do not read with the filter keep writing new rows while the filter is built
+    final AtomicBoolean stop = new AtomicBoolean();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Future<Integer>> writers = new ArrayList<>();
+    for (int writer = 0; writer < 2; writer++) {
+      final String prefix = "writer" + writer + "_";
+      writers.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          LevelDBTableCore core = new LevelDBTableCore(tableName, service);
+          int count = 0;
+          while (!stop.get()) {
+            core.persist(ImmutableMap.of(Bytes.toBytes(prefix + count), ImmutableMap.of(col, Bytes.toBytes(count))),
+                         1L);
+            count++;
+          }
+          return count;
+        }
+      }));
+    }
+
+    LevelDBTableCore table = new LevelDBTableCore(tableName, service,
+                                                  ImmutableMap.of(Constants.Dataset.TABLE_ROW_BLOOM_FILTER, "true"));
+    Assert.assertTrue(table.getRow(Bytes.toBytes("missing"), null, null, null, -1, null).isEmpty());
+    stop.set(true);
+    List<Integer> counts = new ArrayList<>();
+    for (Future<Integer> writer : writers) {
+      counts.add(writer.get(10, TimeUnit.SECONDS));
+    }
+    executor.shutdownNow();
+
+    // every row written before, during and after the build is found through the filter
+    for (int i = 0; i < 20000; i++) {
+      Assert.assertEquals(i, Bytes.toInt(table.getRow(Bytes.toBytes("existing" + i), null, null, null, -1, null)
+                                           .get(col)));
+    }
+    for (int writer = 0; writer < counts.size(); writer++) {
+      for (int i = 0; i < counts.get(writer); i++) {
+        byte[] row = Bytes.toBytes("writer" + writer + "_" + i);
+        Assert.assertEquals(i, Bytes.toInt(table.getRow(row, null, null, null, -1, null).get(col)));
+      }
+    }
+
+    service.dropTable(tableName);
+  }
+
   private void writeSome(String tableName) throws IOException {
     LevelDBTableCore table = new LevelDBTableCore(tableName, service);
     Random r = new Random();
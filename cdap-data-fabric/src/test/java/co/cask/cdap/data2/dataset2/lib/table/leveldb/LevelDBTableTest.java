@@ -16,9 +16,13 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.DatasetAdmin;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.Get;
+import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.guice.ConfigModule;
@@ -31,8 +35,10 @@ import co.cask.cdap.data2.dataset2.lib.table.BufferingTableTest;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.apache.tephra.Transaction;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
@@ -40,6 +46,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -112,4 +119,80 @@ public class LevelDBTableTest extends BufferingTableTest<LevelDBTable> {
       service.list().contains(tableName);
     }
   }
+
+  @Test
+  public void testBatchGetCommittedRows() throws Exception {
+    byte[][] rows = { Bytes.toBytes("r1"), Bytes.toBytes("r2"), Bytes.toBytes("r3"), Bytes.toBytes("r4") };
+    byte[] c1 = Bytes.toBytes("c1");
+    byte[] c2 = Bytes.toBytes("c2");
+    byte[] c3 = Bytes.toBytes("c3");
+
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, "batchGet");
+    admin.create();
+    try {
+      LevelDBTable table = getTable(CONTEXT1, "batchGet");
+
+      // Commit all rows in one transaction
+      Transaction tx = txClient.startShort();
+      table.startTx(tx);
+      for (byte[] row : rows) {
+        table.put(row, new byte[][] { c1, c2 }, new byte[][] { Bytes.add(row, c1), Bytes.add(row, c2) });
+      }
+      table.commitTx();
+      txClient.commit(tx);
+
+      // Update r2 and delete r4 in a second committed transaction, so that multiple versions exist
+      tx = txClient.startShort();
+      table.startTx(tx);
+      table.put(rows[1], c1, Bytes.toBytes("new"));
+      table.delete(rows[3]);
+      table.commitTx();
+      txClient.commit(tx);
+
+      // Write r1 in a transaction that is still in progress, which shouldn't be visible
+      LevelDBTable inProgressTable = getTable(CONTEXT1, "batchGet");
+      Transaction inProgressTx = txClient.startShort();
+      inProgressTable.startTx(inProgressTx);
+      inProgressTable.put(rows[0], c3, Bytes.toBytes("uncommitted"));
+      inProgressTable.commitTx();
+
+      // Read in a new transaction, so that the rows are read from the persisted store in one batch
+      tx = txClient.startShort();
+      table.startTx(tx);
+      List<Row> results = table.get(ImmutableList.of(
+        new Get(rows[2]),                // all columns, requested out of order
+        new Get(rows[0], c2),            // column filter
+        new Get(Bytes.toBytes("none")),  // missing row
+        new Get(rows[2], c2),            // duplicate row with column filter
+        new Get(rows[1], c1, c3),        // updated column and missing column
+        new Get(rows[3]),                // deleted row
+        new Get(rows[0])                 // duplicate row, without the uncommitted column
+      ));
+
+      Assert.assertEquals(7, results.size());
+      assertColumns(results.get(0), c1, Bytes.add(rows[2], c1), c2, Bytes.add(rows[2], c2));
+      assertColumns(results.get(1), c2, Bytes.add(rows[0], c2));
+      Assert.assertTrue(results.get(2).isEmpty());
+      assertColumns(results.get(3), c2, Bytes.add(rows[2], c2));
+      assertColumns(results.get(4), c1, Bytes.toBytes("new"));
+      Assert.assertTrue(results.get(5).isEmpty());
+      assertColumns(results.get(6), c1, Bytes.add(rows[0], c1), c2, Bytes.add(rows[0], c2));
+
+      txClient.abort(tx);
+      inProgressTable.rollbackTx();
+      txClient.abort(inProgressTx);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  /**
+   * Asserts that the given row contains exactly the given column and value pairs.
+   */
+  private void assertColumns(Row row, byte[]...columnValues) {
+    Assert.assertEquals(columnValues.length / 2, row.getColumns().size());
+    for (int i = 0; i < columnValues.length; i += 2) {
+      Assert.assertArrayEquals(columnValues[i + 1], row.get(columnValues[i]));
+    }
+  }
 }
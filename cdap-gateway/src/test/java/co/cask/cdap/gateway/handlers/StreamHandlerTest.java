@@ -22,6 +22,9 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.NamespaceNotFoundException;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
@@ -49,12 +52,14 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import org.apache.commons.lang3.ArrayUtils;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -205,6 +210,27 @@ public class StreamHandlerTest extends GatewayTestBase {
       Assert.assertEquals(Integer.toString(i), event.getHeaders().get("header1"));
     }
     urlConn.disconnect();
+
+    // Fetch 10 entries in Avro binary format
+    urlConn = openURL(createURL("streams/test_stream_enqueue/events?limit=10"), HttpMethod.GET);
+    urlConn.setRequestProperty(HttpHeaders.Names.ACCEPT, "avro/binary");
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    Assert.assertEquals("avro/binary", urlConn.getContentType());
+
+    Decoder decoder = new BinaryDecoder(new ByteArrayInputStream(ByteStreams.toByteArray(urlConn.getInputStream())));
+    int expected = 0;
+    for (int count = decoder.readInt(); count != 0; count = decoder.readInt()) {
+      for (int i = 0; i < count; i++) {
+        long timestamp = decoder.readLong();
+        StreamEvent event = new StreamEvent(StreamEventDataCodec.decode(decoder), timestamp);
+        Assert.assertEquals(events.get(expected).getTimestamp(), event.getTimestamp());
+        Assert.assertEquals(Integer.toString(expected), Charsets.UTF_8.decode(event.getBody()).toString());
+        Assert.assertEquals(Integer.toString(expected), event.getHeaders().get("header1"));
+        expected++;
+      }
+    }
+    Assert.assertEquals(10, expected);
+    urlConn.disconnect();
   }
 
   @Test
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.util.hbase;
+
+import org.apache.hadoop.hbase.client.Scan;
+
+import java.io.IOException;
+
+/**
+ * HBase 0.96 specific implementation for {@link ScanBuilder}.
+ */
+class HBase96ScanBuilder extends DefaultScanBuilder {
+
+  HBase96ScanBuilder() {
+    super();
+  }
+
+  HBase96ScanBuilder(Scan other) throws IOException {
+    super(other);
+  }
+
+  @Override
+  public ScanBuilder setReversed(boolean reversed) {
+    // Reversed scans were added in HBase 0.98
+    if (reversed) {
+      throw new UnsupportedOperationException("Reversed scans are not supported by HBase 0.96");
+    }
+    return this;
+  }
+}
@@ -32,6 +32,7 @@ import org.apache.hadoop.hbase.NamespaceDescriptor;
 import org.apache.hadoop.hbase.NamespaceNotFoundException;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
 import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.compress.Compression;
 
 import java.io.IOException;
@@ -50,6 +51,21 @@ public class HBase96TableUtil extends HBaseTableUtil {
     return new HTable(conf, nameConverter.toTableName(tablePrefix, tableId));
   }
 
+  @Override
+  public ScanBuilder buildScan() {
+    return new HBase96ScanBuilder();
+  }
+
+  @Override
+  public ScanBuilder buildScan(Scan scan) throws IOException {
+    return new HBase96ScanBuilder(scan);
+  }
+
+  @Override
+  public boolean isReversedScanSupported() {
+    return false;
+  }
+
   @Override
   public HTableDescriptorBuilder buildHTableDescriptor(TableId tableId) {
     Preconditions.checkArgument(tableId != null, "Table id should not be null");
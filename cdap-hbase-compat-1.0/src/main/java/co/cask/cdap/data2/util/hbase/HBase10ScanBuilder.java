@@ -126,4 +126,10 @@ class HBase10ScanBuilder extends DefaultScanBuilder {
     scan.setSmall(small);
     return this;
   }
+
+  @Override
+  public ScanBuilder setReversed(boolean reversed) {
+    scan.setReversed(reversed);
+    return this;
+  }
 }
@@ -126,4 +126,10 @@ class HBase11ScanBuilder extends DefaultScanBuilder {
     scan.setSmall(small);
     return this;
   }
+
+  @Override
+  public ScanBuilder setReversed(boolean reversed) {
+    scan.setReversed(reversed);
+    return this;
+  }
 }
@@ -191,6 +191,12 @@ class DefaultScanBuilder implements ScanBuilder {
     return this;
   }
 
+  @Override
+  public ScanBuilder setReversed(boolean reversed) {
+    scan.setReversed(reversed);
+    return this;
+  }
+
   @Override
   public Scan build() {
     return scan;
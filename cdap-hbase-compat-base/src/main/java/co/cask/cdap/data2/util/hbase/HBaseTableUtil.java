@@ -682,6 +682,14 @@ public abstract class HBaseTableUtil {
     createTableIfNotExists(admin, tableId, tableDescriptor);
   }
 
+  /**
+   * Returns whether the HBase version supports reversed scans, which can be set with
+   * {@link ScanBuilder#setReversed(boolean)}.
+   */
+  public boolean isReversedScanSupported() {
+    return true;
+  }
+
   /**
    * Creates a {@link ScanBuilder}.
    */
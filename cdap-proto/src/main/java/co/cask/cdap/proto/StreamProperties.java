@@ -32,6 +32,7 @@ public class StreamProperties {
   @SerializedName("notification.threshold.mb")
   private final Integer notificationThresholdMB;
   private final String description;
+  private final String codec;
 
   public StreamProperties(Long ttl, FormatSpecification format, Integer notificationThresholdMB) {
     this(ttl, format, notificationThresholdMB, null);
@@ -39,10 +40,16 @@ public class StreamProperties {
 
   public StreamProperties(Long ttl, FormatSpecification format, Integer notificationThresholdMB,
                           @Nullable String description) {
+    this(ttl, format, notificationThresholdMB, description, null);
+  }
+
+  public StreamProperties(Long ttl, FormatSpecification format, Integer notificationThresholdMB,
+                          @Nullable String description, @Nullable String codec) {
     this.ttl = ttl;
     this.format = format;
     this.notificationThresholdMB = notificationThresholdMB;
     this.description = description;
+    this.codec = codec;
   }
 
   /**
@@ -75,6 +82,14 @@ public class StreamProperties {
     return description;
   }
 
+  /**
+   * @return The codec for compressing the data blocks of the stream files
+   */
+  @Nullable
+  public String getCodec() {
+    return codec;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -89,12 +104,13 @@ public class StreamProperties {
     return Objects.equals(ttl, that.ttl) &&
       Objects.equals(format, that.format) &
       Objects.equals(notificationThresholdMB, that.notificationThresholdMB) &
-      Objects.equals(description, that.description);
+      Objects.equals(description, that.description) &&
+      Objects.equals(codec, that.codec);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(ttl, format, notificationThresholdMB, description);
+    return Objects.hash(ttl, format, notificationThresholdMB, description, codec);
   }
 
   @Override
@@ -104,6 +120,7 @@ public class StreamProperties {
       ", format=" + format +
       ", notificationThresholdMB=" + notificationThresholdMB +
       ", description=" + description +
+      ", codec=" + codec +
       '}';
   }
 }
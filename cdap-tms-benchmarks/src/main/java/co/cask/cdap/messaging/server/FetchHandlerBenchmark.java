@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.messaging.server;
+
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.messaging.data.MessageId;
+import co.cask.cdap.messaging.data.RawMessage;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for encoding fetched messages into response chunks by the {@link FetchHandler}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FetchHandlerBenchmark {
+
+  @Param({ "100", "1000", "10000" })
+  private int payloadSize;
+
+  @Param({ "1000" })
+  private int messageCount;
+
+  // Same as the default value of messaging.http.server.consume.chunk.size
+  @Param({ "60000" })
+  private int chunkSize;
+
+  private List<RawMessage> messages;
+
+  @Setup
+  public void setUp() {
+    messages = new ArrayList<>(messageCount);
+    byte[] payload = new byte[payloadSize];
+    for (int i = 0; i < messageCount; i++) {
+      byte[] id = new byte[MessageId.RAW_ID_SIZE];
+      MessageId.putRawId(i, (short) 0, 0L, (short) 0, id, 0);
+      messages.add(new RawMessage(id, payload));
+    }
+  }
+
+  @Benchmark
+  public long encode() throws Exception {
+    FetchHandler.MessagesBodyProducer producer = new FetchHandler.MessagesBodyProducer(createIterator(), chunkSize);
+    long size = 0L;
+    ChannelBuffer chunk = producer.nextChunk();
+    while (chunk.readable()) {
+      size += chunk.readableBytes();
+      chunk = producer.nextChunk();
+    }
+    producer.finished();
+    return size;
+  }
+
+  private CloseableIterator<RawMessage> createIterator() {
+    final Iterator<RawMessage> iterator = messages.iterator();
+    return new AbstractCloseableIterator<RawMessage>() {
+      @Override
+      protected RawMessage computeNext() {
+        return iterator.hasNext() ? iterator.next() : endOfData();
+      }
+
+      @Override
+      public void close() {
+        // no-op
+      }
+    };
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.messaging.RollbackDetail;
+import co.cask.cdap.messaging.StoreRequest;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.client.StoreRequestBuilder;
+import co.cask.cdap.messaging.store.leveldb.LevelDBTableFactory;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for publishing to the {@link LevelDBTableFactory LevelDB} message table through the
+ * {@link ConcurrentMessageWriter} from concurrent publishers. The number of publishers can be changed with the
+ * JMH {@code -t} option.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+public class ConcurrentMessageWriterBenchmark {
+
+  @Param({ "100", "1000", "10000" })
+  private int payloadSize;
+
+  @Param({ "1", "10" })
+  private int messagesPerRequest;
+
+  @Param({ "false", "true" })
+  private boolean dedicatedWriterThread;
+
+  private File dataDir;
+  private ConcurrentMessageWriter writer;
+  private TopicMetadata metadata;
+  private List<byte[]> payloads;
+
+  @Setup
+  public void setUp() throws IOException {
+    dataDir = Files.createTempDir();
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, dataDir.getAbsolutePath());
+    LevelDBTableFactory tableFactory = new LevelDBTableFactory(cConf);
+
+    TopicId topicId = NamespaceId.DEFAULT.topic("benchmark");
+    metadata = new TopicMetadata(topicId, TopicMetadata.GENERATION_KEY, 1, TopicMetadata.TTL_KEY, Integer.MAX_VALUE);
+
+    payloads = new ArrayList<>(messagesPerRequest);
+    for (int i = 0; i < messagesPerRequest; i++) {
+      payloads.add(new byte[payloadSize]);
+    }
+
+    MessageTableStoreRequestWriter messagesWriter = new MessageTableStoreRequestWriter(
+      tableFactory.createMessageTable(NamespaceId.SYSTEM, "message"), TimeProvider.SYSTEM_TIME);
+    writer = new ConcurrentMessageWriter(messagesWriter, new NoopMetricsContext(),
+                                         dedicatedWriterThread ? Executors.newSingleThreadExecutor() : null);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    writer.close();
+    DirUtils.deleteDirectoryContents(dataDir);
+  }
+
+  @Benchmark
+  public RollbackDetail publish() throws IOException {
+    // Payloads of a StoreRequest can only be iterated once, hence need a new request for each publish
+    StoreRequest request = StoreRequestBuilder.of(metadata.getTopicId()).addPayloads(payloads.iterator()).build();
+    return writer.persist(request, metadata);
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
+import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.messaging.MessageFetcher;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.client.StoreRequestBuilder;
+import co.cask.cdap.messaging.data.RawMessage;
+import co.cask.cdap.messaging.store.leveldb.LevelDBTableFactory;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.io.Files;
+import org.apache.tephra.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for fetching messages through the {@link CoreMessageFetcher}, with and without transaction.
+ * When fetching with transaction, messages are published transactionally in batches, with the last transaction
+ * still in progress.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CoreMessageFetcherBenchmark {
+
+  // Number of messages published in each transaction
+  private static final int TX_BATCH_SIZE = 10;
+
+  @Param({ "100", "1000", "10000" })
+  private int payloadSize;
+
+  @Param({ "1000" })
+  private int messageCount;
+
+  @Param({ "false", "true" })
+  private boolean transactional;
+
+  // Maximum size of the in-memory cache of recently published messages. Zero to always fetch from the table.
+  @Param({ "0", "104857600" })
+  private long cacheMaxBytes;
+
+  private File dataDir;
+  private CoreMessagingService messagingService;
+  private TopicId topicId;
+  private Transaction transaction;
+
+  @Setup
+  public void setUp() throws Exception {
+    dataDir = Files.createTempDir();
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, dataDir.getAbsolutePath());
+    cConf.setLong(Constants.MessagingSystem.MESSAGE_TABLE_CACHE_MAX_BYTES, cacheMaxBytes);
+
+    messagingService = new CoreMessagingService(cConf, new LevelDBTableFactory(cConf),
+                                                new NoOpMetricsCollectionService());
+    messagingService.startAndWait();
+
+    topicId = NamespaceId.DEFAULT.topic("benchmark");
+    messagingService.createTopic(new TopicMetadata(topicId));
+
+    byte[] payload = new byte[payloadSize];
+    long writePointer = 0L;
+    for (int i = 0; i < messageCount; i += TX_BATCH_SIZE) {
+      StoreRequestBuilder builder = StoreRequestBuilder.of(topicId);
+      for (int j = i; j < Math.min(messageCount, i + TX_BATCH_SIZE); j++) {
+        builder.addPayloads(payload);
+      }
+      if (transactional) {
+        builder.setTransaction(++writePointer);
+      }
+      messagingService.publish(builder.build());
+    }
+
+    if (transactional) {
+      // The last transaction is still in progress, hence the messages published by it won't be visible
+      transaction = new Transaction(writePointer - 1, writePointer + 1, new long[0],
+                                    new long[] { writePointer }, writePointer);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    messagingService.stopAndWait();
+    DirUtils.deleteDirectoryContents(dataDir);
+  }
+
+  @Benchmark
+  public void fetch(Blackhole blackhole) throws Exception {
+    MessageFetcher fetcher = messagingService.prepareFetch(topicId).setStartTime(0L);
+    if (transaction != null) {
+      fetcher.setTransaction(transaction);
+    }
+    try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+      while (iterator.hasNext()) {
+        blackhole.consume(iterator.next());
+      }
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.messaging.store.leveldb;
+
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.store.MessageTable;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Benchmarks for storing to and scanning from the {@link LevelDBMessageTable}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LevelDBMessageTableBenchmark {
+
+  private static final TopicId TOPIC_ID = NamespaceId.DEFAULT.topic("benchmark");
+  private static final TopicMetadata METADATA = new TopicMetadata(TOPIC_ID,
+                                                                  TopicMetadata.GENERATION_KEY, 1,
+                                                                  TopicMetadata.TTL_KEY, Integer.MAX_VALUE);
+
+  @Param({ "100", "1000", "10000" })
+  private int payloadSize;
+
+  // Number of entries in each store call and in the table to scan
+  @Param({ "100" })
+  private int batchSize;
+
+  private File dataDir;
+  private MessageTable storeTable;
+  private MessageTable scanTable;
+  private List<BenchmarkEntry> batch;
+  private long publishTimestamp;
+
+  @Setup
+  public void setUp() throws Exception {
+    dataDir = Files.createTempDir();
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, dataDir.getAbsolutePath());
+    LevelDBTableFactory tableFactory = new LevelDBTableFactory(cConf);
+
+    storeTable = tableFactory.createMessageTable(NamespaceId.SYSTEM, "store");
+    scanTable = tableFactory.createMessageTable(NamespaceId.SYSTEM, "scan");
+
+    byte[] payload = new byte[payloadSize];
+    batch = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      batch.add(new BenchmarkEntry(payload, (short) i));
+    }
+
+    // Populates the table for scanning
+    setPublishTimestamp(++publishTimestamp);
+    scanTable.store(batch.iterator());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    storeTable.close();
+    scanTable.close();
+    DirUtils.deleteDirectoryContents(dataDir);
+  }
+
+  @Benchmark
+  public void store() throws IOException {
+    // Each batch is stored with a new publish timestamp, so that every call writes new rows
+    setPublishTimestamp(++publishTimestamp);
+    storeTable.store(batch.iterator());
+  }
+
+  @Benchmark
+  public void scan(Blackhole blackhole) throws IOException {
+    try (CloseableIterator<MessageTable.Entry> iterator = scanTable.fetch(METADATA, 0L, Integer.MAX_VALUE, null)) {
+      while (iterator.hasNext()) {
+        blackhole.consume(iterator.next());
+      }
+    }
+  }
+
+  private void setPublishTimestamp(long timestamp) {
+    for (BenchmarkEntry entry : batch) {
+      entry.publishTimestamp = timestamp;
+    }
+  }
+
+  /**
+   * A non-transactional {@link MessageTable.Entry} with a mutable publish timestamp.
+   */
+  private static final class BenchmarkEntry implements MessageTable.Entry {
+
+    private final byte[] payload;
+    private final short sequenceId;
+    private long publishTimestamp;
+
+    BenchmarkEntry(byte[] payload, short sequenceId) {
+      this.payload = payload;
+      this.sequenceId = sequenceId;
+    }
+
+    @Override
+    public TopicId getTopicId() {
+      return TOPIC_ID;
+    }
+
+    @Override
+    public int getGeneration() {
+      return METADATA.getGeneration();
+    }
+
+    @Override
+    public int getPartition() {
+      return 0;
+    }
+
+    @Override
+    public boolean isPayloadReference() {
+      return false;
+    }
+
+    @Override
+    public boolean isTransactional() {
+      return false;
+    }
+
+    @Override
+    public long getTransactionWritePointer() {
+      return -1L;
+    }
+
+    @Nullable
+    @Override
+    public byte[] getPayload() {
+      return payload;
+    }
+
+    @Override
+    public long getPublishTimestamp() {
+      return publishTimestamp;
+    }
+
+    @Override
+    public short getSequenceId() {
+      return sequenceId;
+    }
+  }
+}
@@ -19,9 +19,12 @@ package co.cask.cdap.messaging;
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.messaging.TopicNotFoundException;
 import co.cask.cdap.messaging.data.RawMessage;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.tephra.Transaction;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -35,10 +38,14 @@ public abstract class MessageFetcher {
   private boolean includeStart = true;
   private Long startTime;
   private Transaction transaction;
+  private Integer partition;
 
   // by default there is virtually no limit
   private int limit = Integer.MAX_VALUE;
 
+  // by default there is no waiting for new messages
+  private long maxWaitMillis;
+
   /**
    * Setup the message fetching starting point based on the given message id. Calling this method
    * will clear the start time set by the {@link #setStartTime(long)} method.
@@ -82,6 +89,21 @@ public abstract class MessageFetcher {
     return this;
   }
 
+  /**
+   * Sets the topic partition to fetch from. Messages are only ordered within the same partition, hence the
+   * partition must be set when fetching from a topic with more than one partition.
+   *
+   * @param partition the partition to fetch from
+   * @return this instance
+   */
+  public MessageFetcher setPartition(int partition) {
+    if (partition < 0) {
+      throw new IllegalArgumentException("Invalid message fetching partition. Partition must be >= 0");
+    }
+    this.partition = partition;
+    return this;
+  }
+
   /**
    * Sets the maximum limit on number of messages to be fetched. By default, this is set to {@code Integer.MAX_VALUE}.
    *
@@ -96,6 +118,22 @@ public abstract class MessageFetcher {
     return this;
   }
 
+  /**
+   * Sets the maximum amount of time to wait for new messages being published if there is no message available
+   * when fetching. By default, this is set to {@code 0}, meaning fetching never waits for new messages.
+   *
+   * @param maxWait maximum amount of time to wait
+   * @param unit the unit for the wait time
+   * @return this instance
+   */
+  public MessageFetcher setMaxWait(long maxWait, TimeUnit unit) {
+    if (maxWait < 0) {
+      throw new IllegalArgumentException("Invalid message fetching max wait time. Max wait time must be >= 0");
+    }
+    this.maxWaitMillis = unit.toMillis(maxWait);
+    return this;
+  }
+
   @Nullable
   protected byte[] getStartOffset() {
     return startOffset;
@@ -115,10 +153,19 @@ public abstract class MessageFetcher {
     return transaction;
   }
 
+  @Nullable
+  protected Integer getPartition() {
+    return partition;
+  }
+
   protected int getLimit() {
     return limit;
   }
 
+  protected long getMaxWaitMillis() {
+    return maxWaitMillis;
+  }
+
   /**
    * Returns a {@link CloseableIterator} that iterates over messages fetched from the messaging system.
    *
@@ -126,4 +173,17 @@ public abstract class MessageFetcher {
    * @throws IOException if it fails to create the iterator
    */
   public abstract CloseableIterator<RawMessage> fetch() throws TopicNotFoundException, IOException;
+
+  /**
+   * Returns a {@link ListenableFuture} that will be completed with a {@link CloseableIterator} that iterates over
+   * messages fetched from the messaging system. If a max wait time is set through {@link #setMaxWait(long, TimeUnit)}
+   * and there is no message available, the future will only be completed when new messages are published or when
+   * the max wait time elapsed. By default, this method simply calls {@link #fetch()}.
+   *
+   * @throws TopicNotFoundException if the topic does not exist
+   * @throws IOException if it fails to create the iterator
+   */
+  public ListenableFuture<CloseableIterator<RawMessage>> fetchAsync() throws TopicNotFoundException, IOException {
+    return Futures.immediateFuture(fetch());
+  }
 }
@@ -20,6 +20,7 @@ import co.cask.cdap.api.messaging.TopicAlreadyExistsException;
 import co.cask.cdap.api.messaging.TopicNotFoundException;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.IOException;
 import java.util.List;
@@ -46,6 +47,7 @@ public interface MessagingService {
    *
    * @param topicMetadata the topic metadata to be updated
    * @throws TopicNotFoundException if the topic doesn't exist
+   * @throws IllegalArgumentException if the update changes the compression or the number of partitions of the topic
    * @throws IOException if failed to update the topic metadata
    */
   void updateTopic(TopicMetadata topicMetadata) throws TopicNotFoundException, IOException;
@@ -100,6 +102,20 @@ public interface MessagingService {
   @Nullable
   RollbackDetail publish(StoreRequest request) throws TopicNotFoundException, IOException;
 
+  /**
+   * Publishes a list of messages to the messaging system asynchronously. The calling thread is released as soon as
+   * the request is accepted, without waiting for the messages to be persisted.
+   *
+   * @param request the {@link StoreRequest} containing messages to be published
+   * @return a {@link ListenableFuture} that will be completed when the messages are persisted. If the store request
+   *         is transactional, the future result is a {@link RollbackDetail} containing information for rollback;
+   *         otherwise the future result is {@code null}. The future will be failed with an {@link IOException}
+   *         if failed to publish messages.
+   * @throws TopicNotFoundException if the topic doesn't exist
+   * @throws IOException if failed to prepare for the publish
+   */
+  ListenableFuture<RollbackDetail> publishAsync(StoreRequest request) throws TopicNotFoundException, IOException;
+
   /**
    * Stores a list of messages to the messaging system. It is for long / distributed transactional publishing use case.
    *
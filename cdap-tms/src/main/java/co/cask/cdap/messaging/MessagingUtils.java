@@ -56,7 +56,30 @@ public final class MessagingUtils {
    * @return byte array representation to be used as row key prefix for data tables
    */
   public static byte[] toDataKeyPrefix(TopicId topicId, int generation) {
-    byte[] metadataRowKey = toMetadataRowKey(topicId);
+    return toDataKeyPrefix(toMetadataRowKey(topicId), generation);
+  }
+
+  /**
+   * Convert {@link TopicId}, generation id and partition to byte array to be used for data tables (message and payload)
+   * as row key prefix. Partition {@code 0} has the same prefix as returned by {@link #toDataKeyPrefix(TopicId, int)},
+   * so that data of topics with a single partition is stored the same way as topics without partitioning.
+   * Other partitions have the partition number appended to the topic, which never shares a common prefix with
+   * other partitions or topics, since the topic name cannot contain the {@code ':'} separator.
+   *
+   * @param topicId {@link TopicId}
+   * @param generation generation id of the topic
+   * @param partition partition of the topic
+   * @return byte array representation to be used as row key prefix for data tables
+   */
+  public static byte[] toDataKeyPrefix(TopicId topicId, int generation, int partition) {
+    if (partition == 0) {
+      return toDataKeyPrefix(topicId, generation);
+    }
+    String topic = topicId.getNamespace() + ":" + topicId.getTopic() + ":" + partition + ":";
+    return toDataKeyPrefix(Bytes.toBytes(topic), generation);
+  }
+
+  private static byte[] toDataKeyPrefix(byte[] metadataRowKey, int generation) {
     byte[] keyPrefix = new byte[metadataRowKey.length + Bytes.SIZEOF_INT];
     Bytes.putBytes(keyPrefix, 0, metadataRowKey, 0, metadataRowKey.length);
     Bytes.putInt(keyPrefix, metadataRowKey.length, generation);
@@ -74,11 +97,42 @@ public final class MessagingUtils {
   public static TopicId toTopicId(byte[] topicBytes, int offset, int length) {
     String topic = Bytes.toString(topicBytes, offset, length);
     int firstSeparator = topic.indexOf(":", offset);
+    int secondSeparator = topic.indexOf(":", firstSeparator + 1);
     String ns = topic.substring(offset, firstSeparator);
-    String topicId = topic.substring(firstSeparator + 1, topic.length() - 1);
+    String topicId = topic.substring(firstSeparator + 1, secondSeparator);
     return new TopicId(ns, topicId);
   }
 
+  /**
+   * Returns the topic partition from the byte array encoded as part of the prefix returned by the
+   * {@link #toDataKeyPrefix(TopicId, int, int)} method, excluding the generation id.
+   *
+   * @param topicBytes byte array which contains the representation of the topic id and partition
+   * @param offset offset to start decoding
+   * @param length number of bytes to decode
+   * @return the topic partition
+   */
+  public static int toPartition(byte[] topicBytes, int offset, int length) {
+    String topic = Bytes.toString(topicBytes, offset, length);
+    int secondSeparator = topic.indexOf(":", topic.indexOf(":") + 1);
+    if (secondSeparator == topic.length() - 1) {
+      return 0;
+    }
+    return Integer.parseInt(topic.substring(secondSeparator + 1, topic.length() - 1));
+  }
+
+  /**
+   * Returns the partition that transactional messages and payloads without a partition key are stored to.
+   * All writes of the same transaction go to the same partition.
+   *
+   * @param transactionWritePointer the write pointer of the transaction
+   * @param partitions the number of partitions of the topic
+   * @return the topic partition
+   */
+  public static int toTransactionPartition(long transactionWritePointer, int partitions) {
+    return (int) ((transactionWritePointer & Long.MAX_VALUE) % partitions);
+  }
+
   /**
    * Convert byte array encoded with the {@link #toMetadataRowKey(TopicId)} method back to the {@link TopicId}.
    * Same as calling {@link #toTopicId(byte[], int, int)} with {@code offset = 0}
@@ -0,0 +1,297 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.base.Throwables;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compression algorithms for message payloads, configured per topic through the
+ * {@link TopicMetadata#COMPRESSION_KEY} topic property.
+ *
+ * A compressed payload starts with one byte identifying the algorithm being used, followed by the length
+ * of the uncompressed payload and the compressed bytes. Since the algorithm is recorded in each payload,
+ * decompression doesn't depend on the algorithm used for compression. This allows falling back to the pure
+ * Java implementation of LZ4 when the native Snappy library is not available, as well as storing payloads
+ * uncompressed if compression doesn't reduce the size.
+ *
+ * Payloads published together are compressed as blocks by {@link #compressBlock(List)}, since small payloads
+ * hardly compress on their own. The first payload of a block carries the payloads of the whole block, and the
+ * others only refer to it by their index in the block.
+ */
+public enum PayloadCompression {
+
+  NONE((byte) 0) {
+    @Override
+    byte[] doCompress(byte[] payload) {
+      return null;
+    }
+
+    @Override
+    void doDecompress(byte[] compressed, int offset, int length, byte[] payload) {
+      System.arraycopy(compressed, offset, payload, 0, length);
+    }
+  },
+
+  LZ4((byte) 1) {
+    @Override
+    byte[] doCompress(byte[] payload) {
+      LZ4Compressor compressor = LZ4Holder.FACTORY.fastCompressor();
+      byte[] result = new byte[HEADER_SIZE + compressor.maxCompressedLength(payload.length)];
+      int size = compressor.compress(payload, 0, payload.length, result, HEADER_SIZE);
+      return Arrays.copyOf(result, HEADER_SIZE + size);
+    }
+
+    @Override
+    void doDecompress(byte[] compressed, int offset, int length, byte[] payload) {
+      LZ4FastDecompressor decompressor = LZ4Holder.FACTORY.fastDecompressor();
+      decompressor.decompress(compressed, offset, payload, 0, payload.length);
+    }
+  },
+
+  SNAPPY((byte) 2) {
+    @Override
+    byte[] doCompress(byte[] payload) throws IOException {
+      if (!SnappyHolder.AVAILABLE) {
+        return LZ4.doCompress(payload);
+      }
+      byte[] result = new byte[HEADER_SIZE + Snappy.maxCompressedLength(payload.length)];
+      int size = Snappy.compress(payload, 0, payload.length, result, HEADER_SIZE);
+      return Arrays.copyOf(result, HEADER_SIZE + size);
+    }
+
+    @Override
+    void doDecompress(byte[] compressed, int offset, int length, byte[] payload) throws IOException {
+      Snappy.uncompress(compressed, offset, length, payload, 0);
+    }
+
+    @Override
+    byte getId() {
+      // Payloads are compressed with LZ4 if Snappy is not available
+      return SnappyHolder.AVAILABLE ? super.getId() : LZ4.getId();
+    }
+  };
+
+  private static final Logger LOG = LoggerFactory.getLogger(PayloadCompression.class);
+
+  // One byte for the compression id, followed by four bytes for the uncompressed length
+  private static final int HEADER_SIZE = 1 + Bytes.SIZEOF_INT;
+
+  // Header of the first payload of a block, followed by the block compressed by the compress(byte[]) method
+  private static final byte BLOCK = (byte) 0x10;
+
+  // Header of the other payloads of a block, followed by the index of the payload in the block
+  private static final byte BLOCK_REFERENCE = (byte) 0x11;
+
+  private final byte id;
+
+  PayloadCompression(byte id) {
+    this.id = id;
+  }
+
+  /**
+   * Compresses the given payload.
+   *
+   * @param payload the payload to compress
+   * @return the compressed payload, prefixed with the compression header
+   */
+  public byte[] compress(byte[] payload) {
+    byte[] compressed;
+    try {
+      compressed = doCompress(payload);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+
+    // Stores the payload as is if compression doesn't help
+    if (compressed == null || compressed.length >= payload.length + 1) {
+      byte[] result = new byte[payload.length + 1];
+      result[0] = NONE.id;
+      System.arraycopy(payload, 0, result, 1, payload.length);
+      return result;
+    }
+
+    compressed[0] = getId();
+    Bytes.putInt(compressed, 1, payload.length);
+    return compressed;
+  }
+
+  /**
+   * Compresses the given payloads together as one block. The payloads returned must be stored with consecutive
+   * sequence ids under the same timestamp, since all but the first one only refer to the first one by their index
+   * in the block. A single payload is compressed on its own by the {@link #compress(byte[])} method.
+   *
+   * @param payloads the payloads to compress
+   * @return the payloads to store, in the same order
+   */
+  public List<byte[]> compressBlock(List<byte[]> payloads) {
+    if (payloads.size() == 1) {
+      return Collections.singletonList(compress(payloads.get(0)));
+    }
+
+    int size = 0;
+    for (byte[] payload : payloads) {
+      size += Bytes.SIZEOF_INT + payload.length;
+    }
+    byte[] block = new byte[size];
+    int offset = 0;
+    for (byte[] payload : payloads) {
+      offset = Bytes.putInt(block, offset, payload.length);
+      offset = Bytes.putBytes(block, offset, payload, 0, payload.length);
+    }
+
+    List<byte[]> result = new ArrayList<>(payloads.size());
+    result.add(Bytes.concat(new byte[] { BLOCK }, compress(block)));
+    for (int i = 1; i < payloads.size(); i++) {
+      byte[] reference = new byte[1 + Bytes.SIZEOF_INT];
+      reference[0] = BLOCK_REFERENCE;
+      Bytes.putInt(reference, 1, i);
+      result.add(reference);
+    }
+    return result;
+  }
+
+  /**
+   * Decompresses a payload that was compressed by the {@link #compress(byte[])} method.
+   *
+   * @param compressed the compressed payload, including the compression header
+   * @return the uncompressed payload
+   */
+  public static byte[] decompress(byte[] compressed) {
+    return decompress(compressed, 0);
+  }
+
+  /**
+   * Returns {@code true} if the given payload returned by {@link #compressBlock(List)} only refers to the first
+   * payload of its block, which needs to be decompressed by {@link #decompressBlock(byte[])} instead.
+   */
+  public static boolean isBlockReference(byte[] compressed) {
+    return compressed[0] == BLOCK_REFERENCE;
+  }
+
+  /**
+   * Returns the index in its block of a payload for which {@link #isBlockReference(byte[])} returns {@code true}.
+   */
+  public static int getBlockIndex(byte[] reference) {
+    return Bytes.toInt(reference, 1);
+  }
+
+  /**
+   * Decompresses the payloads of a block from the first payload returned by {@link #compressBlock(List)}. A payload
+   * that was compressed on its own is returned as a block with a single payload.
+   *
+   * @param compressed the first payload of a block
+   * @return the uncompressed payloads of the block
+   */
+  public static List<byte[]> decompressBlock(byte[] compressed) {
+    if (compressed[0] != BLOCK) {
+      return Collections.singletonList(decompress(compressed, 0));
+    }
+
+    byte[] block = decompress(compressed, 1);
+    List<byte[]> payloads = new ArrayList<>();
+    int offset = 0;
+    while (offset < block.length) {
+      int length = Bytes.toInt(block, offset);
+      offset += Bytes.SIZEOF_INT;
+      payloads.add(Arrays.copyOfRange(block, offset, offset + length));
+      offset += length;
+    }
+    return payloads;
+  }
+
+  /**
+   * Decompresses a payload compressed by the {@link #compress(byte[])} method that starts at the given offset.
+   */
+  private static byte[] decompress(byte[] compressed, int offset) {
+    byte id = compressed[offset];
+    for (PayloadCompression compression : values()) {
+      if (compression.id == id) {
+        // Uncompressed payloads only have the compression id in the header
+        boolean uncompressed = compression == NONE;
+        int headerSize = uncompressed ? 1 : HEADER_SIZE;
+        int length = compressed.length - offset - headerSize;
+        byte[] payload = new byte[uncompressed ? length : Bytes.toInt(compressed, offset + 1)];
+        try {
+          compression.doDecompress(compressed, offset + headerSize, length, payload);
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
+        return payload;
+      }
+    }
+    throw new IllegalArgumentException("Unknown payload compression " + id);
+  }
+
+  /**
+   * Returns the id that is written to the header of compressed payloads.
+   */
+  byte getId() {
+    return id;
+  }
+
+  /**
+   * Compresses the given payload, leaving the first {@link #HEADER_SIZE} bytes in the resulting array
+   * for the header.
+   *
+   * @return the compressed payload or {@code null} if no compression is performed
+   */
+  abstract byte[] doCompress(byte[] payload) throws IOException;
+
+  /**
+   * Decompresses the given compressed bytes into the given payload array,
+   * which has the size of the uncompressed payload. The bytes of {@link #NONE} are copied as they are.
+   */
+  abstract void doDecompress(byte[] compressed, int offset, int length, byte[] payload) throws IOException;
+
+  /**
+   * Lazily loads the fastest available LZ4 implementation, which falls back to pure Java if the native
+   * library is not available.
+   */
+  private static final class LZ4Holder {
+    static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+  }
+
+  /**
+   * Lazily checks if the native Snappy library is available.
+   */
+  private static final class SnappyHolder {
+    static final boolean AVAILABLE = isSnappyAvailable();
+
+    private static boolean isSnappyAvailable() {
+      try {
+        Snappy.maxCompressedLength(1);
+        return true;
+      } catch (Throwable t) {
+        LOG.warn("Native Snappy library is not available. LZ4 will be used for compressing message payloads.", t);
+        return false;
+      }
+    }
+  }
+}
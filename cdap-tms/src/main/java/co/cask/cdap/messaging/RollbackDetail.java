@@ -45,4 +45,9 @@ public interface RollbackDetail {
    * Returns the sequence id being used for the last payload published with the given transaction write pointer.
    */
   int getEndSequenceId();
+
+  /**
+   * Returns the partition of the topic that the messages were published to.
+   */
+  int getPartition();
 }
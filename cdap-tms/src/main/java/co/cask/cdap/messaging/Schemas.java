@@ -66,6 +66,49 @@ public final class Schemas {
     }
   }
 
+  /**
+   * Contains Schema for V2 protocol. It adds topic partitions, waiting for new messages and fetching from multiple
+   * topics to the V1 protocol.
+   * Only schemas that differ from the V1 protocol are defined.
+   */
+  public static final class V2 {
+
+    /**
+     * Contains schema for publish request.
+     */
+    public static final class PublishRequest {
+      public static final Schema SCHEMA = loadSchema(PublishRequest.class);
+    }
+
+    /**
+     * Contains schema for publish response.
+     */
+    public static final class PublishResponse {
+      public static final Schema SCHEMA = loadSchema(PublishResponse.class);
+    }
+
+    /**
+     * Contains schema for consume request.
+     */
+    public static final class ConsumeRequest {
+      public static final Schema SCHEMA = loadSchema(ConsumeRequest.class);
+    }
+
+    /**
+     * Contains schema for consuming from multiple topics request.
+     */
+    public static final class MultiConsumeRequest {
+      public static final Schema SCHEMA = loadSchema(MultiConsumeRequest.class);
+    }
+
+    /**
+     * Contains schema for consuming from multiple topics response.
+     */
+    public static final class MultiConsumeResponse {
+      public static final Schema SCHEMA = loadSchema(MultiConsumeResponse.class);
+    }
+  }
+
   private Schemas() {
     // protect the constructor
   }
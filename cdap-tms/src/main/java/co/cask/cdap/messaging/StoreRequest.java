@@ -31,12 +31,19 @@ public abstract class StoreRequest extends AbstractIterator<byte[]> {
   private final TopicId topicId;
   private final boolean transactional;
   private final long transactionWritePointer;
+  private final byte[] partitionKey;
   private boolean computedFirst;
 
   protected StoreRequest(TopicId topicId, boolean transactional, long transactionWritePointer) {
+    this(topicId, transactional, transactionWritePointer, null);
+  }
+
+  protected StoreRequest(TopicId topicId, boolean transactional, long transactionWritePointer,
+                         @Nullable byte[] partitionKey) {
     this.topicId = topicId;
     this.transactional = transactional;
     this.transactionWritePointer = transactionWritePointer;
+    this.partitionKey = partitionKey;
   }
 
   public TopicId getTopicId() {
@@ -58,6 +65,17 @@ public abstract class StoreRequest extends AbstractIterator<byte[]> {
     return transactionWritePointer;
   }
 
+  /**
+   * Returns the key for selecting the partition of the topic to store to, or {@code null} if no key is provided.
+   * Messages with the same key are always stored to the same partition. Without a key, transactional messages of
+   * the same transaction are stored to the same partition, while non-transactional messages are spread across
+   * partitions.
+   */
+  @Nullable
+  public byte[] getPartitionKey() {
+    return partitionKey;
+  }
+
   @Override
   protected final byte[] computeNext() {
     byte[] next = doComputeNext();
@@ -20,6 +20,7 @@ import co.cask.cdap.proto.id.TopicId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -31,10 +32,13 @@ public class TopicMetadata {
 
   public static final String TTL_KEY = "ttl";
   public static final String GENERATION_KEY = "generation";
+  public static final String COMPRESSION_KEY = "compression";
+  public static final String PARTITIONS_KEY = "partitions";
 
   private final TopicId topicId;
   private final Map<String, String> properties;
   private final transient boolean validated;
+  private final transient int partition;
 
   /**
    * Creates a new instance for the given topic with the associated properties.
@@ -57,6 +61,17 @@ public class TopicMetadata {
       validateProperties();
     }
     this.validated = validate;
+    this.partition = 0;
+  }
+
+  /**
+   * Creates a copy of the given metadata for the given partition.
+   */
+  private TopicMetadata(TopicMetadata metadata, int partition) {
+    this.topicId = metadata.topicId;
+    this.properties = metadata.properties;
+    this.validated = metadata.validated;
+    this.partition = partition;
   }
 
   /**
@@ -111,6 +126,51 @@ public class TopicMetadata {
     return Integer.parseInt(properties.get(TTL_KEY));
   }
 
+  /**
+   * Returns the {@link PayloadCompression} for compressing message payloads of the topic. Payloads are not compressed
+   * if the "compression" property is not set.
+   */
+  public PayloadCompression getCompression() {
+    if (!validated) {
+      validateCompression();
+    }
+    String compression = properties.get(COMPRESSION_KEY);
+    return compression == null ? PayloadCompression.NONE : PayloadCompression.valueOf(compression.toUpperCase());
+  }
+
+  /**
+   * Returns the number of partitions of the topic. Topics have one partition if the "partitions" property is not set.
+   */
+  public int getPartitions() {
+    if (!validated) {
+      validatePartitions();
+    }
+    String partitions = properties.get(PARTITIONS_KEY);
+    return partitions == null ? 1 : Integer.parseInt(partitions);
+  }
+
+  /**
+   * Returns the partition that this metadata is for. Operations on the message and payload tables with
+   * this metadata only apply to this partition of the topic. By default it is partition {@code 0}.
+   */
+  public int getPartition() {
+    return partition;
+  }
+
+  /**
+   * Returns a {@link TopicMetadata} with the same properties as this instance, but for the given partition.
+   *
+   * @param partition the partition of the topic, which must be within the number of partitions of the topic
+   * @throws IllegalArgumentException if the partition is out of range
+   */
+  public TopicMetadata forPartition(int partition) {
+    if (partition < 0 || partition >= getPartitions()) {
+      throw new IllegalArgumentException("Partition " + partition + " is out of range for topic " + topicId
+                                           + ", which has " + getPartitions() + " partitions");
+    }
+    return partition == this.partition ? this : new TopicMetadata(this, partition);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -120,12 +180,13 @@ public class TopicMetadata {
       return false;
     }
     TopicMetadata that = (TopicMetadata) o;
-    return Objects.equals(topicId, that.topicId) && Objects.equals(properties, that.properties);
+    return Objects.equals(topicId, that.topicId) && Objects.equals(properties, that.properties)
+      && partition == that.partition;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(topicId, properties);
+    return Objects.hash(topicId, properties, partition);
   }
 
   @Override
@@ -133,6 +194,7 @@ public class TopicMetadata {
     return "TopicMetadata{" +
       "topicId=" + topicId +
       ", properties=" + properties +
+      ", partition=" + partition +
       '}';
   }
 
@@ -144,6 +206,8 @@ public class TopicMetadata {
   private void validateProperties() {
     validateTTL();
     validateGeneration();
+    validateCompression();
+    validatePartitions();
   }
 
   /**
@@ -185,6 +249,44 @@ public class TopicMetadata {
     }
   }
 
+  /**
+   * Validates the "compression" property of the given topic.
+   *
+   * @throws IllegalArgumentException if the compression is not one of the supported values.
+   */
+  private void validateCompression() {
+    String compression = properties.get(COMPRESSION_KEY);
+    if (compression == null) {
+      return;
+    }
+    try {
+      PayloadCompression.valueOf(compression.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("The compression property must be one of "
+                                           + Arrays.toString(PayloadCompression.values()) + " for topic " + topicId);
+    }
+  }
+
+  /**
+   * Validates the "partitions" property of the given topic.
+   *
+   * @throws IllegalArgumentException if the partitions is not a number or <= 0.
+   */
+  private void validatePartitions() {
+    String partitions = properties.get(PARTITIONS_KEY);
+    if (partitions == null) {
+      return;
+    }
+    try {
+      if (Integer.parseInt(partitions) <= 0) {
+        throw new IllegalArgumentException("The partitions property must be greater than zero for topic " + topicId);
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("The partitions property must be a number greater than zero for topic "
+                                           + topicId, e);
+    }
+  }
+
   /**
    * Turns a list of {@link Object} into a {@link Map} by using even index objects as keys and the following odd index
    * objects as values. The {@link Object#toString()} method will be used to convert {@link Object} to {@link String}.
@@ -22,10 +22,12 @@ import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.messaging.TopicAlreadyExistsException;
 import co.cask.cdap.api.messaging.TopicNotFoundException;
 import co.cask.cdap.common.ServiceUnavailableException;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.discovery.EndpointStrategy;
 import co.cask.cdap.common.discovery.RandomEndpointStrategy;
 import co.cask.cdap.common.http.DefaultHttpRequestConfig;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.messaging.RollbackDetail;
@@ -40,11 +42,15 @@ import co.cask.common.http.HttpRequestConfig;
 import co.cask.common.http.HttpRequests;
 import co.cask.common.http.HttpResponse;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteStreams;
 import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
@@ -59,11 +65,13 @@ import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
+import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionCodec;
 import org.apache.twill.discovery.Discoverable;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
@@ -77,8 +85,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -88,11 +99,14 @@ import javax.annotation.Nullable;
  *
  * NOTE: This class shouldn't expose to end user (e.g. cdap-client module).
  */
-public final class ClientMessagingService implements MessagingService {
+public final class ClientMessagingService implements MessagingService, Closeable {
 
   // A arbitrary timeout for getting endpoints from discovery service.
   // It is mainly for the first discovery call as it takes time for ZK to mirror the changes.
   private static final long DISCOVERY_PICK_TIMEOUT_SECS = 5L;
+  // Topic administration uses the V1 endpoints, while publishing and fetching use the V2 endpoints
+  private static final String V1 = "v1";
+  private static final String V2 = "v2";
   private static final HttpRequestConfig HTTP_REQUEST_CONFIG = new DefaultHttpRequestConfig();
   private static final TransactionCodec TRANSACTION_CODEC = new TransactionCodec();
   private static final Gson GSON = new Gson();
@@ -101,12 +115,28 @@ public final class ClientMessagingService implements MessagingService {
   private static final Type TOPIC_LIST_TYPE = new TypeToken<List<String>>() { }.getType();
 
   private final EndpointStrategy endpointStrategy;
+  private final PublishBatcher publishBatcher;
 
   @VisibleForTesting
-  @Inject
   public ClientMessagingService(DiscoveryServiceClient discoveryServiceClient) {
+    this(CConfiguration.create(), discoveryServiceClient);
+  }
+
+  @VisibleForTesting
+  @Inject
+  public ClientMessagingService(CConfiguration cConf, DiscoveryServiceClient discoveryServiceClient) {
     this.endpointStrategy = new RandomEndpointStrategy(
       discoveryServiceClient.discover(Constants.Service.MESSAGING_SERVICE));
+    this.publishBatcher = new PublishBatcher(new PublishBatcher.Publisher() {
+      @Nullable
+      @Override
+      public RollbackDetail publish(TopicId topicId, boolean transactional, long transactionWritePointer,
+                                    @Nullable byte[] partitionKey, List<ByteBuffer> payloads) throws Exception {
+        return publishPayloads(topicId, transactional, transactionWritePointer, partitionKey, payloads);
+      }
+    }, cConf.getLong(Constants.MessagingSystem.CLIENT_PUBLISH_LINGER_MS),
+       cConf.getInt(Constants.MessagingSystem.CLIENT_PUBLISH_BATCH_MAX_BYTES),
+       cConf.getInt(Constants.MessagingSystem.CLIENT_PUBLISH_MAX_INFLIGHT_REQUESTS));
   }
 
   @Override
@@ -192,24 +222,63 @@ public final class ClientMessagingService implements MessagingService {
     return new ClientMessageFetcher(topicId);
   }
 
+  /**
+   * Prepares to fetch messages from multiple topics of the given namespace with a single call to the
+   * messaging service.
+   *
+   * @param namespaceId the namespace of the topics to fetch from
+   * @return a {@link MultiTopicMessageFetcher} for setting up parameters for fetching messages
+   */
+  public MultiTopicMessageFetcher prepareMultiTopicFetch(NamespaceId namespaceId) {
+    return new MultiTopicMessageFetcher(namespaceId);
+  }
+
   @Nullable
   @Override
   public RollbackDetail publish(StoreRequest request) throws TopicNotFoundException, IOException {
-    HttpResponse response = performWriteRequest(request, true);
-
-    byte[] body = response.getResponseBody();
-    if (body.length == 0) {
-      return null;
+    try {
+      // The calling thread is waiting for the result anyway, hence let it send the request when possible
+      return Uninterruptibles.getUninterruptibly(publish(request, true));
+    } catch (ExecutionException e) {
+      Throwable cause = Objects.firstNonNull(e.getCause(), e);
+      Throwables.propagateIfPossible(cause, TopicNotFoundException.class, IOException.class);
+      throw Throwables.propagate(cause);
     }
+  }
 
-    // It has rollback detail, verify the content-type and decode it
-    verifyContentType(response.getHeaders().asMap(), "avro/binary");
-    return new ClientRollbackDetail(body);
+  @Override
+  public ListenableFuture<RollbackDetail> publishAsync(StoreRequest request) throws TopicNotFoundException,
+                                                                                    IOException {
+    return publish(request, false);
+  }
+
+  /**
+   * Closes this client. Publish requests that are not yet sent will be failed.
+   */
+  @Override
+  public void close() {
+    publishBatcher.close();
+  }
+
+  private ListenableFuture<RollbackDetail> publish(StoreRequest request, boolean sync) throws TopicNotFoundException,
+                                                                                              IOException {
+    List<ByteBuffer> payloads = convertPayloads(request);
+
+    // Publishing without payload is referencing to messages in the payload table,
+    // which cannot be combined with other publish.
+    if (payloads.isEmpty()) {
+      return Futures.immediateFuture(publishPayloads(request.getTopicId(), request.isTransactional(),
+                                                     request.getTransactionWritePointer(), request.getPartitionKey(),
+                                                     payloads));
+    }
+    return publishBatcher.publish(request.getTopicId(), request.isTransactional(),
+                                  request.getTransactionWritePointer(), request.getPartitionKey(), payloads, sync);
   }
 
   @Override
   public void storePayload(StoreRequest request) throws TopicNotFoundException, IOException {
-    performWriteRequest(request, false);
+    performWriteRequest(request.getTopicId(), request.isTransactional(), request.getTransactionWritePointer(),
+                        request.getPartitionKey(), convertPayloads(request), false);
   }
 
   @Override
@@ -219,7 +288,7 @@ public final class ClientMessagingService implements MessagingService {
       : encodeRollbackDetail(rollbackDetail);
 
     HttpRequest httpRequest = HttpRequest
-      .post(createURL(createTopicPath(topicId) + "/rollback"))
+      .post(createURL(V2, createTopicPath(topicId) + "/rollback"))
       .addHeader(HttpHeaders.CONTENT_TYPE, "avro/binary")
       .withBody(requestBody)
       .build();
@@ -233,35 +302,64 @@ public final class ClientMessagingService implements MessagingService {
                                       + " with rollback detail " + rollbackDetail);
   }
 
+  /**
+   * Publishes the given payloads to the messaging system.
+   *
+   * @return the {@link RollbackDetail} if it is a transactional publish, otherwise {@code null}
+   */
+  @Nullable
+  private RollbackDetail publishPayloads(TopicId topicId, boolean transactional, long transactionWritePointer,
+                                         @Nullable byte[] partitionKey,
+                                         List<ByteBuffer> payloads) throws TopicNotFoundException, IOException {
+    HttpResponse response = performWriteRequest(topicId, transactional, transactionWritePointer, partitionKey,
+                                                payloads, true);
+
+    byte[] body = response.getResponseBody();
+    if (body.length == 0) {
+      return null;
+    }
+
+    // It has rollback detail, verify the content-type and decode it
+    verifyContentType(response.getHeaders().asMap(), "avro/binary");
+    return new ClientRollbackDetail(body);
+  }
+
   /**
    * Makes a request to the server for writing to the messaging system
    *
-   * @param request contains information about what to write
+   * @param topicId the topic to write to
+   * @param transactional {@code true} for transactional write
+   * @param transactionWritePointer the transaction write pointer for transactional write
+   * @param partitionKey the key for selecting the topic partition to write to or {@code null} if there is no key
+   * @param payloads the message payloads to write
    * @param publish {@code true} to make publish call, {@code false} to make store call.
    * @return the response from the server
    * @throws IOException if failed to perform the write operation
    * @throws TopicNotFoundException if the topic to write to does not exist
    */
-  private HttpResponse performWriteRequest(StoreRequest request,
+  private HttpResponse performWriteRequest(TopicId topicId, boolean transactional, long transactionWritePointer,
+                                           @Nullable byte[] partitionKey, List<ByteBuffer> payloads,
                                            boolean publish) throws IOException, TopicNotFoundException {
-    GenericRecord record = new GenericData.Record(Schemas.V1.PublishRequest.SCHEMA);
-    if (request.isTransactional()) {
-      record.put("transactionWritePointer", request.getTransactionWritePointer());
+    GenericRecord record = new GenericData.Record(Schemas.V2.PublishRequest.SCHEMA);
+    if (transactional) {
+      record.put("transactionWritePointer", transactionWritePointer);
+    }
+    record.put("messages", payloads);
+    if (partitionKey != null) {
+      record.put("partitionKey", ByteBuffer.wrap(partitionKey));
     }
-    record.put("messages", convertPayloads(request));
 
     // Encode the request as avro
     ExposedByteArrayOutputStream os = new ExposedByteArrayOutputStream();
     Encoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
 
-    DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(Schemas.V1.PublishRequest.SCHEMA);
+    DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(Schemas.V2.PublishRequest.SCHEMA);
     datumWriter.write(record, encoder);
 
     // Make the publish request
     String writeType = publish ? "publish" : "store";
-    TopicId topicId = request.getTopicId();
     HttpRequest httpRequest = HttpRequest
-      .post(createURL(createTopicPath(topicId) + "/" + writeType))
+      .post(createURL(V2, createTopicPath(topicId) + "/" + writeType))
       .addHeader(HttpHeaders.CONTENT_TYPE, "avro/binary")
       .withBody(os.toByteBuffer())
       .build();
@@ -283,9 +381,19 @@ public final class ClientMessagingService implements MessagingService {
   }
 
   /**
-   * Creates a URL for making HTTP requests to the messaging system.
+   * Creates a URL for making HTTP requests to the V1 endpoints of the messaging system.
    */
   private URL createURL(String path) throws MalformedURLException {
+    return createURL(V1, path);
+  }
+
+  /**
+   * Creates a URL for making HTTP requests to the messaging system.
+   *
+   * @param version the protocol version of the endpoint
+   * @param path the path of the endpoint relative to the namespaces path of the given version
+   */
+  private URL createURL(String version, String path) throws MalformedURLException {
     Discoverable discoverable = endpointStrategy.pick(DISCOVERY_PICK_TIMEOUT_SECS, TimeUnit.SECONDS);
     if (discoverable == null) {
       throw new ServiceUnavailableException("No endpoint available for messaging service");
@@ -293,7 +401,8 @@ public final class ClientMessagingService implements MessagingService {
 
     InetSocketAddress address = discoverable.getSocketAddress();
 
-    URI baseURI = URI.create(String.format("http://%s:%d/v1/namespaces/", address.getHostName(), address.getPort()));
+    URI baseURI = URI.create(String.format("http://%s:%d/%s/namespaces/",
+                                           address.getHostName(), address.getPort(), version));
     return baseURI.resolve(path).toURL();
   }
 
@@ -350,7 +459,7 @@ public final class ClientMessagingService implements MessagingService {
    */
   private ByteBuffer encodeRollbackDetail(RollbackDetail rollbackDetail) throws IOException {
     // Constructs the response object as GenericRecord
-    Schema schema = Schemas.V1.PublishResponse.SCHEMA;
+    Schema schema = Schemas.V2.PublishResponse.SCHEMA;
     GenericRecord record = new GenericData.Record(schema);
     record.put("transactionWritePointer", rollbackDetail.getTransactionWritePointer());
 
@@ -361,11 +470,12 @@ public final class ClientMessagingService implements MessagingService {
     rollbackRange.put("endSequenceId", rollbackDetail.getEndSequenceId());
 
     record.put("rollbackRange", rollbackRange);
+    record.put("partition", rollbackDetail.getPartition());
 
     ExposedByteArrayOutputStream os = new ExposedByteArrayOutputStream();
     Encoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
 
-    DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(Schemas.V1.PublishRequest.SCHEMA);
+    DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(schema);
     datumWriter.write(record, encoder);
 
     return os.toByteBuffer();
@@ -381,6 +491,54 @@ public final class ClientMessagingService implements MessagingService {
     }
   }
 
+  /**
+   * Opens a {@link HttpURLConnection} and sends the given poll request.
+   * The cask common http library doesn't support read streaming, and we don't want to buffer all messages
+   * in memory, hence we use the HttpURLConnection directly instead.
+   *
+   * @param path the path of the poll endpoint
+   * @param record the poll request
+   * @param maxWaitMillis the maximum time that the server may hold the response for new messages
+   */
+  private HttpURLConnection openPollConnection(String path, GenericRecord record,
+                                               long maxWaitMillis) throws IOException {
+    URL url = createURL(V2, path);
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+    urlConn.setConnectTimeout(HTTP_REQUEST_CONFIG.getConnectTimeout());
+    urlConn.setReadTimeout((int) Math.min(Integer.MAX_VALUE, HTTP_REQUEST_CONFIG.getReadTimeout() + maxWaitMillis));
+    urlConn.setRequestMethod("POST");
+    urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
+    urlConn.setDoInput(true);
+    urlConn.setDoOutput(true);
+
+    // Send the request
+    Encoder encoder = EncoderFactory.get().directBinaryEncoder(urlConn.getOutputStream(), null);
+    DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(record.getSchema());
+    datumWriter.write(record, encoder);
+    return urlConn;
+  }
+
+  /**
+   * Handles error response of a poll call and verifies the response content type.
+   */
+  private void handlePollError(final HttpURLConnection urlConn, int responseCode,
+                               String errorPrefix) throws IOException {
+    handleError(responseCode, new Supplier<String>() {
+      @Override
+      public String get() {
+        // If there is any error, read the response body from the error stream
+        InputStream errorStream = urlConn.getErrorStream();
+        try {
+          return errorStream == null ? "" : new String(ByteStreams.toByteArray(errorStream),
+                                                       StandardCharsets.UTF_8);
+        } catch (IOException e) {
+          return "";
+        }
+      }
+    }, errorPrefix);
+    verifyContentType(urlConn.getHeaderFields(), "avro/binary");
+  }
+
   /**
    * A {@link ByteArrayOutputStream} that exposes the written raw buffer as ByteBuffer.
    */
@@ -413,7 +571,7 @@ public final class ClientMessagingService implements MessagingService {
 
     @Override
     public CloseableIterator<RawMessage> fetch() throws IOException, TopicNotFoundException {
-      GenericRecord record = new GenericData.Record(Schemas.V1.ConsumeRequest.SCHEMA);
+      GenericRecord record = new GenericData.Record(Schemas.V2.ConsumeRequest.SCHEMA);
 
       if (getStartOffset() != null) {
         record.put("startFrom", ByteBuffer.wrap(getStartOffset()));
@@ -427,42 +585,19 @@ public final class ClientMessagingService implements MessagingService {
       if (getTransaction() != null) {
         record.put("transaction", ByteBuffer.wrap(TRANSACTION_CODEC.encode(getTransaction())));
       }
+      if (getMaxWaitMillis() > 0) {
+        record.put("maxWaitMillis", getMaxWaitMillis());
+      }
+      record.put("partition", getPartition());
 
-      // The cask common http library doesn't support read streaming, and we don't want to buffer all messages
-      // in memory, hence we use the HttpURLConnection directly instead.
-      URL url = createURL(createTopicPath(topicId) + "/poll");
-      final HttpURLConnection urlConn = (HttpURLConnection)  url.openConnection();
-      urlConn.setConnectTimeout(HTTP_REQUEST_CONFIG.getConnectTimeout());
-      urlConn.setReadTimeout(HTTP_REQUEST_CONFIG.getReadTimeout());
-      urlConn.setRequestMethod("POST");
-      urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
-      urlConn.setDoInput(true);
-      urlConn.setDoOutput(true);
-
-      // Send the request
-      Encoder encoder = EncoderFactory.get().directBinaryEncoder(urlConn.getOutputStream(), null);
-      DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(Schemas.V1.ConsumeRequest.SCHEMA);
-      datumWriter.write(record, encoder);
-
+      // The server may hold the response until new messages are available, hence extend the read timeout
+      final HttpURLConnection urlConn = openPollConnection(createTopicPath(topicId) + "/poll", record,
+                                                           getMaxWaitMillis());
       int responseCode = urlConn.getResponseCode();
       if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
         throw new TopicNotFoundException(topicId.getNamespace(), topicId.getTopic());
       }
-
-      handleError(responseCode, new Supplier<String>() {
-        @Override
-        public String get() {
-          // If there is any error, read the response body from the error stream
-          InputStream errorStream = urlConn.getErrorStream();
-          try {
-            return errorStream == null ? "" : new String(ByteStreams.toByteArray(errorStream),
-                                                         StandardCharsets.UTF_8);
-          } catch (IOException e) {
-            return "";
-          }
-        }
-      }, "Failed to update topic " + topicId);
-      verifyContentType(urlConn.getHeaderFields(), "avro/binary");
+      handlePollError(urlConn, responseCode, "Failed to update topic " + topicId);
 
       // Decode the avro array manually instead of using DatumReader in order to support streaming decode.
       final Decoder decoder = DecoderFactory.get().binaryDecoder(urlConn.getInputStream(), null);
@@ -507,4 +642,296 @@ public final class ClientMessagingService implements MessagingService {
       };
     }
   }
+
+  /**
+   * Fetches messages from multiple topics of the same namespace with a single call to the messaging service.
+   * Messages are streamed from the server with chunk encoding, with messages from different topics interleaving
+   * in blocks. The order of messages within the same topic partition is preserved.
+   */
+  public final class MultiTopicMessageFetcher {
+
+    private final NamespaceId namespaceId;
+    // Keyed by topic and partition. Fetching without a partition is the same as fetching from partition 0.
+    private final Map<ImmutablePair<String, Integer>, GenericRecord> topicRequests;
+    private final GenericRecord messageRecordTemplate;
+    private final DatumReader<GenericRecord> messageReader;
+    private Transaction transaction;
+
+    private MultiTopicMessageFetcher(NamespaceId namespaceId) {
+      this.namespaceId = namespaceId;
+      this.topicRequests = new LinkedHashMap<>();
+
+      // These are for reading individual message (each topic has an array of messages)
+      Schema messageSchema = Schemas.V2.MultiConsumeResponse.SCHEMA.getElementType()
+        .getField("messages").schema().getElementType();
+      this.messageRecordTemplate = new GenericData.Record(messageSchema);
+      this.messageReader = new GenericDatumReader<>(messageSchema);
+    }
+
+    /**
+     * Adds a topic to fetch from the beginning.
+     *
+     * @param topic name of the topic
+     * @param limit maximum number of messages to fetch from the topic
+     * @return this instance
+     */
+    public MultiTopicMessageFetcher addTopic(String topic, int limit) {
+      addTopicRequest(topic, null, null, limit);
+      return this;
+    }
+
+    /**
+     * Adds a topic to fetch from the given message id.
+     *
+     * @param topic name of the topic
+     * @param startOffset the message id to start fetching from
+     * @param inclusive if {@code true}, the message with the given id will be included
+     * @param limit maximum number of messages to fetch from the topic
+     * @return this instance
+     */
+    public MultiTopicMessageFetcher addTopic(String topic, byte[] startOffset, boolean inclusive, int limit) {
+      GenericRecord request = addTopicRequest(topic, null, ByteBuffer.wrap(startOffset), limit);
+      request.put("inclusive", inclusive);
+      return this;
+    }
+
+    /**
+     * Adds a topic to fetch from messages published at or after the given timestamp.
+     *
+     * @param topic name of the topic
+     * @param startTime timestamp in milliseconds
+     * @param limit maximum number of messages to fetch from the topic
+     * @return this instance
+     */
+    public MultiTopicMessageFetcher addTopic(String topic, long startTime, int limit) {
+      addTopicRequest(topic, null, startTime, limit);
+      return this;
+    }
+
+    /**
+     * Adds a partition of a topic to fetch from the beginning.
+     *
+     * @param topic name of the topic
+     * @param partition the partition of the topic to fetch from
+     * @param limit maximum number of messages to fetch from the topic partition
+     * @return this instance
+     */
+    public MultiTopicMessageFetcher addTopicPartition(String topic, int partition, int limit) {
+      addTopicRequest(topic, partition, null, limit);
+      return this;
+    }
+
+    /**
+     * Adds a partition of a topic to fetch from the given message id.
+     *
+     * @param topic name of the topic
+     * @param partition the partition of the topic to fetch from
+     * @param startOffset the message id to start fetching from
+     * @param inclusive if {@code true}, the message with the given id will be included
+     * @param limit maximum number of messages to fetch from the topic partition
+     * @return this instance
+     */
+    public MultiTopicMessageFetcher addTopicPartition(String topic, int partition,
+                                                      byte[] startOffset, boolean inclusive, int limit) {
+      GenericRecord request = addTopicRequest(topic, partition, ByteBuffer.wrap(startOffset), limit);
+      request.put("inclusive", inclusive);
+      return this;
+    }
+
+    /**
+     * Adds a partition of a topic to fetch from messages published at or after the given timestamp.
+     *
+     * @param topic name of the topic
+     * @param partition the partition of the topic to fetch from
+     * @param startTime timestamp in milliseconds
+     * @param limit maximum number of messages to fetch from the topic partition
+     * @return this instance
+     */
+    public MultiTopicMessageFetcher addTopicPartition(String topic, int partition, long startTime, int limit) {
+      addTopicRequest(topic, partition, startTime, limit);
+      return this;
+    }
+
+    /**
+     * Sets the transaction to use for fetching from all topics.
+     *
+     * @param transaction the transaction to use for reading messages
+     * @return this instance
+     */
+    public MultiTopicMessageFetcher setTransaction(Transaction transaction) {
+      this.transaction = transaction;
+      return this;
+    }
+
+    /**
+     * Fetches messages from all added topics.
+     *
+     * @return a {@link CloseableIterator} of {@link TopicMessage}
+     * @throws TopicNotFoundException if any of the topics does not exist
+     * @throws IOException if failed to fetch messages
+     */
+    public CloseableIterator<TopicMessage> fetch() throws TopicNotFoundException, IOException {
+      GenericRecord record = new GenericData.Record(Schemas.V2.MultiConsumeRequest.SCHEMA);
+      record.put("topics", new ArrayList<>(topicRequests.values()));
+      if (transaction != null) {
+        record.put("transaction", ByteBuffer.wrap(TRANSACTION_CODEC.encode(transaction)));
+      }
+
+      final HttpURLConnection urlConn = openPollConnection(namespaceId.getNamespace() + "/poll", record, 0L);
+      int responseCode = urlConn.getResponseCode();
+      if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+        throw new TopicNotFoundException(namespaceId.getNamespace(), getMissingTopic(urlConn));
+      }
+      handlePollError(urlConn, responseCode, "Failed to fetch from topic partitions " + topicRequests.keySet()
+        + " in namespace " + namespaceId);
+
+      // Decode the avro arrays manually instead of using DatumReader in order to support streaming decode.
+      final Decoder decoder = DecoderFactory.get().binaryDecoder(urlConn.getInputStream(), null);
+      final long initialTopicItemCount = decoder.readArrayStart();
+      return new AbstractCloseableIterator<TopicMessage>() {
+
+        private final Map<String, TopicId> topicIds = new HashMap<>();
+        private GenericRecord messageRecord = messageRecordTemplate;
+        private long topicItemCount = initialTopicItemCount;
+        private TopicId topicId;
+        private int partition;
+        private long messageItemCount;
+
+        @Override
+        protected TopicMessage computeNext() {
+          try {
+            while (messageItemCount == 0) {
+              if (topicId != null) {
+                // Move to the next block of messages of the current topic
+                messageItemCount = decoder.arrayNext();
+                if (messageItemCount == 0) {
+                  nextTopicItem();
+                }
+                continue;
+              }
+
+              // The zero item count signals the end of the array
+              if (topicItemCount == 0) {
+                return endOfData();
+              }
+              topicId = getTopicId(decoder.readString());
+              partition = decoder.readInt();
+              messageItemCount = decoder.readArrayStart();
+              if (messageItemCount == 0) {
+                nextTopicItem();
+              }
+            }
+
+            messageItemCount--;
+            messageRecord = messageReader.read(messageRecord, decoder);
+            RawMessage message = new RawMessage(Bytes.toBytes((ByteBuffer) messageRecord.get("id")),
+                                                Bytes.toBytes((ByteBuffer) messageRecord.get("payload")));
+            return new TopicMessage(topicId, partition, message);
+          } catch (IOException e) {
+            throw Throwables.propagate(e);
+          }
+        }
+
+        @Override
+        public void close() {
+          urlConn.disconnect();
+        }
+
+        /**
+         * Moves to the next element of the topics array after reaching the end of the messages of a topic.
+         */
+        private void nextTopicItem() throws IOException {
+          topicId = null;
+          if (--topicItemCount == 0) {
+            topicItemCount = decoder.arrayNext();
+          }
+        }
+
+        private TopicId getTopicId(String topic) {
+          TopicId topicId = topicIds.get(topic);
+          if (topicId == null) {
+            topicId = namespaceId.topic(topic);
+            topicIds.put(topic, topicId);
+          }
+          return topicId;
+        }
+      };
+    }
+
+    private GenericRecord addTopicRequest(String topic, @Nullable Integer partition,
+                                          @Nullable Object startFrom, int limit) {
+      ImmutablePair<String, Integer> topicPartition = ImmutablePair.of(topic, partition == null ? 0 : partition);
+      if (topicRequests.containsKey(topicPartition)) {
+        throw new IllegalArgumentException("Partition " + topicPartition.getSecond() + " of topic " + topic
+                                             + " was already added");
+      }
+      if (partition != null && partition < 0) {
+        throw new IllegalArgumentException("Partition must be >= 0");
+      }
+      if (limit <= 0) {
+        throw new IllegalArgumentException("Limit must be > 0");
+      }
+      GenericRecord request = new GenericData.Record(
+        Schemas.V2.MultiConsumeRequest.SCHEMA.getField("topics").schema().getElementType());
+      request.put("topic", topic);
+      request.put("startFrom", startFrom);
+      request.put("inclusive", true);
+      request.put("limit", limit);
+      request.put("partition", partition);
+      topicRequests.put(topicPartition, request);
+      return request;
+    }
+
+    /**
+     * Finds the topic that doesn't exist from the error message of a not found response.
+     */
+    private String getMissingTopic(HttpURLConnection urlConn) {
+      String message = "";
+      InputStream errorStream = urlConn.getErrorStream();
+      try {
+        message = errorStream == null ? "" : new String(ByteStreams.toByteArray(errorStream), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        // Ignore. Fallback to the first topic
+      }
+      for (ImmutablePair<String, Integer> topicPartition : topicRequests.keySet()) {
+        if (message.endsWith(namespaceId.getNamespace() + ":" + topicPartition.getFirst())) {
+          return topicPartition.getFirst();
+        }
+      }
+      ImmutablePair<String, Integer> first = Iterables.getFirst(topicRequests.keySet(), null);
+      return first == null ? "" : first.getFirst();
+    }
+  }
+
+  /**
+   * A message fetched by the {@link MultiTopicMessageFetcher}, together with the topic and partition it belongs to.
+   */
+  public static final class TopicMessage {
+
+    private final TopicId topicId;
+    private final int partition;
+    private final RawMessage message;
+
+    TopicMessage(TopicId topicId, int partition, RawMessage message) {
+      this.topicId = topicId;
+      this.partition = partition;
+      this.message = message;
+    }
+
+    public TopicId getTopicId() {
+      return topicId;
+    }
+
+    /**
+     * Returns the partition of the topic that the message belongs to. Messages of topics with a single partition
+     * always belong to partition {@code 0}.
+     */
+    public int getPartition() {
+      return partition;
+    }
+
+    public RawMessage getMessage() {
+      return message;
+    }
+  }
 }
@@ -73,6 +73,11 @@ final class ClientRollbackDetail implements RollbackDetail {
     return (Integer) ((GenericRecord) getDecoded().get("rollbackRange")).get("endSequenceId");
   }
 
+  @Override
+  public int getPartition() {
+    return (Integer) getDecoded().get("partition");
+  }
+
   @Override
   public String toString() {
     return "ClientRollbackDetail{" + getDecoded() + '}';
@@ -85,7 +90,7 @@ final class ClientRollbackDetail implements RollbackDetail {
 
     BinaryDecoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteArrayInputStream(encoded), null);
     try {
-      decoded = new GenericDatumReader<GenericRecord>(Schemas.V1.PublishResponse.SCHEMA).read(null, decoder);
+      decoded = new GenericDatumReader<GenericRecord>(Schemas.V2.PublishResponse.SCHEMA).read(null, decoder);
       return decoded;
     } catch (IOException e) {
       // This shouldn't happen, otherwise the server and client is not compatible
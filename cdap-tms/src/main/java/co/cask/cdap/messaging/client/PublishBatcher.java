@@ -0,0 +1,408 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.client;
+
+import co.cask.cdap.messaging.RollbackDetail;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.common.Threads;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Coalesces publish requests to the same topic into a single call to the messaging service.
+ *
+ * Requests are grouped by topic, transaction and partition key. A batch is sent when there is no other batch of
+ * the same group in flight, and either the linger time has passed since the first request was added or the batch
+ * has reached the maximum size. Having at most one batch in flight per group preserves the order of publishing,
+ * while batches of different groups are sent concurrently, up to the maximum number of in-flight requests.
+ *
+ * A synchronous publish that can be sent right away is sent from the calling thread, so that callers publishing to
+ * different topics don't have to wait for each other on the shared pool of publishing threads.
+ * Threads used by this class are released when idle and are terminated when this batcher is closed.
+ */
+@ThreadSafe
+final class PublishBatcher implements Closeable {
+
+  private final Publisher publisher;
+  private final long lingerMillis;
+  private final int maxBatchBytes;
+  private final ExecutorService publishExecutor;
+  private final ScheduledExecutorService lingerScheduler;
+
+  @GuardedBy("this")
+  private final Map<BatchKey, PendingBatches> pendingBatches;
+  @GuardedBy("this")
+  private boolean closed;
+
+  /**
+   * Constructor.
+   *
+   * @param publisher the {@link Publisher} for publishing batches
+   * @param lingerMillis number of milliseconds to wait for more requests before sending a batch
+   * @param maxBatchBytes maximum number of payload bytes in a batch
+   * @param maxInFlight maximum number of concurrent batch requests
+   */
+  PublishBatcher(Publisher publisher, long lingerMillis, int maxBatchBytes, int maxInFlight) {
+    this.publisher = publisher;
+    this.lingerMillis = lingerMillis;
+    this.maxBatchBytes = maxBatchBytes;
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60L, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>(),
+                                                         Threads.createDaemonThreadFactory("messaging-publisher-%d"));
+    executor.allowCoreThreadTimeOut(true);
+    this.publishExecutor = executor;
+    if (lingerMillis > 0) {
+      ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+        1, Threads.createDaemonThreadFactory("messaging-publish-linger"));
+      scheduler.setKeepAliveTime(60L, TimeUnit.SECONDS);
+      scheduler.allowCoreThreadTimeOut(true);
+      scheduler.setRemoveOnCancelPolicy(true);
+      this.lingerScheduler = scheduler;
+    } else {
+      this.lingerScheduler = null;
+    }
+    this.pendingBatches = new HashMap<>();
+  }
+
+  /**
+   * Adds payloads to be published.
+   *
+   * @param topicId the topic to publish to
+   * @param transactional {@code true} if publishing transactionally
+   * @param transactionWritePointer the transaction write pointer if publishing transactionally
+   * @param partitionKey the key for selecting the topic partition or {@code null} if there is no key
+   * @param payloads the message payloads
+   * @param sync {@code true} if the caller is going to wait for the returned future. In that case, if the batch
+   *             is ready to be sent, it is sent from the calling thread before this method returns.
+   * @return a {@link ListenableFuture} that will be completed with the {@link RollbackDetail} of the publish,
+   *         which can be {@code null} if it is not a transactional publish
+   */
+  ListenableFuture<RollbackDetail> publish(TopicId topicId, boolean transactional, long transactionWritePointer,
+                                           @Nullable byte[] partitionKey, List<ByteBuffer> payloads, boolean sync) {
+    PendingPublish pendingPublish = new PendingPublish(payloads);
+    BatchKey key = new BatchKey(topicId, transactional, transactionWritePointer, partitionKey);
+
+    PendingBatches batches;
+    List<PendingPublish> batch = null;
+    synchronized (this) {
+      if (closed) {
+        pendingPublish.future.setException(new IllegalStateException("Messaging client is already closed"));
+        return pendingPublish.future;
+      }
+      batches = pendingBatches.get(key);
+      if (batches == null) {
+        batches = new PendingBatches();
+        pendingBatches.put(key, batches);
+      }
+      batches.add(pendingPublish);
+
+      if (lingerMillis <= 0 || batches.getBytes() >= maxBatchBytes) {
+        if (sync) {
+          batch = pollIfReady(batches);
+        } else {
+          sendIfReady(key, batches);
+        }
+      } else if (batches.lingerFuture == null && !batches.inFlight) {
+        scheduleLinger(key, batches);
+      }
+    }
+
+    if (batch != null) {
+      try {
+        send(key, batch);
+      } finally {
+        completed(key, batches);
+      }
+    }
+    return pendingPublish.future;
+  }
+
+  /**
+   * Stops this batcher. Batches that are in flight will be completed, while requests that are still pending
+   * will be failed. Publishing after this method is called will fail.
+   */
+  @Override
+  public void close() {
+    List<PendingPublish> failed = new ArrayList<>();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (PendingBatches batches : pendingBatches.values()) {
+        if (batches.lingerFuture != null) {
+          batches.lingerFuture.cancel(false);
+          batches.lingerFuture = null;
+        }
+        failed.addAll(batches.poll(Integer.MAX_VALUE));
+      }
+    }
+    if (lingerScheduler != null) {
+      lingerScheduler.shutdownNow();
+    }
+    publishExecutor.shutdown();
+
+    Exception failure = new IllegalStateException("Messaging client is closed before the message is published");
+    for (PendingPublish pendingPublish : failed) {
+      pendingPublish.future.setException(failure);
+    }
+  }
+
+  /**
+   * Removes the next batch to send if there is no in-flight batch for the same key.
+   *
+   * @return the batch to send or {@code null} if there is a batch in flight
+   */
+  @GuardedBy("this")
+  @Nullable
+  private List<PendingPublish> pollIfReady(PendingBatches batches) {
+    if (batches.inFlight) {
+      return null;
+    }
+    if (batches.lingerFuture != null) {
+      batches.lingerFuture.cancel(false);
+      batches.lingerFuture = null;
+    }
+    batches.inFlight = true;
+    return batches.poll(maxBatchBytes);
+  }
+
+  /**
+   * Sends a batch if there is no in-flight batch for the same key.
+   */
+  @GuardedBy("this")
+  private void sendIfReady(final BatchKey key, final PendingBatches batches) {
+    final List<PendingPublish> batch = pollIfReady(batches);
+    if (batch == null) {
+      return;
+    }
+    try {
+      publishExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            send(key, batch);
+          } finally {
+            completed(key, batches);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      batches.inFlight = false;
+      for (PendingPublish pendingPublish : batch) {
+        pendingPublish.future.setException(e);
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void scheduleLinger(final BatchKey key, final PendingBatches batches) {
+    try {
+      batches.lingerFuture = lingerScheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (PublishBatcher.this) {
+            batches.lingerFuture = null;
+            if (!batches.isEmpty()) {
+              sendIfReady(key, batches);
+            }
+          }
+        }
+      }, lingerMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // The scheduler is only shutdown when closed. Sending will fail the requests as the executor is shutdown too.
+      sendIfReady(key, batches);
+    }
+  }
+
+  /**
+   * Called when an in-flight batch is completed to send the next batch.
+   */
+  private synchronized void completed(BatchKey key, PendingBatches batches) {
+    batches.inFlight = false;
+    if (batches.isEmpty()) {
+      pendingBatches.remove(key);
+      return;
+    }
+    // Requests accumulated while the previous batch was in flight are sent right away,
+    // since they have been waiting for at least one round trip already.
+    sendIfReady(key, batches);
+  }
+
+  /**
+   * Publishes the given batch and completes the future of each request in the batch.
+   */
+  private void send(BatchKey key, List<PendingPublish> batch) {
+    List<ByteBuffer> payloads = new ArrayList<>();
+    for (PendingPublish pendingPublish : batch) {
+      payloads.addAll(pendingPublish.payloads);
+    }
+
+    try {
+      RollbackDetail rollbackDetail = publisher.publish(key.topicId, key.transactional, key.transactionWritePointer,
+                                                        key.getPartitionKey(), payloads);
+      for (PendingPublish pendingPublish : batch) {
+        pendingPublish.future.set(rollbackDetail);
+      }
+    } catch (Throwable t) {
+      for (PendingPublish pendingPublish : batch) {
+        pendingPublish.future.setException(t);
+      }
+    }
+  }
+
+  /**
+   * Performs the actual publishing of a batch of payloads.
+   */
+  interface Publisher {
+
+    /**
+     * Publishes the given payloads.
+     *
+     * @return the {@link RollbackDetail} of the publish or {@code null} if it is not a transactional publish
+     * @throws Exception if failed to publish
+     */
+    @Nullable
+    RollbackDetail publish(TopicId topicId, boolean transactional, long transactionWritePointer,
+                           @Nullable byte[] partitionKey, List<ByteBuffer> payloads) throws Exception;
+  }
+
+  /**
+   * Key for grouping requests into the same batch.
+   */
+  private static final class BatchKey {
+    private final TopicId topicId;
+    private final boolean transactional;
+    private final long transactionWritePointer;
+    private final ByteBuffer partitionKey;
+
+    BatchKey(TopicId topicId, boolean transactional, long transactionWritePointer, @Nullable byte[] partitionKey) {
+      this.topicId = topicId;
+      this.transactional = transactional;
+      this.transactionWritePointer = transactional ? transactionWritePointer : 0L;
+      this.partitionKey = partitionKey == null ? null : ByteBuffer.wrap(partitionKey);
+    }
+
+    @Nullable
+    byte[] getPartitionKey() {
+      return partitionKey == null ? null : partitionKey.array();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      BatchKey other = (BatchKey) o;
+      return transactional == other.transactional
+        && transactionWritePointer == other.transactionWritePointer
+        && topicId.equals(other.topicId)
+        && Objects.equal(partitionKey, other.partitionKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(topicId, transactional, transactionWritePointer, partitionKey);
+    }
+  }
+
+  /**
+   * Requests that are pending to be sent for the same {@link BatchKey}.
+   */
+  private static final class PendingBatches {
+    private final Queue<PendingPublish> pending = new LinkedList<>();
+    private int bytes;
+    private boolean inFlight;
+    private ScheduledFuture<?> lingerFuture;
+
+    void add(PendingPublish pendingPublish) {
+      pending.add(pendingPublish);
+      bytes += pendingPublish.bytes;
+    }
+
+    boolean isEmpty() {
+      return pending.isEmpty();
+    }
+
+    int getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Removes requests from the pending queue, up to the given number of bytes. At least one request
+     * will be removed if the queue is not empty.
+     */
+    List<PendingPublish> poll(int maxBytes) {
+      List<PendingPublish> batch = new ArrayList<>();
+      int batchBytes = 0;
+      while (!pending.isEmpty()) {
+        PendingPublish next = pending.peek();
+        if (!batch.isEmpty() && batchBytes + next.bytes > maxBytes) {
+          break;
+        }
+        batch.add(pending.poll());
+        batchBytes += next.bytes;
+      }
+      bytes -= batchBytes;
+      return batch;
+    }
+  }
+
+  /**
+   * A publish request that is waiting to be sent.
+   */
+  private static final class PendingPublish {
+    private final List<ByteBuffer> payloads;
+    private final int bytes;
+    private final SettableFuture<RollbackDetail> future;
+
+    PendingPublish(List<ByteBuffer> payloads) {
+      int bytes = 0;
+      for (ByteBuffer payload : payloads) {
+        bytes += payload.remaining();
+      }
+      this.payloads = payloads;
+      this.bytes = bytes;
+      this.future = SettableFuture.create();
+    }
+  }
+}
@@ -40,6 +40,7 @@ public final class StoreRequestBuilder {
   private final TopicId topicId;
   private Iterator<byte[]> payloads;
   private Long txWritePointer;
+  private byte[] partitionKey;
 
   /**
    * Creates a new {@link StoreRequestBuilder} instance.
@@ -91,6 +92,27 @@ public final class StoreRequestBuilder {
     return this;
   }
 
+  /**
+   * Sets the key for selecting the partition of the topic to store to. Messages with the same key
+   * are always stored to the same partition.
+   *
+   * @param partitionKey the partition key or {@code null} to let the messaging system choose the partition
+   */
+  public StoreRequestBuilder setPartitionKey(@Nullable byte[] partitionKey) {
+    this.partitionKey = partitionKey;
+    return this;
+  }
+
+  /**
+   * Sets the key for selecting the partition of the topic to store to. The String will be converted to byte array
+   * using UTF-8 encoding.
+   *
+   * @param partitionKey the partition key or {@code null} to let the messaging system choose the partition
+   */
+  public StoreRequestBuilder setPartitionKey(@Nullable String partitionKey) {
+    return setPartitionKey(partitionKey == null ? null : STRING_TO_BYTES.apply(partitionKey));
+  }
+
   /**
    * Returns {@code true} if there is some payload in this builder.
    */
@@ -106,7 +128,7 @@ public final class StoreRequestBuilder {
       throw new IllegalArgumentException("Payload cannot be empty for non-transactional publish");
     }
     return new SimpleStoreRequest(topicId, txWritePointer != null, txWritePointer == null ? -1L : txWritePointer,
-                                  payloads);
+                                  partitionKey, payloads);
   }
 
   /**
@@ -116,9 +138,9 @@ public final class StoreRequestBuilder {
 
     private final Iterator<byte[]> payloads;
 
-    SimpleStoreRequest(TopicId topicId, boolean transactional,
-                       long transactionWritePointer, Iterator<byte[]> payloads) {
-      super(topicId, transactional, transactionWritePointer);
+    SimpleStoreRequest(TopicId topicId, boolean transactional, long transactionWritePointer,
+                       @Nullable byte[] partitionKey, Iterator<byte[]> payloads) {
+      super(topicId, transactional, transactionWritePointer, partitionKey);
       this.payloads = payloads;
     }
 
@@ -20,9 +20,11 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.messaging.TopicNotFoundException;
 import co.cask.cdap.common.BadRequestException;
+import co.cask.cdap.common.HttpExceptionHandler;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.ByteBuffers;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.messaging.Schemas;
@@ -31,9 +33,14 @@ import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
 import co.cask.http.AbstractHttpHandler;
 import co.cask.http.BodyProducer;
+import co.cask.http.ExceptionHandler;
 import co.cask.http.HttpResponder;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.inject.Inject;
+import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
@@ -58,8 +65,12 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -67,30 +78,50 @@ import javax.ws.rs.PathParam;
 
 /**
  * A netty http handler for handling message fetching REST API for the messaging system.
+ * The V1 endpoint serves clients of older versions. Its requests are decoded with the V1 schema and resolved to
+ * the V2 schema.
  */
-@Path("/v1/namespaces/{namespace}/topics/{topic}")
 public final class FetchHandler extends AbstractHttpHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(FetchHandler.class);
   private static final TransactionCodec TRANSACTION_CODEC = new TransactionCodec();
+  // For handling failures from fetches that wait for new messages, which happens after the handler method returned
+  private static final ExceptionHandler EXCEPTION_HANDLER = new HttpExceptionHandler();
 
   private final MessagingService messagingService;
-  private int messageChunkSize;
+  private final int messageChunkSize;
+  private final long maxWaitMillis;
 
   @Inject
   FetchHandler(CConfiguration cConf, MessagingService messagingService) {
     this.messagingService = messagingService;
     this.messageChunkSize = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_CONSUME_CHUNK_SIZE);
+    this.maxWaitMillis = cConf.getLong(Constants.MessagingSystem.HTTP_SERVER_CONSUME_MAX_WAIT_MS);
   }
 
   @POST
-  @Path("poll")
+  @Path("/v1/namespaces/{namespace}/topics/{topic}/poll")
+  public void pollV1(HttpRequest request, HttpResponder responder,
+                     @PathParam("namespace") String namespace,
+                     @PathParam("topic") String topic) throws Exception {
+    poll(request, responder, new NamespaceId(namespace).topic(topic), Schemas.V1.ConsumeRequest.SCHEMA);
+  }
+
+  @POST
+  @Path("/v2/namespaces/{namespace}/topics/{topic}/poll")
   public void poll(HttpRequest request, HttpResponder responder,
                    @PathParam("namespace") String namespace,
                    @PathParam("topic") String topic) throws Exception {
+    poll(request, responder, new NamespaceId(namespace).topic(topic), Schemas.V2.ConsumeRequest.SCHEMA);
+  }
 
-    TopicId topicId = new NamespaceId(namespace).topic(topic);
-
+  /**
+   * Fetches messages from the given topic and streams them back in the response.
+   *
+   * @param requestSchema the schema that the request is encoded with
+   */
+  private void poll(final HttpRequest request, final HttpResponder responder,
+                    TopicId topicId, Schema requestSchema) throws Exception {
     // Currently only support avro
     if (!"avro/binary".equals(request.getHeader(HttpHeaders.Names.CONTENT_TYPE))) {
       throw new BadRequestException("Only avro/binary content type is supported.");
@@ -99,24 +130,108 @@ public final class FetchHandler extends AbstractHttpHandler {
     // Decode the poll request
     Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ChannelBufferInputStream(request.getContent()),
                                                                null);
-    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.ConsumeRequest.SCHEMA);
+    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(requestSchema,
+                                                                      Schemas.V2.ConsumeRequest.SCHEMA);
+
+    GenericRecord fetchRequest = datumReader.read(null, decoder);
+    MessageFetcher fetcher = createFetcher(topicId, fetchRequest, (ByteBuffer) fetchRequest.get("transaction"));
+
+    Long waitMillis = (Long) fetchRequest.get("maxWaitMillis");
+    if (waitMillis != null) {
+      if (waitMillis < 0) {
+        throw new BadRequestException("Invalid maxWaitMillis " + waitMillis + ". It must be >= 0.");
+      }
+      fetcher.setMaxWait(Math.min(waitMillis, maxWaitMillis), TimeUnit.MILLISECONDS);
+    }
+    Integer partition = (Integer) fetchRequest.get("partition");
+    if (partition != null) {
+      fetcher.setPartition(partition);
+    }
+
+    // Fetch the messages. If the request asked for waiting for new messages, the response will be sent
+    // when messages are available or the wait time elapsed, without holding up the handler thread.
+    Futures.addCallback(fetcher.fetchAsync(), new FutureCallback<CloseableIterator<RawMessage>>() {
+      @Override
+      public void onSuccess(CloseableIterator<RawMessage> iterator) {
+        try {
+          responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize),
+                                ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "avro/binary"));
+        } catch (Throwable t) {
+          iterator.close();
+          onFailure(t);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        EXCEPTION_HANDLER.handle(t, request, responder);
+      }
+    });
+  }
+
+  /**
+   * Fetches messages from multiple topics of the same namespace in one call. Messages of different topics are
+   * streamed back as interleaving blocks, each containing messages of one topic partition, so that a slow or large
+   * topic doesn't hold up the delivery of messages from other topics. Each block carries the topic and partition
+   * of the messages, so that consumers can track the position of each partition separately.
+   * Waiting for new messages is not supported for fetching from multiple topics.
+   */
+  @POST
+  @Path("/v2/namespaces/{namespace}/poll")
+  public void multiPoll(HttpRequest request, HttpResponder responder,
+                        @PathParam("namespace") String namespace) throws Exception {
+
+    NamespaceId namespaceId = new NamespaceId(namespace);
+
+    // Currently only support avro
+    if (!"avro/binary".equals(request.getHeader(HttpHeaders.Names.CONTENT_TYPE))) {
+      throw new BadRequestException("Only avro/binary content type is supported.");
+    }
 
-    // Fetch the messages
-    CloseableIterator<RawMessage> iterator = fetchMessages(datumReader.read(null, decoder), topicId);
+    // Decode the poll request
+    Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ChannelBufferInputStream(request.getContent()),
+                                                               null);
+    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V2.MultiConsumeRequest.SCHEMA);
+    GenericRecord multiFetchRequest = datumReader.read(null, decoder);
+    ByteBuffer encodedTx = (ByteBuffer) multiFetchRequest.get("transaction");
+
+    @SuppressWarnings("unchecked")
+    List<GenericRecord> fetchRequests = (List<GenericRecord>) multiFetchRequest.get("topics");
+    Map<ImmutablePair<String, Integer>, CloseableIterator<RawMessage>> iterators = new LinkedHashMap<>();
+    boolean succeeded = false;
     try {
-      responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize),
+      for (GenericRecord fetchRequest : fetchRequests) {
+        String topic = fetchRequest.get("topic").toString();
+        Integer partition = (Integer) fetchRequest.get("partition");
+        // Without a partition, fetching is only allowed for topics with a single partition, which is partition 0
+        ImmutablePair<String, Integer> topicPartition = ImmutablePair.of(topic, partition == null ? 0 : partition);
+        if (iterators.containsKey(topicPartition)) {
+          throw new BadRequestException("Partition " + topicPartition.getSecond() + " of topic " + topic
+                                          + " is specified more than once.");
+        }
+        MessageFetcher fetcher = createFetcher(namespaceId.topic(topic), fetchRequest, encodedTx);
+        if (partition != null) {
+          fetcher.setPartition(partition);
+        }
+        iterators.put(topicPartition, fetcher.fetch());
+      }
+      responder.sendContent(HttpResponseStatus.OK, new MultiTopicMessagesBodyProducer(iterators, messageChunkSize),
                             ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "avro/binary"));
-    } catch (Throwable t) {
-      iterator.close();
-      throw t;
+      succeeded = true;
+    } finally {
+      if (!succeeded) {
+        for (CloseableIterator<RawMessage> iterator : iterators.values()) {
+          iterator.close();
+        }
+      }
     }
   }
 
   /**
-   * Creates a {@link CloseableIterator} of {@link RawMessage} based on the given fetch request.
+   * Creates a {@link MessageFetcher} based on the given fetch request.
    */
-  private CloseableIterator<RawMessage> fetchMessages(GenericRecord fetchRequest,
-                                                      TopicId topicId) throws IOException, TopicNotFoundException {
+  private MessageFetcher createFetcher(TopicId topicId, GenericRecord fetchRequest,
+                                       @Nullable ByteBuffer encodedTx) throws IOException, TopicNotFoundException {
     MessageFetcher fetcher = messagingService.prepareFetch(topicId);
 
     Object startFrom = fetchRequest.get("startFrom");
@@ -138,24 +253,101 @@ public final class FetchHandler extends AbstractHttpHandler {
       fetcher.setLimit(limit);
     }
 
-    ByteBuffer encodedTx = (ByteBuffer) fetchRequest.get("transaction");
     if (encodedTx != null) {
       fetcher.setTransaction(TRANSACTION_CODEC.decode(ByteBuffers.getByteArray(encodedTx)));
     }
 
-    return fetcher.fetch();
+    return fetcher;
+  }
+
+  /**
+   * Returns the maximum number of bytes needed for the avro framing and message ids when encoding an array block
+   * of the given messages with the {@link #writeMessages(ChannelBuffer, List, List)} method.
+   */
+  private static int getFramingSize(List<RawMessage> messages) {
+    // Each message needs at most 5 bytes for each of the id and payload length.
+    // There is also the array block count (at most 10 bytes)
+    int framingSize = 10;
+    for (RawMessage message : messages) {
+      framingSize += message.getId().length + 10;
+    }
+    return framingSize;
+  }
+
+  /**
+   * Writes an avro array block of the given messages. The avro framing and message ids are written to the framing
+   * buffer, while the message payloads are wrapped without copying. Slices of the framing buffer and the payloads
+   * are added to the given list of buffers in order.
+   *
+   * @return the index in the framing buffer where the framing written after the last payload starts
+   */
+  private static int writeMessages(ChannelBuffer framing, List<RawMessage> messages, List<ChannelBuffer> components) {
+    int sliceStart = framing.readerIndex();
+
+    // Array block count, which is not written for empty block
+    if (!messages.isEmpty()) {
+      writeLong(framing, messages.size());
+    }
+
+    for (RawMessage message : messages) {
+      byte[] id = message.getId();
+      byte[] payload = message.getPayload();
+
+      // Record with two bytes fields. Each bytes field is encoded as (len + bytes).
+      writeLong(framing, id.length);
+      framing.writeBytes(id);
+      writeLong(framing, payload.length);
+
+      components.add(framing.slice(sliceStart, framing.writerIndex() - sliceStart));
+      components.add(ChannelBuffers.wrappedBuffer(payload));
+      sliceStart = framing.writerIndex();
+    }
+    return sliceStart;
+  }
+
+  /**
+   * Writes a long value with avro binary encoding (zig-zag variable length encoding).
+   */
+  private static void writeLong(ChannelBuffer buffer, long value) {
+    long n = (value << 1) ^ (value >> 63);
+    while ((n & ~0x7FL) != 0) {
+      buffer.writeByte((int) ((n & 0x7F) | 0x80));
+      n >>>= 7;
+    }
+    buffer.writeByte((int) n);
+  }
+
+  /**
+   * Logs failure in sending response after the response header is sent.
+   */
+  private static void logSendFailure(@Nullable Throwable cause) {
+    // Since response header is already sent, there is nothing we can send back to client. Simply log the failure
+    if (cause instanceof SocketException) {
+      // This can easily caused by client close connection prematurely. Don't want to flood the log.
+      LOG.debug("Socket exception raised when sending messages back to client", cause);
+    } else {
+      LOG.warn("Exception raised when sending messages back to client", cause);
+    }
   }
 
   /**
    * A {@link BodyProducer} to encode and send back messages.
    * Instead of using GenericDatumWriter, we perform the array encoding manually so that we don't have to buffer
    * all messages in memory before sending out.
+   *
+   * If the message schema is the one defined in the V1 protocol, each message is encoded directly without
+   * going through the DatumWriter, and the message payloads are wrapped into the response chunk without copying.
    */
-  private static class MessagesBodyProducer extends BodyProducer {
+  @VisibleForTesting
+  static class MessagesBodyProducer extends BodyProducer {
+
+    private static final Schema MESSAGE_SCHEMA = Schemas.V1.ConsumeResponse.SCHEMA.getElementType();
+    private static final boolean DIRECT_ENCODING = isDirectEncodable(MESSAGE_SCHEMA);
 
     private final CloseableIterator<RawMessage> iterator;
     private final List<RawMessage> messages;
     private final int messageChunkSize;
+    private final boolean directEncoding;
     private final ChannelBuffer chunk;
     private final Encoder encoder;
     private final GenericRecord messageRecord;
@@ -164,15 +356,21 @@ public final class FetchHandler extends AbstractHttpHandler {
     private boolean arrayEnded;
 
     MessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize) {
+      this(iterator, messageChunkSize, DIRECT_ENCODING);
+    }
+
+    @VisibleForTesting
+    MessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize, boolean directEncoding) {
       this.iterator = iterator;
       this.messages = new ArrayList<>();
       this.messageChunkSize = messageChunkSize;
+      this.directEncoding = directEncoding;
       this.chunk = ChannelBuffers.dynamicBuffer(messageChunkSize);
       this.encoder = EncoderFactory.get().directBinaryEncoder(new ChannelBufferOutputStream(chunk), null);
 
       // These are for writing individual message (response is an array of messages)
-      this.messageRecord = new GenericData.Record(Schemas.V1.ConsumeResponse.SCHEMA.getElementType());
-      this.messageWriter = new GenericDatumWriter<GenericRecord>(Schemas.V1.ConsumeResponse.SCHEMA.getElementType()) {
+      this.messageRecord = new GenericData.Record(MESSAGE_SCHEMA);
+      this.messageWriter = new GenericDatumWriter<GenericRecord>(MESSAGE_SCHEMA) {
         @Override
         protected void writeBytes(Object datum, Encoder out) throws IOException {
           if (datum instanceof byte[]) {
@@ -191,13 +389,6 @@ public final class FetchHandler extends AbstractHttpHandler {
         return ChannelBuffers.EMPTY_BUFFER;
       }
 
-      chunk.clear();
-
-      if (!arrayStarted) {
-        arrayStarted = true;
-        encoder.writeArrayStart();
-      }
-
       // Try to buffer up to buffer size
       int size = 0;
       messages.clear();
@@ -211,26 +402,76 @@ public final class FetchHandler extends AbstractHttpHandler {
         size += message.getId().length + message.getPayload().length + 8;
       }
 
+      arrayEnded = !iterator.hasNext();
+      return directEncoding ? encodeDirect() : encodeWithDatumWriter();
+    }
+
+    /**
+     * Encodes the buffered messages with the {@link DatumWriter}.
+     * This provides greater flexibility on schema evolution.
+     * The response will likely always be an array, but the element schema can evolve.
+     */
+    private ChannelBuffer encodeWithDatumWriter() throws IOException {
+      chunk.clear();
+
+      if (!arrayStarted) {
+        arrayStarted = true;
+        encoder.writeArrayStart();
+      }
+
       encoder.setItemCount(messages.size());
       for (RawMessage message : messages) {
         encoder.startItem();
 
         // Write individual message (array element) with DatumWrite.
-        // This provides greater flexibility on schema evolution.
-        // The response will likely always be an array, but the element schema can evolve.
         messageRecord.put("id", message.getId());
         messageRecord.put("payload", message.getPayload());
         messageWriter.write(messageRecord, encoder);
       }
 
-      if (!iterator.hasNext()) {
-        arrayEnded = true;
+      if (arrayEnded) {
         encoder.writeArrayEnd();
       }
 
       return chunk;
     }
 
+    /**
+     * Encodes the buffered messages by writing the avro binary encoding directly. The avro framing and message ids
+     * are written to a small buffer, while the message payloads are wrapped without copying.
+     * The returned buffer is a composite of them.
+     */
+    private ChannelBuffer encodeDirect() {
+      // One more byte for the array end marker
+      ChannelBuffer framing = ChannelBuffers.buffer(getFramingSize(messages) + 1);
+      List<ChannelBuffer> components = new ArrayList<>(messages.size() * 2 + 1);
+
+      int sliceStart = writeMessages(framing, messages, components);
+      if (arrayEnded) {
+        // Zero block count to signal the end of array
+        framing.writeByte(0);
+      }
+      if (framing.writerIndex() > sliceStart) {
+        components.add(framing.slice(sliceStart, framing.writerIndex() - sliceStart));
+      }
+
+      return ChannelBuffers.wrappedBuffer(components.toArray(new ChannelBuffer[components.size()]));
+    }
+
+    /**
+     * Returns {@code true} if the given message schema is a record of the {@code id} and {@code payload} bytes
+     * fields, which can be encoded directly by the {@link #encodeDirect()} method.
+     */
+    private static boolean isDirectEncodable(Schema schema) {
+      if (schema.getType() != Schema.Type.RECORD) {
+        return false;
+      }
+      List<Schema.Field> fields = schema.getFields();
+      return fields.size() == 2
+        && "id".equals(fields.get(0).name()) && fields.get(0).schema().getType() == Schema.Type.BYTES
+        && "payload".equals(fields.get(1).name()) && fields.get(1).schema().getType() == Schema.Type.BYTES;
+    }
+
     @Override
     public void finished() throws Exception {
       iterator.close();
@@ -239,12 +480,121 @@ public final class FetchHandler extends AbstractHttpHandler {
     @Override
     public void handleError(@Nullable Throwable cause) {
       iterator.close();
-      // Since response header is already sent, there is nothing we can send back to client. Simply log the failure
-      if (cause instanceof SocketException) {
-        // This can easily caused by client close connection prematurely. Don't want to flood the log.
-        LOG.debug("Socket exception raised when sending messages back to client", cause);
-      } else {
-        LOG.warn("Exception raised when sending messages back to client", cause);
+      logSendFailure(cause);
+    }
+  }
+
+  /**
+   * A {@link BodyProducer} to encode and send back messages from multiple topics. The response is an avro array,
+   * with each element containing the topic name, the partition and an array of messages from that topic partition.
+   * Topic partitions are visited in round robin order, with each element carrying up to one chunk of messages from a
+   * topic partition.
+   * Messages are always encoded directly, with the message payloads wrapped into the response chunk without copying.
+   */
+  private static final class MultiTopicMessagesBodyProducer extends BodyProducer {
+
+    private final List<byte[]> topics;
+    private final List<Integer> partitions;
+    private final List<CloseableIterator<RawMessage>> iterators;
+    private final List<RawMessage> messages;
+    private final int messageChunkSize;
+    private int nextTopic;
+    private boolean arrayEnded;
+
+    MultiTopicMessagesBodyProducer(Map<ImmutablePair<String, Integer>, CloseableIterator<RawMessage>> iterators,
+                                   int messageChunkSize) {
+      this.topics = new ArrayList<>(iterators.size());
+      this.partitions = new ArrayList<>(iterators.size());
+      this.iterators = new ArrayList<>(iterators.size());
+      for (Map.Entry<ImmutablePair<String, Integer>, CloseableIterator<RawMessage>> entry : iterators.entrySet()) {
+        this.topics.add(entry.getKey().getFirst().getBytes(StandardCharsets.UTF_8));
+        this.partitions.add(entry.getKey().getSecond());
+        this.iterators.add(entry.getValue());
+      }
+      this.messages = new ArrayList<>();
+      this.messageChunkSize = messageChunkSize;
+    }
+
+    @Override
+    public ChannelBuffer nextChunk() throws Exception {
+      // Already sent all messages, return empty to signal the end of response
+      if (arrayEnded) {
+        return ChannelBuffers.EMPTY_BUFFER;
+      }
+
+      // Find the next topic that has messages
+      int topicIdx = -1;
+      for (int i = 0; i < iterators.size() && topicIdx < 0; i++) {
+        int idx = (nextTopic + i) % iterators.size();
+        if (iterators.get(idx).hasNext()) {
+          topicIdx = idx;
+        }
+      }
+
+      if (topicIdx < 0) {
+        // No more messages from any topic. Zero block count to signal the end of array
+        arrayEnded = true;
+        return ChannelBuffers.wrappedBuffer(new byte[] { 0 });
+      }
+      nextTopic = (topicIdx + 1) % iterators.size();
+
+      // Try to buffer up to buffer size
+      CloseableIterator<RawMessage> iterator = iterators.get(topicIdx);
+      int size = 0;
+      messages.clear();
+      while (iterator.hasNext() && size < messageChunkSize) {
+        RawMessage message = iterator.next();
+        messages.add(message);
+        size += message.getId().length + message.getPayload().length + 8;
+      }
+
+      arrayEnded = true;
+      for (CloseableIterator<RawMessage> it : iterators) {
+        if (it.hasNext()) {
+          arrayEnded = false;
+          break;
+        }
+      }
+
+      // Each element is encoded as an array block of one (at most 10 bytes), the topic name as avro string
+      // (at most 5 bytes length + bytes), the partition as avro int (at most 5 bytes), the messages array and its
+      // end marker. There is also one more byte for the end marker of the outer array.
+      byte[] topic = topics.get(topicIdx);
+      ChannelBuffer framing = ChannelBuffers.buffer(10 + 5 + topic.length + 5 + getFramingSize(messages) + 2);
+      List<ChannelBuffer> components = new ArrayList<>(messages.size() * 2 + 1);
+
+      writeLong(framing, 1);
+      writeLong(framing, topic.length);
+      framing.writeBytes(topic);
+      // Avro int uses the same zig-zag variable length encoding as long
+      writeLong(framing, partitions.get(topicIdx));
+
+      int sliceStart = writeMessages(framing, messages, components);
+
+      // Zero block count to signal the end of the messages array, followed by the end of the outer array
+      framing.writeByte(0);
+      if (arrayEnded) {
+        framing.writeByte(0);
+      }
+      components.add(framing.slice(sliceStart, framing.writerIndex() - sliceStart));
+
+      return ChannelBuffers.wrappedBuffer(components.toArray(new ChannelBuffer[components.size()]));
+    }
+
+    @Override
+    public void finished() throws Exception {
+      closeIterators();
+    }
+
+    @Override
+    public void handleError(@Nullable Throwable cause) {
+      closeIterators();
+      logSendFailure(cause);
+    }
+
+    private void closeIterators() {
+      for (CloseableIterator<RawMessage> iterator : iterators) {
+        iterator.close();
       }
     }
   }
@@ -17,15 +17,20 @@
 package co.cask.cdap.messaging.server;
 
 import co.cask.cdap.common.BadRequestException;
+import co.cask.cdap.common.HttpExceptionHandler;
 import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MessagingUtils;
 import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.Schemas;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
 import co.cask.http.AbstractHttpHandler;
+import co.cask.http.ExceptionHandler;
 import co.cask.http.HttpResponder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.inject.Inject;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
@@ -57,10 +62,14 @@ import javax.ws.rs.PathParam;
 
 /**
  * A netty http handler for handling message storage REST API for the messaging system.
+ * The V1 endpoints serve clients of older versions. Their requests are decoded with the V1 schemas and resolved to
+ * the V2 schemas, and their responses are encoded with the V1 schemas.
  */
-@Path("/v1/namespaces/{namespace}/topics/{topic}")
 public final class StoreHandler extends AbstractHttpHandler {
 
+  // For handling failures from asynchronous publish, which happens after the handler method returned
+  private static final ExceptionHandler EXCEPTION_HANDLER = new HttpExceptionHandler();
+
   private final MessagingService messagingService;
 
   @Inject
@@ -69,67 +78,130 @@ public final class StoreHandler extends AbstractHttpHandler {
   }
 
   @POST
-  @Path("/publish")
+  @Path("/v1/namespaces/{namespace}/topics/{topic}/publish")
+  public void publishV1(HttpRequest request, HttpResponder responder,
+                        @PathParam("namespace") String namespace,
+                        @PathParam("topic") String topic) throws Exception {
+    publish(request, responder, new NamespaceId(namespace).topic(topic),
+            Schemas.V1.PublishRequest.SCHEMA, Schemas.V1.PublishResponse.SCHEMA);
+  }
+
+  @POST
+  @Path("/v2/namespaces/{namespace}/topics/{topic}/publish")
   public void publish(HttpRequest request, HttpResponder responder,
                       @PathParam("namespace") String namespace,
                       @PathParam("topic") String topic) throws Exception {
+    publish(request, responder, new NamespaceId(namespace).topic(topic),
+            Schemas.V2.PublishRequest.SCHEMA, Schemas.V2.PublishResponse.SCHEMA);
+  }
 
-    TopicId topicId = new NamespaceId(namespace).topic(topic);
-    StoreRequest storeRequest = createStoreRequest(topicId, request);
-
-    // Empty payload is only allowed for transactional publish
-    if (!storeRequest.isTransactional() && !storeRequest.hasNext()) {
-      throw new BadRequestException("Empty payload is only allowed for publishing transactional message. Topic: "
-                                      + topicId);
-    }
-
-    // Publish the message and response with the rollback information
-    RollbackDetail rollbackInfo = messagingService.publish(storeRequest);
-    if (rollbackInfo == null) {
-      // Non-tx publish doesn't have rollback info.
-      responder.sendStatus(HttpResponseStatus.OK);
-      return;
-    }
-    ChannelBuffer response = encodeRollbackDetail(rollbackInfo);
-    responder.sendContent(HttpResponseStatus.OK, response, "avro/binary", null);
+  @POST
+  @Path("/v1/namespaces/{namespace}/topics/{topic}/store")
+  public void storeV1(HttpRequest request, HttpResponder responder,
+                      @PathParam("namespace") String namespace,
+                      @PathParam("topic") String topic) throws Exception {
+    store(responder, createStoreRequest(new NamespaceId(namespace).topic(topic), request,
+                                        Schemas.V1.PublishRequest.SCHEMA));
   }
 
   @POST
-  @Path("/store")
+  @Path("/v2/namespaces/{namespace}/topics/{topic}/store")
   public void store(HttpRequest request, HttpResponder responder,
                     @PathParam("namespace") String namespace,
                     @PathParam("topic") String topic) throws Exception {
+    store(responder, createStoreRequest(new NamespaceId(namespace).topic(topic), request,
+                                        Schemas.V2.PublishRequest.SCHEMA));
+  }
 
+  @POST
+  @Path("/v1/namespaces/{namespace}/topics/{topic}/rollback")
+  public void rollbackV1(HttpRequest request, HttpResponder responder,
+                         @PathParam("namespace") String namespace,
+                         @PathParam("topic") String topic) throws Exception {
     TopicId topicId = new NamespaceId(namespace).topic(topic);
-    StoreRequest storeRequest = createStoreRequest(topicId, request);
+    GenericRecord rollbackRecord = decodeRollbackDetail(request, Schemas.V1.PublishResponse.SCHEMA);
 
-    // It must be transactional with payload for store request
-    if (!storeRequest.isTransactional() || !storeRequest.hasNext()) {
-      throw new BadRequestException("Store request must be transactional with payload. Topic: " + topicId);
-    }
+    // V1 clients never provide a partition key, hence the partition is derived from the transaction
+    int partitions = messagingService.getTopic(topicId).getPartitions();
+    rollbackRecord.put("partition", MessagingUtils.toTransactionPartition(
+      (Long) rollbackRecord.get("transactionWritePointer"), partitions));
 
-    messagingService.storePayload(storeRequest);
+    messagingService.rollback(topicId, new GenericRecordRollbackDetail(rollbackRecord));
     responder.sendStatus(HttpResponseStatus.OK);
   }
 
   @POST
-  @Path("/rollback")
+  @Path("/v2/namespaces/{namespace}/topics/{topic}/rollback")
   public void rollback(HttpRequest request, HttpResponder responder,
                        @PathParam("namespace") String namespace,
                        @PathParam("topic") String topic) throws Exception {
     TopicId topicId = new NamespaceId(namespace).topic(topic);
+    GenericRecord rollbackRecord = decodeRollbackDetail(request, Schemas.V2.PublishResponse.SCHEMA);
+    messagingService.rollback(topicId, new GenericRecordRollbackDetail(rollbackRecord));
+    responder.sendStatus(HttpResponseStatus.OK);
+  }
 
-    Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ChannelBufferInputStream(request.getContent()),
-                                                               null);
-    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.PublishResponse.SCHEMA);
-    messagingService.rollback(topicId, new GenericRecordRollbackDetail(datumReader.read(null, decoder)));
+  /**
+   * Publishes the messages in the given {@link HttpRequest}.
+   *
+   * @param requestSchema the schema that the request is encoded with
+   * @param responseSchema the schema to encode the response with
+   */
+  private void publish(final HttpRequest request, final HttpResponder responder, TopicId topicId,
+                       Schema requestSchema, final Schema responseSchema) throws Exception {
+    StoreRequest storeRequest = createStoreRequest(topicId, request, requestSchema);
+
+    // Empty payload is only allowed for transactional publish
+    if (!storeRequest.isTransactional() && !storeRequest.hasNext()) {
+      throw new BadRequestException("Empty payload is only allowed for publishing transactional message. Topic: "
+                                      + topicId);
+    }
+
+    // Publish the message and response with the rollback information when the publish completed.
+    // The handler thread is released without waiting for the messages to be persisted.
+    Futures.addCallback(messagingService.publishAsync(storeRequest), new FutureCallback<RollbackDetail>() {
+      @Override
+      public void onSuccess(@Nullable RollbackDetail rollbackInfo) {
+        if (rollbackInfo == null) {
+          // Non-tx publish doesn't have rollback info.
+          responder.sendStatus(HttpResponseStatus.OK);
+          return;
+        }
+        try {
+          ChannelBuffer response = encodeRollbackDetail(rollbackInfo, responseSchema);
+          responder.sendContent(HttpResponseStatus.OK, response, "avro/binary", null);
+        } catch (IOException e) {
+          onFailure(e);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        EXCEPTION_HANDLER.handle(t, request, responder);
+      }
+    });
+  }
+
+  /**
+   * Stores the payloads of the given transactional {@link StoreRequest}.
+   */
+  private void store(HttpResponder responder, StoreRequest storeRequest) throws Exception {
+    // It must be transactional with payload for store request
+    if (!storeRequest.isTransactional() || !storeRequest.hasNext()) {
+      throw new BadRequestException("Store request must be transactional with payload. Topic: "
+                                      + storeRequest.getTopicId());
+    }
+
+    messagingService.storePayload(storeRequest);
     responder.sendStatus(HttpResponseStatus.OK);
   }
 
   /**
    * Creates a {@link StoreRequest} instance based on the given {@link HttpRequest}.
+   *
+   * @param requestSchema the schema that the request is encoded with
    */
-  private StoreRequest createStoreRequest(TopicId topicId, HttpRequest request) throws Exception {
+  private StoreRequest createStoreRequest(TopicId topicId, HttpRequest request, Schema requestSchema) throws Exception {
     // Currently only support avro
     if (!"avro/binary".equals(request.getHeader(HttpHeaders.Names.CONTENT_TYPE))) {
       throw new BadRequestException("Only avro/binary content type is supported.");
@@ -137,16 +209,30 @@ public final class StoreHandler extends AbstractHttpHandler {
 
     Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ChannelBufferInputStream(request.getContent()),
                                                                null);
-    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.PublishRequest.SCHEMA);
+    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(requestSchema,
+                                                                      Schemas.V2.PublishRequest.SCHEMA);
     return new GenericRecordStoreRequest(topicId, datumReader.read(null, decoder));
   }
 
   /**
-   * Encodes the {@link RollbackDetail} object as avro record based on the {@link Schemas.V1.PublishResponse#SCHEMA}.
+   * Decodes the rollback detail in the given {@link HttpRequest} as a record of the
+   * {@link Schemas.V2.PublishResponse#SCHEMA}.
+   *
+   * @param requestSchema the schema that the request is encoded with
    */
-  private ChannelBuffer encodeRollbackDetail(RollbackDetail rollbackDetail) throws IOException {
-    Schema schema = Schemas.V1.PublishResponse.SCHEMA;
+  private GenericRecord decodeRollbackDetail(HttpRequest request, Schema requestSchema) throws IOException {
+    Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ChannelBufferInputStream(request.getContent()),
+                                                               null);
+    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(requestSchema,
+                                                                      Schemas.V2.PublishResponse.SCHEMA);
+    return datumReader.read(null, decoder);
+  }
 
+  /**
+   * Encodes the {@link RollbackDetail} object as avro record based on the given publish response schema.
+   * The partition is only encoded if the schema has the partition field.
+   */
+  private ChannelBuffer encodeRollbackDetail(RollbackDetail rollbackDetail, Schema schema) throws IOException {
     // Constructs the response object as GenericRecord
     GenericRecord response = new GenericData.Record(schema);
     response.put("transactionWritePointer", rollbackDetail.getTransactionWritePointer());
@@ -158,11 +244,14 @@ public final class StoreHandler extends AbstractHttpHandler {
     rollbackRange.put("endSequenceId", rollbackDetail.getEndSequenceId());
 
     response.put("rollbackRange", rollbackRange);
+    if (schema.getField("partition") != null) {
+      response.put("partition", rollbackDetail.getPartition());
+    }
 
-    // For V1 PublishResponse, it contains an union(long, null) and then 2 longs and 2 integers,
-    // hence the max size is 38
+    // For V2 PublishResponse, it contains an union(long, null) and then 2 longs and 3 integers,
+    // hence the max size is 43
     // (union use 1 byte, long max size is 9 bytes, integer max size is 5 bytes in avro binary encoding)
-    ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(38);
+    ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(43);
     Encoder encoder = EncoderFactory.get().directBinaryEncoder(new ChannelBufferOutputStream(buffer), null);
     DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(schema);
     datumWriter.write(response, encoder);
@@ -181,7 +270,10 @@ public final class StoreHandler extends AbstractHttpHandler {
       super(topicId, genericRecord.get("transactionWritePointer") != null,
             genericRecord.get("transactionWritePointer") == null
               ? -1L
-              : Long.parseLong(genericRecord.get("transactionWritePointer").toString()));
+              : Long.parseLong(genericRecord.get("transactionWritePointer").toString()),
+            genericRecord.get("partitionKey") == null
+              ? null
+              : ByteBuffers.getByteArray((ByteBuffer) genericRecord.get("partitionKey")));
 
       this.payloadIterator = ((List<ByteBuffer>) genericRecord.get("messages")).iterator();
     }
@@ -198,7 +290,7 @@ public final class StoreHandler extends AbstractHttpHandler {
 
   /**
    * A {@link RollbackDetail} implementation that is backed by a {@link GenericRecord} with the
-   * {@link Schemas.V1.PublishResponse#SCHEMA}.
+   * {@link Schemas.V2.PublishResponse#SCHEMA}.
    */
   private static final class GenericRecordRollbackDetail implements RollbackDetail {
 
@@ -232,5 +324,10 @@ public final class StoreHandler extends AbstractHttpHandler {
     public int getEndSequenceId() {
       return (Integer) ((GenericRecord) record.get("rollbackRange")).get("endSequenceId");
     }
+
+    @Override
+    public int getPartition() {
+      return (Integer) record.get("partition");
+    }
   }
 }
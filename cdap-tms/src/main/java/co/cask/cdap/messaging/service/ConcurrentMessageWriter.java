@@ -23,6 +23,12 @@ import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -31,6 +37,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
@@ -38,8 +48,9 @@ import javax.annotation.concurrent.ThreadSafe;
 /**
  * Class to support writing to message/payload tables with high concurrency.
  *
- * It uses a non-blocking algorithm to batch writes from concurrent threads. The algorithm is the same as
- * the one used in ConcurrentStreamWriter.
+ * It uses a non-blocking algorithm to batch writes from concurrent threads. The algorithm is a variation of
+ * the one used in ConcurrentStreamWriter, modified so that no thread has to spin while waiting for the write
+ * to complete.
  *
  * The algorithm is like this:
  *
@@ -48,25 +59,38 @@ import javax.annotation.concurrent.ThreadSafe;
  * <pre>
  * 1. Constructs a PendingStoreRequest locally and enqueue it to a ConcurrentLinkedQueue.
  * 2. Use CAS to set an AtomicBoolean flag to true.
- * 3. If successfully set the flag to true, this thread becomes the writer and proceed to run step 4-7.
- * 4. Provides an Iterator of PendingStoreRequest, which consumes from the ConcurrentLinkedQueue mentioned in step 1.
- * 5. The message table store method will consume the Iterator until it is empty
- * 6. Set the state of each PendingStoreRequest that are written to COMPLETED (succeed/failure).
- * 7. Set the AtomicBoolean flag back to false.
- * 8. If the PendingStoreRequest enqueued by this thread is NOT COMPLETED, go back to step 2.
+ * 3. If failed to set the flag, returns a future that will be completed by the current writer.
+ * 4. If successfully set the flag to true, this thread becomes the writer and proceed to run step 5-9.
+ * 5. Provides an Iterator of PendingStoreRequest, which consumes from the ConcurrentLinkedQueue mentioned in step 1.
+ * 6. The message table store method will consume the Iterator until it is empty
+ * 7. Set the state of each PendingStoreRequest that are written to COMPLETED (succeed/failure),
+ *    which completes the future of each request.
+ * 8. Set the AtomicBoolean flag back to false.
+ * 9. If the ConcurrentLinkedQueue is not empty, go back to step 2.
  * </pre>
  *
- * The spin lock between step 2 to step 8 is necessary as it guarantees events enqueued by all threads would eventually
- * get written and flushed.
+ * The queue check in step 9 is necessary as it guarantees events enqueued by all threads would eventually
+ * get written and flushed. A request enqueued by a thread that failed the CAS in step 2 must be visible to the
+ * writer when it performs step 9, since the enqueue happened before the flag was reset by the writer.
+ *
+ * Optionally, an {@link ExecutorService} can be provided, in which case step 5-9 will always be executed by
+ * that executor instead of by the thread that enqueued the request. This is useful to dedicate a writer thread
+ * to a topic, so that threads calling {@link #persistAsync(StoreRequest, TopicMetadata)} will never be blocked
+ * by the writes of other threads.
  */
 @ThreadSafe
 final class ConcurrentMessageWriter implements Closeable {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ConcurrentMessageWriter.class);
+  private static final long DEFAULT_METRICS_EMIT_INTERVAL_SECONDS = 10L;
+
   private final StoreRequestWriter<?> messagesWriter;
   private final MetricsCollector metricsCollector;
   private final PendingStoreQueue pendingStoreQueue;
   private final AtomicBoolean writerFlag;
   private final AtomicBoolean closed;
+  private final ExecutorService writerExecutor;
+  private final Runnable writeTask;
 
   /**
    * Constructor with a {@link NoopMetricsContext}. This constructor should only be used in unit-testing.
@@ -77,22 +101,66 @@ final class ConcurrentMessageWriter implements Closeable {
   }
 
   /**
-   * Constructor.
+   * Constructor that performs writes with the threads that enqueue store requests.
    *
    * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
    * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
    */
   ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector) {
+    this(messagesWriter, metricsCollector, null);
+  }
+
+  /**
+   * Constructor that emits histogram metrics with the default interval.
+   *
+   * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
+   * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
+   * @param writerExecutor if not {@code null}, all writes will be performed by this executor instead of the
+   *                       threads that enqueue store requests. The executor will be shutdown when this
+   *                       writer is closed.
+   */
+  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector,
+                          @Nullable ExecutorService writerExecutor) {
+    this(messagesWriter, metricsCollector, writerExecutor, DEFAULT_METRICS_EMIT_INTERVAL_SECONDS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
+   * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
+   * @param writerExecutor if not {@code null}, all writes will be performed by this executor instead of the
+   *                       threads that enqueue store requests. The executor will be shutdown when this
+   *                       writer is closed.
+   * @param metricsEmitIntervalSeconds interval in seconds for emitting the percentiles of the persist latency
+   *                                   and batch size
+   */
+  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector,
+                          @Nullable ExecutorService writerExecutor, long metricsEmitIntervalSeconds) {
     this.messagesWriter = messagesWriter;
     this.metricsCollector = metricsCollector;
-    this.pendingStoreQueue = new PendingStoreQueue(metricsCollector);
+    this.pendingStoreQueue = new PendingStoreQueue(metricsCollector, metricsEmitIntervalSeconds);
     this.writerFlag = new AtomicBoolean();
     this.closed = new AtomicBoolean();
+    this.writerExecutor = writerExecutor;
+    this.writeTask = new Runnable() {
+      @Override
+      public void run() {
+        writeAll();
+      }
+    };
+  }
+
+  /**
+   * Returns the {@link StoreRequestWriter} used by this class for persisting {@link StoreRequest}.
+   */
+  StoreRequestWriter<?> getMessagesWriter() {
+    return messagesWriter;
   }
 
   /**
    * Persists the given {@link StoreRequest} to the {@link StoreRequestWriter} in this class. This method
-   * is safe to be called concurrently from multiple threads.
+   * is safe to be called concurrently from multiple threads. It blocks until the request is persisted.
    *
    * @param storeRequest contains information about payload to be store
    * @param metadata {@link TopicMetadata} for the topic in the {@link StoreRequest}
@@ -102,8 +170,28 @@ final class ConcurrentMessageWriter implements Closeable {
    */
   @Nullable
   RollbackDetail persist(StoreRequest storeRequest, TopicMetadata metadata) throws IOException {
+    try {
+      return Uninterruptibles.getUninterruptibly(persistAsync(storeRequest, metadata));
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Persists the given {@link StoreRequest} to the {@link StoreRequestWriter} in this class asynchronously.
+   * This method is safe to be called concurrently from multiple threads.
+   *
+   * @param storeRequest contains information about payload to be store
+   * @param metadata {@link TopicMetadata} for the topic in the {@link StoreRequest}
+   * @return a {@link ListenableFuture} that will be completed when the request is persisted. If the store request
+   *         is transactional, the future result will be a {@link RollbackDetail} containing information for rollback;
+   *         otherwise the future result will be {@code null}. If failed to persist the data, the future will
+   *         be failed with an {@link IOException}.
+   */
+  ListenableFuture<RollbackDetail> persistAsync(final StoreRequest storeRequest, TopicMetadata metadata) {
     if (closed.get()) {
-      throw new IOException("Message writer is already closed");
+      return Futures.immediateFailedFuture(new IOException("Message writer is already closed"));
     }
 
     PendingStoreRequest pendingStoreRequest = new PendingStoreRequest(storeRequest, metadata);
@@ -111,44 +199,75 @@ final class ConcurrentMessageWriter implements Closeable {
 
     metricsCollector.increment("persist.requested", 1L);
 
-    while (!pendingStoreRequest.isCompleted()) {
-      if (!tryWrite()) {
-        Thread.yield();
-      }
-    }
+    ListenableFuture<RollbackDetail> result = Futures.transform(
+      pendingStoreRequest.getCompletion(), new AsyncFunction<PendingStoreRequest, RollbackDetail>() {
+        @Override
+        public ListenableFuture<RollbackDetail> apply(PendingStoreRequest request) {
+          if (request.isSuccess()) {
+            metricsCollector.increment("persist.success", 1L);
+            if (!request.isTransactional()) {
+              return Futures.immediateFuture(null);
+            }
+            return Futures.<RollbackDetail>immediateFuture(new SimpleRollbackDetail(
+              request.getTransactionWritePointer(), request.getStartTimestamp(), request.getStartSequenceId(),
+              request.getEndTimestamp(), request.getEndSequenceId(), request.getTopicMetadata().getPartition()));
+          }
 
-    if (pendingStoreRequest.isSuccess()) {
-      metricsCollector.increment("persist.success", 1L);
-      if (!pendingStoreRequest.isTransactional()) {
-        return null;
-      }
-      return new SimpleRollbackDetail(pendingStoreRequest.getTransactionWritePointer(),
-                                      pendingStoreRequest.getStartTimestamp(), pendingStoreRequest.getStartSequenceId(),
-                                      pendingStoreRequest.getEndTimestamp(), pendingStoreRequest.getEndSequenceId());
-    } else {
-      metricsCollector.increment("persist.failure", 1L);
-      Throwables.propagateIfInstanceOf(pendingStoreRequest.getFailureCause(), IOException.class);
-      throw new IOException("Unable to write message to " + storeRequest.getTopicId(),
-                            pendingStoreRequest.getFailureCause());
-    }
+          metricsCollector.increment("persist.failure", 1L);
+          Throwable cause = request.getFailureCause();
+          if (cause instanceof IOException) {
+            return Futures.immediateFailedFuture(cause);
+          }
+          return Futures.immediateFailedFuture(new IOException("Unable to write message to "
+                                                                 + storeRequest.getTopicId(), cause));
+        }
+      });
+
+    triggerWrite();
+    return result;
   }
 
   /**
-   * Tries to acquire the writer flag and persist the pending requests.
-   *
-   * @return {@code true} if acquired the writer flag and called {@link PendingStoreQueue#persist(StoreRequestWriter)};
-   *         otherwise {@code false} will be returned.
+   * Tries to acquire the writer flag and persist the pending requests, either with the current thread or
+   * with the writer executor.
    */
-  private boolean tryWrite() {
+  private void triggerWrite() {
     if (!writerFlag.compareAndSet(false, true)) {
-      return false;
+      return;
+    }
+    if (writerExecutor == null) {
+      writeAll();
+      return;
     }
     try {
-      pendingStoreQueue.persist(messagesWriter);
-    } finally {
-      writerFlag.set(false);
+      writerExecutor.execute(writeTask);
+    } catch (RejectedExecutionException e) {
+      // This can only happen when this writer is being closed. Perform the write with the current thread.
+      LOG.trace("Writer executor is shutdown. Persisting with the caller thread.", e);
+      writeAll();
     }
-    return true;
+  }
+
+  /**
+   * Persists all pending requests until the queue is empty. This method must be called while holding
+   * the writer flag and it will release the writer flag before returning.
+   */
+  private void writeAll() {
+    do {
+      try {
+        pendingStoreQueue.persist(messagesWriter);
+      } finally {
+        writerFlag.set(false);
+      }
+    } while (!pendingStoreQueue.isEmpty() && writerFlag.compareAndSet(false, true));
+  }
+
+  /**
+   * Emits the histogram metrics for requests written since the last emission. This method can be called
+   * concurrently with writes.
+   */
+  void emitMetrics() {
+    pendingStoreQueue.emitMetrics();
   }
 
   @Override
@@ -156,12 +275,22 @@ final class ConcurrentMessageWriter implements Closeable {
     if (!closed.compareAndSet(false, true)) {
       return;
     }
+    if (writerExecutor != null) {
+      writerExecutor.shutdown();
+      try {
+        writerExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
     // Flush everything in the queue.
     // When this thread can grab the writer flag, all pending write requests must be completed since the closed
-    // flag was already set to false.
-    while (!tryWrite()) {
+    // flag was already set to true.
+    while (!writerFlag.compareAndSet(false, true)) {
       Thread.yield();
     }
+    writeAll();
+    pendingStoreQueue.emitMetrics();
     messagesWriter.close();
   }
 
@@ -175,11 +304,19 @@ final class ConcurrentMessageWriter implements Closeable {
     private final MetricsCollector metricsCollector;
     private final Queue<PendingStoreRequest> writeQueue;
     private final List<PendingStoreRequest> inflightRequests;
+    // Time in microseconds from a request being enqueued until its write is completed
+    private final Histogram latencyHistogram;
+    // Number of requests being written together
+    private final Histogram batchSizeHistogram;
 
-    private PendingStoreQueue(MetricsCollector metricsCollector) {
+    private PendingStoreQueue(MetricsCollector metricsCollector, long metricsEmitIntervalSeconds) {
       this.metricsCollector = metricsCollector;
       this.writeQueue = new ConcurrentLinkedQueue<>();
       this.inflightRequests = new ArrayList<>(100);
+      this.latencyHistogram = new Histogram(metricsCollector, "persist.latency.micros",
+                                            metricsEmitIntervalSeconds, TimeUnit.SECONDS);
+      this.batchSizeHistogram = new Histogram(metricsCollector, "persist.batch.size",
+                                              metricsEmitIntervalSeconds, TimeUnit.SECONDS);
     }
 
     /**
@@ -189,6 +326,13 @@ final class ConcurrentMessageWriter implements Closeable {
       writeQueue.add(storeRequest);
     }
 
+    /**
+     * Returns {@code true} if there is no {@link PendingStoreRequest} in the concurrent queue.
+     */
+    boolean isEmpty() {
+      return writeQueue.isEmpty();
+    }
+
     /**
      * Persists all {@link PendingStoreRequest} currently in the queue with the given writer.
      */
@@ -207,6 +351,9 @@ final class ConcurrentMessageWriter implements Closeable {
       }
 
       metricsCollector.gauge("persist.queue.size", inflightRequests.size());
+      if (!inflightRequests.isEmpty()) {
+        batchSizeHistogram.record(inflightRequests.size());
+      }
 
       try {
         writer.write(inflightRequests.iterator());
@@ -221,12 +368,24 @@ final class ConcurrentMessageWriter implements Closeable {
      * This method must be called while holding the writer flag.
      */
     void completeAll(@Nullable Throwable failureCause) {
+      long now = System.nanoTime();
       Iterator<PendingStoreRequest> iterator = inflightRequests.iterator();
       while (iterator.hasNext()) {
-        iterator.next().completed(failureCause);
+        PendingStoreRequest request = iterator.next();
+        latencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(now - request.getEnqueueNanos()));
+        request.completed(failureCause);
         iterator.remove();
       }
     }
+
+    /**
+     * Emits the histogram metrics for requests written since the last emission. Unlike other methods,
+     * this method can be called without holding the writer flag.
+     */
+    void emitMetrics() {
+      latencyHistogram.emit();
+      batchSizeHistogram.emit();
+    }
   }
 
   /**
@@ -239,14 +398,16 @@ final class ConcurrentMessageWriter implements Closeable {
     private final int startSequenceId;
     private final long endTimestamp;
     private final int endSequenceId;
+    private final int partition;
 
     SimpleRollbackDetail(long transactionWritePointer, long startTimestamp,
-                         int startSequenceId, long endTimestamp, int endSequenceId) {
+                         int startSequenceId, long endTimestamp, int endSequenceId, int partition) {
       this.transactionWritePointer = transactionWritePointer;
       this.startTimestamp = startTimestamp;
       this.startSequenceId = startSequenceId;
       this.endTimestamp = endTimestamp;
       this.endSequenceId = endSequenceId;
+      this.partition = partition;
     }
 
     @Override
@@ -273,5 +434,10 @@ final class ConcurrentMessageWriter implements Closeable {
     public int getEndSequenceId() {
       return endSequenceId;
     }
+
+    @Override
+    public int getPartition() {
+      return partition;
+    }
   }
 }
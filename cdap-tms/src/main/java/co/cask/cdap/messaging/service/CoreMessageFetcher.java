@@ -18,6 +18,7 @@ package co.cask.cdap.messaging.service;
 
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.messaging.MessageFetcher;
+import co.cask.cdap.messaging.PayloadCompression;
 import co.cask.cdap.messaging.TopicMetadata;
 import co.cask.cdap.messaging.data.MessageId;
 import co.cask.cdap.messaging.data.RawMessage;
@@ -25,11 +26,19 @@ import co.cask.cdap.messaging.store.MessageTable;
 import co.cask.cdap.messaging.store.PayloadTable;
 import co.cask.cdap.proto.id.TopicId;
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -42,26 +51,159 @@ final class CoreMessageFetcher extends MessageFetcher {
   private static final Logger LOG = LoggerFactory.getLogger(CoreMessageFetcher.class);
 
   private final TopicMetadata topicMetadata;
+  private final PayloadCompression compression;
   private final TableProvider<MessageTable> messageTableProvider;
   private final TableProvider<PayloadTable> payloadTableProvider;
+  private final Map<Integer, MessageTableCache> messageTableCaches;
+  private final PublishNotifier publishNotifier;
+  private final Executor fetchExecutor;
+  private final FetchMetrics fetchMetrics;
 
+  /**
+   * Constructor.
+   *
+   * @param topicMetadata the metadata of the topic to fetch from
+   * @param messageTableProvider provider for the {@link MessageTable} to fetch from
+   * @param payloadTableProvider provider for the {@link PayloadTable} to fetch from
+   * @param messageTableCaches the {@link MessageTableCache} of each topic partition to fetch from if the fetch
+   *                           starts within the range of recently published messages kept by the cache
+   * @param publishNotifier the {@link PublishNotifier} for waiting for new messages being published
+   * @param fetchExecutor the {@link Executor} for fetching again after new messages are published
+   * @param fetchMetrics the {@link FetchMetrics} for recording the scan latency and size of each fetch
+   */
   CoreMessageFetcher(TopicMetadata topicMetadata,
                      TableProvider<MessageTable> messageTableProvider,
-                     TableProvider<PayloadTable> payloadTableProvider) {
+                     TableProvider<PayloadTable> payloadTableProvider,
+                     Map<Integer, MessageTableCache> messageTableCaches,
+                     PublishNotifier publishNotifier, Executor fetchExecutor, FetchMetrics fetchMetrics) {
     this.topicMetadata = topicMetadata;
+    this.compression = topicMetadata.getCompression();
     this.messageTableProvider = messageTableProvider;
     this.payloadTableProvider = payloadTableProvider;
+    this.messageTableCaches = messageTableCaches;
+    this.publishNotifier = publishNotifier;
+    this.fetchExecutor = fetchExecutor;
+    this.fetchMetrics = fetchMetrics;
   }
 
   @Override
   public CloseableIterator<RawMessage> fetch() throws IOException {
-    MessageTable messageTable = messageTableProvider.get();
+    if (getMaxWaitMillis() <= 0) {
+      return scan();
+    }
     try {
-      return new MessageCloseableIterator(messageTable);
-    } catch (Throwable t) {
-      closeQuietly(messageTable);
-      throw t;
+      return Uninterruptibles.getUninterruptibly(fetchAsync());
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  @Override
+  public ListenableFuture<CloseableIterator<RawMessage>> fetchAsync() throws IOException {
+    if (getMaxWaitMillis() <= 0) {
+      return Futures.immediateFuture(scan());
+    }
+    return scanOrWait(System.currentTimeMillis() + getMaxWaitMillis());
+  }
+
+  /**
+   * Scans for messages. If there is no message available, waits for new messages being published to the topic
+   * and scans again, until there are messages or the given deadline passed.
+   */
+  private ListenableFuture<CloseableIterator<RawMessage>> scanOrWait(final long deadline) throws IOException {
+    long waitMillis = deadline - System.currentTimeMillis();
+
+    // Register for the publish notification before scanning,
+    // so that messages published in between won't be missed.
+    ListenableFuture<Boolean> published = waitMillis > 0
+      ? publishNotifier.waitForPublish(topicMetadata.getTopicId(), waitMillis, TimeUnit.MILLISECONDS)
+      : Futures.immediateFuture(false);
+
+    CloseableIterator<RawMessage> iterator;
+    try {
+      iterator = scan();
+    } catch (IOException | RuntimeException e) {
+      published.cancel(false);
+      throw e;
+    }
+
+    boolean hasMessage;
+    try {
+      hasMessage = iterator.hasNext();
+    } catch (RuntimeException e) {
+      published.cancel(false);
+      iterator.close();
+      throw e;
+    }
+
+    if (waitMillis <= 0 || hasMessage) {
+      published.cancel(false);
+      return Futures.immediateFuture(iterator);
+    }
+    iterator.close();
+
+    return Futures.transform(published, new AsyncFunction<Boolean, CloseableIterator<RawMessage>>() {
+      @Override
+      public ListenableFuture<CloseableIterator<RawMessage>> apply(Boolean notified) throws Exception {
+        // Either notified or timeout, scan again. If it is timeout, the deadline would have passed
+        // and the next scan will always return.
+        // For a transactional fetch, messages written after the notification are only visible to a newer
+        // transaction once the writing transaction is committed, which the messaging service is not told about.
+        // Hence return after the first notification to let the caller fetch again with a new transaction,
+        // instead of waiting out the full timeout.
+        return scanOrWait(notified && getTransaction() != null ? 0L : deadline);
+      }
+    }, fetchExecutor);
+  }
+
+  /**
+   * Creates a {@link CloseableIterator} for scanning messages from the tables, which records the time spent on
+   * scanning and the number of bytes returned to the {@link FetchMetrics} when it is closed.
+   */
+  private CloseableIterator<RawMessage> scan() throws IOException {
+    long startNanos = System.nanoTime();
+    CloseableIterator<RawMessage> iterator = doScan();
+    return new MetricsMessageIterator(iterator, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Creates a {@link CloseableIterator} for scanning messages from the tables of a single topic partition.
+   * Since message ids are only ordered within a partition, a topic with more than one partition can only be
+   * fetched one partition at a time.
+   *
+   * @throws IllegalArgumentException if no partition is set on this fetcher and the topic has more than one partition
+   */
+  private CloseableIterator<RawMessage> doScan() throws IOException {
+    Integer partition = getPartition();
+    if (partition != null) {
+      return new MessageCloseableIterator(topicMetadata.forPartition(partition));
     }
+    if (topicMetadata.getPartitions() != 1) {
+      throw new IllegalArgumentException("Topic " + topicMetadata.getTopicId() + " has "
+                                           + topicMetadata.getPartitions()
+                                           + " partitions. The partition to fetch from must be specified.");
+    }
+    return new MessageCloseableIterator(topicMetadata);
+  }
+
+  /**
+   * Returns the {@link MessageTable} for fetching messages of a topic partition, starting either from the given
+   * start offset or from the given start time if the start offset is {@code null}. If the {@link MessageTableCache}
+   * of the partition contains all the messages starting from there, the cache will be returned.
+   */
+  private MessageTable getMessageTable(TopicMetadata partitionMetadata,
+                                       @Nullable MessageId startOffset, long startTime) throws IOException {
+    MessageTableCache messageTableCache = messageTableCaches.get(partitionMetadata.getPartition());
+    if (messageTableCache != null) {
+      boolean cached = startOffset == null
+        ? messageTableCache.isCached(partitionMetadata, startTime)
+        : messageTableCache.isCached(partitionMetadata, startOffset);
+      if (cached) {
+        return messageTableCache;
+      }
+    }
+    return messageTableProvider.get();
   }
 
   /**
@@ -107,13 +249,68 @@ final class CoreMessageFetcher extends MessageFetcher {
     }
   }
 
+  /**
+   * A {@link CloseableIterator} that accumulates the time spent on fetching messages from another iterator, as well
+   * as the number of payload bytes returned. Time spent by the caller between calls is not included.
+   */
+  private final class MetricsMessageIterator implements CloseableIterator<RawMessage> {
+
+    private final CloseableIterator<RawMessage> delegate;
+    private long scanNanos;
+    private long bytes;
+    private boolean closed;
+
+    MetricsMessageIterator(CloseableIterator<RawMessage> delegate, long scanNanos) {
+      this.delegate = delegate;
+      this.scanNanos = scanNanos;
+    }
+
+    @Override
+    public boolean hasNext() {
+      long startNanos = System.nanoTime();
+      try {
+        return delegate.hasNext();
+      } finally {
+        scanNanos += System.nanoTime() - startNanos;
+      }
+    }
+
+    @Override
+    public RawMessage next() {
+      long startNanos = System.nanoTime();
+      try {
+        RawMessage message = delegate.next();
+        bytes += message.getPayload().length;
+        return message;
+      } finally {
+        scanNanos += System.nanoTime() - startNanos;
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Remove is not supported");
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      delegate.close();
+      fetchMetrics.fetched(scanNanos, bytes);
+    }
+  }
+
   /**
    * A {@link CloseableIterator} of {@link RawMessage} implementation that contains the core message fetching logic
-   * by combine scanning on both {@link MessageTable} and {@link PayloadTable}.
+   * by combine scanning on both {@link MessageTable} and {@link PayloadTable} for a single topic partition.
    */
   private final class MessageCloseableIterator implements CloseableIterator<RawMessage> {
 
     private final CloseableIterator<MessageTable.Entry> messageIterator;
+    private final TopicMetadata topicMetadata;
     private final TopicId topicId;
     private final MessageTable messageTable;
     private RawMessage nextMessage;
@@ -122,10 +319,16 @@ final class CoreMessageFetcher extends MessageFetcher {
     private boolean inclusive;
     private int messageLimit;
     private PayloadTable payloadTable;
+    // The decompressed payloads of the last block read, identified by the table, timestamp, and sequence id of
+    // the entry that carries it
+    private List<byte[]> blockPayloads;
+    private boolean blockInPayloadTable;
+    private long blockTimestamp;
+    private int blockSequenceId;
 
-    MessageCloseableIterator(MessageTable messageTable) throws IOException {
+    MessageCloseableIterator(TopicMetadata topicMetadata) throws IOException {
+      this.topicMetadata = topicMetadata;
       this.topicId = topicMetadata.getTopicId();
-      this.messageTable = messageTable;
       this.inclusive = isIncludeStart();
       this.messageLimit = getLimit();
 
@@ -136,24 +339,32 @@ final class CoreMessageFetcher extends MessageFetcher {
       // Lower bound of messages that are still valid
       long smallestPublishTime = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttl);
 
-      CloseableIterator<MessageTable.Entry> messageIterator;
       // If there is no startOffset or if the publish time in the startOffset is smaller then TTL,
       // do the scanning based on time. The smallest start time should be the currentTime - TTL.
-      if (startOffset == null || startOffset.getPublishTimestamp() < smallestPublishTime) {
-        long fetchStartTime = Math.max(smallestPublishTime, startTime == null ? smallestPublishTime : startTime);
-        messageIterator = messageTable.fetch(topicMetadata, fetchStartTime, messageLimit, getTransaction());
-      } else {
-        // Start scanning based on the start message id
-        if (startOffset.getPayloadWriteTimestamp() != 0L) {
-          // This message ID refer to payload table. Scan the message table with the reference message ID inclusively.
-          messageIterator = messageTable.fetch(topicMetadata, createMessageTableMessageId(startOffset),
-                                               true, messageLimit, getTransaction());
+      if (startOffset != null && startOffset.getPublishTimestamp() < smallestPublishTime) {
+        startOffset = null;
+      }
+      long fetchStartTime = Math.max(smallestPublishTime, startTime == null ? smallestPublishTime : startTime);
+      // If the start message ID refer to payload table, scan the message table with the reference message ID.
+      MessageId messageTableStartOffset = startOffset == null || startOffset.getPayloadWriteTimestamp() == 0L
+        ? startOffset
+        : createMessageTableMessageId(startOffset);
+
+      this.messageTable = getMessageTable(topicMetadata, messageTableStartOffset, fetchStartTime);
+      try {
+        if (startOffset == null) {
+          this.messageIterator = messageTable.fetch(topicMetadata, fetchStartTime, messageLimit, getTransaction());
         } else {
-          messageIterator = messageTable.fetch(topicMetadata, startOffset, isIncludeStart(),
-                                               messageLimit, getTransaction());
+          // Start scanning based on the start message id.
+          // For message ID that refers to payload table, the reference message ID is always scanned inclusively.
+          boolean includeStart = startOffset.getPayloadWriteTimestamp() != 0L || isIncludeStart();
+          this.messageIterator = messageTable.fetch(topicMetadata, messageTableStartOffset, includeStart,
+                                                    messageLimit, getTransaction());
         }
+      } catch (Throwable t) {
+        closeQuietly(messageTable);
+        throw t;
       }
-      this.messageIterator = messageIterator;
     }
 
     @Override
@@ -168,7 +379,11 @@ final class CoreMessageFetcher extends MessageFetcher {
         if (payloadIterator != null && payloadIterator.hasNext()) {
           PayloadTable.Entry payloadEntry = payloadIterator.next();
           // messageEntry is guaranteed to be non-null if payloadIterator is non-null
-          nextMessage = new RawMessage(createMessageId(messageEntry, payloadEntry), payloadEntry.getPayload());
+          try {
+            nextMessage = new RawMessage(createMessageId(messageEntry, payloadEntry), decodePayload(payloadEntry));
+          } catch (IOException e) {
+            throw Throwables.propagate(e);
+          }
           break;
         }
 
@@ -189,7 +404,11 @@ final class CoreMessageFetcher extends MessageFetcher {
             }
           } else {
             // Otherwise, the message entry is the next message
-            nextMessage = new RawMessage(createMessageId(messageEntry, null), messageEntry.getPayload());
+            try {
+              nextMessage = new RawMessage(createMessageId(messageEntry, null), decodePayload(messageEntry));
+            } catch (IOException e) {
+              throw Throwables.propagate(e);
+            }
           }
         } else {
           // If there is no more message from the message iterator as well, then no more message to fetch
@@ -216,6 +435,98 @@ final class CoreMessageFetcher extends MessageFetcher {
       throw new UnsupportedOperationException("Remove is not supported");
     }
 
+    /**
+     * Decompresses the payload of the given message table entry if the topic has compression enabled.
+     */
+    private byte[] decodePayload(MessageTable.Entry entry) throws IOException {
+      byte[] payload = entry.getPayload();
+      if (compression == PayloadCompression.NONE) {
+        return payload;
+      }
+      long timestamp = entry.getPublishTimestamp();
+      int sequenceId = entry.getSequenceId() & 0xffff;
+      if (!PayloadCompression.isBlockReference(payload)) {
+        return setBlock(false, timestamp, sequenceId, payload).get(0);
+      }
+
+      int index = PayloadCompression.getBlockIndex(payload);
+      if (!isCurrentBlock(false, timestamp, sequenceId - index)) {
+        // The fetch started in the middle of the block, hence the entry that carries the block is read separately.
+        // It is read from the table, since the message table cache only has the messages starting from the fetch.
+        byte[] rawId = new byte[MessageId.RAW_ID_SIZE];
+        MessageId.putRawId(timestamp, (short) (sequenceId - index), 0L, (short) 0, rawId, 0);
+        try (
+          MessageTable table = messageTableProvider.get();
+          CloseableIterator<MessageTable.Entry> iterator = table.fetch(topicMetadata, new MessageId(rawId), true, 1,
+                                                                       getTransaction())
+        ) {
+          MessageTable.Entry first = iterator.hasNext() ? iterator.next() : null;
+          if (first == null || first.getPublishTimestamp() != timestamp
+            || (first.getSequenceId() & 0xffff) != sequenceId - index) {
+            throw new IllegalStateException("Missing the compressed block of the message with publish timestamp "
+                                              + timestamp + " and sequence id " + sequenceId + " in " + topicId);
+          }
+          setBlock(false, timestamp, sequenceId - index, first.getPayload());
+        }
+      }
+      return getFromBlock(index);
+    }
+
+    /**
+     * Decompresses the payload of the given payload table entry if the topic has compression enabled.
+     */
+    private byte[] decodePayload(PayloadTable.Entry entry) throws IOException {
+      byte[] payload = entry.getPayload();
+      if (compression == PayloadCompression.NONE) {
+        return payload;
+      }
+      long timestamp = entry.getPayloadWriteTimestamp();
+      int sequenceId = entry.getPayloadSequenceId() & 0xffff;
+      if (!PayloadCompression.isBlockReference(payload)) {
+        return setBlock(true, timestamp, sequenceId, payload).get(0);
+      }
+
+      int index = PayloadCompression.getBlockIndex(payload);
+      if (!isCurrentBlock(true, timestamp, sequenceId - index)) {
+        // The fetch started in the middle of the block, hence the entry that carries the block is read separately
+        byte[] rawId = new byte[MessageId.RAW_ID_SIZE];
+        MessageId.putRawId(messageEntry.getPublishTimestamp(), messageEntry.getSequenceId(),
+                           timestamp, (short) (sequenceId - index), rawId, 0);
+        try (CloseableIterator<PayloadTable.Entry> iterator = payloadTable.fetch(
+          topicMetadata, entry.getTransactionWritePointer(), new MessageId(rawId), true, 1)) {
+          PayloadTable.Entry first = iterator.hasNext() ? iterator.next() : null;
+          if (first == null || first.getPayloadWriteTimestamp() != timestamp
+            || (first.getPayloadSequenceId() & 0xffff) != sequenceId - index) {
+            throw new IllegalStateException("Missing the compressed block of the payload with write timestamp "
+                                              + timestamp + " and sequence id " + sequenceId + " in " + topicId);
+          }
+          setBlock(true, timestamp, sequenceId - index, first.getPayload());
+        }
+      }
+      return getFromBlock(index);
+    }
+
+    private boolean isCurrentBlock(boolean inPayloadTable, long timestamp, int sequenceId) {
+      return blockPayloads != null && blockInPayloadTable == inPayloadTable
+        && blockTimestamp == timestamp && blockSequenceId == sequenceId;
+    }
+
+    private List<byte[]> setBlock(boolean inPayloadTable, long timestamp, int sequenceId, byte[] payload) {
+      blockPayloads = PayloadCompression.decompressBlock(payload);
+      blockInPayloadTable = inPayloadTable;
+      blockTimestamp = timestamp;
+      blockSequenceId = sequenceId;
+      return blockPayloads;
+    }
+
+    private byte[] getFromBlock(int index) {
+      if (index >= blockPayloads.size()) {
+        throw new IllegalStateException("Compressed block of " + topicId + " has " + blockPayloads.size()
+                                          + " messages, but message " + index + " of it is requested");
+      }
+      return blockPayloads.get(index);
+    }
+
     @Override
     public void close() {
       closeQuietly(payloadIterator);
@@ -45,16 +45,27 @@ import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -70,10 +81,16 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
   private final CConfiguration cConf;
   private final TableFactory tableFactory;
   private final LoadingCache<TopicId, TopicMetadata> topicCache;
-  private final LoadingCache<TopicId, ConcurrentMessageWriter> messageTableWriterCache;
-  private final LoadingCache<TopicId, ConcurrentMessageWriter> payloadTableWriterCache;
+  private final LoadingCache<TopicPartition, ConcurrentMessageWriter> messageTableWriterCache;
+  private final LoadingCache<TopicPartition, ConcurrentMessageWriter> payloadTableWriterCache;
+  private final ConcurrentMap<TopicPartition, MessageTableCache> messageTableCaches;
+  private final LoadingCache<TopicId, FetchMetrics> fetchMetricsCache;
+  private final AtomicInteger nextPartition;
   private final TimeProvider timeProvider;
   private final MetricsContext metricsContext;
+  private final PublishNotifier publishNotifier;
+  private final ExecutorService fetchExecutor;
+  private final ScheduledExecutorService metricsEmitter;
 
   @Inject
   CoreMessagingService(CConfiguration cConf, TableFactory tableFactory,
@@ -87,6 +104,8 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     this.cConf = cConf;
     this.tableFactory = tableFactory;
     this.topicCache = createTopicCache();
+    this.messageTableCaches = new ConcurrentHashMap<>();
+    this.nextPartition = new AtomicInteger();
     this.messageTableWriterCache = createTableWriterCache(true, cConf);
     this.payloadTableWriterCache = createTableWriterCache(false, cConf);
     this.timeProvider = timeProvider;
@@ -94,6 +113,15 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       Constants.Metrics.Tag.COMPONENT, Constants.Service.MESSAGING_SERVICE,
       Constants.Metrics.Tag.INSTANCE_ID, cConf.get(Constants.MessagingSystem.CONTAINER_INSTANCE_ID, "0")
     ));
+    this.fetchMetricsCache = createFetchMetricsCache(cConf);
+    // Waiting fetches are only notified of messages published through this instance. With multiple instances,
+    // they look for messages published through other instances periodically.
+    this.publishNotifier = new PublishNotifier(
+      cConf.getInt(Constants.MessagingSystem.CONTAINER_INSTANCES, 1) > 1
+        ? cConf.getLong(Constants.MessagingSystem.FETCH_POLL_INTERVAL_MS) : 0L);
+    this.fetchExecutor = Executors.newCachedThreadPool(Threads.createDaemonThreadFactory("messaging-fetcher-%d"));
+    this.metricsEmitter = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory("messaging-metrics-emitter"));
   }
 
   @Override
@@ -120,8 +148,9 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     try (MetadataTable metadataTable = createMetadataTable()) {
       metadataTable.deleteTopic(topicId);
       topicCache.invalidate(topicId);
-      messageTableWriterCache.invalidate(topicId);
-      payloadTableWriterCache.invalidate(topicId);
+      invalidateWriters(messageTableWriterCache, topicId);
+      invalidateWriters(payloadTableWriterCache, topicId);
+      fetchMetricsCache.invalidate(topicId);
     }
   }
 
@@ -146,6 +175,13 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
   @Override
   public MessageFetcher prepareFetch(final TopicId topicId) throws TopicNotFoundException, IOException {
     final TopicMetadata metadata = getTopic(topicId);
+    Map<Integer, MessageTableCache> caches = new HashMap<>();
+    for (int i = 0; i < metadata.getPartitions(); i++) {
+      MessageTableCache cache = messageTableCaches.get(new TopicPartition(topicId, i));
+      if (cache != null) {
+        caches.put(i, cache);
+      }
+    }
     return new CoreMessageFetcher(metadata, new TableProvider<MessageTable>() {
       @Override
       public MessageTable get() throws IOException {
@@ -156,15 +192,39 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       public PayloadTable get() throws IOException {
         return createPayloadTable(metadata);
       }
-    });
+    }, caches, publishNotifier, fetchExecutor, fetchMetricsCache.getUnchecked(topicId));
   }
 
   @Nullable
   @Override
   public RollbackDetail publish(StoreRequest request) throws TopicNotFoundException, IOException {
     try {
-      TopicMetadata metadata = topicCache.get(request.getTopicId());
-      return messageTableWriterCache.get(request.getTopicId()).persist(request, metadata);
+      return Uninterruptibles.getUninterruptibly(publishAsync(request));
+    } catch (ExecutionException e) {
+      Throwable cause = Objects.firstNonNull(e.getCause(), e);
+      Throwables.propagateIfPossible(cause, IOException.class);
+      throw Throwables.propagate(cause);
+    }
+  }
+
+  @Override
+  public ListenableFuture<RollbackDetail> publishAsync(StoreRequest request) throws TopicNotFoundException,
+                                                                                    IOException {
+    try {
+      final TopicId topicId = request.getTopicId();
+      TopicMetadata metadata = topicCache.get(topicId);
+      metadata = metadata.forPartition(selectPartition(metadata, request));
+      ListenableFuture<RollbackDetail> future = messageTableWriterCache.get(
+        new TopicPartition(topicId, metadata.getPartition())).persistAsync(request, metadata);
+
+      // Wakes up fetchers that are waiting for new messages once the write completed
+      future.addListener(new Runnable() {
+        @Override
+        public void run() {
+          publishNotifier.notifyPublished(topicId);
+        }
+      }, MoreExecutors.sameThreadExecutor());
+      return future;
     } catch (ExecutionException e) {
       Throwable cause = Objects.firstNonNull(e.getCause(), e);
       Throwables.propagateIfPossible(cause, TopicNotFoundException.class, IOException.class);
@@ -176,7 +236,10 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
   public void storePayload(StoreRequest request) throws TopicNotFoundException, IOException {
     try {
       TopicMetadata metadata = topicCache.get(request.getTopicId());
-      payloadTableWriterCache.get(request.getTopicId()).persist(request, metadata);
+      metadata = metadata.forPartition(selectPartition(metadata, request));
+      payloadTableWriterCache.get(new TopicPartition(request.getTopicId(), metadata.getPartition()))
+        .persist(request, metadata);
+      publishNotifier.notifyPublished(request.getTopicId());
     } catch (ExecutionException e) {
       Throwable cause = Objects.firstNonNull(e.getCause(), e);
       Throwables.propagateIfPossible(cause, TopicNotFoundException.class, IOException.class);
@@ -186,7 +249,7 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
 
   @Override
   public void rollback(TopicId topicId, RollbackDetail rollbackDetail) throws TopicNotFoundException, IOException {
-    TopicMetadata metadata = getTopic(topicId);
+    TopicMetadata metadata = getTopic(topicId).forPartition(rollbackDetail.getPartition());
 
     Exception failure = null;
     try (MessageTable messageTable = createMessageTable(metadata)) {
@@ -195,6 +258,16 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       failure = e;
     }
 
+    // Also rollback the recently published messages that are kept in memory
+    MessageTableCache messageTableCache = messageTableCaches.get(new TopicPartition(topicId,
+                                                                                    metadata.getPartition()));
+    if (messageTableCache != null) {
+      messageTableCache.rollback(metadata, rollbackDetail);
+    }
+
+    // Rolled back messages no longer hold up transactional fetchers from reading the messages after them
+    publishNotifier.notifyPublished(topicId);
+
     // Throw if there is any failure in rollback.
     if (failure != null) {
       Throwables.propagateIfPossible(failure, TopicNotFoundException.class, IOException.class);
@@ -204,17 +277,82 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
 
   @Override
   protected void startUp() throws Exception {
+    // Histograms only emit on record, so emit them periodically as well, otherwise the percentiles of an idle
+    // topic would keep reporting the values of the last window that had any
+    long emitIntervalSecs = cConf.getLong(Constants.MessagingSystem.METRICS_HISTOGRAM_EMIT_INTERVAL_SECONDS);
+    if (emitIntervalSecs > 0) {
+      metricsEmitter.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          emitHistogramMetrics();
+        }
+      }, emitIntervalSecs, emitIntervalSecs, TimeUnit.SECONDS);
+    }
     LOG.info("Core Messaging Service started");
   }
 
   @Override
   protected void shutDown() throws Exception {
-    messageTableWriterCache.invalidateAll();
+    metricsEmitter.shutdownNow();
     messageTableWriterCache.invalidateAll();
     payloadTableWriterCache.invalidateAll();
+    fetchMetricsCache.invalidateAll();
+    publishNotifier.close();
+    fetchExecutor.shutdownNow();
     LOG.info("Core Messaging Service stopped");
   }
 
+  /**
+   * Emits the histogram metrics of all active writers and fetches.
+   */
+  private void emitHistogramMetrics() {
+    try {
+      for (ConcurrentMessageWriter writer : messageTableWriterCache.asMap().values()) {
+        writer.emitMetrics();
+      }
+      for (ConcurrentMessageWriter writer : payloadTableWriterCache.asMap().values()) {
+        writer.emitMetrics();
+      }
+      for (FetchMetrics fetchMetrics : fetchMetricsCache.asMap().values()) {
+        fetchMetrics.emit();
+      }
+    } catch (Throwable t) {
+      // Don't let an exception cancel the periodic emission
+      LOG.warn("Exception raised when emitting messaging metrics", t);
+    }
+  }
+
+  /**
+   * Selects the partition of the topic for the given {@link StoreRequest}. Requests with the same partition key always
+   * go to the same partition. Without a partition key, all messages and payloads of the same transaction go to
+   * the same partition, while non-transactional messages are spread across partitions in a round robin fashion.
+   */
+  private int selectPartition(TopicMetadata metadata, StoreRequest request) {
+    int partitions = metadata.getPartitions();
+    if (partitions == 1) {
+      return 0;
+    }
+    byte[] partitionKey = request.getPartitionKey();
+    if (partitionKey != null) {
+      return (Arrays.hashCode(partitionKey) & Integer.MAX_VALUE) % partitions;
+    }
+    if (request.isTransactional()) {
+      return MessagingUtils.toTransactionPartition(request.getTransactionWritePointer(), partitions);
+    }
+    return (nextPartition.getAndIncrement() & Integer.MAX_VALUE) % partitions;
+  }
+
+  /**
+   * Invalidates the writers of all partitions of the given topic.
+   */
+  private void invalidateWriters(LoadingCache<TopicPartition, ConcurrentMessageWriter> writerCache, TopicId topicId) {
+    for (TopicPartition topicPartition : writerCache.asMap().keySet()) {
+      if (topicPartition.getTopicId().equals(topicId)) {
+        writerCache.invalidate(topicPartition);
+      }
+    }
+  }
+
   /**
    * Creates a loading cache for {@link TopicMetadata}.
    */
@@ -229,6 +367,59 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     });
   }
 
+  /**
+   * Creates a {@link LoadingCache} for the {@link FetchMetrics} of each topic.
+   */
+  private LoadingCache<TopicId, FetchMetrics> createFetchMetricsCache(CConfiguration cConf) {
+    long expireSecs = cConf.getLong(Constants.MessagingSystem.TABLE_CACHE_EXPIRATION_SECONDS);
+    final long emitIntervalSecs = cConf.getLong(Constants.MessagingSystem.METRICS_HISTOGRAM_EMIT_INTERVAL_SECONDS);
+
+    return CacheBuilder.newBuilder()
+      .expireAfterAccess(expireSecs, TimeUnit.SECONDS)
+      .removalListener(new RemovalListener<TopicId, FetchMetrics>() {
+        @Override
+        public void onRemoval(RemovalNotification<TopicId, FetchMetrics> notification) {
+          FetchMetrics fetchMetrics = notification.getValue();
+          if (fetchMetrics != null) {
+            fetchMetrics.emit();
+          }
+        }
+      })
+      .build(new CacheLoader<TopicId, FetchMetrics>() {
+        @Override
+        public FetchMetrics load(TopicId topicId) throws Exception {
+          return new FetchMetrics(createTopicMetricsContext(topicId, "message"), emitIntervalSecs);
+        }
+      });
+  }
+
+  /**
+   * Creates a {@link MetricsContext} for emitting metrics of the given topic.
+   *
+   * @param topicId the topic
+   * @param table the type of table that the metrics are about
+   */
+  private MetricsContext createTopicMetricsContext(TopicId topicId, String table) {
+    return metricsContext.childContext(ImmutableMap.of(
+      Constants.Metrics.Tag.NAMESPACE, topicId.getNamespace(),
+      Constants.Metrics.Tag.TOPIC, topicId.getTopic(),
+      Constants.Metrics.Tag.TABLE, table
+    ));
+  }
+
+  /**
+   * Creates a {@link MetricsContext} for emitting metrics of the given topic partition. Components that are
+   * created per partition, such as the writers, must use this context, so that the gauges emitted by different
+   * partitions don't overwrite each other.
+   *
+   * @param topicPartition the topic partition
+   * @param table the type of table that the metrics are about
+   */
+  private MetricsContext createTopicMetricsContext(TopicPartition topicPartition, String table) {
+    return createTopicMetricsContext(topicPartition.getTopicId(), table).childContext(
+      Constants.Metrics.Tag.PARTITION, Integer.toString(topicPartition.getPartition()));
+  }
+
   /**
    * Creates a {@link LoadingCache} for {@link ConcurrentMessageWriter}
    * for writing to {@link MessageTable} or {@link PayloadTable}.
@@ -238,16 +429,32 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
    * @param cConf the system configuration
    * @return a {@link LoadingCache} for
    */
-  private LoadingCache<TopicId, ConcurrentMessageWriter> createTableWriterCache(final boolean messageTable,
-                                                                                CConfiguration cConf) {
+  private LoadingCache<TopicPartition, ConcurrentMessageWriter> createTableWriterCache(final boolean messageTable,
+                                                                                       CConfiguration cConf) {
     long expireSecs = cConf.getLong(Constants.MessagingSystem.TABLE_CACHE_EXPIRATION_SECONDS);
+    final boolean dedicatedWriterThread = cConf.getBoolean(Constants.MessagingSystem.WRITER_DEDICATED_THREAD);
+    // The cache only contains messages published through this instance. With multiple instances, clients can
+    // publish to and fetch from different instances, hence the cache is only used when there is a single instance.
+    final long messageTableCacheMaxBytes =
+      cConf.getInt(Constants.MessagingSystem.CONTAINER_INSTANCES, 1) > 1
+        ? 0L : cConf.getLong(Constants.MessagingSystem.MESSAGE_TABLE_CACHE_MAX_BYTES);
+    final long emitIntervalSecs = cConf.getLong(Constants.MessagingSystem.METRICS_HISTOGRAM_EMIT_INTERVAL_SECONDS);
 
     return CacheBuilder.newBuilder()
       .expireAfterAccess(expireSecs, TimeUnit.SECONDS)
-      .removalListener(new RemovalListener<TopicId, ConcurrentMessageWriter>() {
+      .removalListener(new RemovalListener<TopicPartition, ConcurrentMessageWriter>() {
         @Override
-        public void onRemoval(RemovalNotification<TopicId, ConcurrentMessageWriter> notification) {
+        public void onRemoval(RemovalNotification<TopicPartition, ConcurrentMessageWriter> notification) {
           ConcurrentMessageWriter writer = notification.getValue();
+          if (writer != null && writer.getMessagesWriter() instanceof MessageTableStoreRequestWriter) {
+            // The cache is only filled by the writer, hence it is no longer up to date once the writer is removed.
+            // Only remove the cache of this writer, as a new writer for the same partition may have been loaded.
+            MessageTableCache messageTableCache =
+              ((MessageTableStoreRequestWriter) writer.getMessagesWriter()).getMessageTableCache();
+            if (messageTableCache != null) {
+              messageTableCaches.remove(notification.getKey(), messageTableCache);
+            }
+          }
           if (writer != null) {
             try {
               writer.close();
@@ -257,20 +464,36 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
           }
         }
       })
-      .build(new CacheLoader<TopicId, ConcurrentMessageWriter>() {
+      .build(new CacheLoader<TopicPartition, ConcurrentMessageWriter>() {
         @Override
-        public ConcurrentMessageWriter load(TopicId topicId) throws Exception {
-          TopicMetadata metadata = getTopic(topicId);
-          StoreRequestWriter<?> messagesWriter = messageTable
-            ? new MessageTableStoreRequestWriter(createMessageTable(metadata), timeProvider)
-            : new PayloadTableStoreRequestWriter(createPayloadTable(metadata), timeProvider);
-
-          MetricsContext writerMetricsContext = metricsContext.childContext(ImmutableMap.of(
-            Constants.Metrics.Tag.NAMESPACE, topicId.getNamespace(),
-            Constants.Metrics.Tag.TABLE, messageTable ? "message" : "payload"
-          ));
-
-          return new ConcurrentMessageWriter(messagesWriter, writerMetricsContext);
+        public ConcurrentMessageWriter load(TopicPartition topicPartition) throws Exception {
+          TopicId topicId = topicPartition.getTopicId();
+          TopicMetadata metadata = getTopic(topicId).forPartition(topicPartition.getPartition());
+          StoreRequestWriter<?> messagesWriter;
+          if (messageTable) {
+            MessageTableCache messageTableCache = null;
+            if (messageTableCacheMaxBytes > 0) {
+              messageTableCache = new MessageTableCache(messageTableCacheMaxBytes,
+                                                        createTopicMetricsContext(topicPartition, "message"));
+              messageTableCaches.put(topicPartition, messageTableCache);
+            }
+            messagesWriter = new MessageTableStoreRequestWriter(createMessageTable(metadata), messageTableCache,
+                                                                timeProvider);
+          } else {
+            messagesWriter = new PayloadTableStoreRequestWriter(createPayloadTable(metadata), timeProvider);
+          }
+
+          MetricsContext writerMetricsContext = createTopicMetricsContext(topicPartition,
+                                                                          messageTable ? "message" : "payload");
+
+          ExecutorService writerExecutor = null;
+          if (dedicatedWriterThread) {
+            String threadName = String.format("messaging-%s-writer-%s-%s-%d", messageTable ? "message" : "payload",
+                                              topicId.getNamespace(), topicId.getTopic(),
+                                              topicPartition.getPartition());
+            writerExecutor = Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory(threadName));
+          }
+          return new ConcurrentMessageWriter(messagesWriter, writerMetricsContext, writerExecutor, emitIntervalSecs);
         }
       });
   }
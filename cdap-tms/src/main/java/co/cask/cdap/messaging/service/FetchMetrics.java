@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.metrics.MetricsCollector;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Collects the scan latency and size of message fetches from a topic as {@link Histogram} metrics.
+ */
+@ThreadSafe
+final class FetchMetrics {
+
+  // Time in microseconds spent on scanning messages for a fetch
+  private final Histogram latencyHistogram;
+  // Number of payload bytes returned by a fetch
+  private final Histogram bytesHistogram;
+
+  FetchMetrics(MetricsCollector metricsCollector, long emitIntervalSeconds) {
+    this.latencyHistogram = new Histogram(metricsCollector, "fetch.scan.latency.micros",
+                                          emitIntervalSeconds, TimeUnit.SECONDS);
+    this.bytesHistogram = new Histogram(metricsCollector, "fetch.bytes", emitIntervalSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Records a completed fetch.
+   *
+   * @param scanNanos time in nanoseconds spent on scanning
+   * @param bytes number of payload bytes returned
+   */
+  void fetched(long scanNanos, long bytes) {
+    latencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(scanNanos));
+    bytesHistogram.record(bytes);
+  }
+
+  /**
+   * Emits the metrics for fetches recorded since the last emission.
+   */
+  void emit() {
+    latencyHistogram.emit();
+    bytesHistogram.emit();
+  }
+}
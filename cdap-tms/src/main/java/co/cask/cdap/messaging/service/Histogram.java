@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.metrics.MetricsCollector;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A histogram of non-negative long values that periodically emits the percentiles of the recorded values
+ * as gauge metrics, since the metrics system only supports counters and gauges. For a histogram with name
+ * {@code name}, the metrics {@code name.p50}, {@code name.p90}, {@code name.p99} and {@code name.max} are emitted
+ * for values recorded since the last emission. If no value is recorded since the last emission, the gauges are
+ * reset to zero once, so that they don't keep reporting values from an earlier window.
+ *
+ * Values are counted in buckets, with each power of two range divided into eight buckets, hence the reported
+ * percentiles are within 12.5% of the actual values. Emission is triggered by the {@link #record(long)} call
+ * that happens after the emit interval has passed. Since there may be no such call when no value is recorded,
+ * owners of the histogram should also call {@link #emit()} periodically.
+ */
+@ThreadSafe
+final class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values smaller than SUB_BUCKETS have their own bucket. Every power of two range above it has SUB_BUCKETS buckets.
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final MetricsCollector metricsCollector;
+  private final String name;
+  private final long emitIntervalNanos;
+  private final AtomicLongArray counts;
+  private final AtomicLong max;
+  private final AtomicLong lastEmitNanos;
+  // Whether the gauges currently hold values from a non-empty window
+  private final AtomicBoolean hasValues;
+
+  /**
+   * Constructor.
+   *
+   * @param metricsCollector the {@link MetricsCollector} for emitting the percentiles
+   * @param name name of the histogram, which is used as the prefix of the emitted metrics
+   * @param emitInterval minimum interval between emissions
+   * @param unit unit of the emit interval
+   */
+  Histogram(MetricsCollector metricsCollector, String name, long emitInterval, TimeUnit unit) {
+    this.metricsCollector = metricsCollector;
+    this.name = name;
+    this.emitIntervalNanos = unit.toNanos(emitInterval);
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.max = new AtomicLong();
+    this.lastEmitNanos = new AtomicLong(System.nanoTime());
+    this.hasValues = new AtomicBoolean();
+  }
+
+  /**
+   * Records a value. Negative value is recorded as zero. If the emit interval has passed since the last
+   * emission, the percentiles will be emitted.
+   */
+  void record(long value) {
+    long v = Math.max(0L, value);
+    counts.incrementAndGet(getBucket(v));
+
+    long currentMax = max.get();
+    while (v > currentMax && !max.compareAndSet(currentMax, v)) {
+      currentMax = max.get();
+    }
+
+    long now = System.nanoTime();
+    long lastEmit = lastEmitNanos.get();
+    if (now - lastEmit >= emitIntervalNanos && lastEmitNanos.compareAndSet(lastEmit, now)) {
+      emit();
+    }
+  }
+
+  /**
+   * Emits the percentiles of values recorded since the last emission and resets the histogram.
+   * If there is no value recorded, the gauges are set to zero if they were last emitted with values,
+   * otherwise nothing will be emitted.
+   */
+  void emit() {
+    // Values recorded concurrently may be counted in either this or the next emission
+    long[] snapshot = new long[BUCKETS];
+    long total = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.getAndSet(i, 0L);
+      total += snapshot[i];
+    }
+    long maxValue = max.getAndSet(0L);
+    lastEmitNanos.set(System.nanoTime());
+    if (total == 0L) {
+      if (hasValues.compareAndSet(true, false)) {
+        emitGauges(0L, 0L, 0L, 0L);
+      }
+      return;
+    }
+
+    hasValues.set(true);
+    emitGauges(getPercentile(snapshot, total, maxValue, 0.5d), getPercentile(snapshot, total, maxValue, 0.9d),
+               getPercentile(snapshot, total, maxValue, 0.99d), maxValue);
+  }
+
+  private void emitGauges(long p50, long p90, long p99, long maxValue) {
+    metricsCollector.gauge(name + ".p50", p50);
+    metricsCollector.gauge(name + ".p90", p90);
+    metricsCollector.gauge(name + ".p99", p99);
+    metricsCollector.gauge(name + ".max", maxValue);
+  }
+
+  /**
+   * Returns the value at the given quantile, which is the upper bound of the bucket containing it,
+   * capped by the maximum value.
+   */
+  @VisibleForTesting
+  static long getPercentile(long[] counts, long total, long maxValue, double quantile) {
+    long rank = (long) Math.ceil(total * quantile);
+    long cumulative = 0L;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i];
+      if (cumulative >= rank && counts[i] > 0) {
+        return Math.min(getUpperBound(i), maxValue);
+      }
+    }
+    return maxValue;
+  }
+
+  /**
+   * Returns the index of the bucket that the given non-negative value belongs to.
+   */
+  @VisibleForTesting
+  static int getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    // Position of the highest one bit, which is >= SUB_BUCKET_BITS
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the largest value that belongs to the given bucket.
+   */
+  @VisibleForTesting
+  static long getUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.messaging.MessagingUtils;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.data.MessageId;
+import co.cask.cdap.messaging.store.AbstractMessageTable;
+import co.cask.cdap.messaging.store.MessageTable;
+import co.cask.cdap.messaging.store.RawMessageTableEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An in-memory {@link MessageTable} that keeps the most recently committed entries of a topic in a ring buffer
+ * bounded by size. It is filled by the {@link MessageTableStoreRequestWriter} after entries are persisted to the
+ * actual {@link MessageTable}, so that fetches that start within the buffered range can be served from memory.
+ * Since it extends from {@link AbstractMessageTable}, transaction visibility is handled the same way as the
+ * persisted tables.
+ */
+@ThreadSafe
+final class MessageTableCache extends AbstractMessageTable {
+
+  // Rough estimate of the memory overhead for each cached entry
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private final long maxBytes;
+  private final MetricsContext metricsContext;
+
+  private RawMessageTableEntry[] buffer;
+  private int head;
+  private int size;
+  private long bytes;
+
+  /**
+   * Constructor.
+   *
+   * @param maxBytes maximum number of bytes to keep in the cache
+   * @param metricsContext the {@link MetricsContext} for emitting cache hit and miss metrics
+   */
+  MessageTableCache(long maxBytes, MetricsContext metricsContext) {
+    this.maxBytes = maxBytes;
+    this.metricsContext = metricsContext;
+    this.buffer = new RawMessageTableEntry[16];
+  }
+
+  /**
+   * Returns {@code true} if fetching from the given start time can be served entirely by this cache.
+   */
+  boolean isCached(TopicMetadata metadata, long startTime) {
+    byte[] topic = MessagingUtils.toDataKeyPrefix(metadata.getTopicId(), metadata.getGeneration(),
+                                                  metadata.getPartition());
+    byte[] startRow = new byte[topic.length + Bytes.SIZEOF_LONG];
+    Bytes.putBytes(startRow, 0, topic, 0, topic.length);
+    Bytes.putLong(startRow, topic.length, startTime);
+    return isCached(topic, startRow);
+  }
+
+  /**
+   * Returns {@code true} if fetching from the given message id can be served entirely by this cache.
+   */
+  boolean isCached(TopicMetadata metadata, MessageId messageId) {
+    byte[] topic = MessagingUtils.toDataKeyPrefix(metadata.getTopicId(), metadata.getGeneration(),
+                                                  metadata.getPartition());
+    byte[] startRow = new byte[topic.length + Bytes.SIZEOF_LONG + Bytes.SIZEOF_SHORT];
+    Bytes.putBytes(startRow, 0, topic, 0, topic.length);
+    Bytes.putLong(startRow, topic.length, messageId.getPublishTimestamp());
+    Bytes.putShort(startRow, topic.length + Bytes.SIZEOF_LONG, messageId.getSequenceId());
+    return isCached(topic, startRow);
+  }
+
+  private boolean isCached(byte[] topic, byte[] startRow) {
+    boolean cached;
+    synchronized (this) {
+      // Only entries that are not smaller than the first entry in the cache are guaranteed to be in the cache
+      cached = size > 0 && Bytes.startsWith(get(0).getKey(), topic)
+        && Bytes.compareTo(startRow, get(0).getKey()) >= 0;
+    }
+    metricsContext.increment(cached ? "fetch.cache.hit" : "fetch.cache.miss", 1L);
+    return cached;
+  }
+
+  @Override
+  protected synchronized void persist(Iterator<RawMessageTableEntry> entries) {
+    while (entries.hasNext()) {
+      RawMessageTableEntry entry = entries.next();
+
+      // Entries are always written in increasing key order. If it is not the case, clear the cache
+      // to maintain the invariant that the cache contains all entries starting from the first one.
+      if (size > 0 && Bytes.compareTo(get(size - 1).getKey(), entry.getKey()) >= 0) {
+        clear();
+      }
+
+      // The row key byte array is reused by the caller, hence need to copy it
+      byte[] key = Arrays.copyOf(entry.getKey(), entry.getKey().length);
+      add(new RawMessageTableEntry().set(key, entry.getTxPtr(), entry.getPayload()));
+    }
+
+    while (bytes > maxBytes && size > 0) {
+      removeFirst();
+    }
+  }
+
+  @Override
+  protected synchronized void rollback(byte[] startKey, byte[] stopKey, byte[] txWritePointer) {
+    for (int i = lowerBound(startKey); i < size; i++) {
+      RawMessageTableEntry entry = get(i);
+      if (Bytes.compareTo(entry.getKey(), stopKey) >= 0) {
+        break;
+      }
+      // Replace the entry instead of modifying it, since it may be used by ongoing fetches
+      buffer[(head + i) % buffer.length] = new RawMessageTableEntry().set(entry.getKey(), txWritePointer,
+                                                                          entry.getPayload());
+    }
+  }
+
+  @Override
+  protected synchronized CloseableIterator<RawMessageTableEntry> read(byte[] startRow, byte[] stopRow) {
+    List<RawMessageTableEntry> entries = new ArrayList<>();
+    for (int i = lowerBound(startRow); i < size; i++) {
+      RawMessageTableEntry entry = get(i);
+      if (Bytes.compareTo(entry.getKey(), stopRow) >= 0) {
+        break;
+      }
+      entries.add(entry);
+    }
+
+    final Iterator<RawMessageTableEntry> iterator = entries.iterator();
+    return new AbstractCloseableIterator<RawMessageTableEntry>() {
+      @Override
+      protected RawMessageTableEntry computeNext() {
+        return iterator.hasNext() ? iterator.next() : endOfData();
+      }
+
+      @Override
+      public void close() {
+        // no-op
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    // no-op. The cache is shared by all fetchers of the topic, hence closing by any of them shouldn't clear it.
+  }
+
+  /**
+   * Returns the entry at the given index, relative to the first entry in the cache.
+   */
+  private RawMessageTableEntry get(int idx) {
+    return buffer[(head + idx) % buffer.length];
+  }
+
+  /**
+   * Returns the index of the first entry that has key greater than or equal to the given key.
+   */
+  private int lowerBound(byte[] key) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (Bytes.compareTo(get(mid).getKey(), key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void add(RawMessageTableEntry entry) {
+    if (size == buffer.length) {
+      RawMessageTableEntry[] newBuffer = new RawMessageTableEntry[buffer.length * 2];
+      for (int i = 0; i < size; i++) {
+        newBuffer[i] = get(i);
+      }
+      buffer = newBuffer;
+      head = 0;
+    }
+    buffer[(head + size) % buffer.length] = entry;
+    size++;
+    bytes += sizeOf(entry);
+  }
+
+  private void removeFirst() {
+    bytes -= sizeOf(buffer[head]);
+    buffer[head] = null;
+    head = (head + 1) % buffer.length;
+    size--;
+  }
+
+  private void clear() {
+    Arrays.fill(buffer, null);
+    head = 0;
+    size = 0;
+    bytes = 0;
+  }
+
+  private static long sizeOf(RawMessageTableEntry entry) {
+    long size = ENTRY_OVERHEAD + entry.getKey().length;
+    if (entry.getTxPtr() != null) {
+      size += entry.getTxPtr().length;
+    }
+    if (entry.getPayload() != null) {
+      size += entry.getPayload().length;
+    }
+    return size;
+  }
+}
@@ -21,9 +21,11 @@ import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
 import co.cask.cdap.messaging.store.MessageTable;
 import co.cask.cdap.proto.id.TopicId;
+import com.google.common.collect.Lists;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -34,20 +36,38 @@ import javax.annotation.concurrent.NotThreadSafe;
 final class MessageTableStoreRequestWriter extends StoreRequestWriter<MessageTable.Entry> {
 
   private final MessageTable messageTable;
+  private final MessageTableCache messageTableCache;
   private final MutableMessageTableEntry entry;
 
   MessageTableStoreRequestWriter(MessageTable messageTable, TimeProvider timeProvider) {
+    this(messageTable, null, timeProvider);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param messageTable the {@link MessageTable} to write to
+   * @param messageTableCache an optional {@link MessageTableCache} to add entries to after they are written
+   *                          to the message table
+   * @param timeProvider the {@link TimeProvider} for generating publish timestamps
+   */
+  MessageTableStoreRequestWriter(MessageTable messageTable, @Nullable MessageTableCache messageTableCache,
+                                 TimeProvider timeProvider) {
     super(timeProvider, true);
     this.messageTable = messageTable;
+    this.messageTableCache = messageTableCache;
     this.entry = new MutableMessageTableEntry();
   }
 
   @Override
   MessageTable.Entry getEntry(TopicMetadata metadata, boolean transactional, long transactionWritePointer,
                               long writeTimestamp, short sequenceId, @Nullable byte[] payload) {
+    // Entries need to be retained until they are added to the cache, hence cannot reuse the same entry object
+    MutableMessageTableEntry entry = messageTableCache == null ? this.entry : new MutableMessageTableEntry();
     return entry
       .setTopicId(metadata.getTopicId())
       .setGeneration(metadata.getGeneration())
+      .setPartition(metadata.getPartition())
       .setTransactional(transactional)
       .setTransactionWritePointer(transactionWritePointer)
       .setPublishTimestamp(writeTimestamp)
@@ -57,7 +77,24 @@ final class MessageTableStoreRequestWriter extends StoreRequestWriter<MessageTab
 
   @Override
   protected void doWrite(Iterator<MessageTable.Entry> entries) throws IOException {
-    messageTable.store(entries);
+    if (messageTableCache == null) {
+      messageTable.store(entries);
+      return;
+    }
+
+    // Only add the entries to the cache after they are successfully written to the message table
+    List<MessageTable.Entry> entryList = Lists.newArrayList(entries);
+    messageTable.store(entryList.iterator());
+    messageTableCache.store(entryList.iterator());
+  }
+
+  /**
+   * Returns the {@link MessageTableCache} that entries are added to after they are written, or {@code null} if
+   * there is no cache.
+   */
+  @Nullable
+  MessageTableCache getMessageTableCache() {
+    return messageTableCache;
   }
 
   @Override
@@ -72,6 +109,7 @@ final class MessageTableStoreRequestWriter extends StoreRequestWriter<MessageTab
 
     private TopicId topicId;
     private int generation;
+    private int partition;
     private boolean transactional;
     private long transactionWritePointer;
     private long publishTimestamp;
@@ -88,6 +126,11 @@ final class MessageTableStoreRequestWriter extends StoreRequestWriter<MessageTab
       return this;
     }
 
+    MutableMessageTableEntry setPartition(int partition) {
+      this.partition = partition;
+      return this;
+    }
+
     MutableMessageTableEntry setTransactional(boolean transactional) {
       this.transactional = transactional;
       return this;
@@ -123,6 +166,11 @@ final class MessageTableStoreRequestWriter extends StoreRequestWriter<MessageTab
       return generation;
     }
 
+    @Override
+    public int getPartition() {
+      return partition;
+    }
+
     @Override
     public boolean isPayloadReference() {
       return getPayload() == null;
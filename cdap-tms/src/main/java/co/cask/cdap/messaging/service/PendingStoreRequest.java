@@ -18,6 +18,8 @@ package co.cask.cdap.messaging.service;
 
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import javax.annotation.Nullable;
 
@@ -28,8 +30,10 @@ final class PendingStoreRequest extends StoreRequest {
 
   private final StoreRequest originalRequest;
   private final TopicMetadata metadata;
+  private final SettableFuture<PendingStoreRequest> completion;
+  private final long enqueueNanos;
 
-  private boolean completed;
+  private volatile boolean completed;
   private long startTimestamp;
   private long endTimestamp;
   private int startSequenceId;
@@ -38,15 +42,25 @@ final class PendingStoreRequest extends StoreRequest {
 
   PendingStoreRequest(StoreRequest originalRequest, TopicMetadata topicMetadata) {
     super(originalRequest.getTopicId(), originalRequest.isTransactional(),
-          originalRequest.getTransactionWritePointer());
+          originalRequest.getTransactionWritePointer(), originalRequest.getPartitionKey());
     this.originalRequest = originalRequest;
     this.metadata = topicMetadata;
+    this.completion = SettableFuture.create();
+    this.enqueueNanos = System.nanoTime();
   }
 
   TopicMetadata getTopicMetadata() {
     return metadata;
   }
 
+  /**
+   * Returns the {@link System#nanoTime()} when this request was created, which is right before it is enqueued
+   * for writing.
+   */
+  long getEnqueueNanos() {
+    return enqueueNanos;
+  }
+
   boolean isCompleted() {
     return completed;
   }
@@ -63,9 +77,18 @@ final class PendingStoreRequest extends StoreRequest {
     return failureCause;
   }
 
+  /**
+   * Returns a {@link ListenableFuture} that will be completed with this instance when the write of this request
+   * is completed, regardless of success or failure.
+   */
+  ListenableFuture<PendingStoreRequest> getCompletion() {
+    return completion;
+  }
+
   void completed(@Nullable Throwable failureCause) {
-    completed = true;
     this.failureCause = failureCause;
+    completed = true;
+    completion.set(this);
   }
 
   void setStartTimestamp(long startTimestamp) {
@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.common.Threads;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps track of fetchers that are waiting for new messages being published to topics,
+ * and wakes them up when messages are committed to the message table.
+ *
+ * Notifications are local to a messaging service instance: only messages committed through this instance wake up
+ * the waiters. If other instances publish to the same topics, a maximum wait time can be given, after which
+ * waiters are woken up to look for new messages themselves.
+ */
+@ThreadSafe
+final class PublishNotifier implements Closeable {
+
+  private final ConcurrentMap<TopicId, Set<SettableFuture<Boolean>>> waiters;
+  private final ScheduledExecutorService timeoutScheduler;
+  private final long maxWaitMillis;
+
+  /**
+   * Constructor.
+   *
+   * @param maxWaitMillis the maximum time in milliseconds that a waiter is not woken up, even without any
+   *                      notification; {@code 0} for no maximum
+   */
+  PublishNotifier(long maxWaitMillis) {
+    this.maxWaitMillis = maxWaitMillis;
+    this.waiters = new ConcurrentHashMap<>();
+    this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory("messaging-publish-notifier"));
+  }
+
+  /**
+   * Waits for messages being published to the given topic.
+   *
+   * @param topicId the topic to watch for
+   * @param timeout the maximum time to wait
+   * @param unit the unit for the timeout
+   * @return a {@link ListenableFuture} that will be completed with {@code true} when there are messages published
+   *         to the given topic, or with {@code false} when the timeout or the maximum wait time elapsed.
+   *         Cancelling the future will stop the waiting.
+   */
+  ListenableFuture<Boolean> waitForPublish(final TopicId topicId, long timeout, TimeUnit unit) {
+    final SettableFuture<Boolean> future = SettableFuture.create();
+    final Set<SettableFuture<Boolean>> topicWaiters = addWaiter(topicId, future);
+
+    long timeoutMillis = unit.toMillis(timeout);
+    if (maxWaitMillis > 0) {
+      timeoutMillis = Math.min(timeoutMillis, maxWaitMillis);
+    }
+    final ScheduledFuture<?> timeoutFuture;
+    try {
+      timeoutFuture = timeoutScheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          future.set(false);
+        }
+      }, timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // This notifier is already closed, hence there won't be any more notification.
+      removeWaiter(topicId, topicWaiters, future);
+      future.set(false);
+      return future;
+    }
+
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        removeWaiter(topicId, topicWaiters, future);
+        timeoutFuture.cancel(false);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    return future;
+  }
+
+  /**
+   * Notifies all waiters of the given topic that new messages have been published.
+   */
+  void notifyPublished(TopicId topicId) {
+    Set<SettableFuture<Boolean>> topicWaiters = waiters.get(topicId);
+    if (topicWaiters == null) {
+      return;
+    }
+    for (SettableFuture<Boolean> future : topicWaiters) {
+      future.set(true);
+    }
+  }
+
+  /**
+   * Returns {@code true} if there are waiters for messages being published to the given topic.
+   */
+  @VisibleForTesting
+  boolean hasWaiters(TopicId topicId) {
+    return waiters.containsKey(topicId);
+  }
+
+  @Override
+  public void close() {
+    timeoutScheduler.shutdownNow();
+    for (Set<SettableFuture<Boolean>> topicWaiters : waiters.values()) {
+      for (SettableFuture<Boolean> future : topicWaiters) {
+        future.set(false);
+      }
+    }
+  }
+
+  /**
+   * Adds the given future to the waiters of the given topic.
+   *
+   * @return the set of waiters that the future was added to
+   */
+  private Set<SettableFuture<Boolean>> addWaiter(TopicId topicId, SettableFuture<Boolean> future) {
+    while (true) {
+      Set<SettableFuture<Boolean>> topicWaiters = waiters.get(topicId);
+      if (topicWaiters == null) {
+        topicWaiters = Sets.newSetFromMap(new ConcurrentHashMap<SettableFuture<Boolean>, Boolean>());
+        Set<SettableFuture<Boolean>> existing = waiters.putIfAbsent(topicId, topicWaiters);
+        topicWaiters = existing == null ? topicWaiters : existing;
+      }
+      // The set is removed from the map once it is empty. If that happened already, try again with a new set,
+      // since notifications only go to the sets in the map.
+      synchronized (topicWaiters) {
+        if (waiters.get(topicId) == topicWaiters) {
+          topicWaiters.add(future);
+          return topicWaiters;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the given future from the given waiters of the given topic, and removes the set of waiters from the map
+   * if it became empty, such that topics without waiters don't keep an entry.
+   */
+  private void removeWaiter(TopicId topicId, Set<SettableFuture<Boolean>> topicWaiters,
+                            SettableFuture<Boolean> future) {
+    synchronized (topicWaiters) {
+      topicWaiters.remove(future);
+      if (topicWaiters.isEmpty()) {
+        waiters.remove(topicId, topicWaiters);
+      }
+    }
+  }
+}
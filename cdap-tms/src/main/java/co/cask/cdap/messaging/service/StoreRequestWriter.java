@@ -17,6 +17,7 @@
 package co.cask.cdap.messaging.service;
 
 import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.messaging.PayloadCompression;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
 import com.google.common.annotations.VisibleForTesting;
@@ -25,7 +26,11 @@ import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
@@ -45,6 +50,10 @@ abstract class StoreRequestWriter<T> implements Closeable {
   @VisibleForTesting
   static final int SEQUENCE_ID_LIMIT = 0x10000;
 
+  // Payloads of a topic with compression are compressed in blocks of about this many bytes
+  @VisibleForTesting
+  static final int COMPRESSION_BLOCK_SIZE = 64 * 1024;
+
   private final TimeProvider timeProvider;
   private long writeTimestamp;
   private long lastWriteTimestamp;
@@ -150,13 +159,17 @@ abstract class StoreRequestWriter<T> implements Closeable {
   private final class PayloadTransformIterator implements Iterator<T> {
 
     private final boolean generateNullPayloadEntry;
+    // Compressed payloads of the current block that are not written yet
+    private final Deque<byte[]> blockPayloads;
     private PendingStoreRequest storeRequest;
+    private PayloadCompression compression;
     private boolean computedFirst;
     private T nextEntry;
     private boolean completed = true;   // Initially, it is an empty iterator
 
     private PayloadTransformIterator(boolean generateNullPayloadEntry) {
       this.generateNullPayloadEntry = generateNullPayloadEntry;
+      this.blockPayloads = new ArrayDeque<>();
     }
 
     @Override
@@ -170,8 +183,8 @@ abstract class StoreRequestWriter<T> implements Closeable {
 
       // If the request has next payload
       // or if the iterator is empty but we wanted to generate an entry with null payload
-      if (storeRequest.hasNext() || (generateNullPayloadEntry && !computedFirst)) {
-        byte[] payload = storeRequest.hasNext() ? storeRequest.next() : null;
+      byte[] payload = nextPayload();
+      if (payload != null || (generateNullPayloadEntry && !computedFirst)) {
         nextEntry = getEntry(storeRequest.getTopicMetadata(), storeRequest.isTransactional(),
                              storeRequest.getTransactionWritePointer(), writeTimestamp, (short) seqId, payload);
       }
@@ -198,8 +211,35 @@ abstract class StoreRequestWriter<T> implements Closeable {
       throw new UnsupportedOperationException("Delete not supported");
     }
 
+    /**
+     * Returns the next payload to write, or {@code null} if there is no more payload in the current request.
+     * If the topic has compression, the payloads of the request are compressed in blocks.
+     */
+    @Nullable
+    private byte[] nextPayload() {
+      if (blockPayloads.isEmpty() && storeRequest.hasNext()) {
+        if (compression == PayloadCompression.NONE) {
+          return storeRequest.next();
+        }
+        // The payloads of a block refer to the first one by sequence id, hence a block must end before the
+        // sequence id runs out and the write timestamp changes
+        int maxPayloads = SEQUENCE_ID_LIMIT - seqId;
+        List<byte[]> block = new ArrayList<>();
+        int blockSize = 0;
+        while (storeRequest.hasNext() && block.size() < maxPayloads && blockSize < COMPRESSION_BLOCK_SIZE) {
+          byte[] payload = storeRequest.next();
+          block.add(payload);
+          blockSize += payload.length;
+        }
+        blockPayloads.addAll(compression.compressBlock(block));
+      }
+      return blockPayloads.poll();
+    }
+
     private PayloadTransformIterator reset(PendingStoreRequest storeRequest) {
       this.storeRequest = storeRequest;
+      this.compression = storeRequest.getTopicMetadata().getCompression();
+      this.blockPayloads.clear();
       this.storeRequest.setStartTimestamp(writeTimestamp);
       this.storeRequest.setStartSequenceId(seqId);
       this.nextEntry = null;
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.base.Objects;
+
+/**
+ * Identifies a partition of a topic.
+ */
+final class TopicPartition {
+
+  private final TopicId topicId;
+  private final int partition;
+
+  TopicPartition(TopicId topicId, int partition) {
+    this.topicId = topicId;
+    this.partition = partition;
+  }
+
+  TopicId getTopicId() {
+    return topicId;
+  }
+
+  int getPartition() {
+    return partition;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    TopicPartition other = (TopicPartition) o;
+    return partition == other.partition && topicId.equals(other.topicId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(topicId, partition);
+  }
+
+  @Override
+  public String toString() {
+    return topicId + ":" + partition;
+  }
+}
@@ -63,7 +63,8 @@ public abstract class AbstractPayloadTable implements PayloadTable {
   @Override
   public CloseableIterator<Entry> fetch(TopicMetadata metadata, long transactionWritePointer,
                                         MessageId messageId, final boolean inclusive, int limit) throws IOException {
-    byte[] topic = MessagingUtils.toDataKeyPrefix(metadata.getTopicId(), metadata.getGeneration());
+    byte[] topic = MessagingUtils.toDataKeyPrefix(metadata.getTopicId(), metadata.getGeneration(),
+                                                  metadata.getPartition());
     final byte[] startRow = new byte[topic.length + (2 * Bytes.SIZEOF_LONG) + Bytes.SIZEOF_SHORT];
     byte[] stopRow = new byte[topic.length + Bytes.SIZEOF_LONG];
     Bytes.putBytes(startRow, 0, topic, 0, topic.length);
@@ -122,6 +123,7 @@ public abstract class AbstractPayloadTable implements PayloadTable {
     private Iterator<? extends Entry> entries;
     private TopicId topicId;
     private int generation;
+    private int partition;
     private byte[] topic;
     private byte[] rowKey;
     private Entry nextEntry;
@@ -146,10 +148,12 @@ public abstract class AbstractPayloadTable implements PayloadTable {
       Entry entry = nextEntry;
       nextEntry = null;
 
-      if (topicId == null || (!topicId.equals(entry.getTopicId())) || (generation != entry.getGeneration())) {
+      if (topicId == null || (!topicId.equals(entry.getTopicId())) || (generation != entry.getGeneration())
+        || (partition != entry.getPartition())) {
         topicId = entry.getTopicId();
         generation = entry.getGeneration();
-        topic = MessagingUtils.toDataKeyPrefix(topicId, entry.getGeneration());
+        partition = entry.getPartition();
+        topic = MessagingUtils.toDataKeyPrefix(topicId, generation, partition);
         rowKey = new byte[topic.length + (2 * Bytes.SIZEOF_LONG) + Bytes.SIZEOF_SHORT];
       }
 
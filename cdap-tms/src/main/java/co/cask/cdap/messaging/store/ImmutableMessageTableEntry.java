@@ -28,6 +28,7 @@ import javax.annotation.Nullable;
 final class ImmutableMessageTableEntry implements MessageTable.Entry {
   private final TopicId topicId;
   private final int generation;
+  private final int partition;
   private final boolean transactional;
   private final long transactionWritePointer;
   private final byte[] payload;
@@ -44,6 +45,8 @@ final class ImmutableMessageTableEntry implements MessageTable.Entry {
     this.generation = Bytes.toInt(row, row.length - Bytes.SIZEOF_SHORT - Bytes.SIZEOF_LONG - Bytes.SIZEOF_INT);
     this.topicId = MessagingUtils.toTopicId(row, 0, row.length - Bytes.SIZEOF_SHORT - Bytes.SIZEOF_LONG
       - Bytes.SIZEOF_INT);
+    this.partition = MessagingUtils.toPartition(row, 0, row.length - Bytes.SIZEOF_SHORT - Bytes.SIZEOF_LONG
+      - Bytes.SIZEOF_INT);
   }
 
   @Override
@@ -56,6 +59,11 @@ final class ImmutableMessageTableEntry implements MessageTable.Entry {
     return generation;
   }
 
+  @Override
+  public int getPartition() {
+    return partition;
+  }
+
   @Override
   public boolean isPayloadReference() {
     return payload == null;
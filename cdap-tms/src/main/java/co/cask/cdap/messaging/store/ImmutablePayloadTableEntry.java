@@ -26,6 +26,7 @@ import co.cask.cdap.proto.id.TopicId;
 final class ImmutablePayloadTableEntry implements PayloadTable.Entry {
   private final TopicId topicId;
   private final int generation;
+  private final int partition;
   private final long transactionWriterPointer;
   private final long publishTimestamp;
   private final short sequenceId;
@@ -34,6 +35,8 @@ final class ImmutablePayloadTableEntry implements PayloadTable.Entry {
   ImmutablePayloadTableEntry(byte[] row, byte[] payload) {
     this.topicId = MessagingUtils.toTopicId(row, 0, row.length - Bytes.SIZEOF_SHORT - (2 * Bytes.SIZEOF_LONG)
       - Bytes.SIZEOF_INT);
+    this.partition = MessagingUtils.toPartition(row, 0, row.length - Bytes.SIZEOF_SHORT - (2 * Bytes.SIZEOF_LONG)
+      - Bytes.SIZEOF_INT);
     this.generation = Bytes.toInt(row, row.length - Bytes.SIZEOF_SHORT - (2 * Bytes.SIZEOF_LONG) - Bytes.SIZEOF_INT);
     this.transactionWriterPointer = Bytes.toLong(row, row.length - Bytes.SIZEOF_SHORT - (2 * Bytes.SIZEOF_LONG));
     this.publishTimestamp = Bytes.toLong(row, row.length - Bytes.SIZEOF_SHORT - Bytes.SIZEOF_LONG);
@@ -51,6 +54,11 @@ final class ImmutablePayloadTableEntry implements PayloadTable.Entry {
     return generation;
   }
 
+  @Override
+  public int getPartition() {
+    return partition;
+  }
+
   @Override
   public byte[] getPayload() {
     return payload;
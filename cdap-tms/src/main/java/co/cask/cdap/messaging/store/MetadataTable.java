@@ -55,6 +55,7 @@ public interface MetadataTable extends Closeable {
    *
    * @param topicMetadata metadata of the topic.
    * @throws TopicNotFoundException if the topic doesn't exist
+   * @throws IllegalArgumentException if the update changes the compression or the number of partitions of the topic
    * @throws IOException if failed to update metadata
    */
   void updateTopic(TopicMetadata topicMetadata) throws TopicNotFoundException, IOException;
@@ -121,6 +121,26 @@ final class LevelDBMetadataTable implements MetadataTable {
 
         TreeMap<String, String> newProperties = new TreeMap<>(topicMetadata.getProperties());
         newProperties.put(TopicMetadata.GENERATION_KEY, Integer.toString(oldMetadata.getGeneration()));
+        // Compression and partitions are kept if not specified, and cannot be changed. Payloads are decompressed
+        // with the current compression of the topic, and messages of the same partition key must stay in the
+        // same partition.
+        for (String property : new String[] { TopicMetadata.COMPRESSION_KEY, TopicMetadata.PARTITIONS_KEY }) {
+          String value = oldProperties.get(property);
+          if (value != null && !newProperties.containsKey(property)) {
+            newProperties.put(property, value);
+          }
+        }
+        TopicMetadata newMetadata = new TopicMetadata(topicId, newProperties);
+        if (newMetadata.getCompression() != oldMetadata.getCompression()) {
+          throw new IllegalArgumentException("Cannot change the compression of topic " + topicId
+                                               + " from " + oldMetadata.getCompression()
+                                               + " to " + newMetadata.getCompression());
+        }
+        int partitions = newMetadata.getPartitions();
+        if (partitions != oldMetadata.getPartitions()) {
+          throw new IllegalArgumentException("Cannot change the number of partitions of topic " + topicId
+                                               + " from " + oldMetadata.getPartitions() + " to " + partitions);
+        }
         levelDB.put(key, Bytes.toBytes(GSON.toJson(newProperties, MAP_TYPE)), WRITE_OPTIONS);
       }
     } catch (DBException e) {
@@ -48,7 +48,7 @@ public final class LevelDBTableFactory implements TableFactory {
   private PayloadTable payloadTable;
 
   @Inject
-  LevelDBTableFactory(CConfiguration cConf) {
+  public LevelDBTableFactory(CConfiguration cConf) {
     this.baseDir = new File(cConf.get(Constants.MessagingSystem.LOCAL_DATA_DIR));
     this.dbOptions = new Options()
       .blockSize(cConf.getInt(Constants.CFG_DATA_LEVELDB_BLOCKSIZE, Constants.DEFAULT_DATA_LEVELDB_BLOCKSIZE))
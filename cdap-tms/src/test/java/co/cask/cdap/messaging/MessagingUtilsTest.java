@@ -16,6 +16,7 @@
 
 package co.cask.cdap.messaging;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.proto.id.TopicId;
 import org.junit.Assert;
 import org.junit.Test;
@@ -32,4 +33,25 @@ public class MessagingUtilsTest {
     TopicId topicId = MessagingUtils.toTopicId(topicBytes);
     Assert.assertEquals(id, topicId);
   }
+
+  @Test
+  public void testPartitionConversion() throws Exception {
+    TopicId id = new TopicId("n1", "t1");
+
+    // Partition 0 should have the same prefix as unpartitioned topic
+    Assert.assertArrayEquals(MessagingUtils.toDataKeyPrefix(id, 1), MessagingUtils.toDataKeyPrefix(id, 1, 0));
+
+    for (int partition : new int[] { 0, 1, 10 }) {
+      byte[] prefix = MessagingUtils.toDataKeyPrefix(id, 1, partition);
+      int length = prefix.length - Bytes.SIZEOF_INT;
+      Assert.assertEquals(id, MessagingUtils.toTopicId(prefix, 0, length));
+      Assert.assertEquals(partition, MessagingUtils.toPartition(prefix, 0, length));
+    }
+
+    // Prefixes of different partitions shouldn't be prefix of each other
+    byte[] prefix1 = MessagingUtils.toDataKeyPrefix(id, 1, 1);
+    byte[] prefix10 = MessagingUtils.toDataKeyPrefix(id, 1, 10);
+    Assert.assertFalse(Bytes.startsWith(prefix10, prefix1));
+    Assert.assertFalse(Bytes.startsWith(prefix1, MessagingUtils.toDataKeyPrefix(id, 1)));
+  }
 }
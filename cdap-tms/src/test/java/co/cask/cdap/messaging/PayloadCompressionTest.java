@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.base.Strings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link PayloadCompression}.
+ */
+public class PayloadCompressionTest {
+
+  @Test
+  public void testCompression() {
+    byte[] repetitive = Bytes.toBytes(Strings.repeat("metrics.", 100));
+    byte[] random = new byte[100];
+    new Random().nextBytes(random);
+
+    for (PayloadCompression compression : PayloadCompression.values()) {
+      // Repetitive payload should be compressed, except for NONE
+      byte[] compressed = compression.compress(repetitive);
+      if (compression == PayloadCompression.NONE) {
+        Assert.assertEquals(repetitive.length + 1, compressed.length);
+      } else {
+        Assert.assertTrue(compressed.length < repetitive.length);
+      }
+      Assert.assertArrayEquals(repetitive, PayloadCompression.decompress(compressed));
+
+      // Random and empty payloads cannot be compressed, hence should only have the header added
+      compressed = compression.compress(random);
+      Assert.assertEquals(random.length + 1, compressed.length);
+      Assert.assertArrayEquals(random, PayloadCompression.decompress(compressed));
+
+      compressed = compression.compress(new byte[0]);
+      Assert.assertEquals(1, compressed.length);
+      Assert.assertArrayEquals(new byte[0], PayloadCompression.decompress(compressed));
+    }
+  }
+
+  @Test
+  public void testBlockCompression() {
+    List<byte[]> payloads = Arrays.asList(Bytes.toBytes("metrics.1"), new byte[0], Bytes.toBytes("metrics.2"),
+                                          Bytes.toBytes(Strings.repeat("metrics.", 10)));
+    for (PayloadCompression compression : PayloadCompression.values()) {
+      List<byte[]> compressed = compression.compressBlock(payloads);
+      Assert.assertEquals(payloads.size(), compressed.size());
+
+      // The first payload carries the block, the others refer to it
+      Assert.assertFalse(PayloadCompression.isBlockReference(compressed.get(0)));
+      List<byte[]> decompressed = PayloadCompression.decompressBlock(compressed.get(0));
+      Assert.assertEquals(payloads.size(), decompressed.size());
+      for (int i = 0; i < payloads.size(); i++) {
+        Assert.assertArrayEquals(payloads.get(i), decompressed.get(i));
+      }
+      for (int i = 1; i < payloads.size(); i++) {
+        Assert.assertTrue(PayloadCompression.isBlockReference(compressed.get(i)));
+        Assert.assertEquals(i, PayloadCompression.getBlockIndex(compressed.get(i)));
+      }
+
+      // A single payload is compressed on its own
+      byte[] payload = Bytes.toBytes(Strings.repeat("metrics.", 100));
+      compressed = compression.compressBlock(Collections.singletonList(payload));
+      Assert.assertEquals(1, compressed.size());
+      Assert.assertArrayEquals(payload, PayloadCompression.decompress(compressed.get(0)));
+      decompressed = PayloadCompression.decompressBlock(compressed.get(0));
+      Assert.assertEquals(1, decompressed.size());
+      Assert.assertArrayEquals(payload, decompressed.get(0));
+    }
+  }
+
+  @Test
+  public void testTopicProperty() {
+    TopicMetadata metadata = new TopicMetadata(NamespaceId.DEFAULT.topic("t"));
+    Assert.assertEquals(PayloadCompression.NONE, metadata.getCompression());
+
+    metadata = new TopicMetadata(NamespaceId.DEFAULT.topic("t"), TopicMetadata.COMPRESSION_KEY, "lz4");
+    Assert.assertEquals(PayloadCompression.LZ4, metadata.getCompression());
+
+    try {
+      new TopicMetadata(NamespaceId.DEFAULT.topic("t"), TopicMetadata.COMPRESSION_KEY, "zip").getCompression();
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.client;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.messaging.RollbackDetail;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Unit tests for {@link PublishBatcher}.
+ */
+public class PublishBatcherTest {
+
+  @Test
+  public void testSlowTopic() throws Exception {
+    final TopicId slowTopic = NamespaceId.DEFAULT.topic("slow");
+    final CountDownLatch blockLatch = new CountDownLatch(1);
+
+    // Only allow one in-flight request, which is taken by the slow topic
+    PublishBatcher batcher = new PublishBatcher(new PublishBatcher.Publisher() {
+      @Nullable
+      @Override
+      public RollbackDetail publish(TopicId topicId, boolean transactional, long transactionWritePointer,
+                                    @Nullable byte[] partitionKey, List<ByteBuffer> payloads) throws Exception {
+        if (slowTopic.equals(topicId)) {
+          blockLatch.await();
+        }
+        return null;
+      }
+    }, 0L, 1024, 1);
+
+    try {
+      ListenableFuture<RollbackDetail> slowFuture = batcher.publish(slowTopic, false, 0L, null, payloads("a"), false);
+
+      // A synchronous publish to another topic shouldn't be blocked by the slow topic
+      ListenableFuture<RollbackDetail> future = batcher.publish(NamespaceId.DEFAULT.topic("fast"), false, 0L,
+                                                                null, payloads("b"), true);
+      Assert.assertTrue(future.isDone());
+      Assert.assertFalse(slowFuture.isDone());
+
+      blockLatch.countDown();
+      slowFuture.get(10, TimeUnit.SECONDS);
+    } finally {
+      blockLatch.countDown();
+      batcher.close();
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    final CountDownLatch blockLatch = new CountDownLatch(1);
+    PublishBatcher batcher = new PublishBatcher(new PublishBatcher.Publisher() {
+      @Nullable
+      @Override
+      public RollbackDetail publish(TopicId topicId, boolean transactional, long transactionWritePointer,
+                                    @Nullable byte[] partitionKey, List<ByteBuffer> payloads) throws Exception {
+        blockLatch.await();
+        return null;
+      }
+    }, 0L, 1024, 1);
+
+    TopicId topicId = NamespaceId.DEFAULT.topic("topic");
+    ListenableFuture<RollbackDetail> inFlight = batcher.publish(topicId, false, 0L, null, payloads("a"), false);
+    // This request is pending since there is already one in flight for the topic
+    ListenableFuture<RollbackDetail> pending = batcher.publish(topicId, false, 0L, null, payloads("b"), false);
+
+    batcher.close();
+    blockLatch.countDown();
+
+    // The in-flight request should complete, while the pending one should fail
+    inFlight.get(10, TimeUnit.SECONDS);
+    assertFailed(pending);
+
+    // Publishing after close should fail
+    assertFailed(batcher.publish(topicId, false, 0L, null, payloads("c"), false));
+  }
+
+  private void assertFailed(ListenableFuture<RollbackDetail> future) throws Exception {
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      Assert.fail("Expected publish failure");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  private List<ByteBuffer> payloads(String payload) {
+    return Collections.singletonList(ByteBuffer.wrap(Bytes.toBytes(payload)));
+  }
+}
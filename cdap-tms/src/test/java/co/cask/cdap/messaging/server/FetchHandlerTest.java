@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.server;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.messaging.Schemas;
+import co.cask.cdap.messaging.data.MessageId;
+import co.cask.cdap.messaging.data.RawMessage;
+import com.google.common.base.Strings;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit tests for the response encoding of {@link FetchHandler}.
+ */
+public class FetchHandlerTest {
+
+  @Test
+  public void testDirectEncoding() throws Exception {
+    // Non-transactional messages, with payloads of different sizes to cover multi-bytes length encoding
+    List<RawMessage> messages = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      messages.add(createMessage(1000L + i, (short) 0, 0L, (short) 0, Strings.repeat("p", i * 20)));
+    }
+    assertEncoding(messages, 64);
+    assertEncoding(messages, 1024 * 1024);
+
+    // Transactional messages, which are stored in the payload table and have the write timestamp in the id
+    messages.clear();
+    for (int i = 0; i < 20; i++) {
+      messages.add(createMessage(2000L, (short) 0, 3000L + i, (short) i, "tx" + i));
+    }
+    assertEncoding(messages, 64);
+
+    // Empty payload and empty batch
+    assertEncoding(Collections.singletonList(createMessage(4000L, (short) 1, 0L, (short) 0, "")), 64);
+    assertEncoding(Collections.<RawMessage>emptyList(), 64);
+  }
+
+  /**
+   * Asserts that the direct encoding produces the same bytes as the encoding by the avro DatumWriter,
+   * and that the result can be decoded back to the given messages.
+   */
+  private void assertEncoding(List<RawMessage> messages, int chunkSize) throws Exception {
+    byte[] direct = encode(new FetchHandler.MessagesBodyProducer(createIterator(messages), chunkSize, true));
+    byte[] datumWriter = encode(new FetchHandler.MessagesBodyProducer(createIterator(messages), chunkSize, false));
+    Assert.assertArrayEquals(datumWriter, direct);
+
+    GenericDatumReader<List<GenericRecord>> reader = new GenericDatumReader<>(Schemas.V1.ConsumeResponse.SCHEMA);
+    List<GenericRecord> records = reader.read(null, DecoderFactory.get().binaryDecoder(direct, null));
+    Assert.assertEquals(messages.size(), records.size());
+    for (int i = 0; i < messages.size(); i++) {
+      Assert.assertArrayEquals(messages.get(i).getId(), Bytes.toBytes((ByteBuffer) records.get(i).get("id")));
+      Assert.assertArrayEquals(messages.get(i).getPayload(),
+                               Bytes.toBytes((ByteBuffer) records.get(i).get("payload")));
+    }
+  }
+
+  private byte[] encode(FetchHandler.MessagesBodyProducer producer) throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try {
+      ChannelBuffer chunk = producer.nextChunk();
+      while (chunk.readable()) {
+        // Copy the chunk out, since the producer may reuse the buffer for the next chunk
+        chunk.readBytes(os, chunk.readableBytes());
+        chunk = producer.nextChunk();
+      }
+    } finally {
+      producer.finished();
+    }
+    return os.toByteArray();
+  }
+
+  private RawMessage createMessage(long publishTimestamp, short sequenceId,
+                                   long writeTimestamp, short payloadSequenceId, String payload) {
+    byte[] id = new byte[MessageId.RAW_ID_SIZE];
+    MessageId.putRawId(publishTimestamp, sequenceId, writeTimestamp, payloadSequenceId, id, 0);
+    return new RawMessage(id, Bytes.toBytes(payload));
+  }
+
+  private CloseableIterator<RawMessage> createIterator(List<RawMessage> messages) {
+    final Iterator<RawMessage> iterator = messages.iterator();
+    return new AbstractCloseableIterator<RawMessage>() {
+      @Override
+      protected RawMessage computeNext() {
+        return iterator.hasNext() ? iterator.next() : endOfData();
+      }
+
+      @Override
+      public void close() {
+        // no-op
+      }
+    };
+  }
+}
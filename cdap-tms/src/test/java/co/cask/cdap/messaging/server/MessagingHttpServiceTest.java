@@ -23,11 +23,14 @@ import co.cask.cdap.api.messaging.TopicNotFoundException;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.discovery.RandomEndpointStrategy;
 import co.cask.cdap.common.guice.ConfigModule;
 import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.PayloadCompression;
 import co.cask.cdap.messaging.RollbackDetail;
+import co.cask.cdap.messaging.Schemas;
 import co.cask.cdap.messaging.TopicMetadata;
 import co.cask.cdap.messaging.client.ClientMessagingService;
 import co.cask.cdap.messaging.client.StoreRequestBuilder;
@@ -36,12 +39,22 @@ import co.cask.cdap.messaging.data.RawMessage;
 import co.cask.cdap.messaging.guice.MessagingServerRuntimeModule;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterators;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.tephra.Transaction;
+import org.apache.twill.discovery.Discoverable;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -50,12 +63,26 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests for {@link MessagingHttpService}.
@@ -68,6 +95,7 @@ public class MessagingHttpServiceTest {
   private static CConfiguration cConf;
   private static MessagingHttpService httpService;
   private static MessagingService client;
+  private static DiscoveryServiceClient discoveryServiceClient;
 
   @BeforeClass
   public static void init() throws IOException {
@@ -90,11 +118,13 @@ public class MessagingHttpServiceTest {
     httpService = injector.getInstance(MessagingHttpService.class);
     httpService.startAndWait();
 
-    client = new ClientMessagingService(injector.getInstance(DiscoveryServiceClient.class));
+    discoveryServiceClient = injector.getInstance(DiscoveryServiceClient.class);
+    client = new ClientMessagingService(discoveryServiceClient);
   }
 
   @AfterClass
   public static void finish() {
+    ((ClientMessagingService) client).close();
     httpService.stopAndWait();
   }
 
@@ -215,6 +245,215 @@ public class MessagingHttpServiceTest {
     }
   }
 
+  @Test
+  public void testLongPoll() throws Exception {
+    final TopicId topicId = new NamespaceId("ns1").topic("testLongPoll");
+    client.createTopic(new TopicMetadata(topicId));
+
+    // Fetch with wait time on an empty topic should return empty after the wait time
+    Stopwatch stopwatch = new Stopwatch().start();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+                                                        .setMaxWait(500, TimeUnit.MILLISECONDS)
+                                                        .fetch()) {
+      Assert.assertFalse(iterator.hasNext());
+    }
+    Assert.assertTrue(stopwatch.elapsedMillis() >= 500);
+
+    // Start a fetch with a long wait time. It should return as soon as a message is published.
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<RawMessage>> future = executor.submit(new Callable<List<RawMessage>>() {
+        @Override
+        public List<RawMessage> call() throws Exception {
+          List<RawMessage> messages = new ArrayList<>();
+          try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+                                                              .setMaxWait(30, TimeUnit.SECONDS)
+                                                              .fetch()) {
+            Iterators.addAll(messages, iterator);
+          }
+          return messages;
+        }
+      });
+
+      // Wait a bit so that the fetch would be waiting on the server side before publishing
+      TimeUnit.MILLISECONDS.sleep(200);
+      stopwatch.reset().start();
+      client.publish(StoreRequestBuilder.of(topicId).addPayloads("m0").build());
+
+      List<RawMessage> messages = future.get(10, TimeUnit.SECONDS);
+      Assert.assertTrue(stopwatch.elapsedMillis() < 10000);
+      Assert.assertEquals(1, messages.size());
+      Assert.assertEquals("m0", Bytes.toString(messages.get(0).getPayload()));
+      final byte[] firstMessageId = messages.get(0).getId();
+
+      // A transactional fetch should return as soon as a transactional message is written, since messages
+      // committed afterwards would not be visible to the transaction of the fetch anyway.
+      final Transaction transaction = new Transaction(100L, 100L, new long[0], new long[0],
+                                                      Transaction.NO_TX_IN_PROGRESS);
+      Future<List<RawMessage>> txFuture = executor.submit(new Callable<List<RawMessage>>() {
+        @Override
+        public List<RawMessage> call() throws Exception {
+          List<RawMessage> messages = new ArrayList<>();
+          try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+                                                              .setStartMessage(firstMessageId, false)
+                                                              .setTransaction(transaction)
+                                                              .setMaxWait(30, TimeUnit.SECONDS)
+                                                              .fetch()) {
+            Iterators.addAll(messages, iterator);
+          }
+          return messages;
+        }
+      });
+      TimeUnit.MILLISECONDS.sleep(200);
+      client.storePayload(StoreRequestBuilder.of(topicId).addPayloads("t0").setTransaction(200L).build());
+      Assert.assertTrue(txFuture.get(10, TimeUnit.SECONDS).isEmpty());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    client.deleteTopic(topicId);
+  }
+
+  @Test
+  public void testInvalidMaxWait() throws Exception {
+    TopicId topicId = new NamespaceId("ns1").topic("testInvalidMaxWait");
+    client.createTopic(new TopicMetadata(topicId));
+
+    // The client validates the max wait time, hence send the request directly
+    GenericRecord record = new GenericData.Record(Schemas.V2.ConsumeRequest.SCHEMA);
+    record.put("inclusive", true);
+    record.put("maxWaitMillis", -1L);
+    HttpURLConnection urlConn = post("v2/namespaces/" + topicId.getNamespace() + "/topics/"
+                                       + topicId.getTopic() + "/poll", encode(record));
+    try {
+      Assert.assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, urlConn.getResponseCode());
+    } finally {
+      urlConn.disconnect();
+    }
+
+    client.deleteTopic(topicId);
+  }
+
+  @Test
+  public void testMultiTopicFetch() throws Exception {
+    NamespaceId namespaceId = new NamespaceId("ns1");
+    TopicId topic1 = namespaceId.topic("testMultiTopicFetch1");
+    TopicId topic2 = namespaceId.topic("testMultiTopicFetch2");
+    TopicId topic3 = namespaceId.topic("testMultiTopicFetch3");
+    client.createTopic(new TopicMetadata(topic1));
+    client.createTopic(new TopicMetadata(topic2));
+    client.createTopic(new TopicMetadata(topic3));
+
+    for (int i = 0; i < 50; i++) {
+      client.publish(StoreRequestBuilder.of(topic1).addPayloads("a" + i).build());
+    }
+    for (int i = 0; i < 30; i++) {
+      client.publish(StoreRequestBuilder.of(topic2).addPayloads("b" + i).build());
+    }
+
+    // Get the id of a message in topic2 to fetch from
+    byte[] startOffset;
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topic2).setLimit(10).fetch()) {
+      startOffset = Iterators.getLast(iterator).getId();
+    }
+
+    ClientMessagingService.MultiTopicMessageFetcher fetcher = ((ClientMessagingService) client)
+      .prepareMultiTopicFetch(namespaceId)
+      .addTopic(topic1.getTopic(), 40)
+      .addTopic(topic2.getTopic(), startOffset, false, 100)
+      .addTopic(topic3.getTopic(), 100);
+
+    List<String> messages1 = new ArrayList<>();
+    List<String> messages2 = new ArrayList<>();
+    // Position of the first message of topic2 and the last message of topic1 in the response
+    int firstTopic2 = -1;
+    int lastTopic1 = -1;
+    try (CloseableIterator<ClientMessagingService.TopicMessage> iterator = fetcher.fetch()) {
+      int position = 0;
+      while (iterator.hasNext()) {
+        ClientMessagingService.TopicMessage message = iterator.next();
+        String payload = Bytes.toString(message.getMessage().getPayload());
+        Assert.assertEquals(0, message.getPartition());
+        if (topic1.equals(message.getTopicId())) {
+          messages1.add(payload);
+          lastTopic1 = position;
+        } else if (topic2.equals(message.getTopicId())) {
+          messages2.add(payload);
+          firstTopic2 = firstTopic2 < 0 ? position : firstTopic2;
+        } else {
+          Assert.fail("Unexpected message from topic " + message.getTopicId());
+        }
+        position++;
+      }
+    }
+
+    // Messages of each topic should be fetched in order
+    Assert.assertEquals(40, messages1.size());
+    for (int i = 0; i < 40; i++) {
+      Assert.assertEquals("a" + i, messages1.get(i));
+    }
+    Assert.assertEquals(20, messages2.size());
+    for (int i = 0; i < 20; i++) {
+      Assert.assertEquals("b" + (i + 10), messages2.get(i));
+    }
+
+    // With the small chunk size, messages from the two topics should be interleaved
+    Assert.assertTrue(firstTopic2 < lastTopic1);
+
+    // Fetching from a topic that doesn't exist should fail
+    try {
+      ((ClientMessagingService) client).prepareMultiTopicFetch(namespaceId)
+        .addTopic(topic1.getTopic(), 10)
+        .addTopic("nonExisting", 10)
+        .fetch();
+      Assert.fail("Expected TopicNotFoundException");
+    } catch (TopicNotFoundException e) {
+      Assert.assertEquals("nonExisting", e.getTopic());
+    }
+
+    client.deleteTopic(topic1);
+    client.deleteTopic(topic2);
+    client.deleteTopic(topic3);
+  }
+
+  @Test
+  public void testBatchPublish() throws Exception {
+    TopicId topicId = new NamespaceId("ns1").topic("testBatchPublish");
+    client.createTopic(new TopicMetadata(topicId));
+
+    // Publish asynchronously without waiting for completion, so that requests are combined
+    List<ListenableFuture<RollbackDetail>> futures = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      futures.add(client.publishAsync(StoreRequestBuilder.of(topicId).addPayloads("m" + i).build()));
+    }
+    for (ListenableFuture<RollbackDetail> future : futures) {
+      Assert.assertNull(future.get(10, TimeUnit.SECONDS));
+    }
+
+    // Transactional publish should get the rollback detail for each request
+    futures.clear();
+    for (int i = 100; i < 110; i++) {
+      futures.add(client.publishAsync(StoreRequestBuilder.of(topicId).addPayloads("m" + i).setTransaction(1L).build()));
+    }
+    for (ListenableFuture<RollbackDetail> future : futures) {
+      RollbackDetail rollbackDetail = future.get(10, TimeUnit.SECONDS);
+      Assert.assertNotNull(rollbackDetail);
+      Assert.assertEquals(1L, rollbackDetail.getTransactionWritePointer());
+    }
+
+    // All messages should be published in order
+    List<RawMessage> messages = new ArrayList<>();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId).fetch()) {
+      Iterators.addAll(messages, iterator);
+    }
+    Assert.assertEquals(110, messages.size());
+    for (int i = 0; i < 110; i++) {
+      Assert.assertEquals("m" + i, Bytes.toString(messages.get(i).getPayload()));
+    }
+
+    client.deleteTopic(topicId);
+  }
+
   @Test
   public void testBasicPubSub() throws Exception {
     TopicId topicId = new NamespaceId("ns1").topic("testBasicPubSub");
@@ -403,6 +642,197 @@ public class MessagingHttpServiceTest {
     client.deleteTopic(topicId);
   }
 
+  @Test
+  public void testCompression() throws Exception {
+    TopicId topicId = new NamespaceId("ns1").topic("testCompression");
+    client.createTopic(new TopicMetadata(topicId, TopicMetadata.COMPRESSION_KEY, "snappy"));
+
+    // Publish to both the message and payload tables. Payloads published together are compressed as one block.
+    String payload = Strings.repeat("compress", 100);
+    client.publish(StoreRequestBuilder.of(topicId).addPayloads(payload, "m1", "m2").build());
+    client.storePayload(StoreRequestBuilder.of(topicId).addPayloads(payload, "p1").setTransaction(1L).build());
+    client.publish(StoreRequestBuilder.of(topicId).setTransaction(1L).build());
+
+    // Updating the topic properties without the compression should keep the compression
+    client.updateTopic(new TopicMetadata(topicId, TopicMetadata.TTL_KEY, "3600"));
+    Assert.assertEquals(PayloadCompression.SNAPPY, client.getTopic(topicId).getCompression());
+
+    // Compression cannot be changed, since payloads are decompressed with the current compression of the topic
+    assertCompressionChangeRejected(topicId, "lz4");
+    Assert.assertEquals(PayloadCompression.SNAPPY, client.getTopic(topicId).getCompression());
+
+    // Payloads should be decompressed when fetched
+    List<RawMessage> messages = new ArrayList<>();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId).fetch()) {
+      Iterators.addAll(messages, iterator);
+    }
+    Assert.assertEquals(5, messages.size());
+    Assert.assertEquals(payload, Bytes.toString(messages.get(0).getPayload()));
+    Assert.assertEquals("m1", Bytes.toString(messages.get(1).getPayload()));
+    Assert.assertEquals("m2", Bytes.toString(messages.get(2).getPayload()));
+    Assert.assertEquals(payload, Bytes.toString(messages.get(3).getPayload()));
+    Assert.assertEquals("p1", Bytes.toString(messages.get(4).getPayload()));
+
+    // Fetching from the middle of a block should decompress the block it refers to
+    byte[] firstMessageId = messages.get(0).getId();
+    messages.clear();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+                                                        .setStartMessage(firstMessageId, false)
+                                                        .setLimit(1).fetch()) {
+      Iterators.addAll(messages, iterator);
+    }
+    Assert.assertEquals(1, messages.size());
+    Assert.assertEquals("m1", Bytes.toString(messages.get(0).getPayload()));
+
+    client.deleteTopic(topicId);
+  }
+
+  @Test
+  public void testCompressionChange() throws Exception {
+    String payload = Strings.repeat("compress", 100);
+
+    // Changing from no compression to a codec is rejected, and existing payloads stay readable
+    TopicId uncompressed = new NamespaceId("ns1").topic("testCompressionChangeFromNone");
+    client.createTopic(new TopicMetadata(uncompressed));
+    client.publish(StoreRequestBuilder.of(uncompressed).addPayloads(payload).build());
+    assertCompressionChangeRejected(uncompressed, "lz4");
+    Assert.assertEquals(PayloadCompression.NONE, client.getTopic(uncompressed).getCompression());
+    // Explicitly setting the same compression is not a change
+    client.updateTopic(new TopicMetadata(uncompressed, TopicMetadata.COMPRESSION_KEY, "none"));
+    assertSinglePayload(uncompressed, payload);
+    client.deleteTopic(uncompressed);
+
+    // Changing from a codec to no compression is rejected, and existing payloads stay readable
+    TopicId compressed = new NamespaceId("ns1").topic("testCompressionChangeToNone");
+    client.createTopic(new TopicMetadata(compressed, TopicMetadata.COMPRESSION_KEY, "lz4"));
+    client.publish(StoreRequestBuilder.of(compressed).addPayloads(payload).build());
+    assertCompressionChangeRejected(compressed, "none");
+    Assert.assertEquals(PayloadCompression.LZ4, client.getTopic(compressed).getCompression());
+    assertSinglePayload(compressed, payload);
+    client.deleteTopic(compressed);
+  }
+
+  private void assertCompressionChangeRejected(TopicId topicId, String compression) throws Exception {
+    try {
+      client.updateTopic(new TopicMetadata(topicId, TopicMetadata.COMPRESSION_KEY, compression));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private void assertSinglePayload(TopicId topicId, String payload) throws Exception {
+    List<RawMessage> messages = new ArrayList<>();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId).fetch()) {
+      Iterators.addAll(messages, iterator);
+    }
+    Assert.assertEquals(1, messages.size());
+    Assert.assertEquals(payload, Bytes.toString(messages.get(0).getPayload()));
+  }
+
+  @Test
+  public void testPartitionedTopic() throws Exception {
+    TopicId topicId = new NamespaceId("ns1").topic("testPartitionedTopic");
+    client.createTopic(new TopicMetadata(topicId, TopicMetadata.PARTITIONS_KEY, 3));
+    Assert.assertEquals(3, client.getTopic(topicId).getPartitions());
+
+    // The number of partitions is kept when not specified in an update, and cannot be changed
+    client.updateTopic(new TopicMetadata(topicId, TopicMetadata.TTL_KEY, "3600"));
+    Assert.assertEquals(3, client.getTopic(topicId).getPartitions());
+    try {
+      client.updateTopic(new TopicMetadata(topicId, TopicMetadata.PARTITIONS_KEY, 5));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    Assert.assertEquals(3, client.getTopic(topicId).getPartitions());
+
+    // Publish messages with different partition keys
+    for (int i = 0; i < 10; i++) {
+      for (int key = 0; key < 3; key++) {
+        client.publish(StoreRequestBuilder.of(topicId).setPartitionKey("k" + key).addPayloads(key + ":" + i).build());
+      }
+    }
+
+    // Messages with the same key should be in the same partition, in the publishing order
+    Map<String, Integer> keyPartitions = new HashMap<>();
+    int total = 0;
+    for (int partition = 0; partition < 3; partition++) {
+      Map<String, Integer> nextSeq = new HashMap<>();
+      try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId).setPartition(partition).fetch()) {
+        while (iterator.hasNext()) {
+          String[] splits = Bytes.toString(iterator.next().getPayload()).split(":");
+          Integer existing = keyPartitions.put(splits[0], partition);
+          Assert.assertTrue(existing == null || existing == partition);
+
+          Integer seq = nextSeq.get(splits[0]);
+          Assert.assertEquals(seq == null ? 0 : seq, Integer.parseInt(splits[1]));
+          nextSeq.put(splits[0], Integer.parseInt(splits[1]) + 1);
+          total++;
+        }
+      }
+    }
+    Assert.assertEquals(30, total);
+
+    // Fetching all partitions in one multi-topic call should tell which partition each message comes from
+    Map<Integer, Integer> partitionCounts = new HashMap<>();
+    try (CloseableIterator<ClientMessagingService.TopicMessage> iterator = ((ClientMessagingService) client)
+           .prepareMultiTopicFetch(topicId.getParent())
+           .addTopicPartition(topicId.getTopic(), 0, 100)
+           .addTopicPartition(topicId.getTopic(), 1, 100)
+           .addTopicPartition(topicId.getTopic(), 2, 100)
+           .fetch()) {
+      while (iterator.hasNext()) {
+        ClientMessagingService.TopicMessage message = iterator.next();
+        Assert.assertEquals(topicId, message.getTopicId());
+        String key = Bytes.toString(message.getMessage().getPayload()).split(":")[0];
+        Assert.assertEquals(keyPartitions.get(key).intValue(), message.getPartition());
+        Integer count = partitionCounts.get(message.getPartition());
+        partitionCounts.put(message.getPartition(), count == null ? 1 : count + 1);
+      }
+    }
+    for (Map.Entry<Integer, Integer> entry : partitionCounts.entrySet()) {
+      Assert.assertEquals(10 * Collections.frequency(keyPartitions.values(), entry.getKey()),
+                          entry.getValue().intValue());
+    }
+
+    // Fetching without partition should fail, since message ids are not ordered across partitions
+    try {
+      client.prepareFetch(topicId).fetch();
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    int partition = keyPartitions.get("0");
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+                                                        .setPartition(partition).setLimit(5).fetch()) {
+      Assert.assertEquals(5, Iterators.size(iterator));
+    }
+
+    // Rollback of a transactional publish should happen on the partition that the messages were published to
+    RollbackDetail rollbackDetail = client.publish(StoreRequestBuilder.of(topicId).setPartitionKey("k0")
+                                                     .addPayloads("tx").setTransaction(1L).build());
+    Assert.assertNotNull(rollbackDetail);
+    Assert.assertEquals(partition, rollbackDetail.getPartition());
+    client.rollback(topicId, rollbackDetail);
+    Transaction transaction = new Transaction(2L, 2L, new long[0], new long[0], 2L);
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+                                                        .setPartition(partition)
+                                                        .setTransaction(transaction).fetch()) {
+      Assert.assertEquals(10 * Collections.frequency(keyPartitions.values(), partition), Iterators.size(iterator));
+    }
+
+    // Fetching from a partition that doesn't exist should fail
+    try {
+      client.prepareFetch(topicId).setPartition(3).fetch();
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    client.deleteTopic(topicId);
+  }
+
   @Test
   public void testPayloadTable() throws Exception {
     // This test is to verify storing transaction messages to the payload table
@@ -460,4 +890,93 @@ public class MessagingHttpServiceTest {
 
     client.deleteTopic(topicId);
   }
+
+  @Test
+  public void testV1Protocol() throws Exception {
+    // Clients of older versions use the V1 endpoints with the V1 schemas
+    TopicId topicId = new NamespaceId("ns1").topic("testV1Protocol");
+    client.createTopic(new TopicMetadata(topicId));
+    String topicPath = "v1/namespaces/" + topicId.getNamespace() + "/topics/" + topicId.getTopic();
+
+    // Non-transactional publish
+    GenericRecord publishRequest = new GenericData.Record(Schemas.V1.PublishRequest.SCHEMA);
+    publishRequest.put("messages", Arrays.asList(ByteBuffer.wrap(Bytes.toBytes("m0")),
+                                                 ByteBuffer.wrap(Bytes.toBytes("m1"))));
+    HttpURLConnection urlConn = post(topicPath + "/publish", encode(publishRequest));
+    try {
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, urlConn.getResponseCode());
+    } finally {
+      urlConn.disconnect();
+    }
+
+    // Transactional publish responds with the V1 rollback detail, which is used as is for rollback
+    publishRequest = new GenericData.Record(Schemas.V1.PublishRequest.SCHEMA);
+    publishRequest.put("transactionWritePointer", 100L);
+    publishRequest.put("messages", Collections.singletonList(ByteBuffer.wrap(Bytes.toBytes("t0"))));
+    byte[] rollbackDetail;
+    urlConn = post(topicPath + "/publish", encode(publishRequest));
+    try {
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, urlConn.getResponseCode());
+      rollbackDetail = ByteStreams.toByteArray(urlConn.getInputStream());
+    } finally {
+      urlConn.disconnect();
+    }
+    GenericRecord publishResponse = new GenericDatumReader<GenericRecord>(Schemas.V1.PublishResponse.SCHEMA)
+      .read(null, DecoderFactory.get().binaryDecoder(rollbackDetail, null));
+    Assert.assertEquals(100L, publishResponse.get("transactionWritePointer"));
+
+    urlConn = post(topicPath + "/rollback", rollbackDetail);
+    try {
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, urlConn.getResponseCode());
+    } finally {
+      urlConn.disconnect();
+    }
+
+    // Fetch the non-transactional messages
+    GenericRecord consumeRequest = new GenericData.Record(Schemas.V1.ConsumeRequest.SCHEMA);
+    consumeRequest.put("inclusive", true);
+    consumeRequest.put("limit", 2);
+    List<String> payloads = new ArrayList<>();
+    urlConn = post(topicPath + "/poll", encode(consumeRequest));
+    try {
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, urlConn.getResponseCode());
+      GenericData.Array<GenericRecord> messages = new GenericDatumReader<GenericData.Array<GenericRecord>>(
+        Schemas.V1.ConsumeResponse.SCHEMA).read(null, DecoderFactory.get().binaryDecoder(urlConn.getInputStream(),
+                                                                                         null));
+      for (GenericRecord message : messages) {
+        payloads.add(Bytes.toString((ByteBuffer) message.get("payload")));
+      }
+    } finally {
+      urlConn.disconnect();
+    }
+    Assert.assertEquals(Arrays.asList("m0", "m1"), payloads);
+
+    client.deleteTopic(topicId);
+  }
+
+  /**
+   * Posts the given avro binary body to the messaging service and returns the connection for reading the response.
+   */
+  private HttpURLConnection post(String path, byte[] body) throws IOException {
+    Discoverable discoverable = new RandomEndpointStrategy(
+      discoveryServiceClient.discover(Constants.Service.MESSAGING_SERVICE)).pick(10, TimeUnit.SECONDS);
+    Assert.assertNotNull(discoverable);
+    InetSocketAddress address = discoverable.getSocketAddress();
+    URL url = new URL(String.format("http://%s:%d/%s", address.getHostName(), address.getPort(), path));
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+    urlConn.setRequestMethod("POST");
+    urlConn.setRequestProperty("Content-Type", "avro/binary");
+    urlConn.setDoOutput(true);
+    try (OutputStream os = urlConn.getOutputStream()) {
+      os.write(body);
+    }
+    return urlConn;
+  }
+
+  private static byte[] encode(GenericRecord record) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new GenericDatumWriter<GenericRecord>(record.getSchema())
+      .write(record, EncoderFactory.get().directBinaryEncoder(os, null));
+    return os.toByteArray();
+  }
 }
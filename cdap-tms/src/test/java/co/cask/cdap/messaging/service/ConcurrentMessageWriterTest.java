@@ -18,7 +18,9 @@ package co.cask.cdap.messaging.service;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.metrics.MetricsCollector;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
 import co.cask.cdap.messaging.data.MessageId;
@@ -28,7 +30,10 @@ import co.cask.cdap.proto.id.TopicId;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.twill.common.Threads;
 import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -37,12 +42,16 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -268,10 +277,69 @@ public class ConcurrentMessageWriterTest {
     }
   }
 
+  @Test
+  public void testDedicatedWriterThread() throws Exception {
+    int payloadsPerRequest = 10;
+    int requestCount = 500;
+
+    TopicId topicId = NamespaceId.DEFAULT.topic("t");
+    TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+
+    // Use a writer that blocks the write until the latch is released, to make sure persistAsync doesn't block
+    final CountDownLatch writeLatch = new CountDownLatch(1);
+    final Set<String> writerThreads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider()) {
+      @Override
+      protected void doWrite(Iterator<TestEntry> entries) throws IOException {
+        Uninterruptibles.awaitUninterruptibly(writeLatch);
+        writerThreads.add(Thread.currentThread().getName());
+        super.doWrite(entries);
+      }
+    };
+    ConcurrentMessageWriter writer = new ConcurrentMessageWriter(
+      testWriter, new NoopMetricsContext(),
+      Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory("test-writer")));
+
+    List<String> payload = new ArrayList<>(payloadsPerRequest);
+    for (int i = 0; i < payloadsPerRequest; i++) {
+      payload.add(Integer.toString(i));
+    }
+
+    List<ListenableFuture<RollbackDetail>> futures = new ArrayList<>();
+    for (int i = 0; i < requestCount; i++) {
+      futures.add(writer.persistAsync(new TestStoreRequest(topicId, payload), metadata));
+    }
+    // Transactional publish should get the rollback detail
+    ListenableFuture<RollbackDetail> txFuture = writer.persistAsync(
+      new TestStoreRequest(topicId, true, 1234L, payload.iterator()), metadata);
+
+    // Nothing should be completed yet since the writer thread is blocked
+    for (ListenableFuture<RollbackDetail> future : futures) {
+      Assert.assertFalse(future.isDone());
+    }
+
+    writeLatch.countDown();
+    Assert.assertEquals(requestCount, Futures.successfulAsList(futures).get(10, TimeUnit.SECONDS).size());
+    Assert.assertEquals(1234L, txFuture.get(10, TimeUnit.SECONDS).getTransactionWritePointer());
+
+    // All writes should be done by the writer thread
+    Assert.assertEquals(Collections.singleton("test-writer"), writerThreads);
+    Assert.assertEquals(payloadsPerRequest * (requestCount + 1), testWriter.getMessages().get(topicId).size());
+
+    // Persist after close should fail
+    writer.close();
+    try {
+      writer.persistAsync(new TestStoreRequest(topicId, payload), metadata).get();
+      Assert.fail("Expected failure on persist after close");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
   /**
    * A {@link StoreRequestWriter} that turns all payloads to {@link RawMessage} and stores it in a List.
    */
-  private static final class TestStoreRequestWriter extends StoreRequestWriter<TestEntry> {
+  private static class TestStoreRequestWriter extends StoreRequestWriter<TestEntry> {
 
     private final ListMultimap<TopicId, RawMessage> messages = ArrayListMultimap.create();
     private long writeDelayMillis;
@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.metrics.MetricsCollector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit-test for {@link Histogram}.
+ */
+public class HistogramTest {
+
+  @Test
+  public void testBuckets() {
+    // Small values have their own buckets
+    for (int i = 0; i < 8; i++) {
+      Assert.assertEquals(i, Histogram.getBucket(i));
+      Assert.assertEquals(i, Histogram.getUpperBound(i));
+    }
+
+    // Every value should be within the range of its bucket, and the range is within 12.5% of the value
+    long[] values = { 8L, 9L, 15L, 16L, 17L, 100L, 1000L, 123456L, 1L << 40, Long.MAX_VALUE };
+    for (long value : values) {
+      int bucket = Histogram.getBucket(value);
+      Assert.assertTrue(value <= Histogram.getUpperBound(bucket));
+      Assert.assertTrue(value > Histogram.getUpperBound(bucket - 1));
+      Assert.assertTrue(Histogram.getUpperBound(bucket) - value <= value / 8);
+    }
+    Assert.assertEquals(Long.MAX_VALUE, Histogram.getUpperBound(Histogram.getBucket(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testEmit() {
+    final Map<String, Long> gauges = new HashMap<>();
+    MetricsCollector collector = new MetricsCollector() {
+      @Override
+      public void increment(String metricName, long value) {
+        Assert.fail("Unexpected increment of metric " + metricName);
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        gauges.put(metricName, value);
+      }
+    };
+
+    // Use a long emit interval so that emission only happens through the emit() call
+    Histogram histogram = new Histogram(collector, "test", 1L, TimeUnit.HOURS);
+
+    // Nothing is emitted if no value is recorded
+    histogram.emit();
+    Assert.assertTrue(gauges.isEmpty());
+
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    histogram.emit();
+
+    assertWithinBucket(500L, gauges.get("test.p50"));
+    assertWithinBucket(900L, gauges.get("test.p90"));
+    // The percentile is capped by the maximum value
+    Assert.assertEquals(1000L, (long) gauges.get("test.p99"));
+    Assert.assertEquals(1000L, (long) gauges.get("test.max"));
+
+    // The histogram is reset after emission
+    gauges.clear();
+    histogram.record(5L);
+    histogram.emit();
+    Assert.assertEquals(5L, (long) gauges.get("test.p50"));
+    Assert.assertEquals(5L, (long) gauges.get("test.p99"));
+    Assert.assertEquals(5L, (long) gauges.get("test.max"));
+  }
+
+  @Test
+  public void testEmitEmptyWindow() {
+    final Map<String, Long> gauges = new HashMap<>();
+    MetricsCollector collector = new MetricsCollector() {
+      @Override
+      public void increment(String metricName, long value) {
+        Assert.fail("Unexpected increment of metric " + metricName);
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        gauges.put(metricName, value);
+      }
+    };
+
+    Histogram histogram = new Histogram(collector, "test", 1L, TimeUnit.HOURS);
+    histogram.record(100L);
+    histogram.emit();
+    Assert.assertEquals(100L, (long) gauges.get("test.max"));
+
+    // Gauges are reset once a window has no value, instead of reporting the values of the last window
+    gauges.clear();
+    histogram.emit();
+    Assert.assertEquals(0L, (long) gauges.get("test.p50"));
+    Assert.assertEquals(0L, (long) gauges.get("test.p90"));
+    Assert.assertEquals(0L, (long) gauges.get("test.p99"));
+    Assert.assertEquals(0L, (long) gauges.get("test.max"));
+
+    // Nothing more is emitted while the histogram stays empty
+    gauges.clear();
+    histogram.emit();
+    Assert.assertTrue(gauges.isEmpty());
+  }
+
+  @Test
+  public void testEmitInterval() {
+    final Map<String, Long> gauges = new HashMap<>();
+    MetricsCollector collector = new MetricsCollector() {
+      @Override
+      public void increment(String metricName, long value) {
+        Assert.fail("Unexpected increment of metric " + metricName);
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        gauges.put(metricName, value);
+      }
+    };
+
+    // With zero emit interval, every record call emits
+    Histogram histogram = new Histogram(collector, "test", 0L, TimeUnit.SECONDS);
+    histogram.record(10L);
+    Assert.assertEquals(10L, (long) gauges.get("test.max"));
+    histogram.record(3L);
+    Assert.assertEquals(3L, (long) gauges.get("test.max"));
+  }
+
+  private void assertWithinBucket(long expected, Long actual) {
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(Histogram.getUpperBound(Histogram.getBucket(expected)), (long) actual);
+  }
+}
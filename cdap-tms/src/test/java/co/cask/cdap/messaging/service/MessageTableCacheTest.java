@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.messaging.RollbackDetail;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.data.MessageId;
+import co.cask.cdap.messaging.store.MessageTable;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import org.apache.tephra.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Unit-test for {@link MessageTableCache}.
+ */
+public class MessageTableCacheTest {
+
+  private static final TopicId TOPIC_ID = NamespaceId.DEFAULT.topic("cache");
+  private static final TopicMetadata METADATA = new TopicMetadata(TOPIC_ID, TopicMetadata.GENERATION_KEY, 1);
+
+  @Test
+  public void testFetch() throws Exception {
+    MessageTableCache cache = new MessageTableCache(Long.MAX_VALUE, new NoopMetricsContext());
+
+    // Nothing is cached
+    Assert.assertFalse(cache.isCached(METADATA, 0L));
+
+    List<MessageTable.Entry> entries = new ArrayList<>();
+    for (int i = 1; i <= 10; i++) {
+      entries.add(new TestEntry(1, i, null, Bytes.toBytes(i)));
+    }
+    cache.store(entries.iterator());
+
+    // Fetches that start before the first cached entry are not cached
+    Assert.assertFalse(cache.isCached(METADATA, 0L));
+    Assert.assertFalse(cache.isCached(METADATA, createMessageId(0L)));
+    Assert.assertTrue(cache.isCached(METADATA, createMessageId(1L)));
+    Assert.assertTrue(cache.isCached(METADATA, 5L));
+    Assert.assertTrue(cache.isCached(METADATA, 100L));
+
+    // Different generation of the topic is not cached
+    Assert.assertFalse(cache.isCached(new TopicMetadata(TOPIC_ID, TopicMetadata.GENERATION_KEY, 2), 5L));
+
+    // Fetch by time
+    try (CloseableIterator<MessageTable.Entry> iterator = cache.fetch(METADATA, 5L, 100, null)) {
+      assertPayloads(iterator, 5, 6, 7, 8, 9, 10);
+    }
+
+    // Fetch by message id, exclusively with limit
+    try (CloseableIterator<MessageTable.Entry> iterator = cache.fetch(METADATA, createMessageId(3L),
+                                                                      false, 4, null)) {
+      assertPayloads(iterator, 4, 5, 6, 7);
+    }
+  }
+
+  @Test
+  public void testTransaction() throws Exception {
+    MessageTableCache cache = new MessageTableCache(Long.MAX_VALUE, new NoopMetricsContext());
+
+    List<MessageTable.Entry> entries = new ArrayList<>();
+    entries.add(new TestEntry(1, 1, null, Bytes.toBytes(1)));
+    entries.add(new TestEntry(1, 2, 100L, Bytes.toBytes(2)));
+    entries.add(new TestEntry(1, 3, 101L, Bytes.toBytes(3)));
+    cache.store(entries.iterator());
+
+    // With transaction 100 in progress, should only get the first message
+    Transaction tx = new Transaction(99, 99, new long[0], new long[] { 100L, 101L }, 100L);
+    try (CloseableIterator<MessageTable.Entry> iterator = cache.fetch(METADATA, 0L, 100, tx)) {
+      assertPayloads(iterator, 1);
+    }
+
+    // Rollback transaction 100, then should get message up to the uncommitted transaction 101
+    cache.rollback(METADATA, new TestRollbackDetail(100L, 2L));
+    try (CloseableIterator<MessageTable.Entry> iterator = cache.fetch(METADATA, 0L, 100, tx)) {
+      assertPayloads(iterator, 1);
+    }
+
+    // With transaction 101 committed, should skip the rolled back message
+    tx = new Transaction(102, 102, new long[0], new long[0], 102L);
+    try (CloseableIterator<MessageTable.Entry> iterator = cache.fetch(METADATA, 0L, 100, tx)) {
+      assertPayloads(iterator, 1, 3);
+    }
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    // The cache can hold a few entries only
+    MessageTableCache cache = new MessageTableCache(500L, new NoopMetricsContext());
+
+    List<MessageTable.Entry> entries = new ArrayList<>();
+    for (int i = 1; i <= 100; i++) {
+      entries.add(new TestEntry(1, i, null, Bytes.toBytes(i)));
+    }
+    cache.store(entries.iterator());
+
+    // Earlier entries should be evicted
+    Assert.assertFalse(cache.isCached(METADATA, createMessageId(1L)));
+    Assert.assertTrue(cache.isCached(METADATA, createMessageId(100L)));
+
+    // The latest entries should be cached
+    try (CloseableIterator<MessageTable.Entry> iterator = cache.fetch(METADATA, 99L, 100, null)) {
+      assertPayloads(iterator, 99, 100);
+    }
+
+    // Writing an entry that is out of order should reset the cache
+    entries.clear();
+    entries.add(new TestEntry(1, 50, null, Bytes.toBytes(50)));
+    cache.store(entries.iterator());
+    Assert.assertFalse(cache.isCached(METADATA, createMessageId(49L)));
+    Assert.assertTrue(cache.isCached(METADATA, createMessageId(50L)));
+    try (CloseableIterator<MessageTable.Entry> iterator = cache.fetch(METADATA, createMessageId(50L),
+                                                                      true, 10, null)) {
+      assertPayloads(iterator, 50);
+    }
+  }
+
+  private MessageId createMessageId(long publishTimestamp) {
+    byte[] rawId = new byte[MessageId.RAW_ID_SIZE];
+    MessageId.putRawId(publishTimestamp, (short) 0, 0L, (short) 0, rawId, 0);
+    return new MessageId(rawId);
+  }
+
+  /**
+   * Asserts the iterator returns exactly the entries with the given payloads.
+   */
+  private void assertPayloads(CloseableIterator<MessageTable.Entry> iterator, int... payloads) {
+    for (int payload : payloads) {
+      Assert.assertTrue(iterator.hasNext());
+      Assert.assertEquals(payload, Bytes.toInt(iterator.next().getPayload()));
+    }
+    Assert.assertFalse(iterator.hasNext());
+  }
+
+  /**
+   * A {@link RollbackDetail} for rolling back messages published with a given timestamp.
+   */
+  private static final class TestRollbackDetail implements RollbackDetail {
+
+    private final long txWritePointer;
+    private final long timestamp;
+
+    TestRollbackDetail(long txWritePointer, long timestamp) {
+      this.txWritePointer = txWritePointer;
+      this.timestamp = timestamp;
+    }
+
+    @Override
+    public long getTransactionWritePointer() {
+      return txWritePointer;
+    }
+
+    @Override
+    public long getStartTimestamp() {
+      return timestamp;
+    }
+
+    @Override
+    public int getStartSequenceId() {
+      return 0;
+    }
+
+    @Override
+    public long getEndTimestamp() {
+      return timestamp;
+    }
+
+    @Override
+    public int getEndSequenceId() {
+      return 0;
+    }
+
+    @Override
+    public int getPartition() {
+      return 0;
+    }
+  }
+
+  /**
+   * A {@link MessageTable.Entry} for testing.
+   */
+  private static final class TestEntry implements MessageTable.Entry {
+
+    private final int generation;
+    private final long publishTimestamp;
+    private final Long txWritePointer;
+    private final byte[] payload;
+
+    TestEntry(int generation, long publishTimestamp, @Nullable Long txWritePointer, byte[] payload) {
+      this.generation = generation;
+      this.publishTimestamp = publishTimestamp;
+      this.txWritePointer = txWritePointer;
+      this.payload = payload;
+    }
+
+    @Override
+    public TopicId getTopicId() {
+      return TOPIC_ID;
+    }
+
+    @Override
+    public int getGeneration() {
+      return generation;
+    }
+
+    @Override
+    public int getPartition() {
+      return 0;
+    }
+
+    @Override
+    public boolean isPayloadReference() {
+      return false;
+    }
+
+    @Override
+    public boolean isTransactional() {
+      return txWritePointer != null;
+    }
+
+    @Override
+    public long getTransactionWritePointer() {
+      return txWritePointer == null ? -1L : txWritePointer;
+    }
+
+    @Nullable
+    @Override
+    public byte[] getPayload() {
+      return payload;
+    }
+
+    @Override
+    public long getPublishTimestamp() {
+      return publishTimestamp;
+    }
+
+    @Override
+    public short getSequenceId() {
+      return 0;
+    }
+  }
+}
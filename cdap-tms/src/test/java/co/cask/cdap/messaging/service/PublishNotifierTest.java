@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit-test for {@link PublishNotifier}.
+ */
+public class PublishNotifierTest {
+
+  @Test
+  public void testNotify() throws Exception {
+    TopicId topicId = NamespaceId.DEFAULT.topic("notify");
+    try (PublishNotifier notifier = new PublishNotifier(0L)) {
+      ListenableFuture<Boolean> first = notifier.waitForPublish(topicId, 1, TimeUnit.HOURS);
+      ListenableFuture<Boolean> second = notifier.waitForPublish(topicId, 1, TimeUnit.HOURS);
+      Assert.assertTrue(notifier.hasWaiters(topicId));
+
+      notifier.notifyPublished(NamespaceId.DEFAULT.topic("other"));
+      Assert.assertFalse(first.isDone());
+
+      notifier.notifyPublished(topicId);
+      Assert.assertTrue(first.get(10, TimeUnit.SECONDS));
+      Assert.assertTrue(second.get(10, TimeUnit.SECONDS));
+
+      // Topics without waiters should not be kept
+      Assert.assertFalse(notifier.hasWaiters(topicId));
+      notifier.waitForPublish(topicId, 1, TimeUnit.HOURS).cancel(false);
+      Assert.assertFalse(notifier.hasWaiters(topicId));
+    }
+  }
+
+  @Test
+  public void testMaxWait() throws Exception {
+    TopicId topicId = NamespaceId.DEFAULT.topic("maxWait");
+    try (PublishNotifier notifier = new PublishNotifier(100L)) {
+      // Waiters are woken up after the maximum wait time, even without notification
+      ListenableFuture<Boolean> future = notifier.waitForPublish(topicId, 1, TimeUnit.HOURS);
+      Assert.assertFalse(future.get(10, TimeUnit.SECONDS));
+    }
+  }
+}
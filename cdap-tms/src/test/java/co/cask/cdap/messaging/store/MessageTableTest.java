@@ -282,6 +282,11 @@ public abstract class MessageTableTest {
     public int getEndSequenceId() {
       return endSeqId;
     }
+
+    @Override
+    public int getPartition() {
+      return 0;
+    }
   }
 
   // Private class for publishing messages
@@ -313,6 +318,11 @@ public abstract class MessageTableTest {
       return generation;
     }
 
+    @Override
+    public int getPartition() {
+      return 0;
+    }
+
     @Override
     public boolean isPayloadReference() {
       return payload == null;
@@ -98,6 +98,9 @@ public class MetricsHandler extends AbstractHttpHandler {
 
       .put(Constants.Metrics.Tag.STREAM, "stream")
 
+      .put(Constants.Metrics.Tag.TOPIC, "topic")
+      .put(Constants.Metrics.Tag.PARTITION, "partition")
+
       .put(Constants.Metrics.Tag.DATASET, "dataset")
 
       .put(Constants.Metrics.Tag.APP, "app")
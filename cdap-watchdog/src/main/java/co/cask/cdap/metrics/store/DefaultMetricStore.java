@@ -78,6 +78,7 @@ public class DefaultMetricStore implements MetricStore {
   private static final String BY_STREAM = "stream";
   private static final String BY_DATASET = "dataset";
   private static final String BY_COMPONENT = "component";
+  private static final String BY_TOPIC = "topic";
   private static final Map<String, AggregationAlias> AGGREGATIONS_ALIAS_DIMENSIONS =
     ImmutableMap.of(BY_WORKFLOW,
                     new AggregationAlias(ImmutableMap.of(Constants.Metrics.Tag.RUN_ID,
@@ -193,6 +194,14 @@ public class DefaultMetricStore implements MetricStore {
       // i.e. for components only
       ImmutableList.of(Constants.Metrics.Tag.NAMESPACE, Constants.Metrics.Tag.COMPONENT)));
 
+    // Messaging topics:
+    aggs.put(BY_TOPIC, new DefaultAggregation(
+      ImmutableList.of(Constants.Metrics.Tag.NAMESPACE, Constants.Metrics.Tag.COMPONENT,
+                       Constants.Metrics.Tag.TOPIC, Constants.Metrics.Tag.TABLE, Constants.Metrics.Tag.PARTITION),
+      // i.e. for messaging topics only
+      ImmutableList.of(Constants.Metrics.Tag.NAMESPACE, Constants.Metrics.Tag.COMPONENT,
+                       Constants.Metrics.Tag.TOPIC)));
+
     AGGREGATIONS = Collections.unmodifiableMap(aggs);
   }
 